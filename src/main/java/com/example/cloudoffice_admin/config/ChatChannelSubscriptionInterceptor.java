@@ -0,0 +1,48 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.service.ChatService;
+import com.example.cloudoffice_admin.service.WebSocketSessionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+// 聊天频道主题 /topic/channels/{channelId} 只允许频道成员订阅
+@Component
+public class ChatChannelSubscriptionInterceptor implements ChannelInterceptor {
+
+    // 聊天服务依赖会话管理器，延迟注入以避免与消息代理配置形成循环依赖
+    @Lazy
+    @Autowired
+    private ChatService chatService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            return message;
+        }
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith(WebSocketSessionManager.CHANNEL_TOPIC_PREFIX)) {
+            return message;
+        }
+
+        Long channelId;
+        try {
+            channelId = Long.valueOf(destination.substring(WebSocketSessionManager.CHANNEL_TOPIC_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new MessageDeliveryException("Unknown chat channel destination " + destination);
+        }
+        Long userId = PresenceActivityInterceptor.userIdOf(message);
+        if (userId == null || !chatService.isMemberInChannel(channelId, userId)) {
+            throw new MessageDeliveryException("User is not a member of channel " + channelId);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.service.PositionFrameCodec;
+import com.example.cloudoffice_admin.service.WebSocketSessionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// 按连接协商实时帧编码：客户端在CONNECT帧中携带 x-frame-codec: binary-v3，
+// 只有原生WebSocket连接可以启用二进制帧，SockJS连接继续使用JSON
+@Component
+public class FrameCodecNegotiationInterceptor implements ChannelInterceptor {
+
+    public static final String CODEC_HEADER = "x-frame-codec";
+
+    // 会话管理器依赖消息模板，延迟注入以避免与消息代理配置形成循环依赖
+    @Lazy
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        if (StompCommand.CONNECT.equals(accessor.getCommand())) {
+            String requested = accessor.getFirstNativeHeader(CODEC_HEADER);
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            boolean sockJs = attributes == null || !Boolean.FALSE.equals(attributes.get("sockJs"));
+            if (PositionFrameCodec.CODEC_NAME.equals(requested) && !sockJs) {
+                sessionManager.markBinarySession(accessor.getSessionId());
+            }
+        } else if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            String destination = accessor.getDestination();
+            if (destination != null && destination.endsWith(PositionFrameCodec.DESTINATION_SUFFIX)
+                    && !sessionManager.isBinarySession(accessor.getSessionId())) {
+                throw new MessageDeliveryException("Binary frames were not negotiated for this session");
+            }
+        }
+        return message;
+    }
+}
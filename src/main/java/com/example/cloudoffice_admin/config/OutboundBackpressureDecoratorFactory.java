@@ -0,0 +1,179 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.service.PositionFrameCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 为每个WebSocket会话加上有界出站队列（见OutboundQueueSession），并把队列深度和丢弃情况暴露为指标
+@Component
+public class OutboundBackpressureDecoratorFactory implements WebSocketHandlerDecoratorFactory {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PositionFrameCodec frameCodec;
+
+    @Value("${app.realtime.outbound.enabled:true}")
+    private boolean enabled = true;
+
+    // 每个会话最多排队的位置帧数，超过时把最旧的一帧合并进同一目的地的下一帧
+    @Value("${app.realtime.outbound.max-position-frames:8}")
+    private int maxPositionFrames = 8;
+
+    // 每个会话最多排队的帧数，控制帧无法入队时关闭会话
+    @Value("${app.realtime.outbound.max-queued-frames:512}")
+    private int maxQueuedFrames = 512;
+
+    // 出站线程一次最多为同一会话连续写出的帧数
+    @Value("${app.realtime.outbound.frames-per-drain:32}")
+    private int framesPerDrain = 32;
+
+    // 写一帧超过该时长时关闭会话（SESSION_NOT_RELIABLE）
+    @Value("${app.realtime.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs = 10000;
+
+    // 写出站帧的线程数，慢客户端阻塞的写操作只占用其中一个线程；使用虚拟线程时每次写出使用一个虚拟线程
+    @Value("${app.realtime.outbound.drain-threads:8}")
+    private int drainThreads = 8;
+
+    @Value("${" + VirtualThreads.ENABLED_PROPERTY + ":false}")
+    private boolean virtualThreads;
+
+    private final Map<String, OutboundQueueSession> sessions = new ConcurrentHashMap<>();
+    private Executor executor;
+    private PositionFrameMerger merger;
+    private OutboundQueueSession.Limits limits;
+    private Counter droppedPositions;
+    private Counter closedSessions;
+
+    @PostConstruct
+    public void init() {
+        merger = new PositionFrameMerger(objectMapper, frameCodec);
+        limits = new OutboundQueueSession.Limits(maxPositionFrames, maxQueuedFrames, framesPerDrain, sendTimeLimitMs);
+        if (VirtualThreads.active(virtualThreads)) {
+            executor = VirtualThreads.executor("ws-outbound-");
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, drainThreads), r -> {
+                Thread thread = new Thread(r, "ws-outbound-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Gauge.builder("realtime.outbound.queue.depth", this, OutboundBackpressureDecoratorFactory::totalQueueDepth)
+                .description("Frames queued across all WebSocket sessions")
+                .register(meterRegistry);
+        Gauge.builder("realtime.outbound.queue.depth.max", this, OutboundBackpressureDecoratorFactory::maxQueueDepth)
+                .description("Deepest per-session outbound queue")
+                .register(meterRegistry);
+        Gauge.builder("realtime.outbound.sessions", sessions, Map::size)
+                .register(meterRegistry);
+        droppedPositions = Counter.builder("realtime.outbound.dropped")
+                .tag("class", "position")
+                .description("Position frames superseded before they were written")
+                .register(meterRegistry);
+        closedSessions = Counter.builder("realtime.outbound.closed")
+                .description("Sessions closed because a control frame could not be queued or a write exceeded the send time limit")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        if (!enabled) {
+            return handler;
+        }
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                OutboundQueueSession queued = new OutboundQueueSession(session, executor, merger, limits, listener);
+                sessions.put(session.getId(), queued);
+                super.afterConnectionEstablished(queued);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                // 所有写操作都经过同一个队列，避免与出站线程并发写底层连接
+                super.handleMessage(queuedOrSelf(session), message);
+            }
+
+            @Override
+            public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+                super.handleTransportError(queuedOrSelf(session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                WebSocketSession queued = queuedOrSelf(session);
+                sessions.remove(session.getId());
+                if (queued instanceof OutboundQueueSession) {
+                    ((OutboundQueueSession) queued).discard();
+                }
+                super.afterConnectionClosed(queued, closeStatus);
+            }
+        };
+    }
+
+    private WebSocketSession queuedOrSelf(WebSocketSession session) {
+        OutboundQueueSession queued = sessions.get(session.getId());
+        return queued != null ? queued : session;
+    }
+
+    private final OutboundQueueSession.Listener listener = new OutboundQueueSession.Listener() {
+        @Override
+        public void positionDropped(OutboundQueueSession session) {
+            droppedPositions.increment();
+        }
+
+        @Override
+        public void limitExceeded(OutboundQueueSession session) {
+            closedSessions.increment();
+        }
+    };
+
+    public int totalQueueDepth() {
+        int total = 0;
+        for (OutboundQueueSession session : sessions.values()) {
+            total += session.getQueueDepth();
+        }
+        return total;
+    }
+
+    public int maxQueueDepth() {
+        int max = 0;
+        for (OutboundQueueSession session : sessions.values()) {
+            max = Math.max(max, session.getQueueDepth());
+        }
+        return max;
+    }
+}
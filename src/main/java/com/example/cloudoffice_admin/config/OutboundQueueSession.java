@@ -0,0 +1,251 @@
+package com.example.cloudoffice_admin.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+// 每个会话一个有界出站队列：发送只入队，由出站线程池异步写到底层连接，慢客户端不会阻塞共享的出站通道
+//
+// 按STOMP帧的目的地分类：
+//   位置帧：排队的位置帧超过上限时，把最旧的一帧合并进同一目的地的下一帧（每个移动者只保留最新位置），无法合并时丢弃
+//   控制帧（加入/离开、聊天、会议、快照、CONNECTED、RECEIPT、ERROR、心跳等）：从不丢弃；队列已满无法入队时关闭会话
+// 出站线程写一帧超过发送时限后，下一次入队时关闭会话，与Spring的ConcurrentWebSocketSessionDecorator一致：
+// 抛出SessionLimitExceededException，由SubProtocolWebSocketHandler以SESSION_NOT_RELIABLE关闭连接，客户端重连后重新加入空间
+public class OutboundQueueSession extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundQueueSession.class);
+
+    enum FrameClass { POSITION, CONTROL }
+
+    // 出站队列的回调，由装饰器工厂实现，用于统计
+    interface Listener {
+        void positionDropped(OutboundQueueSession session);
+
+        void limitExceeded(OutboundQueueSession session);
+    }
+
+    // 队列和出站线程的上限
+    static final class Limits {
+        // 每个会话最多排队的位置帧数
+        private final int positionFrames;
+        // 每个会话最多排队的帧数
+        private final int queuedFrames;
+        // 出站线程一次最多连续写出的帧数，之后把线程让给其他会话
+        private final int framesPerDrain;
+        // 写一帧允许的最长时间
+        private final long sendTimeLimitMs;
+
+        Limits(int positionFrames, int queuedFrames, int framesPerDrain, long sendTimeLimitMs) {
+            this.positionFrames = positionFrames;
+            this.queuedFrames = queuedFrames;
+            this.framesPerDrain = Math.max(1, framesPerDrain);
+            this.sendTimeLimitMs = sendTimeLimitMs;
+        }
+    }
+
+    private final Executor executor;
+    private final PositionFrameMerger merger;
+    private final Limits limits;
+    private final Listener listener;
+
+    private final ArrayDeque<QueuedFrame> queue = new ArrayDeque<>();
+    private int positionFrames;
+    private boolean draining;
+    private boolean closed;
+    // 出站线程开始写当前帧的时间，空闲时为0
+    private volatile long sendStartedAt;
+
+    public OutboundQueueSession(WebSocketSession delegate, Executor executor, PositionFrameMerger merger,
+                                Limits limits, Listener listener) {
+        super(delegate);
+        this.executor = executor;
+        this.merger = merger;
+        this.limits = limits;
+        this.listener = listener;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        String destination = destinationOf(message);
+        FrameClass frameClass = classify(destination);
+        int dropped = 0;
+        String exceeded = null;
+        boolean startDrain = false;
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            long started = sendStartedAt;
+            if (started != 0 && System.currentTimeMillis() - started > limits.sendTimeLimitMs) {
+                exceeded = "Send time " + (System.currentTimeMillis() - started) + " (ms) for session '" + getId()
+                        + "' exceeded the allowed limit " + limits.sendTimeLimitMs;
+            } else if (frameClass == FrameClass.POSITION) {
+                queue.add(new QueuedFrame(message, destination));
+                positionFrames++;
+                while (positionFrames > limits.positionFrames) {
+                    supersedeOldestPosition();
+                    dropped++;
+                }
+            } else if (queue.size() >= limits.queuedFrames) {
+                exceeded = "Outbound queue for session '" + getId() + "' is full with " + queue.size() + " frames";
+            } else {
+                queue.add(new QueuedFrame(message, null));
+            }
+            if (exceeded != null) {
+                closed = true;
+                queue.clear();
+                positionFrames = 0;
+            } else if (!draining) {
+                draining = true;
+                startDrain = true;
+            }
+        }
+        if (startDrain) {
+            executor.execute(this::drain);
+        }
+        for (int i = 0; i < dropped; i++) {
+            listener.positionDropped(this);
+        }
+        if (exceeded != null) {
+            listener.limitExceeded(this);
+            throw new SessionLimitExceededException(exceeded, CloseStatus.SESSION_NOT_RELIABLE);
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    // 连接关闭后丢弃积压的帧
+    public void discard() {
+        synchronized (queue) {
+            closed = true;
+            queue.clear();
+            positionFrames = 0;
+        }
+    }
+
+    // 一次最多写出framesPerDrain帧，还有积压时重新提交，让同一线程池中的其他会话也能写出
+    private void drain() {
+        for (int written = 0; written < limits.framesPerDrain; written++) {
+            QueuedFrame frame;
+            synchronized (queue) {
+                frame = queue.poll();
+                if (frame == null) {
+                    draining = false;
+                    return;
+                }
+                if (frame.position()) {
+                    positionFrames--;
+                }
+            }
+            sendStartedAt = System.currentTimeMillis();
+            try {
+                getDelegate().sendMessage(frame.message);
+            } catch (Exception e) {
+                logger.debug("Failed to send frame to session {}", getId(), e);
+                discard();
+                synchronized (queue) {
+                    draining = false;
+                }
+                return;
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+        executor.execute(this::drain);
+    }
+
+    // 取出最旧的位置帧，合并进同一目的地较新的一帧；没有较新的一帧或无法合并时直接丢弃
+    private void supersedeOldestPosition() {
+        QueuedFrame oldest = null;
+        Iterator<QueuedFrame> it = queue.iterator();
+        while (it.hasNext()) {
+            QueuedFrame frame = it.next();
+            if (!frame.position()) {
+                continue;
+            }
+            if (oldest == null) {
+                oldest = frame;
+                it.remove();
+                positionFrames--;
+            } else if (frame.destination.equals(oldest.destination)) {
+                WebSocketMessage<?> merged = merger.merge(oldest.message, frame.message);
+                if (merged != null) {
+                    frame.message = merged;
+                }
+                return;
+            }
+        }
+    }
+
+    static FrameClass classify(WebSocketMessage<?> message) {
+        return classify(destinationOf(message));
+    }
+
+    static FrameClass classify(String destination) {
+        return destination != null && destination.contains("/positions") ? FrameClass.POSITION : FrameClass.CONTROL;
+    }
+
+    // 只解析STOMP MESSAGE帧头部中的destination，不解析消息体
+    static String destinationOf(WebSocketMessage<?> message) {
+        String headers;
+        if (message instanceof TextMessage) {
+            String frame = ((TextMessage) message).getPayload();
+            int end = frame.indexOf("\n\n");
+            headers = end >= 0 ? frame.substring(0, end) : frame;
+        } else if (message instanceof BinaryMessage) {
+            ByteBuffer frame = ((BinaryMessage) message).getPayload().duplicate();
+            byte[] buffer = new byte[Math.min(frame.remaining(), 512)];
+            frame.get(buffer);
+            headers = new String(buffer, StandardCharsets.ISO_8859_1);
+            int end = headers.indexOf("\n\n");
+            if (end >= 0) {
+                headers = headers.substring(0, end);
+            }
+        } else {
+            return null;
+        }
+        if (!headers.startsWith("MESSAGE\n") && !headers.startsWith("MESSAGE\r\n")) {
+            return null;
+        }
+        int start = headers.indexOf("\ndestination:");
+        if (start < 0) {
+            return null;
+        }
+        start += "\ndestination:".length();
+        int end = headers.indexOf('\n', start);
+        String destination = end >= 0 ? headers.substring(start, end) : headers.substring(start);
+        return destination.endsWith("\r") ? destination.substring(0, destination.length() - 1) : destination;
+    }
+
+    private static final class QueuedFrame {
+        private WebSocketMessage<?> message;
+        // 位置帧的目的地，控制帧为null
+        private final String destination;
+
+        private QueuedFrame(WebSocketMessage<?> message, String destination) {
+            this.message = message;
+            this.destination = destination;
+        }
+
+        private boolean position() {
+            return destination != null;
+        }
+    }
+}
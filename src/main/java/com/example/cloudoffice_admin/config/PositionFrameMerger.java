@@ -0,0 +1,183 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.service.PositionFrameCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// 合并同一目的地上排队的两个位置批量帧：每个移动者只保留较新一帧中的位置，离开列表取并集（之后又移动的不再算离开），
+// 序号和时间取较新的一帧。JSON帧按JSON树合并，保留原有字段格式；binary-v3帧用PositionFrameCodec解码后重新编码
+// 无法识别的帧返回null，由调用方直接丢弃较旧的一帧
+class PositionFrameMerger {
+
+    private static final Logger logger = LoggerFactory.getLogger(PositionFrameMerger.class);
+
+    private static final String CONTENT_LENGTH = "content-length:";
+
+    private final ObjectMapper objectMapper;
+    private final PositionFrameCodec frameCodec;
+
+    PositionFrameMerger(ObjectMapper objectMapper, PositionFrameCodec frameCodec) {
+        this.objectMapper = objectMapper;
+        this.frameCodec = frameCodec;
+    }
+
+    WebSocketMessage<?> merge(WebSocketMessage<?> older, WebSocketMessage<?> newer) {
+        try {
+            if (older instanceof TextMessage && newer instanceof TextMessage) {
+                return mergeText(((TextMessage) older).getPayload(), ((TextMessage) newer).getPayload());
+            }
+            if (older instanceof BinaryMessage && newer instanceof BinaryMessage) {
+                return mergeBinary(bytesOf((BinaryMessage) older), bytesOf((BinaryMessage) newer));
+            }
+        } catch (Exception e) {
+            logger.debug("Cannot merge position frames", e);
+        }
+        return null;
+    }
+
+    private TextMessage mergeText(String older, String newer) throws Exception {
+        int olderStart = older.indexOf("\n\n");
+        int newerStart = newer.indexOf("\n\n");
+        if (olderStart < 0 || newerStart < 0 || !older.endsWith("\u0000") || !newer.endsWith("\u0000")) {
+            return null;
+        }
+        JsonNode olderBody = objectMapper.readTree(older.substring(olderStart + 2, older.length() - 1));
+        JsonNode newerBody = objectMapper.readTree(newer.substring(newerStart + 2, newer.length() - 1));
+        if (!olderBody.path("updates").isArray() || !newerBody.path("updates").isArray()) {
+            return null;
+        }
+
+        Set<Long> newerMovers = ids(newerBody.get("updates"), "userId");
+        Set<Long> newerRemoved = ids(newerBody.get("removed"), null);
+        ArrayNode updates = objectMapper.createArrayNode();
+        for (JsonNode update : olderBody.get("updates")) {
+            long userId = update.path("userId").asLong();
+            if (!newerMovers.contains(userId) && !newerRemoved.contains(userId)) {
+                updates.add(update);
+            }
+        }
+        updates.addAll((ArrayNode) newerBody.get("updates"));
+        ArrayNode removed = objectMapper.createArrayNode();
+        if (olderBody.path("removed").isArray()) {
+            for (JsonNode userId : olderBody.get("removed")) {
+                if (!newerMovers.contains(userId.asLong()) && !newerRemoved.contains(userId.asLong())) {
+                    removed.add(userId);
+                }
+            }
+        }
+        if (newerBody.path("removed").isArray()) {
+            removed.addAll((ArrayNode) newerBody.get("removed"));
+        }
+
+        ObjectNode merged = (ObjectNode) newerBody;
+        merged.set("updates", updates);
+        if (!removed.isEmpty()) {
+            merged.set("removed", removed);
+        }
+        String body = objectMapper.writeValueAsString(merged);
+        String headers = withContentLength(newer.substring(0, newerStart),
+                body.getBytes(StandardCharsets.UTF_8).length);
+        return new TextMessage(headers + "\n\n" + body + "\u0000");
+    }
+
+    private BinaryMessage mergeBinary(byte[] older, byte[] newer) {
+        int olderStart = bodyStart(older);
+        int newerStart = bodyStart(newer);
+        if (olderStart < 0 || newerStart < 0 || older[older.length - 1] != 0 || newer[newer.length - 1] != 0) {
+            return null;
+        }
+        PositionBatchMessage olderBatch = frameCodec.decodePositions(slice(older, olderStart, older.length - 1));
+        PositionBatchMessage newerBatch = frameCodec.decodePositions(slice(newer, newerStart, newer.length - 1));
+
+        Set<Long> newerMovers = new HashSet<>();
+        for (PositionUpdateMessage update : newerBatch.getUpdates()) {
+            newerMovers.add(update.getUserId());
+        }
+        Set<Long> newerRemoved = newerBatch.getRemoved() != null ? new HashSet<>(newerBatch.getRemoved()) : Set.of();
+        List<PositionUpdateMessage> updates = new ArrayList<>();
+        for (PositionUpdateMessage update : olderBatch.getUpdates()) {
+            if (!newerMovers.contains(update.getUserId()) && !newerRemoved.contains(update.getUserId())) {
+                updates.add(update);
+            }
+        }
+        updates.addAll(newerBatch.getUpdates());
+        List<Long> removed = new ArrayList<>();
+        if (olderBatch.getRemoved() != null) {
+            for (Long userId : olderBatch.getRemoved()) {
+                if (!newerMovers.contains(userId) && !newerRemoved.contains(userId)) {
+                    removed.add(userId);
+                }
+            }
+        }
+        removed.addAll(newerRemoved);
+        newerBatch.setUpdates(updates);
+        newerBatch.setRemoved(removed.isEmpty() ? null : removed);
+
+        byte[] body = frameCodec.encode(newerBatch);
+        byte[] headers = (withContentLength(new String(newer, 0, newerStart - 2, StandardCharsets.ISO_8859_1),
+                body.length) + "\n\n").getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer frame = ByteBuffer.allocate(headers.length + body.length + 1);
+        frame.put(headers).put(body).put((byte) 0).flip();
+        return new BinaryMessage(frame);
+    }
+
+    private static Set<Long> ids(JsonNode array, String field) {
+        Set<Long> ids = new HashSet<>();
+        if (array != null && array.isArray()) {
+            for (JsonNode node : array) {
+                ids.add(field != null ? node.path(field).asLong() : node.asLong());
+            }
+        }
+        return ids;
+    }
+
+    private static String withContentLength(String headers, int length) {
+        StringBuilder result = new StringBuilder(headers.length() + 8);
+        for (String line : headers.split("\n", -1)) {
+            if (result.length() > 0) {
+                result.append('\n');
+            }
+            result.append(line.startsWith(CONTENT_LENGTH) ? CONTENT_LENGTH + length : line);
+        }
+        return result.toString();
+    }
+
+    private static byte[] bytesOf(BinaryMessage message) {
+        ByteBuffer payload = message.getPayload().duplicate();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    // 头部之后第一个字节的下标，找不到头部结束时返回-1
+    private static int bodyStart(byte[] frame) {
+        for (int i = 0; i + 1 < frame.length; i++) {
+            if (frame[i] == '\n' && frame[i + 1] == '\n') {
+                return i + 2;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] slice(byte[] bytes, int from, int to) {
+        byte[] slice = new byte[to - from];
+        System.arraycopy(bytes, from, slice, 0, slice.length);
+        return slice;
+    }
+}
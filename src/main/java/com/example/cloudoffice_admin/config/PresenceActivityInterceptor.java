@@ -0,0 +1,51 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.service.PresenceReaper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Map;
+
+// 把入站的STOMP心跳和客户端消息交给在场回收：心跳只证明连接存活，SEND和CONNECT算作用户操作
+@Component
+public class PresenceActivityInterceptor implements ChannelInterceptor {
+
+    // 在场回收依赖会话管理器，延迟注入以避免与消息代理配置形成循环依赖
+    @Lazy
+    @Autowired
+    private PresenceReaper presenceReaper;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.HEARTBEAT) {
+            presenceReaper.recordHeartbeat(userIdOf(message));
+        } else if (type == SimpMessageType.MESSAGE || type == SimpMessageType.CONNECT) {
+            presenceReaper.recordActivity(userIdOf(message));
+        }
+        return message;
+    }
+
+    // 握手时用户ID已放入Principal和会话属性
+    static Long userIdOf(Message<?> message) {
+        Principal user = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        String userId = user != null ? user.getName() : null;
+        if (userId == null) {
+            Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(message.getHeaders());
+            Object attribute = attributes != null ? attributes.get("userId") : null;
+            userId = attribute != null ? attribute.toString() : null;
+        }
+        try {
+            return userId != null ? Long.valueOf(userId) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
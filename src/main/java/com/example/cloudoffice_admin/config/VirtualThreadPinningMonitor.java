@@ -0,0 +1,115 @@
+package com.example.cloudoffice_admin.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+// 钉住诊断：在synchronized块中阻塞的虚拟线程会占住载体线程
+// 使用虚拟线程时通过JFR事件jdk.VirtualThreadPinned记录超过阈值的钉住；
+// 在平台线程上运行时（未开启或Java 17）改为记录jdk.JavaMonitorEnter，即应用代码里等待进入synchronized超过阈值的位置，
+// 这些位置切换到虚拟线程后同样会钉住载体线程，可以提前改成ReentrantLock
+@Component
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    static final String MONITOR_ENTER_EVENT = "jdk.JavaMonitorEnter";
+
+    private static final String APPLICATION_PACKAGE = "com.example.cloudoffice_admin";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${" + VirtualThreads.ENABLED_PROPERTY + ":false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${app.realtime.virtual-threads.pinning-diagnostics:true}")
+    private boolean diagnosticsEnabled = true;
+
+    // 钉住或等待超过该时长才记录
+    @Value("${app.realtime.virtual-threads.pinned-threshold-ms:20}")
+    private long thresholdMs = 20;
+
+    private RecordingStream stream;
+
+    @PostConstruct
+    public void start() {
+        if (!diagnosticsEnabled) {
+            return;
+        }
+        String event;
+        Counter counter;
+        if (VirtualThreads.active(virtualThreadsEnabled)) {
+            event = PINNED_EVENT;
+            counter = Counter.builder("realtime.virtual-threads.pinned")
+                    .description("Virtual threads pinned to their carrier longer than the threshold")
+                    .register(meterRegistry);
+        } else {
+            event = MONITOR_ENTER_EVENT;
+            counter = Counter.builder("realtime.threads.monitor-blocked")
+                    .description("Application synchronized sections that blocked a thread longer than the threshold")
+                    .register(meterRegistry);
+        }
+        stream = new RecordingStream();
+        stream.enable(event).withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+        stream.onEvent(event, recorded -> {
+            String location = applicationFrames(recorded);
+            // 平台线程上只关心应用自己的synchronized块，框架和JDK内部的竞争不计
+            if (location.isEmpty() && MONITOR_ENTER_EVENT.equals(event)) {
+                return;
+            }
+            counter.increment();
+            logger.warn("{} for {} ms at {}", PINNED_EVENT.equals(event) ? "Virtual thread pinned" : "Thread blocked on monitor",
+                    recorded.getDuration().toMillis(), location.isEmpty() ? describeTop(recorded) : location);
+        });
+        stream.startAsync();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    // 只输出应用自己的栈帧，定位是哪个synchronized块
+    private static String applicationFrames(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return "";
+        }
+        StringBuilder location = new StringBuilder();
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (type.startsWith(APPLICATION_PACKAGE)) {
+                location.append("\n\tat ").append(type).append('.').append(frame.getMethod().getName())
+                        .append(':').append(frame.getLineNumber());
+            }
+        }
+        return location.toString();
+    }
+
+    private static String describeTop(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        List<RecordedFrame> frames = stackTrace != null ? stackTrace.getFrames() : List.of();
+        if (frames.isEmpty()) {
+            return "unknown location";
+        }
+        RecordedFrame top = frames.get(0);
+        return top.getMethod().getType().getName() + '.' + top.getMethod().getName();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.cloudoffice_admin.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 虚拟线程执行器：每个任务一个虚拟线程，阻塞的JPA调用和慢客户端写操作只挂起虚拟线程，不占用平台线程
+// 开关与Spring Boot一致，使用 spring.threads.virtual.enabled（同时作用于Tomcat请求处理和applicationTaskExecutor）
+// 运行时低于Java 21时开关自动失效：记录一次警告，调用方回退到有界的平台线程池
+public final class VirtualThreads {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    public static final String ENABLED_PROPERTY = "spring.threads.virtual.enabled";
+
+    private static final AtomicBoolean warned = new AtomicBoolean();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return Runtime.version().feature() >= 21;
+    }
+
+    // 开关打开且运行时支持时才使用虚拟线程
+    public static boolean active(boolean enabled) {
+        if (!enabled) {
+            return false;
+        }
+        if (isSupported()) {
+            return true;
+        }
+        if (warned.compareAndSet(false, true)) {
+            logger.warn("{}=true is ignored: virtual threads need Java 21, running on Java {}; "
+                    + "using bounded platform thread pools", ENABLED_PROPERTY, Runtime.version().feature());
+        }
+        return false;
+    }
+
+    public static SimpleAsyncTaskExecutor executor(String threadNamePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads need Java 21, running on Java " + Runtime.version().feature());
+        }
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+}
@@ -1,14 +1,19 @@
 package com.example.cloudoffice_admin.config;
 
+import com.example.cloudoffice_admin.security.UserIdHandshakeHandler;
 import com.example.cloudoffice_admin.security.WebSocketAuthenticationInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
-import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -17,16 +22,61 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Autowired
     private ApplicationContext applicationContext;
 
+    // STOMP心跳间隔（毫秒），在场回收依赖客户端心跳判断连接是否存活
+    @Value("${app.realtime.heartbeat-ms:10000}")
+    private long heartbeatMillis = 10000;
+
+    // 开启且运行在Java 21上时clientInboundChannel和clientOutboundChannel使用虚拟线程，@MessageMapping中的阻塞JPA调用不再占满有界线程池
+    @Value("${" + VirtualThreads.ENABLED_PROPERTY + ":false}")
+    private boolean virtualThreads;
+
+    // 不使用虚拟线程时入站通道的平台线程数；@MessageMapping会阻塞在数据库调用上，按数据库延迟而不是CPU数确定，0表示Spring默认（CPU数*2）
+    @Value("${app.realtime.inbound.threads:0}")
+    private int inboundThreads;
+
+    // 代理自带的调度器，延迟注入以避免循环依赖
+    @Lazy
+    @Autowired
+    private TaskScheduler messageBrokerTaskScheduler;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         // 启用简单的消息代理，用于将消息广播到客户端
-        registry.enableSimpleBroker("/topic", "/queue");
+        registry.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{heartbeatMillis, heartbeatMillis})
+                .setTaskScheduler(messageBrokerTaskScheduler);
         // 设置应用程序目的地前缀
         registry.setApplicationDestinationPrefixes("/app");
         // 设置用户目的地前缀，用于发送消息到特定用户
         registry.setUserDestinationPrefix("/user");
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // 在CONNECT时协商实时帧编码（JSON或binary-v3），订阅聊天频道主题时检查成员身份
+        registration.interceptors(applicationContext.getBean(FrameCodecNegotiationInterceptor.class),
+                applicationContext.getBean(PresenceActivityInterceptor.class),
+                applicationContext.getBean(ChatChannelSubscriptionInterceptor.class));
+        if (VirtualThreads.active(virtualThreads)) {
+            registration.executor(VirtualThreads.executor("ws-inbound-"));
+        } else if (inboundThreads > 0) {
+            registration.taskExecutor().corePoolSize(inboundThreads).maxPoolSize(inboundThreads);
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (VirtualThreads.active(virtualThreads)) {
+            registration.executor(VirtualThreads.executor("ws-outbound-channel-"));
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // 每个会话使用有界出站队列，慢客户端不会拖慢同一空间的其他用户
+        registration.addDecoratorFactory(applicationContext.getBean(OutboundBackpressureDecoratorFactory.class));
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // 注册WebSocket端点，客户端将使用此端点连接到服务器
@@ -37,7 +87,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .addInterceptors(webSocketAuthenticationInterceptor)
                 .setAllowedOrigins("*")
-                .setHandshakeHandler(new DefaultHandshakeHandler())
+                .setHandshakeHandler(new UserIdHandshakeHandler())
                 .withSockJS(); // 启用SockJS协议，提供备选传输方式
     }
 }
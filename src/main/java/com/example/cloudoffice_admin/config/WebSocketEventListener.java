@@ -0,0 +1,32 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.service.PresenceReaper;
+import com.example.cloudoffice_admin.service.WebSocketSessionManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.List;
+
+// WebSocket断开时清理会话；用户的最后一个会话断开时通知其所在空间的其他用户
+@Component
+public class WebSocketEventListener {
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Autowired
+    private PresenceReaper presenceReaper;
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        String sessionId = event.getSessionId();
+        Long userId = sessionManager.getUserIdForSession(sessionId);
+        List<Long> leftSpaces = sessionManager.removeSession(sessionId);
+        if (userId == null || sessionManager.hasLocalSession(userId)) {
+            return;
+        }
+        presenceReaper.disconnected(userId, leftSpaces);
+    }
+}
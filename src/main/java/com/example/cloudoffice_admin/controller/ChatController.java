@@ -2,14 +2,16 @@ package com.example.cloudoffice_admin.controller;
 
 import com.example.cloudoffice_admin.dto.ChatChannelRequest;
 import com.example.cloudoffice_admin.dto.MessageRequest;
+import com.example.cloudoffice_admin.dto.MessageView;
 import com.example.cloudoffice_admin.dto.TranslationRequest;
+import com.example.cloudoffice_admin.model.ChannelMembership;
 import com.example.cloudoffice_admin.model.ChatChannel;
 import com.example.cloudoffice_admin.model.Message;
 import com.example.cloudoffice_admin.service.ChatService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -87,6 +89,29 @@ public class ChatController {
         return ResponseEntity.noContent().build();
     }
 
+    // 批量添加成员，返回新加入的人数
+    @PostMapping("/channels/{channelId}/members/batch")
+    public ResponseEntity<Integer> addMembersToChannel(@PathVariable Long channelId,
+                                                       @RequestBody List<Long> userIds) {
+        return ResponseEntity.ok(chatService.addMembersToChannel(channelId, userIds));
+    }
+
+    // 批量移除成员，返回移除的人数
+    @DeleteMapping("/channels/{channelId}/members")
+    public ResponseEntity<Integer> removeMembersFromChannel(@PathVariable Long channelId,
+                                                            @RequestParam List<Long> userIds) {
+        return ResponseEntity.ok(chatService.removeMembersFromChannel(channelId, userIds));
+    }
+
+    @GetMapping("/channels/{channelId}/members")
+    public ResponseEntity<Page<ChannelMembership>> getChannelMembers(
+            @PathVariable Long channelId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "100") int size) {
+        Page<ChannelMembership> members = chatService.getChannelMembers(channelId, PageRequest.of(page, size));
+        return ResponseEntity.ok(members);
+    }
+
     @GetMapping("/channels/{channelId}/members/{userId}")
     public ResponseEntity<Boolean> isMemberInChannel(@PathVariable Long channelId,
                                                   @PathVariable Long userId) {
@@ -112,13 +137,14 @@ public class ChatController {
         return new ResponseEntity<>(message, HttpStatus.CREATED);
     }
 
+    // 游标分页：before=<messageId>向前翻更早的消息，after=<messageId>取更新的消息，都不传时为最新一页
     @GetMapping("/channels/{channelId}/messages")
-    public ResponseEntity<Page<Message>> getChannelMessages(
+    public ResponseEntity<Slice<MessageView>> getChannelMessages(
             @PathVariable Long channelId,
-            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
             @RequestParam(defaultValue = "20") int size) {
-        Pageable pageable = PageRequest.of(page, size);
-        Page<Message> messages = chatService.getChannelMessages(channelId, pageable);
+        Slice<MessageView> messages = chatService.getChannelMessages(channelId, before, after, size);
         return ResponseEntity.ok(messages);
     }
 
@@ -144,9 +170,10 @@ public class ChatController {
     @PostMapping("/channels/{channelId}/read")
     public ResponseEntity<Void> markMessagesAsRead(
             @PathVariable Long channelId,
+            @RequestParam(required = false) Long seq,
             @CurrentSecurityContext(expression = "authentication") Authentication authentication) {
         Long userId = getCurrentUserId(authentication);
-        chatService.markMessagesAsRead(channelId, userId);
+        chatService.markMessagesAsRead(channelId, userId, seq);
         return ResponseEntity.noContent().build();
     }
 
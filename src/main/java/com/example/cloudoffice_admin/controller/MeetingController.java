@@ -18,6 +18,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/meetings")
@@ -91,19 +92,19 @@ public class MeetingController {
     }
 
     @PostMapping("/sessions/{sessionId}/start")
-    public ResponseEntity<MeetingSession> startMeetingSession(@PathVariable Long sessionId) {
+    public ResponseEntity<MeetingSession> startMeetingSession(@PathVariable UUID sessionId) {
         MeetingSession session = meetingService.startMeetingSession(sessionId);
         return ResponseEntity.ok(session);
     }
 
     @PostMapping("/sessions/{sessionId}/end")
-    public ResponseEntity<MeetingSession> endMeetingSession(@PathVariable Long sessionId) {
+    public ResponseEntity<MeetingSession> endMeetingSession(@PathVariable UUID sessionId) {
         MeetingSession session = meetingService.endMeetingSession(sessionId);
         return ResponseEntity.ok(session);
     }
 
     @GetMapping("/sessions/{sessionId}")
-    public ResponseEntity<MeetingSession> getMeetingSession(@PathVariable Long sessionId) {
+    public ResponseEntity<MeetingSession> getMeetingSession(@PathVariable UUID sessionId) {
         Optional<MeetingSession> session = meetingService.getMeetingSessionById(sessionId);
         return session.map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
@@ -124,7 +125,7 @@ public class MeetingController {
     // 参与者管理接口
     @PostMapping("/sessions/{sessionId}/participants")
     public ResponseEntity<MeetingParticipant> joinMeetingSession(
-            @PathVariable Long sessionId, 
+            @PathVariable UUID sessionId, 
             @RequestBody ParticipantRequest request) {
         MeetingParticipant participant = meetingService.joinMeetingSession(sessionId, request);
         return new ResponseEntity<>(participant, HttpStatus.CREATED);
@@ -146,14 +147,14 @@ public class MeetingController {
     }
 
     @GetMapping("/sessions/{sessionId}/participants")
-    public ResponseEntity<List<MeetingParticipant>> getSessionParticipants(@PathVariable Long sessionId) {
+    public ResponseEntity<List<MeetingParticipant>> getSessionParticipants(@PathVariable UUID sessionId) {
         List<MeetingParticipant> participants = meetingService.getSessionParticipants(sessionId);
         return ResponseEntity.ok(participants);
     }
 
     @GetMapping("/sessions/{sessionId}/participants/check")
     public ResponseEntity<Map<String, Boolean>> checkUserInSession(
-            @PathVariable Long sessionId, 
+            @PathVariable UUID sessionId, 
             @RequestParam Long userId) {
         boolean inSession = meetingService.isUserInSession(sessionId, userId);
         return ResponseEntity.ok(Map.of("inSession", inSession));
@@ -167,7 +168,7 @@ public class MeetingController {
 
     @DeleteMapping("/sessions/{sessionId}/participants/{userId}")
     public ResponseEntity<Void> removeParticipant(
-            @PathVariable Long sessionId, 
+            @PathVariable UUID sessionId, 
             @PathVariable Long userId) {
         meetingService.removeParticipant(sessionId, userId);
         return ResponseEntity.noContent().build();
@@ -175,7 +176,7 @@ public class MeetingController {
 
     // 录制管理接口
     @PostMapping("/sessions/{sessionId}/recordings/start")
-    public ResponseEntity<Recording> startRecording(@PathVariable Long sessionId) {
+    public ResponseEntity<Recording> startRecording(@PathVariable UUID sessionId) {
         Recording recording = meetingService.startRecording(sessionId, getCurrentUserId());
         return new ResponseEntity<>(recording, HttpStatus.CREATED);
     }
@@ -194,7 +195,7 @@ public class MeetingController {
     }
 
     @GetMapping("/sessions/{sessionId}/recordings")
-    public ResponseEntity<List<Recording>> getRecordingsBySession(@PathVariable Long sessionId) {
+    public ResponseEntity<List<Recording>> getRecordingsBySession(@PathVariable UUID sessionId) {
         List<Recording> recordings = meetingService.getRecordingsBySession(sessionId);
         return ResponseEntity.ok(recordings);
     }
@@ -10,6 +10,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 
 import java.util.Map;
+import java.util.UUID;
 
 @Controller
 public class MeetingWebSocketHandler {
@@ -23,7 +24,7 @@ public class MeetingWebSocketHandler {
     // 处理用户连接到会议
     @MessageMapping("/meetings/{sessionId}/connect")
     @SendTo("/topic/meetings/{sessionId}")
-    public Map<String, Object> handleConnect(@DestinationVariable Long sessionId, 
+    public Map<String, Object> handleConnect(@DestinationVariable UUID sessionId, 
                                            @Headers Map<String, Object> headers,
                                            Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
@@ -44,7 +45,7 @@ public class MeetingWebSocketHandler {
     // 处理用户加入会议
     @MessageMapping("/meetings/{sessionId}/join")
     @SendTo("/topic/meetings/{sessionId}")
-    public MeetingParticipant handleJoin(@DestinationVariable Long sessionId, 
+    public MeetingParticipant handleJoin(@DestinationVariable UUID sessionId, 
                                         @Payload Map<String, Object> payload,
                                         Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
@@ -64,7 +65,7 @@ public class MeetingWebSocketHandler {
     // 处理用户离开会议
     @MessageMapping("/meetings/{sessionId}/leave")
     @SendTo("/topic/meetings/{sessionId}")
-    public Map<String, Object> handleLeave(@DestinationVariable Long sessionId,
+    public Map<String, Object> handleLeave(@DestinationVariable UUID sessionId,
                                           Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
         
@@ -88,7 +89,7 @@ public class MeetingWebSocketHandler {
     // 处理参与者状态更新（麦克风/摄像头）
     @MessageMapping("/meetings/{sessionId}/participant/status")
     @SendTo("/topic/meetings/{sessionId}")
-    public MeetingParticipant handleParticipantStatus(@DestinationVariable Long sessionId,
+    public MeetingParticipant handleParticipantStatus(@DestinationVariable UUID sessionId,
                                                     @Payload Map<String, Object> payload,
                                                     Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
@@ -109,7 +110,7 @@ public class MeetingWebSocketHandler {
     // 处理屏幕共享状态更新
     @MessageMapping("/meetings/{sessionId}/screen-sharing")
     @SendTo("/topic/meetings/{sessionId}")
-    public Map<String, Object> handleScreenSharing(@DestinationVariable Long sessionId,
+    public Map<String, Object> handleScreenSharing(@DestinationVariable UUID sessionId,
                                                  @Payload Map<String, Object> payload,
                                                  Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
@@ -127,7 +128,7 @@ public class MeetingWebSocketHandler {
     // 处理聊天消息
     @MessageMapping("/meetings/{sessionId}/chat")
     @SendTo("/topic/meetings/{sessionId}/chat")
-    public Map<String, Object> handleChat(@DestinationVariable Long sessionId,
+    public Map<String, Object> handleChat(@DestinationVariable UUID sessionId,
                                         @Payload Map<String, Object> payload,
                                         Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
@@ -146,7 +147,7 @@ public class MeetingWebSocketHandler {
     // 处理举手/放下手
     @MessageMapping("/meetings/{sessionId}/hand-raise")
     @SendTo("/topic/meetings/{sessionId}")
-    public Map<String, Object> handleHandRaise(@DestinationVariable Long sessionId,
+    public Map<String, Object> handleHandRaise(@DestinationVariable UUID sessionId,
                                              @Payload Map<String, Object> payload,
                                              Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
@@ -163,7 +164,7 @@ public class MeetingWebSocketHandler {
     // 处理主持人操作
     @MessageMapping("/meetings/{sessionId}/host-action")
     @SendTo("/topic/meetings/{sessionId}")
-    public Map<String, Object> handleHostAction(@DestinationVariable Long sessionId,
+    public Map<String, Object> handleHostAction(@DestinationVariable UUID sessionId,
                                               @Payload Map<String, Object> payload,
                                               Authentication authentication) {
         Long userId = getUserIdFromAuthentication(authentication);
@@ -1,20 +1,32 @@
 package com.example.cloudoffice_admin.controller;
 
+import com.example.cloudoffice_admin.dto.OccupantView;
+import com.example.cloudoffice_admin.dto.SpaceOccupancy;
+import com.example.cloudoffice_admin.dto.SpaceView;
 import com.example.cloudoffice_admin.dto.UserPositionRequest;
 import com.example.cloudoffice_admin.dto.VirtualSpaceRequest;
+import com.example.cloudoffice_admin.dto.ZoneOccupancyBucket;
 import com.example.cloudoffice_admin.dto.ZoneRequest;
+import com.example.cloudoffice_admin.dto.ZoneView;
 import com.example.cloudoffice_admin.model.UserPresence;
 import com.example.cloudoffice_admin.model.VirtualSpace;
 import com.example.cloudoffice_admin.model.Zone;
 import com.example.cloudoffice_admin.security.CustomUserDetails;
+import com.example.cloudoffice_admin.service.OccupancyService;
+import com.example.cloudoffice_admin.service.PresenceTimeSeries;
+import com.example.cloudoffice_admin.service.SpaceLayoutCache.SpaceLayout;
 import com.example.cloudoffice_admin.service.VirtualSpaceService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 // import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -24,6 +36,12 @@ public class VirtualSpaceController {
     @Autowired
     private VirtualSpaceService virtualSpaceService;
 
+    @Autowired
+    private OccupancyService occupancyService;
+
+    @Autowired
+    private PresenceTimeSeries presenceTimeSeries;
+
     // 创建虚拟空间
     @PostMapping
     public ResponseEntity<VirtualSpace> createSpace(@RequestBody VirtualSpaceRequest request) {
@@ -39,6 +57,12 @@ public class VirtualSpaceController {
         return ResponseEntity.ok(spaces);
     }
 
+    // 大厅：人数最多的公开空间
+    @GetMapping("/busiest")
+    public ResponseEntity<List<SpaceOccupancy>> getBusiestSpaces(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(occupancyService.getBusiestSpaces(limit));
+    }
+
     // 获取用户创建的空间
     @GetMapping("/my")
     public ResponseEntity<List<VirtualSpace>> getUserSpaces() {
@@ -47,11 +71,17 @@ public class VirtualSpaceController {
         return ResponseEntity.ok(spaces);
     }
 
-    // 获取空间详情
+    // 获取空间详情，带布局版本ETag，未变化时返回304
     @GetMapping("/{spaceId}")
-    public ResponseEntity<VirtualSpace> getSpace(@PathVariable Long spaceId) {
-        VirtualSpace space = virtualSpaceService.getSpaceById(spaceId);
-        return ResponseEntity.ok(space);
+    public ResponseEntity<SpaceView> getSpace(@PathVariable Long spaceId, WebRequest webRequest) {
+        SpaceLayout layout = virtualSpaceService.getSpaceLayout(spaceId);
+        if (webRequest.checkNotModified(layout.getETag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(layout.getETag())
+                .cacheControl(CacheControl.noCache())
+                .body(layout.getSpace());
     }
 
     // 更新空间信息
@@ -80,11 +110,17 @@ public class VirtualSpaceController {
         return new ResponseEntity<>(zone, HttpStatus.CREATED);
     }
 
-    // 获取空间中的所有区域
+    // 获取空间中的所有区域，与空间详情共用布局版本ETag
     @GetMapping("/{spaceId}/zones")
-    public ResponseEntity<List<Zone>> getZonesBySpaceId(@PathVariable Long spaceId) {
-        List<Zone> zones = virtualSpaceService.getZonesBySpaceId(spaceId);
-        return ResponseEntity.ok(zones);
+    public ResponseEntity<List<ZoneView>> getZonesBySpaceId(@PathVariable Long spaceId, WebRequest webRequest) {
+        SpaceLayout layout = virtualSpaceService.getSpaceLayout(spaceId);
+        if (webRequest.checkNotModified(layout.getETag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(layout.getETag())
+                .cacheControl(CacheControl.noCache())
+                .body(layout.getZones());
     }
 
     // 更新用户位置
@@ -97,15 +133,33 @@ public class VirtualSpaceController {
 
     // 获取空间中的所有在线用户
     @GetMapping("/{spaceId}/users")
-    public ResponseEntity<List<UserPresence>> getUsersInSpace(@PathVariable Long spaceId) {
-        List<UserPresence> users = virtualSpaceService.getUsersInSpace(spaceId);
+    public ResponseEntity<List<OccupantView>> getUsersInSpace(@PathVariable Long spaceId) {
+        List<OccupantView> users = occupancyService.getOccupantsInSpace(spaceId);
         return ResponseEntity.ok(users);
     }
 
+    // 获取空间总人数和各区域人数
+    @GetMapping("/{spaceId}/occupancy")
+    public ResponseEntity<SpaceOccupancy> getOccupancy(@PathVariable Long spaceId) {
+        return ResponseEntity.ok(occupancyService.getOccupancy(spaceId));
+    }
+
+    // 区域热力图：各区域在每个时间区间内的平均/峰值人数，默认最近24小时、每15分钟一格
+    @GetMapping("/{spaceId}/heatmap")
+    public ResponseEntity<List<ZoneOccupancyBucket>> getZoneHeatmap(
+            @PathVariable Long spaceId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "15") int intervalMinutes) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minusHours(24);
+        return ResponseEntity.ok(presenceTimeSeries.getZoneHeatmap(spaceId, start, end, intervalMinutes));
+    }
+
     // 获取区域中的所有在线用户
     @GetMapping("/zones/{zoneId}/users")
-    public ResponseEntity<List<UserPresence>> getUsersInZone(@PathVariable Long zoneId) {
-        List<UserPresence> users = virtualSpaceService.getUsersInZone(zoneId);
+    public ResponseEntity<List<OccupantView>> getUsersInZone(@PathVariable Long zoneId) {
+        List<OccupantView> users = occupancyService.getOccupantsInZone(zoneId);
         return ResponseEntity.ok(users);
     }
 
@@ -1,5 +1,7 @@
 package com.example.cloudoffice_admin.controller;
 
+import com.example.cloudoffice_admin.service.SpaceLayoutCache;
+import com.example.cloudoffice_admin.service.SpaceTickEngine;
 import com.example.cloudoffice_admin.service.WebSocketSessionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -9,7 +11,11 @@ import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import jakarta.persistence.EntityNotFoundException;
+import java.security.Principal;
 import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
 
 @Controller
 public class WebSocketController {
@@ -20,11 +26,17 @@ public class WebSocketController {
     @Autowired
     private WebSocketSessionManager sessionManager;
 
-    // 用户连接时注册会话
+    @Autowired
+    private SpaceTickEngine tickEngine;
+
+    @Autowired
+    private SpaceLayoutCache layoutCache;
+
+    // 用户连接时注册会话；用户ID以握手时认证的Principal为准，消息体中的userId只作兼容
     @MessageMapping("/connect")
-    public void handleConnect(@Payload ConnectMessage message, SimpMessageHeaderAccessor headerAccessor) {
+    public void handleConnect(@Payload ConnectMessage message, SimpMessageHeaderAccessor headerAccessor, Principal principal) {
         String sessionId = headerAccessor.getSessionId();
-        Long userId = message.getUserId();
+        Long userId = userIdOf(principal);
         if (userId != null && sessionId != null) {
             sessionManager.registerSession(userId, sessionId);
             // 存储用户ID在会话属性中，便于后续使用
@@ -34,28 +46,76 @@ public class WebSocketController {
 
     // 更新用户位置信息
     @MessageMapping("/position/update")
-    public void updateUserPosition(@Payload PositionUpdateMessage message) {
+    public void updateUserPosition(@Payload PositionUpdateMessage message, Principal principal) {
+        if (!authorize(principal, message.getSpaceId(), message::setUserId)) {
+            return;
+        }
         message.setTimestamp(new Date());
-        // 向特定空间广播位置更新
-        sessionManager.broadcastToSpace(message.getSpaceId(), "/queue/positions", message);
+        // 区域由服务端按坐标判定，最新位置写入在场存储，由后台线程批量持久化；
+        // 再交给空间节拍合并，下一个节拍统一发送批量增量。空间归属模式下由归属节点处理
+        tickEngine.accept(message);
     }
 
     // 用户加入虚拟空间
     @MessageMapping("/space/join")
-    public void joinSpace(@Payload SpaceJoinMessage message) {
+    public void joinSpace(@Payload SpaceJoinMessage message, Principal principal) {
+        if (!authorize(principal, message.getSpaceId(), message::setUserId)) {
+            return;
+        }
         message.setTimestamp(new Date());
         sessionManager.joinSpace(message.getUserId(), message.getSpaceId());
         // 通知空间内其他用户
-        sessionManager.broadcastToSpace(message.getSpaceId(), "/queue/space/joins", message);
+        sessionManager.publishToSpace(message.getSpaceId(), WebSocketSessionManager.SPACE_JOINS, message);
+        // 新加入的用户收到一帧带序号的完整快照，之后按序号应用增量，不再通过REST加载
+        tickEngine.requestSnapshot(message.getSpaceId(), message.getUserId());
+    }
+
+    // 客户端发现位置增量跳号：近期增量还在历史中时发送合并增量，否则发送完整快照
+    @MessageMapping("/space/resync")
+    public void resyncSpace(@Payload SpaceResyncRequest request, Principal principal) {
+        if (!authorize(principal, request.getSpaceId(), request::setUserId)) {
+            return;
+        }
+        tickEngine.requestResync(request.getSpaceId(), request.getUserId(), request.getLastTick());
     }
 
     // 用户离开虚拟空间
     @MessageMapping("/space/leave")
-    public void leaveSpace(@Payload SpaceLeaveMessage message) {
+    public void leaveSpace(@Payload SpaceLeaveMessage message, Principal principal) {
+        if (!authorize(principal, message.getSpaceId(), message::setUserId)) {
+            return;
+        }
         message.setTimestamp(new Date());
         sessionManager.leaveSpace(message.getUserId(), message.getSpaceId());
+        tickEngine.discard(message.getSpaceId(), message.getUserId());
         // 通知空间内其他用户
-        sessionManager.broadcastToSpace(message.getSpaceId(), "/queue/space/leaves", message);
+        sessionManager.publishToSpace(message.getSpaceId(), WebSocketSessionManager.SPACE_LEAVES, message);
+    }
+
+    // 空间消息的用户ID取自握手时认证的Principal，覆盖消息体中的值；未认证或空间不存在时忽略该消息
+    private boolean authorize(Principal principal, Long spaceId, Consumer<Long> setUserId) {
+        Long userId = userIdOf(principal);
+        if (userId == null || spaceId == null) {
+            return false;
+        }
+        try {
+            layoutCache.get(spaceId);
+        } catch (EntityNotFoundException e) {
+            return false;
+        }
+        setUserId.accept(userId);
+        return true;
+    }
+
+    private static Long userIdOf(Principal principal) {
+        if (principal == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(principal.getName());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     // 发送私聊消息
@@ -72,7 +132,7 @@ public class WebSocketController {
     @MessageMapping("/chat/announcement")
     public void sendAnnouncement(@Payload AnnouncementMessage message) {
         message.setTimestamp(new Date());
-        sessionManager.broadcastToSpace(message.getSpaceId(), "/queue/chat/announcements", message);
+        sessionManager.publishToSpace(message.getSpaceId(), WebSocketSessionManager.SPACE_ANNOUNCEMENTS, message);
     }
 
     // 连接消息模型
@@ -91,6 +151,9 @@ public class WebSocketController {
         private Long zoneId;
         private int x;
         private int y;
+        // 速度（像素/秒），接收方据此在两次更新之间外推位置；客户端不上报时由服务端估算
+        private Integer vx;
+        private Integer vy;
         private Date timestamp;
 
         // Getters and Setters
@@ -104,10 +167,132 @@ public class WebSocketController {
         public void setX(int x) { this.x = x; }
         public int getY() { return y; }
         public void setY(int y) { this.y = y; }
+        public Integer getVx() { return vx; }
+        public void setVx(Integer vx) { this.vx = vx; }
+        public Integer getVy() { return vy; }
+        public void setVy(Integer vy) { this.vy = vy; }
+        public Date getTimestamp() { return timestamp; }
+        public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
+    }
+
+    // 批量位置增量消息模型：一个节拍内所有移动过的用户和离开的用户
+    // tick是空间内连续递增的序号，客户端发现跳号时通过 /app/space/resync 补齐
+    public static class PositionBatchMessage {
+        private Long spaceId;
+        private long tick;
+        private Date timestamp;
+        private List<PositionUpdateMessage> updates;
+        private List<Long> removed;
+
+        // Getters and Setters
+        public Long getSpaceId() { return spaceId; }
+        public void setSpaceId(Long spaceId) { this.spaceId = spaceId; }
+        public long getTick() { return tick; }
+        public void setTick(long tick) { this.tick = tick; }
+        public Date getTimestamp() { return timestamp; }
+        public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
+        public List<PositionUpdateMessage> getUpdates() { return updates; }
+        public void setUpdates(List<PositionUpdateMessage> updates) { this.updates = updates; }
+        public List<Long> getRemoved() { return removed; }
+        public void setRemoved(List<Long> removed) { this.removed = removed; }
+    }
+
+    // 空间同步消息模型：full为true时是序号tick时刻的完整快照，客户端替换本地状态；
+    // 否则是从sinceTick到tick的合并增量。客户端丢弃序号不大于tick的批量增量，缓存更大的序号直到同步到达
+    public static class SpaceSyncMessage {
+        private Long spaceId;
+        private long tick;
+        private long sinceTick;
+        private boolean full;
+        private Date timestamp;
+        private List<PositionUpdateMessage> occupants;
+        private List<Long> removed;
+
+        // Getters and Setters
+        public Long getSpaceId() { return spaceId; }
+        public void setSpaceId(Long spaceId) { this.spaceId = spaceId; }
+        public long getTick() { return tick; }
+        public void setTick(long tick) { this.tick = tick; }
+        public long getSinceTick() { return sinceTick; }
+        public void setSinceTick(long sinceTick) { this.sinceTick = sinceTick; }
+        public boolean isFull() { return full; }
+        public void setFull(boolean full) { this.full = full; }
+        public Date getTimestamp() { return timestamp; }
+        public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
+        public List<PositionUpdateMessage> getOccupants() { return occupants; }
+        public void setOccupants(List<PositionUpdateMessage> occupants) { this.occupants = occupants; }
+        public List<Long> getRemoved() { return removed; }
+        public void setRemoved(List<Long> removed) { this.removed = removed; }
+    }
+
+    // 区域进入/离开消息模型：event为enter或leave，由服务端按坐标判定
+    public static class ZoneEventMessage {
+        private Long userId;
+        private Long spaceId;
+        private Long zoneId;
+        private String event;
+        private Date timestamp;
+
+        // Getters and Setters
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+        public Long getSpaceId() { return spaceId; }
+        public void setSpaceId(Long spaceId) { this.spaceId = spaceId; }
+        public Long getZoneId() { return zoneId; }
+        public void setZoneId(Long zoneId) { this.zoneId = zoneId; }
+        public String getEvent() { return event; }
+        public void setEvent(String event) { this.event = event; }
         public Date getTimestamp() { return timestamp; }
         public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
     }
 
+    // 自动对话组变化消息模型：groups为新建或成员变化的组（完整成员列表），dissolved为解散的组ID
+    public static class ProximityGroupMessage {
+        private Long spaceId;
+        private long tick;
+        private Date timestamp;
+        private List<Group> groups;
+        private List<Long> dissolved;
+
+        // Getters and Setters
+        public Long getSpaceId() { return spaceId; }
+        public void setSpaceId(Long spaceId) { this.spaceId = spaceId; }
+        public long getTick() { return tick; }
+        public void setTick(long tick) { this.tick = tick; }
+        public Date getTimestamp() { return timestamp; }
+        public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
+        public List<Group> getGroups() { return groups; }
+        public void setGroups(List<Group> groups) { this.groups = groups; }
+        public List<Long> getDissolved() { return dissolved; }
+        public void setDissolved(List<Long> dissolved) { this.dissolved = dissolved; }
+
+        public static class Group {
+            private long groupId;
+            private List<Long> members;
+
+            // Getters and Setters
+            public long getGroupId() { return groupId; }
+            public void setGroupId(long groupId) { this.groupId = groupId; }
+            public List<Long> getMembers() { return members; }
+            public void setMembers(List<Long> members) { this.members = members; }
+        }
+    }
+
+    // 重新同步请求模型：lastTick为客户端最后应用的连续序号
+    public static class SpaceResyncRequest {
+        private Long userId;
+        private Long spaceId;
+        private long lastTick;
+
+        // Getters and Setters
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+        public Long getSpaceId() { return spaceId; }
+        public void setSpaceId(Long spaceId) { this.spaceId = spaceId; }
+        public long getLastTick() { return lastTick; }
+        public void setLastTick(long lastTick) { this.lastTick = lastTick; }
+    }
+
     // 空间加入消息模型
     public static class SpaceJoinMessage {
         private Long userId;
@@ -188,4 +373,22 @@ public class WebSocketController {
         public Date getTimestamp() { return timestamp; }
         public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
     }
+
+    // 在场状态变化消息模型（online/away），发布到 /topic/spaces/{spaceId}/presence
+    public static class PresenceStatusMessage {
+        private Long userId;
+        private Long spaceId;
+        private String status;
+        private Date timestamp;
+
+        // Getters and Setters
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+        public Long getSpaceId() { return spaceId; }
+        public void setSpaceId(Long spaceId) { this.spaceId = spaceId; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public Date getTimestamp() { return timestamp; }
+        public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
+    }
 }
@@ -0,0 +1,23 @@
+package com.example.cloudoffice_admin.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// 频道消息的精简视图，发布到 /topic/channels/{channelId}，不包含频道和成员实体图
+@Data
+public class ChannelMessageView {
+    private String event; // NEW_MESSAGE
+    private Long id;
+    private String messageId;
+    private Long channelId;
+    private Long seq; // 频道内的消息序号，客户端用它标记已读
+    private Long senderId;
+    private String senderName;
+    private String senderAvatar;
+    private String type;
+    private String content;
+    private Long replyToId;
+    private String attachments;
+    private LocalDateTime createdAt;
+}
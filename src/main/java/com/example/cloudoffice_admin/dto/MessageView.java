@@ -0,0 +1,51 @@
+package com.example.cloudoffice_admin.dto;
+
+import com.example.cloudoffice_admin.model.Message;
+import com.example.cloudoffice_admin.model.User;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+// 频道历史中一条消息的不可变视图：创建时从实体复制需要的字段，之后可以在线程之间共享、直接序列化，
+// 最近消息缓存保存的就是这个视图，不持有脱离会话的实体图
+@Value
+public class MessageView {
+    Long id;
+    String messageId;
+    Long channelId;
+    Long seq;
+    Long senderId;
+    String senderName;
+    String senderAvatar;
+    String type;
+    String content;
+    String translatedContent;
+    String sourceLanguage;
+    String targetLanguage;
+    Long replyToId;
+    String attachments;
+    boolean deleted;
+    LocalDateTime createdAt;
+    LocalDateTime updatedAt;
+
+    public MessageView(Message message) {
+        this.id = message.getId();
+        this.messageId = message.getMessageId();
+        this.channelId = message.getChannel().getId();
+        this.seq = message.getSeq();
+        User sender = message.getSender();
+        this.senderId = sender.getId();
+        this.senderName = sender.getFullName() != null ? sender.getFullName() : sender.getUsername();
+        this.senderAvatar = sender.getAvatar();
+        this.type = message.getType().name();
+        this.content = message.getContent();
+        this.translatedContent = message.getTranslatedContent();
+        this.sourceLanguage = message.getSourceLanguage();
+        this.targetLanguage = message.getTargetLanguage();
+        this.replyToId = message.getReplyTo() != null ? message.getReplyTo().getId() : null;
+        this.attachments = message.getAttachments();
+        this.deleted = message.isDeleted();
+        this.createdAt = message.getCreatedAt();
+        this.updatedAt = message.getUpdatedAt();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.cloudoffice_admin.dto;
+
+import lombok.Data;
+
+// 空间在场用户的精简视图，替代完整的UserPresence实体图
+@Data
+public class OccupantView {
+    private Long userId;
+    private String displayName;
+    private String avatar;
+    private int x;
+    private int y;
+    private Long zoneId;
+    private String status;
+}
@@ -0,0 +1,14 @@
+package com.example.cloudoffice_admin.dto;
+
+import lombok.Data;
+
+import java.util.Map;
+
+// 空间人数统计：总人数和各区域人数（区域ID -> 人数）
+@Data
+public class SpaceOccupancy {
+    private Long spaceId;
+    private String name;
+    private int occupants;
+    private Map<Long, Integer> zones;
+}
@@ -0,0 +1,35 @@
+package com.example.cloudoffice_admin.dto;
+
+import com.example.cloudoffice_admin.model.VirtualSpace;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+// 空间详情的不可变视图：创建时从实体复制字段，布局缓存保存的是这个视图，可以在线程之间共享、直接序列化，
+// 序列化结果与实体相同（关联关系本来就不参与序列化）
+@Value
+public class SpaceView {
+    Long id;
+    String name;
+    String description;
+    boolean isPublic;
+    Long creatorId;
+    String spaceId;
+    int width;
+    int height;
+    String theme;
+    LocalDateTime createdAt;
+
+    public SpaceView(VirtualSpace space) {
+        this.id = space.getId();
+        this.name = space.getName();
+        this.description = space.getDescription();
+        this.isPublic = space.isPublic();
+        this.creatorId = space.getCreatorId();
+        this.spaceId = space.getSpaceId();
+        this.width = space.getWidth();
+        this.height = space.getHeight();
+        this.theme = space.getTheme();
+        this.createdAt = space.getCreatedAt();
+    }
+}
@@ -5,6 +5,7 @@ import lombok.Data;
 @Data
 public class UserPositionRequest {
     private Long spaceId;
+    // 已不再使用：所在区域由服务端按坐标判定，保留字段以兼容旧客户端
     private Long zoneId;
     private int x;
     private int y;
@@ -0,0 +1,17 @@
+package com.example.cloudoffice_admin.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// 区域热力图中的一格：某个区域在一个时间区间内的人数
+// averageOccupants为区间内各次采样人数的平均值，visitors为区间内出现过的不同用户数
+@Data
+public class ZoneOccupancyBucket {
+    private Long zoneId;
+    private LocalDateTime start;
+    private double averageOccupants;
+    private int peakOccupants;
+    private int visitors;
+    private int entries;
+}
@@ -0,0 +1,36 @@
+package com.example.cloudoffice_admin.dto;
+
+import com.example.cloudoffice_admin.model.Zone;
+import lombok.Value;
+
+// 区域的不可变视图，与SpaceView一起保存在布局缓存中；序列化结果与实体相同
+@Value
+public class ZoneView {
+    Long id;
+    String zoneId;
+    Long spaceId;
+    String name;
+    String description;
+    String color;
+    boolean isPrivate;
+    String type;
+    int x;
+    int y;
+    int width;
+    int height;
+
+    public ZoneView(Zone zone) {
+        this.id = zone.getId();
+        this.zoneId = zone.getZoneId();
+        this.spaceId = zone.getSpaceId();
+        this.name = zone.getName();
+        this.description = zone.getDescription();
+        this.color = zone.getColor();
+        this.isPrivate = zone.isPrivate();
+        this.type = zone.getType();
+        this.x = zone.getX();
+        this.y = zone.getY();
+        this.width = zone.getWidth();
+        this.height = zone.getHeight();
+    }
+}
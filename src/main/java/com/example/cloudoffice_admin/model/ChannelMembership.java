@@ -0,0 +1,43 @@
+package com.example.cloudoffice_admin.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// 频道成员关系，沿用原来多对多关联的channel_members表；按频道分页读取，批量增删不加载整个成员列表
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "channel_members", indexes = {
+        @Index(name = "idx_channel_members_user", columnList = "user_id")
+})
+@IdClass(ChannelMembership.Key.class)
+public class ChannelMembership {
+    @Id
+    @Column(name = "channel_id")
+    private Long channelId;
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    private LocalDateTime joinedAt;
+
+    // 已读游标：已读到的频道消息序号
+    @Column(nullable = false)
+    private long lastReadSeq = 0;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long channelId;
+        private Long userId;
+    }
+}
@@ -27,6 +27,11 @@ public class ChatChannel {
 
     private String type = "public"; // public, group, private
 
+    // 频道内最后一条消息的序号，每发一条消息加1，用于计算未读数
+    // 只通过incrementLastSeq原子递增，保存整个频道时不写回可能过期的值
+    @Column(nullable = false, updatable = false)
+    private long lastSeq = 0;
+
     @CreationTimestamp
     private LocalDateTime createdAt;
     
@@ -42,13 +47,7 @@ public class ChatChannel {
     @JoinColumn(name = "creator_id")
     private User creator;
 
-    @ManyToMany
-    @JoinTable(
-            name = "channel_members",
-            joinColumns = @JoinColumn(name = "channel_id"),
-            inverseJoinColumns = @JoinColumn(name = "user_id")
-    )
-    private List<User> members;
+    // 成员关系见ChannelMembership，成员多的频道不随频道一起加载
 
     @OneToMany(mappedBy = "channel", cascade = CascadeType.ALL)
     private List<Message> messages;
@@ -3,6 +3,7 @@ package com.example.cloudoffice_admin.model;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
@@ -10,7 +11,10 @@ import java.time.LocalDateTime;
 @Data
 @NoArgsConstructor
 @Entity
-@Table(name = "messages")
+// 频道历史按(created_at, id)做游标分页
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_channel_created", columnList = "channel_id, created_at, id")
+})
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -40,7 +44,12 @@ public class Message {
     @CreationTimestamp
     private LocalDateTime createdAt;
 
-    private boolean isRead = false;
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    // 频道内的消息序号，已读状态记录在成员的已读游标上（ChannelMembership.lastReadSeq）
+    private Long seq;
+
     private boolean isDeleted = false;
 
     // 关联到回复的消息
@@ -66,8 +66,7 @@ public class User {
     @OneToMany(mappedBy = "sender", cascade = CascadeType.ALL)
     private List<Message> messages;
 
-    @ManyToMany(mappedBy = "members")
-    private List<ChatChannel> channels;
+    // 加入的聊天频道见ChannelMembership
 
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL)
     private List<MeetingParticipant> meetingParticipations;
@@ -28,6 +28,10 @@ public class UserPresence {
     @JoinColumn(name = "space_id", nullable = false)
     private VirtualSpace space;
 
+    // 用于直接存储空间ID的字段，内存中的在场信息只携带ID，不关联VirtualSpace对象
+    @Column(name = "space_id", insertable = false, updatable = false)
+    private Long spaceId;
+
     @ManyToOne
     @JoinColumn(name = "zone_id")
     private Zone zone;
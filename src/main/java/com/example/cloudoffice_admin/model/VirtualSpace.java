@@ -1,5 +1,6 @@
 package com.example.cloudoffice_admin.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
@@ -37,13 +38,16 @@ public class VirtualSpace {
     @CreationTimestamp
     private LocalDateTime createdAt;
 
-    // 关联关系
+    // 关联关系；不参与序列化，空间详情会被缓存，脱离会话后无法懒加载，区域通过/zones接口单独获取
+    @JsonIgnore
     @OneToMany(mappedBy = "space", cascade = CascadeType.ALL)
     private List<Zone> zones;
 
+    @JsonIgnore
     @OneToMany(mappedBy = "space", cascade = CascadeType.ALL)
     private List<UserPresence> presences;
 
+    @JsonIgnore
     @OneToMany(mappedBy = "virtualSpace", cascade = CascadeType.ALL)
     private List<MeetingRoom> meetingRooms;
 }
@@ -1,5 +1,6 @@
 package com.example.cloudoffice_admin.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -16,6 +17,8 @@ public class Zone {
 
     private String zoneId;
 
+    // 序列化时只输出spaceId
+    @JsonIgnore
     @ManyToOne
     @JoinColumn(name = "space_id", nullable = false)
     private VirtualSpace space;
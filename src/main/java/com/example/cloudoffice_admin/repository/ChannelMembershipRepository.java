@@ -0,0 +1,48 @@
+package com.example.cloudoffice_admin.repository;
+
+import com.example.cloudoffice_admin.model.ChannelMembership;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ChannelMembershipRepository extends JpaRepository<ChannelMembership, ChannelMembership.Key> {
+
+    // 分页读取频道成员
+    Page<ChannelMembership> findByChannelIdOrderByUserId(Long channelId, Pageable pageable);
+
+    // 频道所有成员的ID，用于建立成员索引
+    @Query("SELECT m.userId FROM ChannelMembership m WHERE m.channelId = :channelId")
+    List<Long> findUserIdsByChannelId(@Param("channelId") Long channelId);
+
+    // 给定用户中已经是频道成员的
+    @Query("SELECT m.userId FROM ChannelMembership m WHERE m.channelId = :channelId AND m.userId IN :userIds")
+    List<Long> findMemberIds(@Param("channelId") Long channelId, @Param("userIds") Collection<Long> userIds);
+
+    // 已读游标只前进不后退
+    @Modifying
+    @Query("UPDATE ChannelMembership m SET m.lastReadSeq = :seq WHERE m.channelId = :channelId AND m.userId = :userId AND m.lastReadSeq < :seq")
+    int advanceReadCursor(@Param("channelId") Long channelId, @Param("userId") Long userId, @Param("seq") long seq);
+
+    // 用户在所有频道的已读游标
+    @Query("SELECT m.channelId AS channelId, m.lastReadSeq AS lastReadSeq FROM ChannelMembership m WHERE m.userId = :userId")
+    List<CursorView> findCursorsByUserId(@Param("userId") Long userId);
+
+    @Modifying
+    @Query("DELETE FROM ChannelMembership m WHERE m.channelId = :channelId AND m.userId IN :userIds")
+    int deleteMembers(@Param("channelId") Long channelId, @Param("userIds") Collection<Long> userIds);
+
+    @Modifying
+    @Query("DELETE FROM ChannelMembership m WHERE m.channelId = :channelId")
+    void deleteByChannelId(@Param("channelId") Long channelId);
+
+    interface CursorView {
+        Long getChannelId();
+        long getLastReadSeq();
+    }
+}
@@ -1,27 +1,47 @@
 package com.example.cloudoffice_admin.repository;
 
 import com.example.cloudoffice_admin.model.ChatChannel;
-import com.example.cloudoffice_admin.model.User;
+import com.example.cloudoffice_admin.model.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface ChatChannelRepository extends JpaRepository<ChatChannel, Long> {
 
     // 查找用户加入的所有频道
-    @Query("SELECT c FROM ChatChannel c JOIN c.members m WHERE m.id = :userId")
+    @Query("SELECT c FROM ChatChannel c WHERE c.id IN (SELECT m.channelId FROM ChannelMembership m WHERE m.userId = :userId)")
     List<ChatChannel> findByMemberId(@Param("userId") Long userId);
 
+    // 只更新频道的最后消息，不重新保存整个频道
+    @Modifying
+    @Query("UPDATE ChatChannel c SET c.lastMessage = :message WHERE c.id = :channelId")
+    void updateLastMessage(@Param("channelId") Long channelId, @Param("message") Message message);
+
+    // 分配消息序号：先加1再读取，行锁保证同一频道的序号不重复
+    @Modifying
+    @Query("UPDATE ChatChannel c SET c.lastSeq = c.lastSeq + 1 WHERE c.id = :channelId")
+    int incrementLastSeq(@Param("channelId") Long channelId);
+
+    @Query("SELECT c.lastSeq FROM ChatChannel c WHERE c.id = :channelId")
+    Optional<Long> findLastSeq(@Param("channelId") Long channelId);
+
+    @Query("SELECT c.id AS id, c.lastSeq AS lastSeq FROM ChatChannel c WHERE c.id IN :ids")
+    List<SeqView> findLastSeqs(@Param("ids") Collection<Long> ids);
+
     // 查找空间中的所有频道
     @Query("SELECT c FROM ChatChannel c WHERE c.space.id = :spaceId")
     List<ChatChannel> findBySpaceId(@Param("spaceId") Long spaceId);
 
     // 查找直接消息频道
-    @Query("SELECT c FROM ChatChannel c WHERE c.type = 'DIRECT' AND :user1 MEMBER OF c.members AND :user2 MEMBER OF c.members")
-    Optional<ChatChannel> findDirectMessageChannel(@Param("user1") User user1, @Param("user2") User user2);
+    @Query("SELECT c FROM ChatChannel c WHERE c.type = 'DIRECT' "
+            + "AND c.id IN (SELECT m.channelId FROM ChannelMembership m WHERE m.userId = :user1Id) "
+            + "AND c.id IN (SELECT m.channelId FROM ChannelMembership m WHERE m.userId = :user2Id)")
+    Optional<ChatChannel> findDirectMessageChannel(@Param("user1Id") Long user1Id, @Param("user2Id") Long user2Id);
 
     // 查找公开频道
     List<ChatChannel> findByType(String type);
@@ -31,4 +51,9 @@ public interface ChatChannelRepository extends JpaRepository<ChatChannel, Long>
 
     // 创建者关系需要添加creator字段到ChatChannel实体后再实现
     // List<ChatChannel> findByCreatorId(Long creatorId);
+
+    interface SeqView {
+        Long getId();
+        long getLastSeq();
+    }
 }
@@ -1,6 +1,7 @@
 package com.example.cloudoffice_admin.repository;
 
 import com.example.cloudoffice_admin.model.Message;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -9,11 +10,32 @@ import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    // 按频道ID查找消息，按时间倒序排列
-    Page<Message> findByChannelIdOrderByCreatedAtDesc(Long channelId, Pageable pageable);
+    // 频道历史的游标分页，沿(channel_id, created_at, id)索引扫描，只取limit条，不统计总数
+    // 最新的消息，按时间倒序
+    @Query("SELECT m FROM Message m WHERE m.channel.id = :channelId ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findLatest(@Param("channelId") Long channelId, Limit limit);
+
+    // 游标之前（更早）的消息，按时间倒序
+    @Query("SELECT m FROM Message m WHERE m.channel.id = :channelId "
+            + "AND (m.createdAt < :createdAt OR (m.createdAt = :createdAt AND m.id < :id)) "
+            + "ORDER BY m.createdAt DESC, m.id DESC")
+    List<Message> findBefore(@Param("channelId") Long channelId, @Param("createdAt") LocalDateTime createdAt,
+                             @Param("id") Long id, Limit limit);
+
+    // 游标之后（更新）的消息，按时间正序
+    @Query("SELECT m FROM Message m WHERE m.channel.id = :channelId "
+            + "AND (m.createdAt > :createdAt OR (m.createdAt = :createdAt AND m.id > :id)) "
+            + "ORDER BY m.createdAt ASC, m.id ASC")
+    List<Message> findAfter(@Param("channelId") Long channelId, @Param("createdAt") LocalDateTime createdAt,
+                            @Param("id") Long id, Limit limit);
+
+    // 游标消息的创建时间，消息不属于该频道时为空
+    @Query("SELECT m.createdAt FROM Message m WHERE m.id = :id AND m.channel.id = :channelId")
+    Optional<LocalDateTime> findCreatedAt(@Param("channelId") Long channelId, @Param("id") Long id);
 
     // 查找某个频道中特定时间之后的消息
     List<Message> findByChannelIdAndCreatedAtAfter(Long channelId, LocalDateTime timestamp);
@@ -21,18 +43,6 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     // 查找用户发送的消息
     Page<Message> findBySenderIdOrderByCreatedAtDesc(Long senderId, Pageable pageable);
 
-    // 查找未读消息数量
-    @Query("SELECT COUNT(m) FROM Message m WHERE m.channel IN (SELECT c FROM ChatChannel c JOIN c.members u WHERE u.id = :userId) AND m.sender.id != :userId AND m.isRead = false")
-    long countUnreadMessagesByUserId(@Param("userId") Long userId);
-
-    // 查找某个频道中用户的未读消息
-    @Query("SELECT m FROM Message m WHERE m.channel.id = :channelId AND m.sender.id != :userId AND m.isRead = false")
-    List<Message> findUnreadMessagesByChannelAndUser(@Param("channelId") Long channelId, @Param("userId") Long userId);
-
-    // 标记消息为已读
-    @Query("UPDATE Message m SET m.isRead = true WHERE m.channel.id = :channelId AND m.sender.id != :userId AND m.isRead = false")
-    void markMessagesAsRead(@Param("channelId") Long channelId, @Param("userId") Long userId);
-
     // 查找回复某条消息的所有消息
     List<Message> findByReplyToId(Long replyToId);
 
@@ -9,6 +9,7 @@ import org.springframework.stereotype.Repository;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface RecordingRepository extends JpaRepository<Recording, Long> {
@@ -21,7 +22,11 @@ public interface RecordingRepository extends JpaRepository<Recording, Long> {
 
     // 根据会话查找录制
     @Query("SELECT r FROM Recording r WHERE r.session.id = :sessionId")
-    List<Recording> findBySessionId(Long sessionId);
+    List<Recording> findBySessionId(UUID sessionId);
+
+    // 根据会话和状态查找录制
+    @Query("SELECT r FROM Recording r WHERE r.session.id = :sessionId AND r.status = :status")
+    List<Recording> findBySessionIdAndStatus(UUID sessionId, String status);
 
     // 根据用户查找录制（用户启动的）
     List<Recording> findByRecordedById(Long userId);
@@ -44,5 +49,5 @@ public interface RecordingRepository extends JpaRepository<Recording, Long> {
     // 删除特定会话的所有录制
     @Modifying
     @Query("DELETE FROM Recording r WHERE r.session.id = :sessionId")
-    void deleteBySessionId(Long sessionId);
+    void deleteBySessionId(UUID sessionId);
 }
@@ -2,12 +2,30 @@ package com.example.cloudoffice_admin.repository;
 
 import com.example.cloudoffice_admin.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
     boolean existsByEmail(String email);
+
+    // 只查询展示所需的列，不加载用户的关联
+    List<ProfileView> findProfilesByIdIn(Collection<Long> ids);
+
+    // 给定ID中存在的用户ID
+    @Query("SELECT u.id FROM User u WHERE u.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    interface ProfileView {
+        Long getId();
+        String getUsername();
+        String getFullName();
+        String getAvatar();
+    }
 }
@@ -0,0 +1,27 @@
+package com.example.cloudoffice_admin.security;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+// 以握手时解析出的用户ID作为WebSocket会话的Principal，
+// 使 /user/{userId}/... 目的地能路由到该用户的会话，并通过消息安全配置的认证检查
+public class UserIdHandshakeHandler extends DefaultHandshakeHandler {
+
+    @Override
+    protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler,
+                                      Map<String, Object> attributes) {
+        Object userId = attributes.get("userId");
+        if (userId != null) {
+            return new UsernamePasswordAuthenticationToken(userId.toString(), null,
+                    List.of(new SimpleGrantedAuthority("ROLE_USER")));
+        }
+        return super.determineUser(request, wsHandler, attributes);
+    }
+}
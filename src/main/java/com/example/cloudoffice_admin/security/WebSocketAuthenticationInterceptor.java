@@ -56,6 +56,9 @@ public class WebSocketAuthenticationInterceptor implements HandshakeInterceptor
             }
         }
 
+        // 记录是否为SockJS传输：SockJS只能传输文本帧，不能协商二进制子协议
+        attributes.put("sockJs", !request.getURI().getPath().endsWith("/ws/websocket"));
+
         // 即使没有认证也允许握手，但会在后续消息处理中进行权限检查
         return true;
     }
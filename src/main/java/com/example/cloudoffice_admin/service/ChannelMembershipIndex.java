@@ -0,0 +1,141 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.repository.ChannelMembershipRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 聊天频道成员索引：每个频道一个压缩位图，发送、翻译和订阅时的成员检查不再查询数据库
+// 首次检查时从channel_members加载一次，之后成员变化在事务提交后增量更新；
+// 集群模式下变化通过中继转发，其他节点只更新已经加载的频道
+@Service
+public class ChannelMembershipIndex {
+
+    @Autowired
+    private ChannelMembershipRepository membershipRepository;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    // 最多缓存的频道数，超过时丢弃任意一个，下次使用时重新加载
+    @Value("${app.chat.membership-index.max-channels:10000}")
+    private int maxChannels = 10000;
+
+    private final Map<Long, UserIdBitmap> channels = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        clusterRelay.on(ClusterRelay.TYPE_MEMBERSHIP, envelope -> apply(clusterRelay.read(envelope, MembershipChange.class)));
+    }
+
+    public boolean isMember(Long channelId, Long userId) {
+        if (channelId == null || userId == null) {
+            return false;
+        }
+        UserIdBitmap members = load(channelId);
+        synchronized (members) {
+            return members.contains(userId);
+        }
+    }
+
+    // 加载中的频道在同一个键上阻塞，增量更新会等加载完成后再应用
+    private UserIdBitmap load(Long channelId) {
+        UserIdBitmap members = channels.get(channelId);
+        if (members != null) {
+            return members;
+        }
+        if (channels.size() >= maxChannels) {
+            Iterator<Long> evicted = channels.keySet().iterator();
+            if (evicted.hasNext()) {
+                channels.remove(evicted.next());
+            }
+        }
+        return channels.computeIfAbsent(channelId, id -> {
+            UserIdBitmap loaded = new UserIdBitmap();
+            for (Long userId : membershipRepository.findUserIdsByChannelId(id)) {
+                loaded.add(userId);
+            }
+            return loaded;
+        });
+    }
+
+    // 成员加入，在事务提交后生效
+    public void added(Long channelId, List<Long> userIds) {
+        publishAfterCommit(change(channelId, userIds, null, false));
+    }
+
+    // 成员移除，在事务提交后生效
+    public void removed(Long channelId, List<Long> userIds) {
+        publishAfterCommit(change(channelId, null, userIds, false));
+    }
+
+    // 频道被删除
+    public void dropped(Long channelId) {
+        publishAfterCommit(change(channelId, null, null, true));
+    }
+
+    private void publishAfterCommit(MembershipChange change) {
+        AfterCommit.run(() -> publish(change));
+    }
+
+    private void publish(MembershipChange change) {
+        apply(change);
+        clusterRelay.relay(ClusterRelay.TYPE_MEMBERSHIP, change);
+    }
+
+    // 只更新已加载的频道，未加载的下次检查时从数据库读取最新成员
+    private void apply(MembershipChange change) {
+        if (change.isDropped()) {
+            channels.remove(change.getChannelId());
+            return;
+        }
+        channels.computeIfPresent(change.getChannelId(), (id, members) -> {
+            synchronized (members) {
+                if (change.getAdded() != null) {
+                    for (Long userId : change.getAdded()) {
+                        members.add(userId);
+                    }
+                }
+                if (change.getRemoved() != null) {
+                    for (Long userId : change.getRemoved()) {
+                        members.remove(userId);
+                    }
+                }
+            }
+            return members;
+        });
+    }
+
+    private static MembershipChange change(Long channelId, List<Long> added, List<Long> removed, boolean dropped) {
+        MembershipChange change = new MembershipChange();
+        change.setChannelId(channelId);
+        change.setAdded(added);
+        change.setRemoved(removed);
+        change.setDropped(dropped);
+        return change;
+    }
+
+    // 节点间中继的成员变化
+    public static class MembershipChange {
+        private Long channelId;
+        private List<Long> added;
+        private List<Long> removed;
+        private boolean dropped;
+
+        // Getters and Setters
+        public Long getChannelId() { return channelId; }
+        public void setChannelId(Long channelId) { this.channelId = channelId; }
+        public List<Long> getAdded() { return added; }
+        public void setAdded(List<Long> added) { this.added = added; }
+        public List<Long> getRemoved() { return removed; }
+        public void setRemoved(List<Long> removed) { this.removed = removed; }
+        public boolean isDropped() { return dropped; }
+        public void setDropped(boolean dropped) { this.dropped = dropped; }
+    }
+}
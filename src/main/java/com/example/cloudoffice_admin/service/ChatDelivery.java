@@ -0,0 +1,64 @@
+package com.example.cloudoffice_admin.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// 聊天消息的投递阶段：发送接口只负责校验和保存，事务提交后由投递线程向 /topic/channels/{channelId} 发布一次，
+// 由代理分发给订阅了该主题的成员，发送接口的耗时与频道人数无关；事务回滚的消息不会投递
+// 队列满时由调用线程直接投递，不丢消息
+@Service
+public class ChatDelivery {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatDelivery.class);
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Value("${app.chat.delivery.queue-capacity:10000}")
+    private int queueCapacity = 10000;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "chat-delivery");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // 停止时尽量投递完已排队的消息
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    // 在事务中调用时等提交后再投递，否则立即投递
+    public void publishAfterCommit(Long channelId, Object payload) {
+        AfterCommit.run(() -> submit(channelId, payload));
+    }
+
+    private void submit(Long channelId, Object payload) {
+        executor.execute(() -> {
+            try {
+                sessionManager.publishToChannel(channelId, payload);
+            } catch (Exception e) {
+                logger.warn("Delivering message to channel {} failed", channelId, e);
+            }
+        });
+    }
+}
@@ -2,10 +2,13 @@ package com.example.cloudoffice_admin.service;
 
 import com.example.cloudoffice_admin.dto.ChatChannelRequest;
 import com.example.cloudoffice_admin.dto.MessageRequest;
+import com.example.cloudoffice_admin.dto.MessageView;
+import com.example.cloudoffice_admin.model.ChannelMembership;
 import com.example.cloudoffice_admin.model.ChatChannel;
 import com.example.cloudoffice_admin.model.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 import java.util.Optional;
@@ -21,15 +24,18 @@ public interface ChatService {
     List<ChatChannel> getSpaceChannels(Long spaceId);
     ChatChannel addMemberToChannel(Long channelId, Long userId);
     void removeMemberFromChannel(Long channelId, Long userId);
+    int addMembersToChannel(Long channelId, List<Long> userIds);
+    int removeMembersFromChannel(Long channelId, List<Long> userIds);
+    Page<ChannelMembership> getChannelMembers(Long channelId, Pageable pageable);
     boolean isMemberInChannel(Long channelId, Long userId);
     ChatChannel getOrCreateDirectMessageChannel(Long user1Id, Long user2Id);
 
     // 消息管理
     Message sendMessage(MessageRequest request, Long senderId);
-    Page<Message> getChannelMessages(Long channelId, Pageable pageable);
+    Slice<MessageView> getChannelMessages(Long channelId, Long before, Long after, int size);
     void deleteMessage(Long messageId, Long userId);
     Message editMessage(Long messageId, String newContent, Long userId);
-    void markMessagesAsRead(Long channelId, Long userId);
+    void markMessagesAsRead(Long channelId, Long userId, Long seq);
     long getUnreadMessageCount(Long userId);
     Message translateMessage(Long messageId, String targetLanguage, Long userId);
     Message replyToMessage(Long messageId, MessageRequest request, Long senderId);
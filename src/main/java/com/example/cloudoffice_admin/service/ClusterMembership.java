@@ -0,0 +1,19 @@
+package com.example.cloudoffice_admin.service;
+
+import java.util.Set;
+
+// 集群成员来源：空间归属按当前成员构建一致性哈希环，成员变化时重新分配
+public interface ClusterMembership {
+
+    // 当前存活的节点ID
+    Set<String> getMembers();
+
+    // 成员变化时回调，可能在成员来源自己的线程中执行
+    void onChange(Runnable listener);
+
+    default void start() {
+    }
+
+    default void stop() {
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.cloudoffice_admin.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// 集群模式下通过Redis发布/订阅在节点之间转发实时消息
+// 每个节点只向本地的STOMP代理投递，跨节点的消息由这里中继；未启用集群模式时所有方法都是空操作
+@Service
+public class ClusterRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRelay.class);
+
+    public static final String CHANNEL = "vo:realtime:relay";
+    // 发给单个节点的消息使用 CHANNEL:{nodeId}
+    public static final String NODE_CHANNEL_PREFIX = CHANNEL + ":";
+
+    // 已编码的STOMP帧，接收节点原样投递给本地代理
+    public static final String TYPE_FRAME = "frame";
+    // 客户端上报的原始移动，接收节点放入自己的空间节拍
+    public static final String TYPE_MOVE = "move";
+    // 用户离开空间，接收节点清理自己的节拍和网格状态
+    public static final String TYPE_DEPART = "depart";
+    // 空间布局变化，接收节点丢弃自己缓存的布局
+    public static final String TYPE_LAYOUT = "layout";
+    // 空间已删除，接收节点丢弃该空间的在场信息和节拍状态
+    public static final String TYPE_SPACE_DELETED = "space-deleted";
+    // 聊天频道成员变化，接收节点更新自己已加载的成员索引
+    public static final String TYPE_MEMBERSHIP = "membership";
+    // 频道新消息序号和已读游标变化，接收节点更新自己缓存的未读计数
+    public static final String TYPE_READ_STATE = "read-state";
+    // 频道最近消息有变化，接收节点丢弃该频道的最近消息缓存
+    public static final String TYPE_RECENT_MESSAGES = "recent-messages";
+    // 以下只在空间归属模式下使用，发给归属节点
+    // 非归属节点收到的移动，归属节点写入在场存储并放入节拍
+    public static final String TYPE_FORWARD_MOVE = "forward-move";
+    // 非归属节点收到的快照或重新同步请求
+    public static final String TYPE_FORWARD_SYNC = "forward-sync";
+    // 空间换归属时旧节点把在场信息交给新节点
+    public static final String TYPE_HANDOFF = "handoff";
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.realtime.cluster.enabled:false}")
+    private boolean enabled;
+
+    // 节点ID，为空时启动时随机生成
+    @Value("${app.realtime.cluster.node-id:}")
+    private String configuredNodeId;
+
+    private String nodeId;
+    private RedisMessageListenerContainer container;
+    private final Map<String, Consumer<RelayEnvelope>> handlers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        nodeId = StringUtils.hasText(configuredNodeId) ? configuredNodeId : UUID.randomUUID().toString();
+        if (!enabled) {
+            return;
+        }
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener((message, pattern) -> receive(message.getBody()),
+                List.of(new ChannelTopic(CHANNEL), new ChannelTopic(NODE_CHANNEL_PREFIX + nodeId)));
+        container.afterPropertiesSet();
+        container.start();
+        logger.info("Realtime cluster relay started on node {}", nodeId);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        if (container != null) {
+            container.stop();
+            container.destroy();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // 注册某种消息类型的处理器，本节点发出的消息不会回送给自己
+    public void on(String type, Consumer<RelayEnvelope> handler) {
+        handlers.put(type, handler);
+    }
+
+    // 中继已编码的帧；userId不为空时表示用户目的地，只有该用户有本地会话的节点才投递
+    public void relayFrame(String destination, Long userId, Message<?> frame) {
+        if (!enabled) {
+            return;
+        }
+        RelayEnvelope envelope = new RelayEnvelope();
+        envelope.setType(TYPE_FRAME);
+        envelope.setDestination(destination);
+        envelope.setUserId(userId);
+        Object contentType = frame.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        envelope.setContentType(contentType != null ? contentType.toString() : null);
+        envelope.setPayload((byte[]) frame.getPayload());
+        publish(envelope);
+    }
+
+    // 中继同一帧给多个用户，每个节点只投递给其中有本地会话的用户；destination为用户目的地后缀
+    public void relayFrameToUsers(String destination, List<Long> userIds, Message<?> frame) {
+        if (!enabled || userIds.isEmpty()) {
+            return;
+        }
+        RelayEnvelope envelope = new RelayEnvelope();
+        envelope.setType(TYPE_FRAME);
+        envelope.setDestination(destination);
+        envelope.setUserIds(userIds);
+        Object contentType = frame.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        envelope.setContentType(contentType != null ? contentType.toString() : null);
+        envelope.setPayload((byte[]) frame.getPayload());
+        publish(envelope);
+    }
+
+    // 中继一个对象，使用JSON编码
+    public void relay(String type, Object body) {
+        if (!enabled) {
+            return;
+        }
+        publish(envelope(type, body));
+    }
+
+    // 只发给指定节点；发给本节点时直接在当前线程处理
+    public void relayTo(String nodeId, String type, Object body) {
+        if (!enabled) {
+            return;
+        }
+        RelayEnvelope envelope = envelope(type, body);
+        if (this.nodeId.equals(nodeId)) {
+            envelope.setOrigin(nodeId);
+            dispatch(envelope);
+            return;
+        }
+        publish(NODE_CHANNEL_PREFIX + nodeId, envelope);
+    }
+
+    private RelayEnvelope envelope(String type, Object body) {
+        RelayEnvelope envelope = new RelayEnvelope();
+        envelope.setType(type);
+        try {
+            envelope.setPayload(objectMapper.writeValueAsBytes(body));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return envelope;
+    }
+
+    // 解码relay(type, body)发送的对象
+    public <T> T read(RelayEnvelope envelope, Class<T> type) {
+        try {
+            return objectMapper.readValue(envelope.getPayload(), type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void publish(RelayEnvelope envelope) {
+        publish(CHANNEL, envelope);
+    }
+
+    private void publish(String channel, RelayEnvelope envelope) {
+        envelope.setOrigin(nodeId);
+        try {
+            redisTemplate.convertAndSend(channel, objectMapper.writeValueAsString(envelope));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void receive(byte[] body) {
+        try {
+            RelayEnvelope envelope = objectMapper.readValue(body, RelayEnvelope.class);
+            if (nodeId.equals(envelope.getOrigin())) {
+                return;
+            }
+            dispatch(envelope);
+        } catch (Exception e) {
+            logger.warn("Dropping malformed cluster relay message", e);
+        }
+    }
+
+    private void dispatch(RelayEnvelope envelope) {
+        Consumer<RelayEnvelope> handler = handlers.get(envelope.getType());
+        if (handler != null) {
+            handler.accept(envelope);
+        }
+    }
+
+    // 节点间中继的消息信封
+    public static class RelayEnvelope {
+        private String origin;
+        private String type;
+        private String destination;
+        private Long userId;
+        // 多个用户目的地共享同一帧时使用，destination为目的地后缀
+        private List<Long> userIds;
+        private String contentType;
+        private byte[] payload;
+
+        // Getters and Setters
+        public String getOrigin() { return origin; }
+        public void setOrigin(String origin) { this.origin = origin; }
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        public String getDestination() { return destination; }
+        public void setDestination(String destination) { this.destination = destination; }
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+        public List<Long> getUserIds() { return userIds; }
+        public void setUserIds(List<Long> userIds) { this.userIds = userIds; }
+        public String getContentType() { return contentType; }
+        public void setContentType(String contentType) { this.contentType = contentType; }
+        public byte[] getPayload() { return payload; }
+        public void setPayload(byte[] payload) { this.payload = payload; }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.cloudoffice_admin.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+// 空间ID到节点的一致性哈希环：每个节点在环上放置若干虚拟节点，空间归属于顺时针方向的第一个虚拟节点
+// 节点加入或离开时只有落在它相邻区间内的空间换归属，其他空间不动
+// 构建后不再修改，成员变化时整体重建
+public final class HashRing {
+
+    private final List<String> members;
+    // 虚拟节点的哈希值（升序）和对应的节点
+    private final long[] points;
+    private final String[] owners;
+
+    public HashRing(Collection<String> members, int virtualNodes) {
+        // 排序去重，保证所有节点用同样的成员列表得到同样的环
+        this.members = List.copyOf(new TreeSet<>(members));
+        int replicas = Math.max(1, virtualNodes);
+        long[] hashes = new long[this.members.size() * replicas];
+        String[] nodes = new String[hashes.length];
+        int count = 0;
+        for (String member : this.members) {
+            for (int i = 0; i < replicas; i++) {
+                hashes[count] = hash(member + "#" + i);
+                nodes[count] = member;
+                count++;
+            }
+        }
+        // 按哈希值排序，哈希相同时按节点ID，保证结果确定
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> hashes[a] != hashes[b]
+                ? Long.compare(hashes[a], hashes[b]) : nodes[a].compareTo(nodes[b]));
+        points = new long[count];
+        owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodes[order[i]];
+        }
+    }
+
+    // 空间的归属节点，环为空时返回null
+    public String ownerOf(long spaceId) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, mix(spaceId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    // 节点ID取MD5的前8字节，与JVM和字符串哈希实现无关
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xff);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 空间ID是连续的小整数，先打散再上环
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.cloudoffice_admin.service;
+
+import java.util.ArrayDeque;
+
+// 分层时间轮：每层64个槽，第0层每槽一个tick，第n层每槽64^n个tick
+// 调度和推进都是O(1)摊销，到期时间很远的任务先放在高层，时间临近时逐层下放
+// 非线程安全，只在单个线程中使用
+final class HierarchicalTimingWheel {
+
+    // 到期回调
+    interface ExpiryHandler {
+        void expired(long key, long deadlineMillis);
+    }
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+
+    private final long tickMillis;
+    private final int levels;
+    private final Bucket[][] wheels;
+    private long currentTick;
+    private int size;
+
+    HierarchicalTimingWheel(long tickMillis, int levels, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.levels = levels;
+        this.wheels = new Bucket[levels][SLOTS];
+        for (int level = 0; level < levels; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = new Bucket();
+            }
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    // 在deadlineMillis到期，已过期的时间在下一个tick触发
+    void schedule(long key, long deadlineMillis) {
+        // 当前tick的槽已经触发过，最早放到下一个tick
+        place(new Timer(key, deadlineMillis), currentTick + 1);
+        size++;
+    }
+
+    // 推进到nowMillis，对所有到期任务回调；回调中可以重新调度
+    void advanceTo(long nowMillis, ExpiryHandler handler) {
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // 先把高层到期的槽下放到低层，再触发第0层
+            for (int level = levels - 1; level >= 1; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) ((currentTick >>> (SLOT_BITS * level)) & MASK));
+                }
+            }
+            ArrayDeque<Timer> slot = wheels[0][(int) (currentTick & MASK)].timers;
+            int count = slot.size();
+            for (int i = 0; i < count; i++) {
+                Timer timer = slot.poll();
+                size--;
+                handler.expired(timer.key, timer.deadlineMillis);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void cascade(int level, int slotIndex) {
+        ArrayDeque<Timer> slot = wheels[level][slotIndex].timers;
+        int count = slot.size();
+        for (int i = 0; i < count; i++) {
+            // 下放发生在触发第0层之前，正好在当前tick到期的任务仍可在本tick触发
+            place(slot.poll(), currentTick);
+        }
+    }
+
+    private void place(Timer timer, long earliestTick) {
+        long deadlineTick = Math.max(timer.deadlineMillis / tickMillis, earliestTick);
+        long delta = deadlineTick - currentTick;
+        for (int level = 0; level < levels; level++) {
+            if (delta < (1L << (SLOT_BITS * (level + 1)))) {
+                wheels[level][(int) ((deadlineTick >>> (SLOT_BITS * level)) & MASK)].timers.add(timer);
+                return;
+            }
+        }
+        // 超出最高层范围的任务放在最高层最远的槽，下放时重新计算
+        int top = levels - 1;
+        long farthest = currentTick + (1L << (SLOT_BITS * levels)) - 1;
+        wheels[top][(int) ((farthest >>> (SLOT_BITS * top)) & MASK)].timers.add(timer);
+    }
+
+    // 一个槽中的定时器；包一层避免创建泛型数组
+    private static final class Bucket {
+        private final ArrayDeque<Timer> timers = new ArrayDeque<>();
+    }
+
+    private static final class Timer {
+        private final long key;
+        private final long deadlineMillis;
+
+        private Timer(long key, long deadlineMillis) {
+            this.key = key;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
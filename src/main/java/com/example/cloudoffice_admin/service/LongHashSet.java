@@ -0,0 +1,171 @@
+package com.example.cloudoffice_admin.service;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+// 基本类型long的开放寻址哈希集合（线性探测，删除时后移），不装箱、不为每个元素分配对象
+// 非线程安全，由调用方加锁
+final class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long[] NO_VALUES = new long[0];
+
+    private long[] table;
+    private int size;
+    private boolean containsEmptyValue;
+
+    LongHashSet(int expectedSize) {
+        table = new long[tableSizeFor(expectedSize)];
+        Arrays.fill(table, EMPTY);
+    }
+
+    boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmptyValue) {
+                return false;
+            }
+            containsEmptyValue = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+        // 装载因子保持在0.5以下，探测链很短
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmptyValue;
+        }
+        int mask = table.length - 1;
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!containsEmptyValue) {
+                return false;
+            }
+            containsEmptyValue = false;
+            size--;
+            return true;
+        }
+        int mask = table.length - 1;
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                shiftBack(index);
+                size--;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+        containsEmptyValue = false;
+    }
+
+    void forEach(LongConsumer action) {
+        if (containsEmptyValue) {
+            action.accept(EMPTY);
+        }
+        for (long value : table) {
+            if (value != EMPTY) {
+                action.accept(value);
+            }
+        }
+    }
+
+    long[] toArray() {
+        if (size == 0) {
+            return NO_VALUES;
+        }
+        long[] values = new long[size];
+        int i = 0;
+        if (containsEmptyValue) {
+            values[i++] = EMPTY;
+        }
+        for (long value : table) {
+            if (value != EMPTY) {
+                values[i++] = value;
+            }
+        }
+        return values;
+    }
+
+    // 删除后把后续探测链上的元素前移，避免使用墓碑标记
+    private void shiftBack(int gap) {
+        int mask = table.length - 1;
+        int index = (gap + 1) & mask;
+        while (table[index] != EMPTY) {
+            int home = hash(table[index]) & mask;
+            // 元素的理想位置不在 (gap, index] 区间内时才能移到空位
+            boolean movable = gap <= index ? (home <= gap || home > index) : (home <= gap && home > index);
+            if (movable) {
+                table[gap] = table[index];
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+        table[gap] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        int mask = capacity - 1;
+        for (long value : old) {
+            if (value != EMPTY) {
+                int index = hash(value) & mask;
+                while (table[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
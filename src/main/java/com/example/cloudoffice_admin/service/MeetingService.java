@@ -10,6 +10,7 @@ import com.example.cloudoffice_admin.model.Recording;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 public interface MeetingService {
 
@@ -24,26 +25,26 @@ public interface MeetingService {
 
     // 会议会话管理
     MeetingSession createMeetingSession(MeetingSessionRequest request, Long hostId);
-    MeetingSession startMeetingSession(Long sessionId);
-    MeetingSession endMeetingSession(Long sessionId);
-    Optional<MeetingSession> getMeetingSessionById(Long sessionId);
+    MeetingSession startMeetingSession(UUID sessionId);
+    MeetingSession endMeetingSession(UUID sessionId);
+    Optional<MeetingSession> getMeetingSessionById(UUID sessionId);
     List<MeetingSession> getSessionsByRoom(Long roomId);
     List<MeetingSession> getActiveSessions();
 
     // 参与者管理
-    MeetingParticipant joinMeetingSession(Long sessionId, ParticipantRequest request);
+    MeetingParticipant joinMeetingSession(UUID sessionId, ParticipantRequest request);
     MeetingParticipant updateParticipantStatus(Long participantId, boolean isAudioOn, boolean isVideoOn);
     void leaveMeetingSession(Long participantId);
-    List<MeetingParticipant> getSessionParticipants(Long sessionId);
-    boolean isUserInSession(Long sessionId, Long userId);
+    List<MeetingParticipant> getSessionParticipants(UUID sessionId);
+    boolean isUserInSession(UUID sessionId, Long userId);
     MeetingParticipant makeHost(Long participantId);
-    void removeParticipant(Long sessionId, Long userId);
+    void removeParticipant(UUID sessionId, Long userId);
 
     // 录制管理
-    Recording startRecording(Long sessionId, Long userId);
+    Recording startRecording(UUID sessionId, Long userId);
     Recording stopRecording(Long recordingId);
     Optional<Recording> getRecordingById(Long recordingId);
-    List<Recording> getRecordingsBySession(Long sessionId);
+    List<Recording> getRecordingsBySession(UUID sessionId);
     List<Recording> getRecordingsByRoom(Long roomId);
     void deleteRecording(Long recordingId);
     void shareRecording(Long recordingId, boolean isPublic);
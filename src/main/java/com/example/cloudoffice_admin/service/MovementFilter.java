@@ -0,0 +1,249 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 移动过滤：客户端按鼠标事件的频率上报位置，这里在进入节拍之前削减
+// 1. 每个用户一个令牌桶，超过速率的移动直接丢弃
+// 2. 转发的位置带速度，接收方在两次更新之间按速度外推；服务端按同样的方式外推上次转发的位置，
+//    实际位置与外推位置的误差超过阈值时才转发，匀速直线移动只需要很少的帧
+// 3. 停止输入一段时间后转发最终静止位置（速度为0），接收方不会一直外推下去
+// 时间使用服务端接收时间，不信任客户端时间戳
+@Service
+public class MovementFilter {
+
+    // 过滤结果：DROP为超过速率被丢弃，SUPPRESS为接收方外推足够准确不需要转发
+    public enum Decision {
+        FORWARD, SUPPRESS, DROP
+    }
+
+    // 速度上限（像素/秒），异常的客户端值或瞬移不会让接收方外推到很远
+    private static final int MAX_SPEED = 5000;
+
+    @Value("${app.realtime.movement.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.realtime.movement.max-rate-hz:20}")
+    private double maxRateHz = 20;
+
+    @Value("${app.realtime.movement.burst:10}")
+    private int burst = 10;
+
+    @Value("${app.realtime.movement.error-threshold-px:12}")
+    private int errorThreshold = 12;
+
+    @Value("${app.realtime.movement.max-silence-ms:1000}")
+    private long maxSilenceMillis = 1000;
+
+    @Value("${app.realtime.movement.settle-ms:150}")
+    private long settleMillis = 150;
+
+    // 用户ID -> 过滤状态
+    private final Map<Long, Track> tracks = new ConcurrentHashMap<>();
+    // 最近有输入、可能还没转发最终位置的用户
+    private final Set<Long> unsettled = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong settled = new AtomicLong();
+
+    public Decision filter(PositionUpdateMessage message) {
+        return filter(message, System.currentTimeMillis());
+    }
+
+    // 判断一次移动是否需要转发；转发时把速度写入消息
+    public Decision filter(PositionUpdateMessage message, long now) {
+        received.incrementAndGet();
+        if (!enabled) {
+            forwarded.incrementAndGet();
+            return Decision.FORWARD;
+        }
+        Track track = tracks.computeIfAbsent(message.getUserId(), id -> new Track());
+        Decision decision;
+        synchronized (track) {
+            decision = track.offer(message, now);
+        }
+        if (decision == Decision.FORWARD) {
+            forwarded.incrementAndGet();
+        } else if (decision == Decision.SUPPRESS) {
+            suppressed.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+        if (decision != Decision.FORWARD || message.getVx() != 0 || message.getVy() != 0) {
+            unsettled.add(message.getUserId());
+        }
+        return decision;
+    }
+
+    public List<PositionUpdateMessage> settle() {
+        return settle(System.currentTimeMillis());
+    }
+
+    // 停止输入超过settle-ms的用户：最后收到的位置与接收方看到的不一致时，返回速度为0的最终位置
+    public List<PositionUpdateMessage> settle(long now) {
+        if (unsettled.isEmpty()) {
+            return List.of();
+        }
+        List<PositionUpdateMessage> resting = new ArrayList<>();
+        for (Long userId : unsettled) {
+            Track track = tracks.get(userId);
+            if (track == null) {
+                unsettled.remove(userId);
+                continue;
+            }
+            PositionUpdateMessage position;
+            synchronized (track) {
+                if (now - track.receivedAt < settleMillis) {
+                    continue;
+                }
+                unsettled.remove(userId);
+                position = track.settle(now);
+            }
+            if (position != null) {
+                position.setUserId(userId);
+                settled.incrementAndGet();
+                resting.add(position);
+            }
+        }
+        return resting;
+    }
+
+    // 用户离开空间或空间被删除，下次移动时重新开始计速
+    public void forget(Long userId) {
+        tracks.remove(userId);
+        unsettled.remove(userId);
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    // 不包括停止后补发的最终位置
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    public long getSettled() {
+        return settled.get();
+    }
+
+    private static int clampSpeed(long speed) {
+        return (int) Math.max(-MAX_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    private final class Track {
+        private double tokens = burst;
+        private long refilledAt;
+        // 最后收到的位置（包括被丢弃的）
+        private Long spaceId;
+        private int x;
+        private int y;
+        private long receivedAt;
+        // 最后转发的位置和速度，接收方以此外推
+        private boolean hasForwarded;
+        private int sentX;
+        private int sentY;
+        private int sentVx;
+        private int sentVy;
+        private long sentAt;
+
+        private Decision offer(PositionUpdateMessage message, long now) {
+            // 换空间时立即转发，但令牌桶不重置：消息里的空间ID由客户端填写，
+            // 只有服务端确认的离开（forget）才会换一个满的令牌桶
+            boolean first = spaceId == null || !spaceId.equals(message.getSpaceId());
+            tokens = Math.min(burst, tokens + (now - refilledAt) * maxRateHz / 1000.0);
+            refilledAt = now;
+            if (tokens < 1) {
+                // 只记录位置，停止输入后由settle补发
+                record(message, now);
+                return Decision.DROP;
+            }
+            tokens -= 1;
+
+            int vx;
+            int vy;
+            if (message.getVx() != null && message.getVy() != null) {
+                vx = clampSpeed(message.getVx());
+                vy = clampSpeed(message.getVy());
+            } else if (first || now - receivedAt >= settleMillis) {
+                // 静止了一段时间后的第一次移动
+                vx = 0;
+                vy = 0;
+            } else {
+                long elapsed = Math.max(1, now - receivedAt);
+                vx = clampSpeed((message.getX() - x) * 1000L / elapsed);
+                vy = clampSpeed((message.getY() - y) * 1000L / elapsed);
+            }
+            record(message, now);
+            message.setVx(vx);
+            message.setVy(vy);
+            // 接收方从这个时间开始外推
+            message.setTimestamp(new Date(now));
+
+            boolean stopped = vx == 0 && vy == 0 && (sentVx != 0 || sentVy != 0);
+            if (first || !hasForwarded || stopped || now - sentAt >= maxSilenceMillis
+                    || error(message.getX(), message.getY(), now) > errorThreshold) {
+                sent(message.getX(), message.getY(), vx, vy, now);
+                return Decision.FORWARD;
+            }
+            return Decision.SUPPRESS;
+        }
+
+        private void record(PositionUpdateMessage message, long now) {
+            spaceId = message.getSpaceId();
+            x = message.getX();
+            y = message.getY();
+            receivedAt = now;
+        }
+
+        private PositionUpdateMessage settle(long now) {
+            if (hasForwarded && sentX == x && sentY == y && sentVx == 0 && sentVy == 0) {
+                return null;
+            }
+            sent(x, y, 0, 0, now);
+            PositionUpdateMessage position = new PositionUpdateMessage();
+            position.setSpaceId(spaceId);
+            position.setX(x);
+            position.setY(y);
+            position.setVx(0);
+            position.setVy(0);
+            position.setTimestamp(new Date(now));
+            return position;
+        }
+
+        // 接收方当前外推的位置与实际位置的距离
+        private double error(int actualX, int actualY, long now) {
+            double elapsed = (now - sentAt) / 1000.0;
+            return Math.hypot(actualX - (sentX + sentVx * elapsed), actualY - (sentY + sentVy * elapsed));
+        }
+
+        private void sent(int x, int y, int vx, int vy, long now) {
+            hasForwarded = true;
+            sentX = x;
+            sentY = y;
+            sentVx = vx;
+            sentVy = vy;
+            sentAt = now;
+        }
+    }
+}
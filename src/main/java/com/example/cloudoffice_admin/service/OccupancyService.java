@@ -0,0 +1,117 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.OccupantView;
+import com.example.cloudoffice_admin.dto.SpaceOccupancy;
+import com.example.cloudoffice_admin.dto.ZoneView;
+import com.example.cloudoffice_admin.model.UserPresence;
+import com.example.cloudoffice_admin.repository.UserRepository;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 在场信息的读模型：位置和状态来自内存存储，昵称和头像用一次只查展示列的查询补齐
+// 人数统计直接读取内存计数，不查询数据库
+@Service
+public class OccupancyService {
+
+    private static final int MAX_BUSIEST = 50;
+
+    @Autowired
+    private PresenceStore presenceStore;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SpaceLayoutCache layoutCache;
+
+    // 空间中的在场用户
+    public List<OccupantView> getOccupantsInSpace(Long spaceId) {
+        return toViews(presenceStore.getUsersInSpace(spaceId));
+    }
+
+    // 区域中的在场用户
+    public List<OccupantView> getOccupantsInZone(Long zoneId) {
+        return toViews(presenceStore.getUsersInZone(zoneId));
+    }
+
+    // 空间总人数和各区域人数
+    public SpaceOccupancy getOccupancy(Long spaceId) {
+        return occupancyOf(layoutCache.get(spaceId));
+    }
+
+    // 大厅：人数最多的公开空间，按人数从多到少
+    public List<SpaceOccupancy> getBusiestSpaces(int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_BUSIEST));
+        List<Map.Entry<Long, Integer>> counts = new ArrayList<>(presenceStore.getSpaceCounts().entrySet());
+        counts.sort(Map.Entry.<Long, Integer>comparingByValue().reversed());
+
+        List<SpaceOccupancy> busiest = new ArrayList<>();
+        for (Map.Entry<Long, Integer> count : counts) {
+            if (busiest.size() >= size) {
+                break;
+            }
+            SpaceLayoutCache.SpaceLayout layout;
+            try {
+                layout = layoutCache.get(count.getKey());
+            } catch (EntityNotFoundException e) {
+                // 空间已删除，残留的在场信息会随离开或回收清除
+                continue;
+            }
+            if (layout.getSpace().isPublic()) {
+                busiest.add(occupancyOf(layout));
+            }
+        }
+        return busiest;
+    }
+
+    private SpaceOccupancy occupancyOf(SpaceLayoutCache.SpaceLayout layout) {
+        Map<Long, Integer> zones = new LinkedHashMap<>();
+        for (ZoneView zone : layout.getZones()) {
+            zones.put(zone.getId(), presenceStore.countInZone(zone.getId()));
+        }
+        SpaceOccupancy occupancy = new SpaceOccupancy();
+        occupancy.setSpaceId(layout.getSpace().getId());
+        occupancy.setName(layout.getSpace().getName());
+        occupancy.setOccupants(presenceStore.countInSpace(layout.getSpace().getId()));
+        occupancy.setZones(zones);
+        return occupancy;
+    }
+
+    private List<OccupantView> toViews(List<UserPresence> presences) {
+        if (presences.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Long> userIds = new ArrayList<>(presences.size());
+        for (UserPresence presence : presences) {
+            userIds.add(presence.getUserId());
+        }
+        Map<Long, UserRepository.ProfileView> profiles = new HashMap<>();
+        for (UserRepository.ProfileView profile : userRepository.findProfilesByIdIn(userIds)) {
+            profiles.put(profile.getId(), profile);
+        }
+
+        List<OccupantView> views = new ArrayList<>(presences.size());
+        for (UserPresence presence : presences) {
+            OccupantView view = new OccupantView();
+            view.setUserId(presence.getUserId());
+            view.setX(presence.getX());
+            view.setY(presence.getY());
+            view.setZoneId(presence.getZoneId());
+            view.setStatus(presence.getStatus());
+            UserRepository.ProfileView profile = profiles.get(presence.getUserId());
+            if (profile != null) {
+                view.setDisplayName(profile.getFullName() != null ? profile.getFullName() : profile.getUsername());
+                view.setAvatar(profile.getAvatar());
+            }
+            views.add(view);
+        }
+        return views;
+    }
+}
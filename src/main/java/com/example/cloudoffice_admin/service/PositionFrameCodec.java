@@ -0,0 +1,260 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceJoinMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceLeaveMessage;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+// 实时位置和在场帧的紧凑二进制编码（binary-v3），只用于协商了二进制子协议的原生WebSocket连接
+//
+// 帧格式：
+//   version:u8 type:u8 spaceId:varint tick:varint baseTime:varint(ms)
+//   位置批量(type=1)：count:varint，按userId排序的条目：
+//     userId增量:varint  dx:zigzag  dy:zigzag（相对上一条目）  zoneId+1:varint（0表示无区域）  时间偏移:zigzag(ms)
+//     vx:zigzag  vy:zigzag（像素/秒，静止为0）
+//     removedCount:varint，之后是按userId排序的离开用户：userId增量:varint
+//   v2在v1的位置条目后增加了速度，v3在条目之后增加了离开列表，只协商了v1或v2的客户端回退为JSON帧
+//   加入/离开(type=2/3)：userId:varint  用户名长度:varint  用户名UTF-8
+@Component
+public class PositionFrameCodec {
+
+    public static final String CODEC_NAME = "binary-v3";
+    // 二进制帧的主题/队列后缀
+    public static final String DESTINATION_SUFFIX = ".bin";
+
+    static final int VERSION = 3;
+    static final int TYPE_POSITIONS = 1;
+    static final int TYPE_JOIN = 2;
+    static final int TYPE_LEAVE = 3;
+
+    private static final Comparator<PositionUpdateMessage> BY_USER_ID =
+            (a, b) -> Long.compare(a.getUserId(), b.getUserId());
+
+    public boolean supports(Object payload) {
+        return payload instanceof PositionBatchMessage
+                || payload instanceof PositionUpdateMessage
+                || payload instanceof SpaceJoinMessage
+                || payload instanceof SpaceLeaveMessage;
+    }
+
+    public byte[] encode(Object payload) {
+        if (payload instanceof PositionBatchMessage) {
+            PositionBatchMessage batch = (PositionBatchMessage) payload;
+            return encodePositions(batch.getSpaceId(), batch.getTick(), batch.getTimestamp(), batch.getUpdates(),
+                    batch.getRemoved());
+        }
+        if (payload instanceof PositionUpdateMessage) {
+            PositionUpdateMessage update = (PositionUpdateMessage) payload;
+            return encodePositions(update.getSpaceId(), 0, update.getTimestamp(), List.of(update), null);
+        }
+        if (payload instanceof SpaceJoinMessage) {
+            SpaceJoinMessage join = (SpaceJoinMessage) payload;
+            return encodePresence(TYPE_JOIN, join.getSpaceId(), join.getUserId(), join.getUsername(), join.getTimestamp());
+        }
+        if (payload instanceof SpaceLeaveMessage) {
+            SpaceLeaveMessage leave = (SpaceLeaveMessage) payload;
+            return encodePresence(TYPE_LEAVE, leave.getSpaceId(), leave.getUserId(), leave.getUsername(), leave.getTimestamp());
+        }
+        throw new IllegalArgumentException("Unsupported frame payload: " + payload.getClass().getName());
+    }
+
+    private byte[] encodePositions(Long spaceId, long tick, Date timestamp, List<PositionUpdateMessage> updates,
+                                   List<Long> removed) {
+        long baseTime = timestamp != null ? timestamp.getTime() : System.currentTimeMillis();
+        int removedCount = removed != null ? removed.size() : 0;
+        FrameWriter out = new FrameWriter(16 + updates.size() * 10 + removedCount * 3);
+        writeHeader(out, TYPE_POSITIONS, spaceId, tick, baseTime);
+
+        // 按用户ID排序后用户ID和坐标都只写增量
+        List<PositionUpdateMessage> sorted = new ArrayList<>(updates);
+        sorted.sort(BY_USER_ID);
+        out.writeVarLong(sorted.size());
+        long previousUserId = 0;
+        int previousX = 0;
+        int previousY = 0;
+        for (PositionUpdateMessage update : sorted) {
+            long userId = update.getUserId();
+            out.writeVarLong(userId - previousUserId);
+            out.writeZigZag(update.getX() - previousX);
+            out.writeZigZag(update.getY() - previousY);
+            out.writeVarLong(update.getZoneId() != null ? update.getZoneId() + 1 : 0);
+            long time = update.getTimestamp() != null ? update.getTimestamp().getTime() : baseTime;
+            out.writeZigZag(time - baseTime);
+            out.writeZigZag(update.getVx() != null ? update.getVx() : 0);
+            out.writeZigZag(update.getVy() != null ? update.getVy() : 0);
+            previousUserId = userId;
+            previousX = update.getX();
+            previousY = update.getY();
+        }
+
+        out.writeVarLong(removedCount);
+        if (removedCount > 0) {
+            List<Long> sortedRemoved = new ArrayList<>(removed);
+            sortedRemoved.sort(null);
+            long previousRemoved = 0;
+            for (Long userId : sortedRemoved) {
+                out.writeVarLong(userId - previousRemoved);
+                previousRemoved = userId;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] encodePresence(int type, Long spaceId, Long userId, String username, Date timestamp) {
+        long baseTime = timestamp != null ? timestamp.getTime() : System.currentTimeMillis();
+        byte[] name = username != null ? username.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        FrameWriter out = new FrameWriter(24 + name.length);
+        writeHeader(out, type, spaceId, 0, baseTime);
+        out.writeVarLong(userId != null ? userId : 0);
+        out.writeVarLong(name.length);
+        out.writeBytes(name);
+        return out.toByteArray();
+    }
+
+    private static void writeHeader(FrameWriter out, int type, Long spaceId, long tick, long baseTime) {
+        out.writeByte(VERSION);
+        out.writeByte(type);
+        out.writeVarLong(spaceId != null ? spaceId : 0);
+        out.writeVarLong(tick);
+        out.writeVarLong(baseTime);
+    }
+
+    // 解码位置批量帧，供测试和压测客户端使用
+    public PositionBatchMessage decodePositions(byte[] frame) {
+        FrameReader in = new FrameReader(frame);
+        if (in.readByte() != VERSION || in.readByte() != TYPE_POSITIONS) {
+            throw new IllegalArgumentException("Not a binary-v3 position frame");
+        }
+        long spaceId = in.readVarLong();
+        long tick = in.readVarLong();
+        long baseTime = in.readVarLong();
+        int count = (int) in.readVarLong();
+
+        List<PositionUpdateMessage> updates = new ArrayList<>(count);
+        long userId = 0;
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < count; i++) {
+            userId += in.readVarLong();
+            x += (int) in.readZigZag();
+            y += (int) in.readZigZag();
+            long zone = in.readVarLong();
+            long time = baseTime + in.readZigZag();
+            int vx = (int) in.readZigZag();
+            int vy = (int) in.readZigZag();
+
+            PositionUpdateMessage update = new PositionUpdateMessage();
+            update.setUserId(userId);
+            update.setSpaceId(spaceId);
+            update.setZoneId(zone == 0 ? null : zone - 1);
+            update.setX(x);
+            update.setY(y);
+            update.setVx(vx);
+            update.setVy(vy);
+            update.setTimestamp(new Date(time));
+            updates.add(update);
+        }
+
+        // 没有离开者时与JSON路径一致，removed为null
+        int removedCount = (int) in.readVarLong();
+        List<Long> removed = null;
+        if (removedCount > 0) {
+            removed = new ArrayList<>(removedCount);
+            long removedUserId = 0;
+            for (int i = 0; i < removedCount; i++) {
+                removedUserId += in.readVarLong();
+                removed.add(removedUserId);
+            }
+        }
+
+        PositionBatchMessage batch = new PositionBatchMessage();
+        batch.setSpaceId(spaceId);
+        batch.setTick(tick);
+        batch.setTimestamp(new Date(baseTime));
+        batch.setUpdates(updates);
+        batch.setRemoved(removed);
+        return batch;
+    }
+
+    private static final class FrameWriter {
+        private byte[] buffer;
+        private int length;
+
+        private FrameWriter(int capacity) {
+            this.buffer = new byte[Math.max(capacity, 16)];
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private static final class FrameReader {
+        private final byte[] buffer;
+        private int position;
+
+        private FrameReader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private int readByte() {
+            return buffer[position++] & 0xFF;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        private long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PresenceStatusMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceLeaveMessage;
+import com.example.cloudoffice_admin.model.UserPresence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// 空闲在场回收：心跳和用户操作只更新时间戳，分层时间轮在最近一次可能超时的时刻检查一次
+// 没有操作超过away-after转为离开，连心跳也没有超过offline-after转为离线并清理会话和在场记录
+// 不做周期性全表扫描，只在启动时从在场存储加载一次未离线的记录
+@Service
+public class PresenceReaper {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceReaper.class);
+
+    @Autowired
+    private PresenceStore presenceStore;
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Autowired
+    private SpaceTickEngine tickEngine;
+
+    @Value("${app.presence.away-after-seconds:120}")
+    private long awayAfterSeconds = 120;
+
+    @Value("${app.presence.offline-after-seconds:300}")
+    private long offlineAfterSeconds = 300;
+
+    // 时间轮的tick，回收精度
+    @Value("${app.presence.reaper-tick-ms:1000}")
+    private long tickMillis = 1000;
+
+    // 用户ID -> 最近的心跳和操作时间
+    private final Map<Long, Activity> tracked = new ConcurrentHashMap<>();
+    // 新开始跟踪、或离开后恢复在线需要提前检查的用户，由回收线程放入时间轮
+    private final Queue<Long> pendingSchedule = new ConcurrentLinkedQueue<>();
+
+    private HierarchicalTimingWheel wheel;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        wheel = new HierarchicalTimingWheel(tickMillis, 4, System.currentTimeMillis());
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "presence-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 启动时加载上次运行遗留的未离线记录，异常退出的客户端同样会过期
+        scheduler.execute(this::loadExistingPresences);
+        scheduler.scheduleAtFixedRate(this::reap, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // 心跳：连接仍然存活，推迟离线但不影响离开状态
+    public void recordHeartbeat(Long userId) {
+        touch(userId, false, System.currentTimeMillis());
+    }
+
+    // 用户操作（发送消息、移动等）：推迟离开和离线，离开状态的用户恢复在线
+    public void recordActivity(Long userId) {
+        touch(userId, true, System.currentTimeMillis());
+    }
+
+    // 用户最后一个会话断开：立即离线
+    public void disconnected(Long userId, List<Long> leftSpaces) {
+        tracked.remove(userId);
+        announceDeparture(userId, leftSpaces);
+        presenceStore.updateStatus(userId, UserPresence.STATUS_OFFLINE);
+    }
+
+    public String getStatus(Long userId) {
+        Activity activity = tracked.get(userId);
+        return activity != null ? activity.status.get() : UserPresence.STATUS_OFFLINE;
+    }
+
+    void touch(Long userId, boolean userActivity, long now) {
+        if (userId == null) {
+            return;
+        }
+        Activity activity = tracked.get(userId);
+        if (activity == null) {
+            Activity created = new Activity(now);
+            activity = tracked.putIfAbsent(userId, created);
+            if (activity == null) {
+                pendingSchedule.add(userId);
+                return;
+            }
+        }
+        activity.lastSeen = now;
+        if (userActivity) {
+            activity.lastActivity = now;
+            if (activity.status.compareAndSet(UserPresence.STATUS_AWAY, UserPresence.STATUS_ONLINE)) {
+                changeStatus(userId, UserPresence.STATUS_ONLINE);
+                // 离开状态只在离线时刻检查，恢复在线后要在新的离开时刻检查
+                pendingSchedule.add(userId);
+            }
+        }
+    }
+
+    // 回收线程：调度新跟踪的用户并推进时间轮
+    void reap() {
+        reap(System.currentTimeMillis());
+    }
+
+    void reap(long now) {
+        try {
+            for (Long userId = pendingSchedule.poll(); userId != null; userId = pendingSchedule.poll()) {
+                Activity activity = tracked.get(userId);
+                if (activity != null && (activity.checkAt == 0 || nextCheck(activity) < activity.checkAt)) {
+                    schedule(userId, activity);
+                }
+            }
+            wheel.advanceTo(now, (userId, deadline) -> check(userId, deadline, now));
+        } catch (Exception e) {
+            logger.warn("Presence reaper tick failed", e);
+        }
+    }
+
+    // 到期时重新读取时间戳：期间有心跳或操作则按新的时间重新调度，不需要在每次心跳时移动定时器
+    // 被提前调度取代的旧定时器到期时直接忽略，每个用户在时间轮中只有一个有效的定时器
+    private void check(long userId, long deadline, long now) {
+        Activity activity = tracked.get(userId);
+        if (activity == null || activity.checkAt != deadline) {
+            return;
+        }
+        if (now - activity.lastSeen >= offlineAfterSeconds * 1000) {
+            if (tracked.remove(userId, activity)) {
+                goOffline(userId);
+            }
+            return;
+        }
+        if (now - activity.lastActivity >= awayAfterSeconds * 1000
+                && activity.status.compareAndSet(UserPresence.STATUS_ONLINE, UserPresence.STATUS_AWAY)) {
+            changeStatus(userId, UserPresence.STATUS_AWAY);
+        }
+        schedule(userId, activity);
+    }
+
+    private void schedule(long userId, Activity activity) {
+        activity.checkAt = nextCheck(activity);
+        wheel.schedule(userId, activity.checkAt);
+    }
+
+    private long nextCheck(Activity activity) {
+        long offlineAt = activity.lastSeen + offlineAfterSeconds * 1000;
+        if (UserPresence.STATUS_AWAY.equals(activity.status.get())) {
+            return offlineAt;
+        }
+        return Math.min(activity.lastActivity + awayAfterSeconds * 1000, offlineAt);
+    }
+
+    private void goOffline(long userId) {
+        List<Long> leftSpaces = sessionManager.removeUser(userId);
+        announceDeparture(userId, leftSpaces);
+        presenceStore.updateStatus(userId, UserPresence.STATUS_OFFLINE);
+    }
+
+    // 更新在场存储并通知用户所在空间
+    private void changeStatus(Long userId, String status) {
+        presenceStore.updateStatus(userId, status);
+        for (long spaceId : sessionManager.spacesOf(userId)) {
+            PresenceStatusMessage message = new PresenceStatusMessage();
+            message.setUserId(userId);
+            message.setSpaceId(spaceId);
+            message.setStatus(status);
+            message.setTimestamp(new Date());
+            sessionManager.publishToSpace(spaceId, WebSocketSessionManager.SPACE_PRESENCE, message);
+        }
+    }
+
+    private void announceDeparture(Long userId, List<Long> leftSpaces) {
+        for (Long spaceId : leftSpaces) {
+            tickEngine.discard(spaceId, userId);
+            SpaceLeaveMessage message = new SpaceLeaveMessage();
+            message.setUserId(userId);
+            message.setSpaceId(spaceId);
+            message.setTimestamp(new Date());
+            sessionManager.publishToSpace(spaceId, WebSocketSessionManager.SPACE_LEAVES, message);
+        }
+    }
+
+    private void loadExistingPresences() {
+        try {
+            for (UserPresence presence : presenceStore.getActivePresences()) {
+                long lastActive = presence.getLastActive() != null
+                        ? presence.getLastActive().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                        : 0;
+                Activity activity = new Activity(lastActive);
+                if (UserPresence.STATUS_AWAY.equals(presence.getStatus())) {
+                    activity.status.set(UserPresence.STATUS_AWAY);
+                }
+                if (tracked.putIfAbsent(presence.getUserId(), activity) == null) {
+                    pendingSchedule.add(presence.getUserId());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to load existing presences", e);
+        }
+    }
+
+    private static final class Activity {
+        private volatile long lastSeen;
+        private volatile long lastActivity;
+        private final AtomicReference<String> status = new AtomicReference<>(UserPresence.STATUS_ONLINE);
+        // 时间轮中有效定时器的到期时间，0表示还没有调度；只在回收线程上读写
+        private long checkAt;
+
+        private Activity(long now) {
+            this.lastSeen = now;
+            this.lastActivity = now;
+        }
+    }
+}
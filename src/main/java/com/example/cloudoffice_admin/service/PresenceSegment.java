@@ -0,0 +1,312 @@
+package com.example.cloudoffice_admin.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// 在场时序段文件：每个时间分区一个文件，只追加，每次写入追加一个块
+//
+// 块格式（按列存储，每列前写字节长度，查询时可以跳过不需要的列）：
+//   magic:i32 rows:varint minTime:varint maxTime:varint
+//   时间列：相对上一行的增量zigzag(ms)
+//   类型列：每行1字节
+//   用户列、空间列：varint
+//   区域列：zoneId+1:varint（0表示不在区域内）
+//   x列、y列：相对上一行的增量zigzag
+// 进程在写块时退出留下的残缺尾部在读取时忽略
+final class PresenceSegment {
+
+    static final int MAGIC = 0x50545331;
+
+    // 事件类型：定期采样的位置、进入区域、离开区域
+    static final byte SAMPLE = 0;
+    static final byte ENTER = 1;
+    static final byte LEAVE = 2;
+
+    private PresenceSegment() {
+    }
+
+    // 扫描时每行回调，zoneId为0表示不在区域内
+    interface RowVisitor {
+        void visit(long time, byte kind, long userId, long spaceId, long zoneId);
+    }
+
+    // 一个块的列数据
+    static final class Columns {
+        private int size;
+        private long[] times;
+        private byte[] kinds;
+        private long[] userIds;
+        private long[] spaceIds;
+        private long[] zoneIds;
+        private int[] xs;
+        private int[] ys;
+
+        Columns(int capacity) {
+            int initial = Math.max(capacity, 16);
+            times = new long[initial];
+            kinds = new byte[initial];
+            userIds = new long[initial];
+            spaceIds = new long[initial];
+            zoneIds = new long[initial];
+            xs = new int[initial];
+            ys = new int[initial];
+        }
+
+        void add(long time, byte kind, long userId, long spaceId, long zoneId, int x, int y) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+                spaceIds = Arrays.copyOf(spaceIds, capacity);
+                zoneIds = Arrays.copyOf(zoneIds, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+            }
+            times[size] = time;
+            kinds[size] = kind;
+            userIds[size] = userId;
+            spaceIds[size] = spaceId;
+            zoneIds[size] = zoneId;
+            xs[size] = x;
+            ys[size] = y;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long time(int row) {
+            return times[row];
+        }
+    }
+
+    static byte[] encode(Columns columns, int[] rows) {
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (int row : rows) {
+            minTime = Math.min(minTime, columns.times[row]);
+            maxTime = Math.max(maxTime, columns.times[row]);
+        }
+        ColumnWriter out = new ColumnWriter(32 + rows.length * 12);
+        out.writeInt(MAGIC);
+        out.writeVarLong(rows.length);
+        out.writeVarLong(minTime);
+        out.writeVarLong(maxTime);
+
+        ColumnWriter column = new ColumnWriter(rows.length * 3);
+        long previous = minTime;
+        for (int row : rows) {
+            column.writeZigZag(columns.times[row] - previous);
+            previous = columns.times[row];
+        }
+        out.writeColumn(column);
+        for (int row : rows) {
+            column.writeByte(columns.kinds[row]);
+        }
+        out.writeColumn(column);
+        for (int row : rows) {
+            column.writeVarLong(columns.userIds[row]);
+        }
+        out.writeColumn(column);
+        for (int row : rows) {
+            column.writeVarLong(columns.spaceIds[row]);
+        }
+        out.writeColumn(column);
+        for (int row : rows) {
+            column.writeVarLong(columns.zoneIds[row]);
+        }
+        out.writeColumn(column);
+        int previousX = 0;
+        for (int row : rows) {
+            column.writeZigZag(columns.xs[row] - previousX);
+            previousX = columns.xs[row];
+        }
+        out.writeColumn(column);
+        int previousY = 0;
+        for (int row : rows) {
+            column.writeZigZag(columns.ys[row] - previousY);
+            previousY = columns.ys[row];
+        }
+        out.writeColumn(column);
+        return out.toByteArray();
+    }
+
+    // 一次写入一个完整的块
+    static void append(Path file, byte[] block) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    // 扫描文件中与[from, to)有交集的块；只解码时间、类型、用户、空间、区域列
+    static void scan(Path file, long from, long to, RowVisitor visitor) throws IOException {
+        ColumnReader in = new ColumnReader(Files.readAllBytes(file));
+        while (in.remaining() > 0) {
+            int rows;
+            long minTime;
+            long maxTime;
+            int[] lengths = new int[7];
+            int start;
+            try {
+                if (in.readInt() != MAGIC) {
+                    return;
+                }
+                rows = (int) in.readVarLong();
+                minTime = in.readVarLong();
+                maxTime = in.readVarLong();
+                start = in.position;
+                for (int i = 0; i < lengths.length; i++) {
+                    lengths[i] = (int) in.readVarLong();
+                    in.skip(lengths[i]);
+                }
+            } catch (IndexOutOfBoundsException e) {
+                // 残缺的尾部块
+                return;
+            }
+            if (maxTime < from || minTime >= to) {
+                continue;
+            }
+            int end = in.position;
+            in.position = start;
+            ColumnReader times = in.column();
+            ColumnReader kinds = in.column();
+            ColumnReader userIds = in.column();
+            ColumnReader spaceIds = in.column();
+            ColumnReader zoneIds = in.column();
+            in.position = end;
+            long time = minTime;
+            for (int row = 0; row < rows; row++) {
+                time += times.readZigZag();
+                visitor.visit(time, (byte) kinds.readByte(), userIds.readVarLong(), spaceIds.readVarLong(), zoneIds.readVarLong());
+            }
+        }
+    }
+
+    private static final class ColumnWriter {
+        private byte[] buffer;
+        private int length;
+
+        private ColumnWriter(int capacity) {
+            this.buffer = new byte[Math.max(capacity, 16)];
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            writeByte(value >>> 24);
+            writeByte(value >>> 16);
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        // 写入一列（长度前缀+内容），然后清空该列以便复用
+        private void writeColumn(ColumnWriter column) {
+            writeVarLong(column.length);
+            ensure(column.length);
+            System.arraycopy(column.buffer, 0, buffer, length, column.length);
+            length += column.length;
+            column.length = 0;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+    }
+
+    private static final class ColumnReader {
+        private final byte[] buffer;
+        private final int limit;
+        private int position;
+
+        private ColumnReader(byte[] buffer) {
+            this(buffer, 0, buffer.length);
+        }
+
+        private ColumnReader(byte[] buffer, int position, int limit) {
+            this.buffer = buffer;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        private int remaining() {
+            return limit - position;
+        }
+
+        private int readByte() {
+            if (position >= limit) {
+                throw new IndexOutOfBoundsException();
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        private int readInt() {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        private long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private void skip(int bytes) {
+            if (bytes < 0 || bytes > remaining()) {
+                throw new IndexOutOfBoundsException();
+            }
+            position += bytes;
+        }
+
+        // 读取长度前缀，返回该列的读取器并跳过它
+        private ColumnReader column() {
+            int length = (int) readVarLong();
+            ColumnReader column = new ColumnReader(buffer, position, position + length);
+            position += length;
+            return column;
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.model.UserPresence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.BatchUpdateException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// 在场信息的内存权威存储：每个用户只保留最新的位置、区域和状态，按空间和区域建索引
+// 数据库只作为持久化落点，后台线程定期把变更过的用户合并成批量upsert写入user_presences
+@Service
+public class PresenceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceStore.class);
+
+    // 用户所在区域变化（包括换空间和离开空间）时回调，在调用move/remove的线程中执行
+    public interface ZoneListener {
+        void zoneChanged(Long userId, Long fromSpaceId, Long fromZoneId, Long toSpaceId, Long toZoneId);
+    }
+
+    // user_id上没有唯一约束，先批量UPDATE，没有命中的再批量INSERT
+    private static final String UPDATE_SQL =
+            "UPDATE user_presences SET space_id = ?, zone_id = ?, x = ?, y = ?, status = ?, last_active = ? WHERE user_id = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO user_presences (space_id, zone_id, x, y, status, last_active, user_id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM user_presences WHERE user_id = ?";
+    private static final String LOAD_SQL =
+            "SELECT user_id, space_id, zone_id, x, y, status, last_active FROM user_presences WHERE status <> ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.presence.flush-interval-ms:1000}")
+    private long flushIntervalMillis = 1000;
+
+    @Value("${app.presence.flush-batch-size:500}")
+    private int flushBatchSize = 500;
+
+    // 用户ID -> 在场信息
+    private final Map<Long, Entry> presences = new ConcurrentHashMap<>();
+    // 空间ID/区域ID -> 用户ID
+    private final Map<Long, Set<Long>> spaceMembers = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Long>> zoneMembers = new ConcurrentHashMap<>();
+    // 空间ID/区域ID -> 未离线人数，随移动和状态变化增减，计数为0时移除
+    private final Map<Long, Integer> spaceCounts = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> zoneCounts = new ConcurrentHashMap<>();
+    // 等待写入和等待删除的用户
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<Long> removed = ConcurrentHashMap.newKeySet();
+    private final List<ZoneListener> zoneListeners = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        reload(spaceId -> true);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "presence-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 停止时把剩余变更写完
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    public void onZoneChange(ZoneListener listener) {
+        zoneListeners.add(listener);
+    }
+
+    // 移动：覆盖该用户的位置和区域，状态恢复在线
+    public UserPresence move(Long userId, Long spaceId, Long zoneId, int x, int y) {
+        while (true) {
+            Entry entry = presences.computeIfAbsent(userId, Entry::new);
+            Long fromSpaceId;
+            Long fromZoneId;
+            UserPresence view;
+            synchronized (entry) {
+                if (entry.evicted) {
+                    continue;
+                }
+                fromSpaceId = entry.spaceId;
+                fromZoneId = entry.zoneId;
+                boolean wasCounted = entry.counted();
+                reindex(entry, spaceId, zoneId);
+                entry.x = x;
+                entry.y = y;
+                entry.status = UserPresence.STATUS_ONLINE;
+                recount(entry, wasCounted, fromSpaceId, fromZoneId);
+                entry.lastActive = LocalDateTime.now();
+                removed.remove(userId);
+                dirty.add(userId);
+                view = entry.view();
+            }
+            notifyZoneChange(userId, fromSpaceId, fromZoneId, spaceId, zoneId);
+            return view;
+        }
+    }
+
+    // 只修改状态；不在内存中的用户要么没有记录，要么已经离线
+    public void updateStatus(Long userId, String status) {
+        Entry entry = presences.get(userId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.evicted || status.equals(entry.status)) {
+                return;
+            }
+            boolean wasCounted = entry.counted();
+            entry.status = status;
+            recount(entry, wasCounted, entry.spaceId, entry.zoneId);
+            dirty.add(userId);
+        }
+    }
+
+    // 用户离开空间：立即从内存移除，记录在下一次写入时删除
+    public void remove(Long userId) {
+        Entry entry = presences.remove(userId);
+        if (entry != null) {
+            Long fromSpaceId;
+            Long fromZoneId;
+            synchronized (entry) {
+                fromSpaceId = entry.spaceId;
+                fromZoneId = entry.zoneId;
+                boolean wasCounted = entry.counted();
+                entry.evicted = true;
+                reindex(entry, null, null);
+                recount(entry, wasCounted, fromSpaceId, fromZoneId);
+            }
+            notifyZoneChange(userId, fromSpaceId, fromZoneId, null, null);
+        }
+        dirty.remove(userId);
+        removed.add(userId);
+    }
+
+    // 空间换归属：把该空间的用户移出内存（不删除数据库记录，不触发区域事件），未写入的变更先写入，返回移出的在场信息
+    public List<UserPresence> release(Long spaceId) {
+        return detach(spaceId, true);
+    }
+
+    // 空间已删除：把该空间的用户移出内存，数据库记录已随空间级联删除，未写入的变更直接丢弃
+    public List<UserPresence> evictSpace(Long spaceId) {
+        return detach(spaceId, false);
+    }
+
+    private List<UserPresence> detach(Long spaceId, boolean writePending) {
+        List<UserPresence> released = new ArrayList<>();
+        Set<Long> userIds = spaceMembers.get(spaceId);
+        if (userIds == null) {
+            return released;
+        }
+        List<Entry> batch = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (Long userId : new ArrayList<>(userIds)) {
+            Entry entry = presences.get(userId);
+            if (entry == null) {
+                continue;
+            }
+            synchronized (entry) {
+                if (entry.evicted || !spaceId.equals(entry.spaceId)) {
+                    continue;
+                }
+                released.add(entry.view());
+                if (dirty.remove(userId) && writePending) {
+                    batch.add(entry);
+                    rows.add(entry.row());
+                }
+                boolean wasCounted = entry.counted();
+                Long fromZoneId = entry.zoneId;
+                entry.evicted = true;
+                reindex(entry, null, null);
+                recount(entry, wasCounted, spaceId, fromZoneId);
+                presences.remove(userId, entry);
+            }
+        }
+        upsert(batch, rows);
+        return released;
+    }
+
+    // 接管其他节点交来的在场信息；已经有更新状态的用户（交接前就移动过）保持不变，数据库已由旧节点写入
+    public void adopt(Collection<UserPresence> handedOver) {
+        for (UserPresence presence : handedOver) {
+            Entry entry = presences.computeIfAbsent(presence.getUserId(), Entry::new);
+            synchronized (entry) {
+                if (entry.evicted || entry.spaceId != null) {
+                    continue;
+                }
+                reindex(entry, presence.getSpaceId(), presence.getZoneId());
+                entry.x = presence.getX();
+                entry.y = presence.getY();
+                entry.status = presence.getStatus();
+                entry.lastActive = presence.getLastActive() != null ? presence.getLastActive() : LocalDateTime.now();
+                recount(entry, false, null, null);
+            }
+        }
+    }
+
+    // 只在区域真正变化时回调；没有区域的用户换空间不算区域变化
+    private void notifyZoneChange(Long userId, Long fromSpaceId, Long fromZoneId, Long toSpaceId, Long toZoneId) {
+        if (Objects.equals(fromZoneId, toZoneId)) {
+            return;
+        }
+        for (ZoneListener listener : zoneListeners) {
+            try {
+                listener.zoneChanged(userId, fromSpaceId, fromZoneId, toSpaceId, toZoneId);
+            } catch (Exception e) {
+                logger.warn("Zone listener failed for user {}", userId, e);
+            }
+        }
+    }
+
+    public UserPresence get(Long userId) {
+        Entry entry = presences.get(userId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.evicted ? null : entry.view();
+        }
+    }
+
+    // 空间/区域中未离线的用户
+    public List<UserPresence> getUsersInSpace(Long spaceId) {
+        return viewsOf(spaceMembers.get(spaceId));
+    }
+
+    public List<UserPresence> getUsersInZone(Long zoneId) {
+        return viewsOf(zoneMembers.get(zoneId));
+    }
+
+    // 空间/区域中未离线的人数，不复制在场信息
+    public int countInSpace(Long spaceId) {
+        return spaceCounts.getOrDefault(spaceId, 0);
+    }
+
+    public int countInZone(Long zoneId) {
+        return zoneCounts.getOrDefault(zoneId, 0);
+    }
+
+    // 有人的空间：空间ID -> 未离线人数，只读视图
+    public Map<Long, Integer> getSpaceCounts() {
+        return Collections.unmodifiableMap(spaceCounts);
+    }
+
+    // 所有未离线的用户，供在场回收启动时加载
+    public List<UserPresence> getActivePresences() {
+        return viewsOf(presences.keySet());
+    }
+
+    boolean isDirty(Long userId) {
+        return dirty.contains(userId);
+    }
+
+    // 后台线程：删除、批量upsert，已写入的离线用户从内存中淘汰
+    void flush() {
+        try {
+            if (!removed.isEmpty()) {
+                List<Object[]> deletes = new ArrayList<>();
+                for (Iterator<Long> it = removed.iterator(); it.hasNext(); ) {
+                    deletes.add(new Object[]{it.next()});
+                    it.remove();
+                }
+                try {
+                    jdbcTemplate.batchUpdate(DELETE_SQL, deletes);
+                } catch (Exception e) {
+                    // 删除失败不影响本轮的写入，下一轮重试
+                    for (Object[] delete : deletes) {
+                        removed.add((Long) delete[0]);
+                    }
+                    logger.warn("Presence delete failed", e);
+                }
+            }
+            List<Entry> batch = new ArrayList<>();
+            List<Object[]> rows = new ArrayList<>();
+            for (Iterator<Long> it = dirty.iterator(); it.hasNext(); ) {
+                Long userId = it.next();
+                // 先移出脏集合再读取，期间的新变更会重新标记，下一轮写入
+                it.remove();
+                Entry entry = presences.get(userId);
+                if (entry == null) {
+                    continue;
+                }
+                synchronized (entry) {
+                    if (entry.evicted) {
+                        continue;
+                    }
+                    rows.add(entry.row());
+                }
+                batch.add(entry);
+                if (rows.size() >= flushBatchSize) {
+                    upsert(batch, rows);
+                    batch.clear();
+                    rows.clear();
+                }
+            }
+            upsert(batch, rows);
+        } catch (Exception e) {
+            logger.warn("Presence flush failed", e);
+        }
+    }
+
+    // 批量写入中有行出错时逐行重试，只有出错的行受影响；不抛出异常，后续批次照常写入
+    private void upsert(List<Entry> batch, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+            List<Object[]> inserts = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    inserts.add(rows.get(i));
+                }
+            }
+            if (!inserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+            }
+        } catch (Exception e) {
+            if (e instanceof DataIntegrityViolationException || e.getCause() instanceof BatchUpdateException) {
+                logger.warn("Batch presence upsert of {} rows failed, retrying row by row", rows.size(), e);
+                upsertRowByRow(batch, rows);
+            } else {
+                // 数据库不可用等整体失败：全部重新标记，下一轮重试
+                logger.warn("Batch presence upsert of {} rows failed, retrying next flush", rows.size(), e);
+                for (Entry entry : batch) {
+                    dirty.add(entry.userId);
+                }
+            }
+            return;
+        }
+        for (Entry entry : batch) {
+            evictIfOffline(entry);
+        }
+    }
+
+    // 违反约束的行（例如空间已删除、用户不存在）重试也不会成功，记录后丢弃，等该用户下次变更再写；
+    // 其他错误（连接中断等）把这一行和剩余的行重新标记，下一轮重试
+    private void upsertRowByRow(List<Entry> batch, List<Object[]> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            Entry entry = batch.get(i);
+            Object[] row = rows.get(i);
+            try {
+                if (jdbcTemplate.update(UPDATE_SQL, row) == 0) {
+                    jdbcTemplate.update(INSERT_SQL, row);
+                }
+            } catch (DataIntegrityViolationException e) {
+                logger.warn("Dropping presence of user {} in space {} that violates a constraint: {}",
+                        entry.userId, row[0], e.getMostSpecificCause().getMessage());
+                continue;
+            } catch (Exception e) {
+                logger.warn("Presence upsert failed, retrying {} rows next flush", rows.size() - i, e);
+                for (int j = i; j < batch.size(); j++) {
+                    dirty.add(batch.get(j).userId);
+                }
+                return;
+            }
+            evictIfOffline(entry);
+        }
+    }
+
+    private void evictIfOffline(Entry entry) {
+        synchronized (entry) {
+            if (!UserPresence.STATUS_OFFLINE.equals(entry.status) || dirty.contains(entry.userId)) {
+                return;
+            }
+            entry.evicted = true;
+            reindex(entry, null, null);
+            presences.remove(entry.userId, entry);
+        }
+    }
+
+    private List<UserPresence> viewsOf(Set<Long> userIds) {
+        List<UserPresence> views = new ArrayList<>();
+        if (userIds == null) {
+            return views;
+        }
+        for (Long userId : userIds) {
+            Entry entry = presences.get(userId);
+            if (entry == null) {
+                continue;
+            }
+            synchronized (entry) {
+                if (!entry.evicted && !UserPresence.STATUS_OFFLINE.equals(entry.status)) {
+                    views.add(entry.view());
+                }
+            }
+        }
+        return views;
+    }
+
+    // 调用方持有entry的锁；按修改前后是否计入人数调整空间和区域计数
+    private void recount(Entry entry, boolean wasCounted, Long fromSpaceId, Long fromZoneId) {
+        boolean counted = entry.counted();
+        if (wasCounted == counted && Objects.equals(fromSpaceId, entry.spaceId) && Objects.equals(fromZoneId, entry.zoneId)) {
+            return;
+        }
+        if (wasCounted) {
+            adjust(spaceCounts, fromSpaceId, -1);
+            adjust(zoneCounts, fromZoneId, -1);
+        }
+        if (counted) {
+            adjust(spaceCounts, entry.spaceId, 1);
+            adjust(zoneCounts, entry.zoneId, 1);
+        }
+    }
+
+    private static void adjust(Map<Long, Integer> counts, Long key, int delta) {
+        if (key != null) {
+            counts.merge(key, delta, (count, d) -> count + d == 0 ? null : count + d);
+        }
+    }
+
+    // 调用方持有entry的锁
+    private void reindex(Entry entry, Long spaceId, Long zoneId) {
+        if (!Objects.equals(entry.spaceId, spaceId)) {
+            unindex(spaceMembers, entry.spaceId, entry.userId);
+            index(spaceMembers, spaceId, entry.userId);
+            entry.spaceId = spaceId;
+        }
+        if (!Objects.equals(entry.zoneId, zoneId)) {
+            unindex(zoneMembers, entry.zoneId, entry.userId);
+            index(zoneMembers, zoneId, entry.userId);
+            entry.zoneId = zoneId;
+        }
+    }
+
+    private static void index(Map<Long, Set<Long>> members, Long key, Long userId) {
+        if (key != null) {
+            members.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+    }
+
+    private static void unindex(Map<Long, Set<Long>> members, Long key, Long userId) {
+        if (key == null) {
+            return;
+        }
+        members.computeIfPresent(key, (k, users) -> {
+            users.remove(userId);
+            return users.isEmpty() ? null : users;
+        });
+    }
+
+    // 从数据库加载指定空间中未离线的记录，内存中已有的用户保持不变；启动时加载全部，接管空间时加载接管的部分
+    public void reload(Predicate<Long> spaceFilter) {
+        try {
+            int[] loaded = new int[1];
+            jdbcTemplate.query(LOAD_SQL, rs -> {
+                Long spaceId = rs.getLong("space_id");
+                if (!spaceFilter.test(spaceId)) {
+                    return;
+                }
+                Entry entry = new Entry(rs.getLong("user_id"));
+                // 先持有锁再放入，并发的移动会等待加载完成后覆盖
+                synchronized (entry) {
+                    if (presences.putIfAbsent(entry.userId, entry) != null) {
+                        return;
+                    }
+                    reindex(entry, spaceId, rs.getObject("zone_id", Long.class));
+                    entry.x = rs.getInt("x");
+                    entry.y = rs.getInt("y");
+                    entry.status = rs.getString("status");
+                    Timestamp lastActive = rs.getTimestamp("last_active");
+                    entry.lastActive = lastActive != null ? lastActive.toLocalDateTime() : null;
+                    recount(entry, false, null, null);
+                }
+                loaded[0]++;
+            }, UserPresence.STATUS_OFFLINE);
+            logger.info("Loaded {} active presences", loaded[0]);
+        } catch (Exception e) {
+            logger.warn("Failed to load presences", e);
+        }
+    }
+
+    private static final class Entry {
+        private final Long userId;
+        private Long spaceId;
+        private Long zoneId;
+        private int x;
+        private int y;
+        private String status = UserPresence.STATUS_ONLINE;
+        private LocalDateTime lastActive;
+        // 已从内存移除，持有旧引用的调用方需要重新获取
+        private boolean evicted;
+
+        private Entry(Long userId) {
+            this.userId = userId;
+        }
+
+        // 是否计入空间/区域人数
+        private boolean counted() {
+            return !evicted && spaceId != null && !UserPresence.STATUS_OFFLINE.equals(status);
+        }
+
+        // 返回副本，调用方在锁外读取
+        private UserPresence view() {
+            UserPresence presence = new UserPresence();
+            presence.setUserId(userId);
+            presence.setSpaceId(spaceId);
+            presence.setZoneId(zoneId);
+            presence.setX(x);
+            presence.setY(y);
+            presence.setStatus(status);
+            presence.setLastActive(lastActive);
+            return presence;
+        }
+
+        private Object[] row() {
+            return new Object[]{spaceId, zoneId, x, y, status,
+                    lastActive != null ? Timestamp.valueOf(lastActive) : null, userId};
+        }
+    }
+}
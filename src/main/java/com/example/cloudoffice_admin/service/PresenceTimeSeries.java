@@ -0,0 +1,296 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.ZoneOccupancyBucket;
+import com.example.cloudoffice_admin.model.UserPresence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 在场时序存储：区域进出事件和定期的位置采样追加写入本地按时间分区的列式段文件，
+// 区域热力图按区间聚合这些文件，不查询数据库（user_presences只保存每个用户的最新一行）
+// 事件先写入内存缓冲，后台线程定期把缓冲按分区追加为一个块；超过保留天数的分区文件整个删除
+// 空间归属模式下每个节点只记录自己负责的空间
+@Service
+public class PresenceTimeSeries {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceTimeSeries.class);
+
+    // 单次查询最多返回的区间数，超过时从结束时间往前截断
+    private static final int MAX_BUCKETS = 2000;
+
+    private static final String FILE_PREFIX = "presence-";
+    private static final String FILE_SUFFIX = ".seg";
+    // 分区文件名使用UTC的分区起始时间
+    private static final DateTimeFormatter PARTITION_NAME =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmm").withZone(ZoneOffset.UTC);
+
+    @Autowired
+    private PresenceStore presenceStore;
+
+    @Value("${app.analytics.timeseries.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${app.analytics.timeseries.dir:data/presence-timeseries}")
+    private String directory = "data/presence-timeseries";
+
+    // 位置采样间隔，热力图的平均人数和峰值人数以采样为准
+    @Value("${app.analytics.timeseries.sample-ms:15000}")
+    private long sampleMillis = 15000;
+
+    @Value("${app.analytics.timeseries.flush-ms:5000}")
+    private long flushMillis = 5000;
+
+    @Value("${app.analytics.timeseries.partition-minutes:60}")
+    private int partitionMinutes = 60;
+
+    @Value("${app.analytics.timeseries.retention-days:30}")
+    private int retentionDays = 30;
+
+    private Path root;
+    private PresenceSegment.Columns buffer = new PresenceSegment.Columns(1024);
+    // 保证同一时刻只有一个线程追加段文件
+    private final Object writeLock = new Object();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        root = Paths.get(directory);
+        Files.createDirectories(root);
+        presenceStore.onZoneChange(this::zoneChanged);
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "presence-timeseries");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> sample(System.currentTimeMillis()), sampleMillis, sampleMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 停止时把缓冲写完
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            flushQuietly();
+        }
+    }
+
+    private void zoneChanged(Long userId, Long fromSpaceId, Long fromZoneId, Long toSpaceId, Long toZoneId) {
+        long now = System.currentTimeMillis();
+        if (fromZoneId != null && fromSpaceId != null) {
+            record(PresenceSegment.LEAVE, now, userId, fromSpaceId, fromZoneId, 0, 0);
+        }
+        if (toZoneId != null && toSpaceId != null) {
+            record(PresenceSegment.ENTER, now, userId, toSpaceId, toZoneId, 0, 0);
+        }
+    }
+
+    // 一轮采样：所有未离线用户的位置和区域，同一轮使用同一个时间
+    void sample(long now) {
+        try {
+            for (UserPresence presence : presenceStore.getActivePresences()) {
+                if (presence.getSpaceId() != null) {
+                    record(PresenceSegment.SAMPLE, now, presence.getUserId(), presence.getSpaceId(),
+                            presence.getZoneId(), presence.getX(), presence.getY());
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Presence sampling failed", e);
+        }
+    }
+
+    synchronized void record(byte kind, long time, Long userId, Long spaceId, Long zoneId, int x, int y) {
+        buffer.add(time, kind, userId, spaceId, zoneId != null ? zoneId + 1 : 0, x, y);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.warn("Presence time series flush failed", e);
+        }
+    }
+
+    // 缓冲中的事件按分区追加为块，然后删除过期分区
+    void flush() throws IOException {
+        synchronized (writeLock) {
+            PresenceSegment.Columns pending;
+            synchronized (this) {
+                if (buffer.size() == 0) {
+                    pending = null;
+                } else {
+                    pending = buffer;
+                    buffer = new PresenceSegment.Columns(1024);
+                }
+            }
+            if (pending != null) {
+                Map<Long, List<Integer>> partitions = new TreeMap<>();
+                for (int row = 0; row < pending.size(); row++) {
+                    partitions.computeIfAbsent(partitionOf(pending.time(row)), p -> new ArrayList<>()).add(row);
+                }
+                for (Map.Entry<Long, List<Integer>> partition : partitions.entrySet()) {
+                    int[] rows = partition.getValue().stream().mapToInt(Integer::intValue).toArray();
+                    PresenceSegment.append(fileOf(partition.getKey()), PresenceSegment.encode(pending, rows));
+                }
+            }
+            expire(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(retentionDays));
+        }
+    }
+
+    private void expire(long before) throws IOException {
+        for (Map.Entry<Long, Path> partition : partitions().entrySet()) {
+            if (partition.getKey() + partitionMillis() <= before) {
+                Files.deleteIfExists(partition.getValue());
+            }
+        }
+    }
+
+    // 区域热力图：[from, to)按interval分成区间，返回每个区间内有人出现过的区域，按区间和区域ID排序
+    public List<ZoneOccupancyBucket> getZoneHeatmap(Long spaceId, LocalDateTime from, LocalDateTime to, int intervalMinutes) {
+        ZoneId zone = ZoneId.systemDefault();
+        return getZoneHeatmap(spaceId, from.atZone(zone).toInstant().toEpochMilli(),
+                to.atZone(zone).toInstant().toEpochMilli(), TimeUnit.MINUTES.toMillis(Math.max(1, intervalMinutes)));
+    }
+
+    List<ZoneOccupancyBucket> getZoneHeatmap(Long spaceId, long from, long to, long interval) {
+        if (!enabled || from >= to) {
+            return new ArrayList<>();
+        }
+        from = Math.max(from, to - interval * MAX_BUCKETS);
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.warn("Presence time series flush failed", e);
+        }
+
+        long start = from;
+        // 区间起点 -> 区域ID -> 聚合
+        Map<Long, Map<Long, ZoneAggregate>> buckets = new TreeMap<>();
+        // 区间起点 -> 该空间的采样时间
+        Map<Long, Set<Long>> rounds = new HashMap<>();
+        PresenceSegment.RowVisitor visitor = (time, kind, userId, rowSpaceId, zoneId) -> {
+            if (rowSpaceId != spaceId || time < start || time >= to) {
+                return;
+            }
+            long bucket = start + (time - start) / interval * interval;
+            if (kind == PresenceSegment.SAMPLE) {
+                rounds.computeIfAbsent(bucket, b -> new HashSet<>()).add(time);
+            }
+            if (zoneId == 0 || kind == PresenceSegment.LEAVE) {
+                return;
+            }
+            ZoneAggregate aggregate = buckets.computeIfAbsent(bucket, b -> new TreeMap<>())
+                    .computeIfAbsent(zoneId - 1, z -> new ZoneAggregate());
+            aggregate.visitors.add(userId);
+            if (kind == PresenceSegment.ENTER) {
+                aggregate.entries++;
+            } else {
+                aggregate.samples++;
+                aggregate.perRound.merge(time, 1, Integer::sum);
+            }
+        };
+        for (Map.Entry<Long, Path> partition : partitions().entrySet()) {
+            if (partition.getKey() >= to || partition.getKey() + partitionMillis() <= from) {
+                continue;
+            }
+            try {
+                PresenceSegment.scan(partition.getValue(), from, to, visitor);
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable presence segment {}", partition.getValue(), e);
+            }
+        }
+
+        List<ZoneOccupancyBucket> heatmap = new ArrayList<>();
+        for (Map.Entry<Long, Map<Long, ZoneAggregate>> bucket : buckets.entrySet()) {
+            int sampleRounds = rounds.getOrDefault(bucket.getKey(), Set.of()).size();
+            LocalDateTime bucketStart = LocalDateTime.ofInstant(Instant.ofEpochMilli(bucket.getKey()), ZoneId.systemDefault());
+            for (Map.Entry<Long, ZoneAggregate> zone : bucket.getValue().entrySet()) {
+                ZoneAggregate aggregate = zone.getValue();
+                ZoneOccupancyBucket cell = new ZoneOccupancyBucket();
+                cell.setZoneId(zone.getKey());
+                cell.setStart(bucketStart);
+                cell.setAverageOccupants(sampleRounds > 0 ? (double) aggregate.samples / sampleRounds : 0);
+                int peak = 0;
+                for (int count : aggregate.perRound.values()) {
+                    peak = Math.max(peak, count);
+                }
+                cell.setPeakOccupants(peak);
+                cell.setVisitors(aggregate.visitors.size());
+                cell.setEntries(aggregate.entries);
+                heatmap.add(cell);
+            }
+        }
+        return heatmap;
+    }
+
+    private long partitionMillis() {
+        return TimeUnit.MINUTES.toMillis(Math.max(1, partitionMinutes));
+    }
+
+    private long partitionOf(long time) {
+        return Math.floorDiv(time, partitionMillis()) * partitionMillis();
+    }
+
+    private Path fileOf(long partition) {
+        return root.resolve(FILE_PREFIX + PARTITION_NAME.format(Instant.ofEpochMilli(partition)) + FILE_SUFFIX);
+    }
+
+    // 分区起始时间 -> 段文件
+    private Map<Long, Path> partitions() {
+        Map<Long, Path> partitions = new TreeMap<>();
+        if (root == null) {
+            return partitions;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String stamp = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length());
+                try {
+                    partitions.put(LocalDateTime.parse(stamp, PARTITION_NAME).toInstant(ZoneOffset.UTC).toEpochMilli(), file);
+                } catch (DateTimeParseException e) {
+                    logger.warn("Ignoring unexpected file {} in presence time series directory", file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Listing presence time series directory failed", e);
+        }
+        return partitions;
+    }
+
+    private static final class ZoneAggregate {
+        private long samples;
+        private int entries;
+        private final Set<Long> visitors = new HashSet<>();
+        // 采样时间 -> 该轮在区域内的人数
+        private final Map<Long, Integer> perRound = new HashMap<>();
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 一个空间内的增量邻近分组：距离不超过radius的用户相连，连通分量达到最小人数即为一个对话组
+// 格子边长等于radius，相连的用户一定在相邻的3x3格子内；每次更新只对移动者自己、新旧位置半径内的用户
+// 以及这些用户原来所在的连通分量重新做并查集，其他分量的连接不会变化，保持不变
+// 非线程安全：只在空间节拍线程中使用
+final class ProximityClusterer {
+
+    private final int radius;
+    private final long radiusSquared;
+    private final int minGroupSize;
+
+    // 用户ID -> 位置和所在连通分量
+    private final Map<Long, Member> members = new HashMap<>();
+    // 格子 -> 格子内的用户
+    private final Map<Long, List<Member>> cells = new HashMap<>();
+    // 组ID -> 达到最小人数的连通分量
+    private final Map<Long, Component> groups = new HashMap<>();
+    private long nextGroupId = 1;
+    // 本次更新的标记，避免每次更新清空成员上的标记
+    private int epoch;
+
+    ProximityClusterer(int radius, int minGroupSize) {
+        this.radius = Math.max(1, radius);
+        this.radiusSquared = (long) this.radius * this.radius;
+        this.minGroupSize = Math.max(2, minGroupSize);
+    }
+
+    // 应用一个节拍的移动和离开，返回成员发生变化的组和解散的组
+    Changes update(List<PositionUpdateMessage> moves, List<Long> removed) {
+        epoch++;
+        List<Member> dirty = new ArrayList<>();
+        Set<Component> expanded = new HashSet<>();
+
+        if (removed != null) {
+            for (Long userId : removed) {
+                Member member = members.remove(userId);
+                if (member != null) {
+                    removeFromCell(member);
+                    // 离开者所在的分量可能因此断开
+                    expandComponent(member.component, dirty, expanded);
+                }
+            }
+        }
+        for (PositionUpdateMessage move : moves) {
+            Member member = members.get(move.getUserId());
+            if (member == null) {
+                member = new Member(move.getUserId());
+                members.put(member.userId, member);
+                member.component = new Component(member);
+            } else {
+                // 原位置半径内失去的连接
+                expandWithin(member, dirty, expanded);
+                removeFromCell(member);
+            }
+            member.x = move.getX();
+            member.y = move.getY();
+            member.cell = cellKey(Math.floorDiv(member.x, radius), Math.floorDiv(member.y, radius));
+            cells.computeIfAbsent(member.cell, k -> new ArrayList<>()).add(member);
+            // 新位置半径内新增的连接
+            expandComponent(member.component, dirty, expanded);
+            expandWithin(member, dirty, expanded);
+        }
+        // 离开者已不在members中，不参与重新分组
+        dirty.removeIf(member -> members.get(member.userId) != member);
+        return regroup(dirty, expanded);
+    }
+
+    Long groupOf(Long userId) {
+        Member member = members.get(userId);
+        return member != null && member.component.groupId != 0 ? member.component.groupId : null;
+    }
+
+    // 当前所有组：组ID -> 成员
+    Map<Long, List<Long>> groups() {
+        Map<Long, List<Long>> result = new LinkedHashMap<>();
+        for (Component group : groups.values()) {
+            result.put(group.groupId, group.userIds());
+        }
+        return result;
+    }
+
+    int size() {
+        return members.size();
+    }
+
+    // 对受影响的用户重新做并查集，再与原来的组对比
+    private Changes regroup(List<Member> dirty, Set<Component> expanded) {
+        int count = dirty.size();
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+            dirty.get(i).index = i;
+        }
+        for (int i = 0; i < count; i++) {
+            Member member = dirty.get(i);
+            long cx = member.cell >> 32;
+            long cy = (int) member.cell;
+            for (long dx = -1; dx <= 1; dx++) {
+                for (long dy = -1; dy <= 1; dy++) {
+                    List<Member> cell = cells.get(cellKey(cx + dx, cy + dy));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Member other : cell) {
+                        // 只连受影响集合内的用户：集合外的用户与集合内的用户之间不可能相连
+                        if (other.mark == epoch && other.index > i && within(member, other)) {
+                            union(parent, i, other.index);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Component> components = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Member member = dirty.get(i);
+            components.computeIfAbsent(find(parent, i), k -> new Component()).members.add(member);
+        }
+
+        // 新分量沿用与其重叠最多的旧组ID，保证组ID在小幅变动时保持稳定；组分裂时大的一半先选
+        List<Component> ordered = new ArrayList<>(components.values());
+        ordered.sort((a, b) -> Integer.compare(b.members.size(), a.members.size()));
+        Changes changes = new Changes();
+        Set<Long> claimed = new HashSet<>();
+        for (Component component : ordered) {
+            if (component.members.size() < minGroupSize) {
+                continue;
+            }
+            Map<Long, Integer> overlap = new HashMap<>();
+            for (Member member : component.members) {
+                if (member.component.groupId != 0) {
+                    overlap.merge(member.component.groupId, 1, Integer::sum);
+                }
+            }
+            long groupId = 0;
+            int best = 0;
+            for (Map.Entry<Long, Integer> entry : overlap.entrySet()) {
+                if (entry.getValue() > best && !claimed.contains(entry.getKey())) {
+                    groupId = entry.getKey();
+                    best = entry.getValue();
+                }
+            }
+            Component previous = groupId != 0 ? groups.get(groupId) : null;
+            if (groupId == 0) {
+                groupId = nextGroupId++;
+            }
+            claimed.add(groupId);
+            component.groupId = groupId;
+            if (previous == null || previous.members.size() != component.members.size() || best != component.members.size()) {
+                changes.changed.put(groupId, component.userIds());
+            }
+        }
+        for (Component old : expanded) {
+            if (old.groupId != 0 && !claimed.contains(old.groupId)) {
+                changes.dissolved.add(old.groupId);
+                groups.remove(old.groupId);
+            }
+        }
+        for (Component component : ordered) {
+            for (Member member : component.members) {
+                member.component = component;
+            }
+            if (component.groupId != 0) {
+                groups.put(component.groupId, component);
+            }
+        }
+        return changes;
+    }
+
+    // 只有与移动者距离在半径内的用户的连接会变化，把这些用户所在的分量加入受影响集合
+    private void expandWithin(Member mover, List<Member> dirty, Set<Component> expanded) {
+        long cx = mover.cell >> 32;
+        long cy = (int) mover.cell;
+        for (long dx = -1; dx <= 1; dx++) {
+            for (long dy = -1; dy <= 1; dy++) {
+                List<Member> cell = cells.get(cellKey(cx + dx, cy + dy));
+                if (cell == null) {
+                    continue;
+                }
+                for (Member member : cell) {
+                    if (member != mover && within(mover, member)) {
+                        expandComponent(member.component, dirty, expanded);
+                    }
+                }
+            }
+        }
+    }
+
+    // 把整个连通分量加入受影响集合
+    private void expandComponent(Component component, List<Member> dirty, Set<Component> expanded) {
+        if (!expanded.add(component)) {
+            return;
+        }
+        for (Member member : component.members) {
+            if (member.mark != epoch) {
+                member.mark = epoch;
+                dirty.add(member);
+            }
+        }
+    }
+
+    private void removeFromCell(Member member) {
+        List<Member> cell = cells.get(member.cell);
+        if (cell == null) {
+            return;
+        }
+        // 交换删除，格子内顺序无关
+        int index = cell.indexOf(member);
+        if (index >= 0) {
+            Member last = cell.remove(cell.size() - 1);
+            if (last != member) {
+                cell.set(index, last);
+            }
+        }
+        if (cell.isEmpty()) {
+            cells.remove(member.cell);
+        }
+    }
+
+    private boolean within(Member a, Member b) {
+        long dx = a.x - b.x;
+        long dy = a.y - b.y;
+        return dx * dx + dy * dy <= radiusSquared;
+    }
+
+    private static long cellKey(long column, long row) {
+        return (column << 32) | (row & 0xffffffffL);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[rootA] = rootB;
+        }
+    }
+
+    // 一次更新的结果：成员变化或新建的组（组ID -> 成员），以及解散的组
+    static final class Changes {
+        final Map<Long, List<Long>> changed = new LinkedHashMap<>();
+        final List<Long> dissolved = new ArrayList<>();
+
+        boolean isEmpty() {
+            return changed.isEmpty() && dissolved.isEmpty();
+        }
+    }
+
+    private static final class Member {
+        private final long userId;
+        private int x;
+        private int y;
+        private long cell;
+        private Component component;
+        private int mark;
+        private int index;
+
+        private Member(long userId) {
+            this.userId = userId;
+        }
+    }
+
+    // 连通分量；groupId为0表示人数不足，不算组
+    private static final class Component {
+        private final List<Member> members = new ArrayList<>();
+        private long groupId;
+
+        private Component() {
+        }
+
+        private Component(Member member) {
+            members.add(member);
+        }
+
+        private List<Long> userIds() {
+            List<Long> userIds = new ArrayList<>(members.size());
+            for (Member member : members) {
+                userIds.add(member.userId);
+            }
+            return userIds;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.ProximityGroupMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 自动对话组：在每个节拍的位置增量上增量维护邻近分组，组成员变化时发布到空间主题
+// 集群模式下每个节点都有完整的位置增量，各自计算并只发给本地订阅者
+@Service
+public class ProximityGroupService {
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Value("${app.realtime.groups.enabled:true}")
+    private boolean enabled = true;
+
+    // 两个用户距离不超过该值（像素）即相连
+    @Value("${app.realtime.groups.radius:96}")
+    private int radius = 96;
+
+    // 连通分量达到该人数才算一个组
+    @Value("${app.realtime.groups.min-size:2}")
+    private int minSize = 2;
+
+    // 空间ID -> 分组状态，只在节拍线程中访问
+    private final Map<Long, ProximityClusterer> clusterers = new ConcurrentHashMap<>();
+
+    // 由节拍线程在每帧增量发送后调用
+    public void apply(Long spaceId, long tick, List<PositionUpdateMessage> moves, List<Long> removed) {
+        if (!enabled) {
+            return;
+        }
+        ProximityClusterer clusterer = clusterers.computeIfAbsent(spaceId, id -> new ProximityClusterer(radius, minSize));
+        ProximityClusterer.Changes changes = clusterer.update(moves, removed);
+        if (changes.isEmpty()) {
+            return;
+        }
+        ProximityGroupMessage message = new ProximityGroupMessage();
+        message.setSpaceId(spaceId);
+        message.setTick(tick);
+        message.setTimestamp(new Date());
+        List<ProximityGroupMessage.Group> groups = new ArrayList<>(changes.changed.size());
+        for (Map.Entry<Long, List<Long>> entry : changes.changed.entrySet()) {
+            ProximityGroupMessage.Group group = new ProximityGroupMessage.Group();
+            group.setGroupId(entry.getKey());
+            group.setMembers(entry.getValue());
+            groups.add(group);
+        }
+        message.setGroups(groups);
+        message.setDissolved(changes.dissolved);
+        sessionManager.publishToLocalSpace(spaceId, WebSocketSessionManager.SPACE_GROUPS, message);
+    }
+
+    // 空间已删除或长时间没人，丢弃分组状态；由节拍线程调用
+    public void drop(Long spaceId) {
+        clusterers.remove(spaceId);
+    }
+
+    // 用户所在的组，不在任何组中时返回null
+    public Long groupOf(Long spaceId, Long userId) {
+        ProximityClusterer clusterer = clusterers.get(spaceId);
+        return clusterer != null ? clusterer.groupOf(userId) : null;
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.MessageView;
+import com.example.cloudoffice_admin.model.Message;
+import com.example.cloudoffice_admin.repository.MessageRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 热点频道的最近消息缓存：每个频道一个环形缓冲区，保存最新的capacity条消息，频道历史的第一页直接从内存返回
+// 首次读取时从数据库加载一次，之后新消息、编辑和删除在事务提交后就地更新；缓存的是不可变的MessageView，不保存实体
+// 超过idle-seconds没有读取的频道由清理线程丢弃，频道数超过max-channels时丢弃最久没有读取的
+// 集群模式下其他节点的变化通过中继通知本节点丢弃该频道，下次读取时重新加载
+@Service
+public class RecentMessageCache {
+
+    // 与历史分页相同的顺序：时间倒序，同一时间按ID倒序
+    static final Comparator<MessageView> NEWEST_FIRST = Comparator.comparing(MessageView::getCreatedAt)
+            .thenComparing(MessageView::getId).reversed();
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    // 每个频道缓存的消息条数
+    @Value("${app.chat.recent-cache.capacity:100}")
+    private int capacity = 100;
+
+    @Value("${app.chat.recent-cache.max-channels:1000}")
+    private int maxChannels = 1000;
+
+    @Value("${app.chat.recent-cache.idle-seconds:600}")
+    private long idleSeconds = 600;
+
+    private final Map<Long, RecentMessages> channels = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void start() {
+        clusterRelay.on(ClusterRelay.TYPE_RECENT_MESSAGES, envelope -> channels.remove(clusterRelay.read(envelope, Long.class)));
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "recent-message-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleSeconds / 4);
+        sweeper.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    // 频道最新的limit条消息，按时间倒序；缓存不够limit条且不是频道的全部消息时返回null，由调用方查询数据库
+    public List<MessageView> latest(Long channelId, int limit) {
+        if (limit > capacity) {
+            return null;
+        }
+        RecentMessages recent = load(channelId);
+        synchronized (recent) {
+            recent.lastReadAt = System.currentTimeMillis();
+            return recent.latest(limit);
+        }
+    }
+
+    // 加载中的频道在同一个键上阻塞，提交后的更新会等加载完成后再应用，不会丢失也不会重复
+    private RecentMessages load(Long channelId) {
+        RecentMessages recent = channels.get(channelId);
+        if (recent != null) {
+            return recent;
+        }
+        if (channels.size() >= maxChannels) {
+            evictLeastRecentlyRead();
+        }
+        return channels.computeIfAbsent(channelId, id -> {
+            List<Message> newest = messageRepository.findLatest(id, Limit.of(capacity));
+            RecentMessages loaded = new RecentMessages(capacity, newest.size() < capacity);
+            for (int i = newest.size() - 1; i >= 0; i--) {
+                loaded.add(new MessageView(newest.get(i)));
+            }
+            return loaded;
+        });
+    }
+
+    // 新消息，在事务提交后加入已缓存的频道
+    public void added(Message message) {
+        publishAfterCommit(message);
+    }
+
+    // 消息被编辑或删除，在事务提交后替换缓存中的同一条消息
+    public void updated(Message message) {
+        publishAfterCommit(message);
+    }
+
+    // 频道被删除
+    public void dropped(Long channelId) {
+        AfterCommit.run(() -> {
+            channels.remove(channelId);
+            clusterRelay.relay(ClusterRelay.TYPE_RECENT_MESSAGES, channelId);
+        });
+    }
+
+    // 视图在调用方线程上立即生成，提交回调不引用实体
+    private void publishAfterCommit(Message message) {
+        MessageView view = new MessageView(message);
+        Long channelId = view.getChannelId();
+        AfterCommit.run(() -> {
+            channels.computeIfPresent(channelId, (id, recent) -> {
+                synchronized (recent) {
+                    recent.add(view);
+                }
+                return recent;
+            });
+            clusterRelay.relay(ClusterRelay.TYPE_RECENT_MESSAGES, channelId);
+        });
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        channels.entrySet().removeIf(entry -> entry.getValue().lastReadAt < cutoff);
+    }
+
+    private void evictLeastRecentlyRead() {
+        Long oldest = null;
+        long oldestReadAt = Long.MAX_VALUE;
+        for (Map.Entry<Long, RecentMessages> entry : channels.entrySet()) {
+            if (entry.getValue().lastReadAt < oldestReadAt) {
+                oldest = entry.getKey();
+                oldestReadAt = entry.getValue().lastReadAt;
+            }
+        }
+        if (oldest != null) {
+            channels.remove(oldest);
+        }
+    }
+
+    int cachedChannels() {
+        return channels.size();
+    }
+
+    // 一个频道最新的若干条消息，环形数组，head是最新一条的位置；非线程安全，由调用方加锁
+    // complete表示缓存的就是频道的全部消息，未满的缓冲区一定是complete
+    static final class RecentMessages {
+        private final MessageView[] slots;
+        private final boolean complete;
+        private int head = -1;
+        private int count;
+        private volatile long lastReadAt = System.currentTimeMillis();
+
+        RecentMessages(int capacity, boolean complete) {
+            this.slots = new MessageView[capacity];
+            this.complete = complete;
+        }
+
+        // 第i新的消息，i从0开始
+        private MessageView get(int i) {
+            return slots[Math.floorMod(head - i, slots.length)];
+        }
+
+        private void set(int i, MessageView message) {
+            slots[Math.floorMod(head - i, slots.length)] = message;
+        }
+
+        // 加入或替换一条消息：同一ID的消息直接替换；通常是最新的一条，提交顺序与时间不一致时插入到对应位置
+        // 缓冲区已满且比缓存的所有消息都旧的消息不在窗口内，忽略
+        void add(MessageView message) {
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                MessageView cached = get(i);
+                if (cached.getId().equals(message.getId())) {
+                    set(i, message);
+                    return;
+                }
+                if (NEWEST_FIRST.compare(cached, message) < 0) {
+                    position = i + 1;
+                }
+            }
+            if (position == slots.length) {
+                return;
+            }
+            head = (head + 1) % slots.length;
+            if (count < slots.length) {
+                count++;
+            }
+            for (int i = 0; i < position; i++) {
+                set(i, get(i + 1));
+            }
+            set(position, message);
+        }
+
+        List<MessageView> latest(int limit) {
+            if (count < limit && !complete) {
+                return null;
+            }
+            List<MessageView> result = new ArrayList<>(Math.min(limit, count));
+            for (int i = 0; i < count && i < limit; i++) {
+                result.add(get(i));
+            }
+            return result;
+        }
+    }
+}
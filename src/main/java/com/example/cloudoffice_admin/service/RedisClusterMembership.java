@@ -0,0 +1,94 @@
+package com.example.cloudoffice_admin.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 基于Redis心跳的成员来源：每个节点定期把自己写入有序集合（分数为心跳时间），
+// 超过存活时间没有心跳的节点被移除；各节点轮询集合，发现变化时回调
+//
+// 键结构：
+//   vo:cluster:members   ZSet   nodeId -> 最后心跳时间（毫秒）
+public class RedisClusterMembership implements ClusterMembership {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisClusterMembership.class);
+
+    static final String MEMBERS_KEY = "vo:cluster:members";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String nodeId;
+    private final long heartbeatMillis;
+    private final long ttlMillis;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Set<String> members = Set.of();
+    private ScheduledExecutorService scheduler;
+
+    public RedisClusterMembership(StringRedisTemplate redisTemplate, String nodeId, long heartbeatMillis, long ttlMillis) {
+        this.redisTemplate = redisTemplate;
+        this.nodeId = nodeId;
+        this.heartbeatMillis = Math.max(100, heartbeatMillis);
+        this.ttlMillis = Math.max(this.heartbeatMillis * 2, ttlMillis);
+    }
+
+    @Override
+    public void start() {
+        // 先同步心跳一次，启动完成时已经能看到自己和其他存活节点
+        heartbeat();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-membership");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // 主动离开：其他节点下次轮询时即可看到，不必等存活时间过期
+    @Override
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        try {
+            redisTemplate.opsForZSet().remove(MEMBERS_KEY, nodeId);
+        } catch (Exception e) {
+            logger.warn("Failed to leave cluster membership", e);
+        }
+    }
+
+    @Override
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    @Override
+    public void onChange(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private void heartbeat() {
+        try {
+            long now = System.currentTimeMillis();
+            redisTemplate.opsForZSet().add(MEMBERS_KEY, nodeId, now);
+            redisTemplate.opsForZSet().removeRangeByScore(MEMBERS_KEY, Double.NEGATIVE_INFINITY, now - ttlMillis);
+            Set<String> current = redisTemplate.opsForZSet().range(MEMBERS_KEY, 0, -1);
+            Set<String> latest = current != null ? Set.copyOf(current) : Set.of(nodeId);
+            if (!latest.equals(members)) {
+                members = latest;
+                for (Runnable listener : listeners) {
+                    listener.run();
+                }
+            }
+        } catch (Exception e) {
+            // Redis不可用时保持上一次的成员，不触发重新分配
+            logger.warn("Cluster membership heartbeat failed", e);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.cloudoffice_admin.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+// 本节点的会话和空间成员索引
+//
+// 用户 -> 会话、用户 -> 空间（反向索引）、空间 -> 用户 三个方向都有索引，加入/离开/断开都不需要扫描所有空间
+// 成员集合使用基本类型long集合，写入时不复制整个集合；读取方拿到按需重建的只读快照
+// 加锁顺序固定为先用户后空间
+public final class SessionRegistry {
+
+    private static final String[] NO_SESSIONS = new String[0];
+    private static final long[] NO_USERS = new long[0];
+
+    private final Map<Long, UserEntry> users = new ConcurrentHashMap<>();
+    private final Map<String, Long> sessionUsers = new ConcurrentHashMap<>();
+    private final Map<Long, SpaceEntry> spaces = new ConcurrentHashMap<>();
+
+    public void registerSession(long userId, String sessionId) {
+        while (true) {
+            UserEntry entry = users.computeIfAbsent(userId, k -> new UserEntry());
+            synchronized (entry) {
+                if (entry.retired) {
+                    continue;
+                }
+                String[] sessions = entry.sessions;
+                for (String existing : sessions) {
+                    if (existing.equals(sessionId)) {
+                        return;
+                    }
+                }
+                // 每个用户通常只有一两个会话，写时复制的小数组比并发集合更省
+                String[] updated = Arrays.copyOf(sessions, sessions.length + 1);
+                updated[sessions.length] = sessionId;
+                entry.sessions = updated;
+                sessionUsers.put(sessionId, userId);
+                return;
+            }
+        }
+    }
+
+    // 移除会话；用户的最后一个会话断开时离开所有空间，并对每个离开的空间回调
+    // 返回会话所属的用户ID，未知会话返回null
+    public Long removeSession(String sessionId, LongConsumer onLeftSpace) {
+        Long userId = sessionUsers.remove(sessionId);
+        if (userId == null) {
+            return null;
+        }
+        UserEntry entry = users.get(userId);
+        if (entry == null) {
+            return userId;
+        }
+        synchronized (entry) {
+            String[] sessions = entry.sessions;
+            int index = indexOf(sessions, sessionId);
+            if (index < 0) {
+                return userId;
+            }
+            String[] updated = NO_SESSIONS;
+            if (sessions.length > 1) {
+                updated = new String[sessions.length - 1];
+                System.arraycopy(sessions, 0, updated, 0, index);
+                System.arraycopy(sessions, index + 1, updated, index, sessions.length - index - 1);
+            }
+            entry.sessions = updated;
+            if (updated.length == 0) {
+                // 只遍历该用户所在的空间
+                entry.spaces.forEach(spaceId -> {
+                    removeMember(spaceId, userId);
+                    onLeftSpace.accept(spaceId);
+                });
+                entry.spaces.clear();
+                retire(userId, entry);
+            }
+        }
+        return userId;
+    }
+
+    // 加入空间，已在空间中返回false
+    public boolean joinSpace(long userId, long spaceId) {
+        while (true) {
+            UserEntry entry = users.computeIfAbsent(userId, k -> new UserEntry());
+            synchronized (entry) {
+                if (entry.retired) {
+                    continue;
+                }
+                if (!entry.spaces.add(spaceId)) {
+                    return false;
+                }
+                addMember(spaceId, userId);
+                return true;
+            }
+        }
+    }
+
+    // 离开空间，不在空间中返回false
+    public boolean leaveSpace(long userId, long spaceId) {
+        UserEntry entry = users.get(userId);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            if (entry.retired || !entry.spaces.remove(spaceId)) {
+                return false;
+            }
+            removeMember(spaceId, userId);
+            if (entry.sessions.length == 0 && entry.spaces.isEmpty()) {
+                retire(userId, entry);
+            }
+            return true;
+        }
+    }
+
+    // 空间成员快照，调用方不能修改返回的数组
+    public long[] usersInSpace(long spaceId) {
+        SpaceEntry entry = spaces.get(spaceId);
+        if (entry == null) {
+            return NO_USERS;
+        }
+        long[] snapshot = entry.snapshot;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (entry) {
+            if (entry.snapshot == null) {
+                entry.snapshot = entry.members.toArray();
+            }
+            return entry.snapshot;
+        }
+    }
+
+    public int spaceSize(long spaceId) {
+        SpaceEntry entry = spaces.get(spaceId);
+        if (entry == null) {
+            return 0;
+        }
+        synchronized (entry) {
+            return entry.members.size();
+        }
+    }
+
+    // 用户的会话ID，调用方不能修改返回的数组
+    public String[] sessionsOf(long userId) {
+        UserEntry entry = users.get(userId);
+        return entry != null ? entry.sessions : NO_SESSIONS;
+    }
+
+    // 用户所在的空间
+    public long[] spacesOf(long userId) {
+        UserEntry entry = users.get(userId);
+        if (entry == null) {
+            return NO_USERS;
+        }
+        synchronized (entry) {
+            return entry.spaces.toArray();
+        }
+    }
+
+    public int sessionCount(long userId) {
+        return sessionsOf(userId).length;
+    }
+
+    public Long userOf(String sessionId) {
+        return sessionUsers.get(sessionId);
+    }
+
+    public int spaceCount() {
+        return spaces.size();
+    }
+
+    private void addMember(long spaceId, long userId) {
+        while (true) {
+            SpaceEntry entry = spaces.computeIfAbsent(spaceId, k -> new SpaceEntry());
+            synchronized (entry) {
+                if (entry.retired) {
+                    continue;
+                }
+                if (entry.members.add(userId)) {
+                    entry.snapshot = null;
+                }
+                return;
+            }
+        }
+    }
+
+    private void removeMember(long spaceId, long userId) {
+        SpaceEntry entry = spaces.get(spaceId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.members.remove(userId)) {
+                entry.snapshot = null;
+            }
+            if (entry.members.isEmpty()) {
+                entry.retired = true;
+                spaces.remove(spaceId, entry);
+            }
+        }
+    }
+
+    // 持有entry锁时调用：标记失效后并发的加入会重新创建条目，不会写入已移除的条目
+    private void retire(long userId, UserEntry entry) {
+        entry.retired = true;
+        users.remove(userId, entry);
+    }
+
+    private static int indexOf(String[] sessions, String sessionId) {
+        for (int i = 0; i < sessions.length; i++) {
+            if (sessions[i].equals(sessionId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class UserEntry {
+        private volatile String[] sessions = NO_SESSIONS;
+        // 反向索引：用户所在的空间，只在持有entry锁时访问
+        private final LongHashSet spaces = new LongHashSet(2);
+        private boolean retired;
+    }
+
+    private static final class SpaceEntry {
+        private final LongHashSet members = new LongHashSet(16);
+        // 成员变化后置空，下次读取时重建
+        private volatile long[] snapshot;
+        private boolean retired;
+    }
+}
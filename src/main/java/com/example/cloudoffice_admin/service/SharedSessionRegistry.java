@@ -0,0 +1,231 @@
+package com.example.cloudoffice_admin.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 集群模式下在Redis中共享的会话和空间成员注册表
+//
+// 键结构：
+//   vo:user:{userId}:sessions      Hash    sessionId -> nodeId
+//   vo:space:{spaceId}:members     Set     "userId:nodeId"，同一用户通过多个节点在空间中时每个节点一条
+//   vo:node:{nodeId}:sessions      Set     "userId:sessionId"，清理节点遗留的会话
+//   vo:node:{nodeId}:memberships   Set     "spaceId:userId"，清理节点遗留的空间成员
+//   vo:registry:nodes              ZSet    nodeId -> 最后心跳时间（毫秒）
+//
+// 节点ID默认每次启动随机生成，异常退出的节点重启后无法按ID找回自己的遗留登记，
+// 因此每个节点定期心跳，并清理超过node-ttl-ms没有心跳的节点登记的全部会话和空间成员
+@Service
+public class SharedSessionRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedSessionRegistry.class);
+
+    static final String NODES_KEY = "vo:registry:nodes";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    @Value("${app.realtime.cluster.registry.heartbeat-ms:5000}")
+    private long heartbeatMillis = 5000;
+
+    // 超过该时间没有心跳的节点视为已退出，由存活节点清理其登记
+    @Value("${app.realtime.cluster.registry.node-ttl-ms:30000}")
+    private long nodeTtlMillis = 30000;
+
+    // 本节点登记过的会话和空间成员，本节点被误判为退出而遭清理后据此重新登记
+    private final Set<String> localSessions = ConcurrentHashMap.newKeySet();
+    private final Set<String> localMemberships = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService scheduler;
+
+    // 启动时清理本节点上次运行遗留的注册信息（配置了固定node-id且异常退出时不会执行@PreDestroy），然后开始心跳
+    @PostConstruct
+    public void start() {
+        if (!clusterRelay.isEnabled()) {
+            return;
+        }
+        purgeNode(clusterRelay.getNodeId());
+        heartbeat();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "session-registry-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, heartbeatMillis);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!clusterRelay.isEnabled()) {
+            return;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        purgeNode(clusterRelay.getNodeId());
+        redisTemplate.opsForZSet().remove(NODES_KEY, clusterRelay.getNodeId());
+    }
+
+    public boolean isEnabled() {
+        return clusterRelay.isEnabled();
+    }
+
+    public void registerSession(Long userId, String sessionId) {
+        if (!isEnabled()) {
+            return;
+        }
+        localSessions.add(userId + ":" + sessionId);
+        addSession(userId + ":" + sessionId);
+    }
+
+    public void removeSession(Long userId, String sessionId) {
+        if (!isEnabled()) {
+            return;
+        }
+        localSessions.remove(userId + ":" + sessionId);
+        redisTemplate.opsForHash().delete(userSessionsKey(userId), sessionId);
+        redisTemplate.opsForSet().remove(nodeSessionsKey(clusterRelay.getNodeId()), userId + ":" + sessionId);
+    }
+
+    public void joinSpace(Long userId, Long spaceId) {
+        if (!isEnabled()) {
+            return;
+        }
+        localMemberships.add(spaceId + ":" + userId);
+        addMembership(spaceId + ":" + userId);
+    }
+
+    public void leaveSpace(Long userId, Long spaceId) {
+        if (!isEnabled()) {
+            return;
+        }
+        // 只移除本节点的成员条目，用户通过其他节点的会话仍在空间中时保留
+        localMemberships.remove(spaceId + ":" + userId);
+        redisTemplate.opsForSet().remove(spaceMembersKey(spaceId), userId + ":" + clusterRelay.getNodeId());
+        redisTemplate.opsForSet().remove(nodeMembershipsKey(clusterRelay.getNodeId()), spaceId + ":" + userId);
+    }
+
+    // 全集群范围内用户是否在线
+    public boolean isUserOnline(Long userId) {
+        return getUserSessionCount(userId) > 0;
+    }
+
+    public int getUserSessionCount(Long userId) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        Long count = redisTemplate.opsForHash().size(userSessionsKey(userId));
+        return count != null ? count.intValue() : 0;
+    }
+
+    // 全集群范围内空间中的用户
+    public Set<Long> getUsersInSpace(Long spaceId) {
+        if (!isEnabled()) {
+            return Collections.emptySet();
+        }
+        Set<String> members = redisTemplate.opsForSet().members(spaceMembersKey(spaceId));
+        if (members == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> users = new HashSet<>(members.size());
+        for (String member : members) {
+            users.add(Long.valueOf(member.substring(0, member.indexOf(':'))));
+        }
+        return users;
+    }
+
+    // 登记本节点的心跳，并清理心跳过期的节点；本节点的心跳被当作新成员加入时说明已被其他节点清理，重新登记
+    void heartbeat() {
+        try {
+            String nodeId = clusterRelay.getNodeId();
+            long now = System.currentTimeMillis();
+            Boolean added = redisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+            Set<String> expired = redisTemplate.opsForZSet().rangeByScore(NODES_KEY, Double.NEGATIVE_INFINITY,
+                    now - nodeTtlMillis);
+            if (expired != null) {
+                for (String node : expired) {
+                    if (!node.equals(nodeId)) {
+                        logger.info("Purging session registry entries of expired node {}", node);
+                        purgeNode(node);
+                        redisTemplate.opsForZSet().remove(NODES_KEY, node);
+                    }
+                }
+            }
+            if (Boolean.TRUE.equals(added) && (!localSessions.isEmpty() || !localMemberships.isEmpty())) {
+                logger.warn("Session registry entries of node {} were purged, registering them again", nodeId);
+                localSessions.forEach(this::addSession);
+                localMemberships.forEach(this::addMembership);
+            }
+        } catch (Exception e) {
+            logger.warn("Session registry heartbeat failed", e);
+        }
+    }
+
+    private void addSession(String entry) {
+        int separator = entry.indexOf(':');
+        redisTemplate.opsForHash().put(userSessionsKey(Long.valueOf(entry.substring(0, separator))),
+                entry.substring(separator + 1), clusterRelay.getNodeId());
+        redisTemplate.opsForSet().add(nodeSessionsKey(clusterRelay.getNodeId()), entry);
+    }
+
+    private void addMembership(String entry) {
+        int separator = entry.indexOf(':');
+        redisTemplate.opsForSet().add(spaceMembersKey(Long.valueOf(entry.substring(0, separator))),
+                entry.substring(separator + 1) + ":" + clusterRelay.getNodeId());
+        redisTemplate.opsForSet().add(nodeMembershipsKey(clusterRelay.getNodeId()), entry);
+    }
+
+    // 删除某个节点登记过的所有会话和空间成员，重复执行没有副作用
+    void purgeNode(String nodeId) {
+        Set<String> sessions = redisTemplate.opsForSet().members(nodeSessionsKey(nodeId));
+        if (sessions != null) {
+            for (String entry : sessions) {
+                int separator = entry.indexOf(':');
+                redisTemplate.opsForHash().delete(userSessionsKey(Long.valueOf(entry.substring(0, separator))),
+                        entry.substring(separator + 1));
+            }
+        }
+        Set<String> memberships = redisTemplate.opsForSet().members(nodeMembershipsKey(nodeId));
+        if (memberships != null) {
+            for (String entry : memberships) {
+                int separator = entry.indexOf(':');
+                redisTemplate.opsForSet().remove(spaceMembersKey(Long.valueOf(entry.substring(0, separator))),
+                        entry.substring(separator + 1) + ":" + nodeId);
+            }
+        }
+        redisTemplate.delete(nodeSessionsKey(nodeId));
+        redisTemplate.delete(nodeMembershipsKey(nodeId));
+    }
+
+    private static String userSessionsKey(Long userId) {
+        return "vo:user:" + userId + ":sessions";
+    }
+
+    private static String spaceMembersKey(Long spaceId) {
+        return "vo:space:" + spaceId + ":members";
+    }
+
+    private static String nodeSessionsKey(String nodeId) {
+        return "vo:node:" + nodeId + ":sessions";
+    }
+
+    private static String nodeMembershipsKey(String nodeId) {
+        return "vo:node:" + nodeId + ":memberships";
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.dto.SpaceView;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 兴趣管理：每个空间一个空间网格，位置更新只发给视野半径或所在区域与移动者重叠的订阅者
+// 开启分档后视野外的移动者也会发送，只是频率按距离降低：中距离每mid-interval个节拍一次，
+// 更远的只发关键帧，间隔随空间人数拉长，每个订阅者收到的远距离更新数不随人数增长
+@Service
+public class SpaceInterestManager {
+
+    @Autowired
+    private SpaceLayoutCache layoutCache;
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Value("${app.realtime.aoi.enabled:true}")
+    private boolean enabled = true;
+
+    // 网格格子边长（像素）
+    @Value("${app.realtime.aoi.cell-size:256}")
+    private int cellSize = 256;
+
+    // 视野半径（格子数），1表示以所在格子为中心的3x3范围
+    @Value("${app.realtime.aoi.view-radius:1}")
+    private int viewRadius = 1;
+
+    // 空间人数达到该值才启用过滤，人少时直接走空间主题更便宜
+    @Value("${app.realtime.aoi.min-occupants:50}")
+    private int minOccupants = 50;
+
+    // 按距离分档降低视野外的更新频率
+    @Value("${app.realtime.aoi.lod.enabled:true}")
+    private boolean lodEnabled = true;
+
+    // 中距离档的半径（格子数），视野半径到该半径之间为中距离
+    @Value("${app.realtime.aoi.lod.mid-radius:3}")
+    private int midRadius = 3;
+
+    // 中距离档每隔多少个节拍发送一次，0表示不发送
+    @Value("${app.realtime.aoi.lod.mid-interval:3}")
+    private int midInterval = 3;
+
+    // 远距离关键帧的基础间隔（节拍数），空间人数每多min-occupants人间隔再加一倍，0表示不发送
+    @Value("${app.realtime.aoi.lod.far-interval:15}")
+    private int farInterval = 15;
+
+    // 远距离关键帧的最大间隔（节拍数）
+    @Value("${app.realtime.aoi.lod.far-max-interval:75}")
+    private int farMaxInterval = 75;
+
+    private final Map<Long, SpatialGrid> grids = new ConcurrentHashMap<>();
+    private final Map<Long, BandBacklog> backlogs = new ConcurrentHashMap<>();
+    // 布局已失效、网格需要按新宽高重建的空间；失效回调可能在任意线程上执行，只做标记，重建留给节拍线程
+    private final Set<Long> staleGrids = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        layoutCache.onInvalidate(spaceId -> {
+            if (grids.containsKey(spaceId)) {
+                staleGrids.add(spaceId);
+            }
+        });
+    }
+
+    // 获取空间网格，首次使用时按空间布局的宽高创建；布局失效后按新的宽高重建，原有用户按原坐标迁移过去
+    public SpatialGrid gridFor(Long spaceId) {
+        SpatialGrid grid = grids.get(spaceId);
+        if (grid != null && (staleGrids.isEmpty() || !staleGrids.remove(spaceId))) {
+            return grid;
+        }
+        staleGrids.remove(spaceId);
+        SpatialGrid rebuilt = newGrid(spaceId);
+        if (grid != null) {
+            grid.copyTo(rebuilt);
+        }
+        grids.put(spaceId, rebuilt);
+        return rebuilt;
+    }
+
+    private SpatialGrid newGrid(Long spaceId) {
+        int width = 1000;
+        int height = 800;
+        try {
+            SpaceView space = layoutCache.get(spaceId).getSpace();
+            width = space.getWidth();
+            height = space.getHeight();
+        } catch (EntityNotFoundException e) {
+            // 空间不存在时按默认尺寸，空间删除后由节拍线程丢弃网格
+        }
+        return new SpatialGrid(width, height, cellSize);
+    }
+
+    // 按本节拍的移动增量更新网格
+    public void apply(Long spaceId, List<PositionUpdateMessage> moves) {
+        SpatialGrid grid = gridFor(spaceId);
+        for (PositionUpdateMessage move : moves) {
+            grid.update(move.getUserId(), move.getX(), move.getY(), move.getZoneId());
+        }
+    }
+
+    public void remove(Long spaceId, Long userId) {
+        SpatialGrid grid = grids.get(spaceId);
+        if (grid != null) {
+            grid.remove(userId);
+        }
+        BandBacklog backlog = backlogs.get(spaceId);
+        if (backlog != null) {
+            backlog.mid.remove(userId);
+            backlog.far.remove(userId);
+        }
+    }
+
+    // 空间已删除或长时间没人，丢弃网格和积压更新；由节拍线程调用
+    public void drop(Long spaceId) {
+        grids.remove(spaceId);
+        backlogs.remove(spaceId);
+        staleGrids.remove(spaceId);
+    }
+
+    // 空间人数足够多时才按兴趣过滤
+    public boolean shouldFilter(Long spaceId) {
+        SpatialGrid grid = grids.get(spaceId);
+        return enabled && grid != null && grid.size() >= minOccupants;
+    }
+
+    // 按兴趣投递批量增量：同一格子同一区域的订阅者兴趣集合相同，共享一帧，只序列化一次
+    // 每个订阅者每个节拍都收到一帧，附近没人移动时帧里没有更新，序号保持连续，客户端不会误判为丢帧
+    public void deliver(PositionBatchMessage batch) {
+        SpatialGrid grid = gridFor(batch.getSpaceId());
+
+        // 按格子和区域索引本节拍的移动者
+        Map<Integer, List<PositionUpdateMessage>> movesByCell = new HashMap<>();
+        Map<Long, List<PositionUpdateMessage>> movesByZone = new HashMap<>();
+        for (PositionUpdateMessage move : batch.getUpdates()) {
+            movesByCell.computeIfAbsent(grid.cellOf(move.getX(), move.getY()), k -> new ArrayList<>()).add(move);
+            if (move.getZoneId() != null) {
+                movesByZone.computeIfAbsent(move.getZoneId(), k -> new ArrayList<>()).add(move);
+            }
+        }
+
+        // 本节拍轮到的中远距离更新，按格子索引
+        Map<Integer, List<PositionUpdateMessage>> midByCell = null;
+        Map<Integer, List<PositionUpdateMessage>> farByCell = null;
+        if (lodEnabled) {
+            BandBacklog backlog = backlogs.computeIfAbsent(batch.getSpaceId(), id -> new BandBacklog());
+            for (PositionUpdateMessage move : batch.getUpdates()) {
+                if (midInterval > 0) {
+                    backlog.mid.put(move.getUserId(), move);
+                }
+                if (farInterval > 0) {
+                    backlog.far.put(move.getUserId(), move);
+                }
+            }
+            midByCell = due(grid, backlog.mid, batch.getTick(), midInterval);
+            farByCell = due(grid, backlog.far, batch.getTick(), farIntervalFor(grid));
+        }
+        // 中距离档关闭时视野外直接是远距离档
+        int farFrom = midByCell != null ? Math.max(viewRadius, midRadius) : viewRadius;
+
+        // 已加入空间但还没有上报过位置的用户无法判断视野，发送完整增量
+        List<Long> unplaced = new ArrayList<>();
+        for (long userId : sessionManager.usersInSpace(batch.getSpaceId())) {
+            if (!grid.contains(userId)) {
+                unplaced.add(userId);
+            }
+        }
+        sessionManager.sendToUsers(unplaced, WebSocketSessionManager.USER_SPACE_POSITIONS, batch);
+
+        for (Map.Entry<Integer, Set<Long>> cell : grid.occupiedCells().entrySet()) {
+            int subscriberCell = cell.getKey();
+
+            // 视野半径内的移动
+            List<PositionUpdateMessage> visibleMoves = new ArrayList<>();
+            grid.forEachCellInRadius(subscriberCell, viewRadius, c -> {
+                List<PositionUpdateMessage> moves = movesByCell.get(c);
+                if (moves != null) {
+                    visibleMoves.addAll(moves);
+                }
+            });
+            // 中距离档：视野半径之外、中距离半径之内
+            if (midByCell != null && !midByCell.isEmpty()) {
+                Map<Integer, List<PositionUpdateMessage>> mid = midByCell;
+                grid.forEachCellInRadius(subscriberCell, farFrom, c -> {
+                    List<PositionUpdateMessage> moves = mid.get(c);
+                    if (moves != null && grid.cellDistance(subscriberCell, c) > viewRadius) {
+                        visibleMoves.addAll(moves);
+                    }
+                });
+            }
+            // 远距离档：中距离半径之外的关键帧
+            if (farByCell != null) {
+                for (Map.Entry<Integer, List<PositionUpdateMessage>> far : farByCell.entrySet()) {
+                    if (grid.cellDistance(subscriberCell, far.getKey()) > farFrom) {
+                        visibleMoves.addAll(far.getValue());
+                    }
+                }
+            }
+
+            // 同一格子内再按订阅者所在区域分组
+            Map<Long, List<Long>> subscribersByZone = new HashMap<>();
+            for (Long userId : cell.getValue()) {
+                subscribersByZone.computeIfAbsent(grid.zoneOf(userId), k -> new ArrayList<>()).add(userId);
+            }
+            for (Map.Entry<Long, List<Long>> group : subscribersByZone.entrySet()) {
+                List<PositionUpdateMessage> visible = withZoneMoves(visibleMoves,
+                        group.getKey() != null ? movesByZone.get(group.getKey()) : null);
+                // 离开的用户所有人都要知道
+                sessionManager.sendToUsers(group.getValue(), WebSocketSessionManager.USER_SPACE_POSITIONS,
+                        subset(batch, visible));
+            }
+        }
+    }
+
+    // 重新同步时合并增量的兴趣过滤：只保留视野和中距离半径内或同区域的移动者，与增量帧的过滤一致
+    // 远距离的移动者等下一个关键帧；订阅者还没有位置时不过滤
+    public List<PositionUpdateMessage> visibleTo(Long spaceId, Long userId, Collection<PositionUpdateMessage> moves) {
+        SpatialGrid grid = grids.get(spaceId);
+        if (grid == null || !grid.contains(userId)) {
+            return new ArrayList<>(moves);
+        }
+        int cell = grid.cellOfUser(userId);
+        Long zoneId = grid.zoneOf(userId);
+        int radius = lodEnabled && midInterval > 0 ? Math.max(viewRadius, midRadius) : viewRadius;
+        List<PositionUpdateMessage> visible = new ArrayList<>();
+        for (PositionUpdateMessage move : moves) {
+            if (grid.cellDistance(cell, grid.cellOf(move.getX(), move.getY())) <= radius
+                    || (zoneId != null && zoneId.equals(move.getZoneId()))) {
+                visible.add(move);
+            }
+        }
+        return visible;
+    }
+
+    // 取出本节拍轮到的积压更新：移动者按用户ID错开发送节拍，避免同一节拍集中发出
+    private static Map<Integer, List<PositionUpdateMessage>> due(SpatialGrid grid,
+                                                                 Map<Long, PositionUpdateMessage> backlog,
+                                                                 long tick, int interval) {
+        if (interval <= 0) {
+            return null;
+        }
+        Map<Integer, List<PositionUpdateMessage>> byCell = new HashMap<>();
+        Iterator<PositionUpdateMessage> iterator = backlog.values().iterator();
+        while (iterator.hasNext()) {
+            PositionUpdateMessage move = iterator.next();
+            if (Math.floorMod(tick + move.getUserId(), interval) == 0) {
+                byCell.computeIfAbsent(grid.cellOf(move.getX(), move.getY()), k -> new ArrayList<>()).add(move);
+                iterator.remove();
+            }
+        }
+        return byCell;
+    }
+
+    // 远距离关键帧间隔随空间人数拉长
+    private int farIntervalFor(SpatialGrid grid) {
+        if (farInterval <= 0) {
+            return 0;
+        }
+        long scaled = (long) farInterval * Math.max(1, grid.size() / Math.max(1, minOccupants));
+        return (int) Math.max(farInterval, Math.min(scaled, farMaxInterval));
+    }
+
+    // 合并同区域的移动者，已包含的不重复加入
+    private static List<PositionUpdateMessage> withZoneMoves(List<PositionUpdateMessage> visibleMoves,
+                                                             List<PositionUpdateMessage> zoneMoves) {
+        if (zoneMoves == null) {
+            return visibleMoves;
+        }
+        List<PositionUpdateMessage> visible = new ArrayList<>(visibleMoves);
+        Set<Long> included = new HashSet<>();
+        for (PositionUpdateMessage move : visibleMoves) {
+            included.add(move.getUserId());
+        }
+        for (PositionUpdateMessage move : zoneMoves) {
+            if (included.add(move.getUserId())) {
+                visible.add(move);
+            }
+        }
+        return visible;
+    }
+
+    private static PositionBatchMessage subset(PositionBatchMessage batch, List<PositionUpdateMessage> updates) {
+        PositionBatchMessage frame = new PositionBatchMessage();
+        frame.setSpaceId(batch.getSpaceId());
+        frame.setTick(batch.getTick());
+        frame.setTimestamp(batch.getTimestamp());
+        frame.setUpdates(updates);
+        frame.setRemoved(batch.getRemoved());
+        return frame;
+    }
+
+    // 中远距离档尚未发出的最新位置，每个移动者只保留一条；只在节拍线程中读写
+    private static final class BandBacklog {
+        private final Map<Long, PositionUpdateMessage> mid = new HashMap<>();
+        private final Map<Long, PositionUpdateMessage> far = new HashMap<>();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.SpaceView;
+import com.example.cloudoffice_admin.dto.ZoneView;
+import com.example.cloudoffice_admin.model.VirtualSpace;
+import com.example.cloudoffice_admin.model.Zone;
+import com.example.cloudoffice_admin.repository.VirtualSpaceRepository;
+import com.example.cloudoffice_admin.repository.ZoneRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// 空间布局的读穿透缓存：空间元数据和区域列表一起缓存，布局很少变化，客户端每次加载和重连都会读取
+// 缓存的是不可变视图（SpaceView、ZoneView），不持有可修改、脱离会话的实体
+// 更新空间、新建区域、删除空间时失效；集群模式下失效通知通过中继转发给其他节点
+// 不存在的空间ID在missing-ttl-ms内也会缓存，实时消息携带无效的空间ID时不会每次都查询数据库；新建空间时失效
+// 版本号取布局序列化结果的摘要，同样的布局在每个节点、每次重启后都得到同样的ETag，客户端条件请求得到304
+@Service
+public class SpaceLayoutCache {
+
+    // 最多缓存的不存在空间ID数，超过时整体清空
+    private static final int MAX_MISSING = 10_000;
+
+    @Autowired
+    private VirtualSpaceRepository virtualSpaceRepository;
+
+    @Autowired
+    private ZoneRepository zoneRepository;
+
+    @Autowired
+    private ZoneMembershipService zoneMembership;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.realtime.layout.missing-ttl-ms:30000}")
+    private long missingTtlMillis = 30000;
+
+    private final Map<Long, SpaceLayout> layouts = new ConcurrentHashMap<>();
+    // 不存在的空间ID -> 过期时间（毫秒）
+    private final Map<Long, Long> missing = new ConcurrentHashMap<>();
+    // 每次失效加一；加载期间发生过失效时，加载结果只返回给调用方，不放入缓存
+    private final AtomicLong evictions = new AtomicLong();
+    // 布局失效时回调，参数为空间ID；本节点和其他节点转发的失效都会回调，回调在失效线程上执行
+    private final List<Consumer<Long>> listeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        clusterRelay.on(ClusterRelay.TYPE_LAYOUT, envelope -> evict(clusterRelay.read(envelope, Long.class)));
+    }
+
+    // 获取空间布局，未缓存时从数据库加载；空间不存在时抛出异常
+    // 数据库查询不在computeIfAbsent中执行，慢查询不会阻塞同一分段上其他空间的读取
+    public SpaceLayout get(Long spaceId) {
+        SpaceLayout layout = layouts.get(spaceId);
+        if (layout != null) {
+            return layout;
+        }
+        Long expiresAt = missing.get(spaceId);
+        if (expiresAt != null) {
+            if (expiresAt > System.currentTimeMillis()) {
+                throw new EntityNotFoundException("Virtual space not found");
+            }
+            missing.remove(spaceId, expiresAt);
+        }
+
+        long generation = evictions.get();
+        Optional<VirtualSpace> space = virtualSpaceRepository.findById(spaceId);
+        if (space.isEmpty()) {
+            if (evictions.get() == generation) {
+                if (missing.size() >= MAX_MISSING) {
+                    missing.clear();
+                }
+                missing.put(spaceId, System.currentTimeMillis() + missingTtlMillis);
+            }
+            throw new EntityNotFoundException("Virtual space not found");
+        }
+        SpaceView view = new SpaceView(space.get());
+        List<ZoneView> zones = new ArrayList<>();
+        for (Zone zone : zoneRepository.findBySpaceId(spaceId)) {
+            zones.add(new ZoneView(zone));
+        }
+        SpaceLayout loaded = new SpaceLayout(view, List.copyOf(zones), versionOf(view, zones));
+        if (evictions.get() != generation) {
+            return loaded;
+        }
+        SpaceLayout existing = layouts.putIfAbsent(spaceId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    // 布局发生变化，本节点和其他节点下次读取时重新加载
+    public void invalidate(Long spaceId) {
+        evict(spaceId);
+        clusterRelay.relay(ClusterRelay.TYPE_LAYOUT, spaceId);
+    }
+
+    public void onInvalidate(Consumer<Long> listener) {
+        listeners.add(listener);
+    }
+
+    // 按响应体的序列化方式计算，取MD5的前8字节；布局内容不变版本号就不变
+    private long versionOf(SpaceView space, List<ZoneView> zones) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(objectMapper.writeValueAsBytes(List.of(space, zones)));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xff);
+            }
+            return value;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to compute layout version", e);
+        }
+    }
+
+    private void evict(Long spaceId) {
+        evictions.incrementAndGet();
+        layouts.remove(spaceId);
+        missing.remove(spaceId);
+        zoneMembership.invalidate(spaceId);
+        for (Consumer<Long> listener : listeners) {
+            listener.accept(spaceId);
+        }
+    }
+
+    // 某个版本的空间布局，由不可变视图组成，可以在线程之间共享
+    public static final class SpaceLayout {
+        private final SpaceView space;
+        private final List<ZoneView> zones;
+        private final long version;
+
+        SpaceLayout(SpaceView space, List<ZoneView> zones, long version) {
+            this.space = space;
+            this.zones = zones;
+            this.version = version;
+        }
+
+        public SpaceView getSpace() {
+            return space;
+        }
+
+        public List<ZoneView> getZones() {
+            return zones;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        // 强ETag，带空间ID避免不同空间的版本号混淆
+        public String getETag() {
+            return "\"" + space.getId() + "-" + Long.toHexString(version) + "\"";
+        }
+    }
+}
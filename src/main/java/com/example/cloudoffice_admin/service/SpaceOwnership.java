@@ -0,0 +1,145 @@
+package com.example.cloudoffice_admin.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 空间归属：集群模式下可选按一致性哈希把每个空间分配给一个节点，只有归属节点运行该空间的节拍、
+// 在场存储和兴趣管理，其他节点把收到的移动和同步请求转发给它；未启用时每个空间都算本节点的
+@Service
+public class SpaceOwnership {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpaceOwnership.class);
+
+    // 归属变化时回调，before/after为变化前后的环
+    public interface RebalanceListener {
+        void rebalanced(HashRing before, HashRing after);
+    }
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    // 需要同时启用集群模式
+    @Value("${app.realtime.cluster.ownership.enabled:false}")
+    private boolean enabled;
+
+    // 成员来源：static（配置的固定列表）或 redis（心跳）
+    @Value("${app.realtime.cluster.ownership.membership:static}")
+    private String membershipType = "static";
+
+    // static模式下的节点ID列表，逗号分隔；为空时只有本节点
+    @Value("${app.realtime.cluster.ownership.members:}")
+    private String staticMembers;
+
+    @Value("${app.realtime.cluster.ownership.virtual-nodes:128}")
+    private int virtualNodes = 128;
+
+    @Value("${app.realtime.cluster.ownership.heartbeat-ms:2000}")
+    private long heartbeatMillis = 2000;
+
+    // 超过该时间没有心跳的节点视为离开
+    @Value("${app.realtime.cluster.ownership.member-ttl-ms:6000}")
+    private long memberTtlMillis = 6000;
+
+    private final List<RebalanceListener> listeners = new CopyOnWriteArrayList<>();
+    private ClusterMembership membership;
+    private volatile HashRing ring = new HashRing(List.of(), 1);
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        if ("redis".equalsIgnoreCase(membershipType)) {
+            use(new RedisClusterMembership(redisTemplate, clusterRelay.getNodeId(), heartbeatMillis, memberTtlMillis));
+        } else {
+            List<String> members = new ArrayList<>();
+            for (String member : StringUtils.commaDelimitedListToSet(staticMembers)) {
+                if (StringUtils.hasText(member)) {
+                    members.add(member.trim());
+                }
+            }
+            use(new StaticClusterMembership(members.isEmpty() ? List.of(clusterRelay.getNodeId()) : members));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (membership != null) {
+            membership.stop();
+        }
+    }
+
+    // 切换成员来源并按当前成员构建环
+    void use(ClusterMembership membership) {
+        this.membership = membership;
+        membership.onChange(this::rebuild);
+        membership.start();
+        rebuild();
+    }
+
+    public boolean isEnabled() {
+        return enabled && clusterRelay.isEnabled();
+    }
+
+    public void onRebalance(RebalanceListener listener) {
+        listeners.add(listener);
+    }
+
+    // 空间的归属节点；未启用或环为空时为本节点
+    public String ownerOf(Long spaceId) {
+        String owner = isEnabled() ? ring.ownerOf(spaceId) : null;
+        return owner != null ? owner : clusterRelay.getNodeId();
+    }
+
+    public boolean isLocal(Long spaceId) {
+        return !isEnabled() || spaceId == null || isLocal(ring, spaceId);
+    }
+
+    // 按给定的环判断空间是否归本节点
+    public boolean isLocal(HashRing ring, Long spaceId) {
+        String owner = ring.ownerOf(spaceId);
+        return owner == null || owner.equals(clusterRelay.getNodeId());
+    }
+
+    // 把消息转发给空间的归属节点
+    public void forward(Long spaceId, String type, Object body) {
+        clusterRelay.relayTo(ownerOf(spaceId), type, body);
+    }
+
+    public HashRing getRing() {
+        return ring;
+    }
+
+    private synchronized void rebuild() {
+        Set<String> members = membership.getMembers();
+        HashRing before = ring;
+        if (Set.copyOf(before.getMembers()).equals(members)) {
+            return;
+        }
+        HashRing after = new HashRing(members, virtualNodes);
+        ring = after;
+        logger.info("Space ownership ring changed: {} -> {}", before.getMembers(), after.getMembers());
+        for (RebalanceListener listener : listeners) {
+            try {
+                listener.rebalanced(before, after);
+            } catch (Exception e) {
+                logger.warn("Space rebalance listener failed", e);
+            }
+        }
+    }
+}
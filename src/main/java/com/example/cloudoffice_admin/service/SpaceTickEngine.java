@@ -0,0 +1,522 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceResyncRequest;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceSyncMessage;
+import com.example.cloudoffice_admin.dto.OccupantView;
+import com.example.cloudoffice_admin.model.UserPresence;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// 按空间的位置模拟节拍：每个用户只保留最新一次移动，每个节拍发送一帧批量增量
+// 节拍线程是每个空间唯一的序号分配者：维护当前所有在场者的位置和最近的增量历史，
+// 加入时的快照和跳号后的重新同步都在节拍线程中生成，与增量序号保持一致
+// 空间归属模式下只有归属节点运行空间的节拍，其他节点把移动和同步请求转发给它；归属变化时旧节点把在场信息交给新节点
+@Service
+public class SpaceTickEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpaceTickEngine.class);
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Autowired
+    private SpaceInterestManager interestManager;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    @Autowired
+    private PresenceStore presenceStore;
+
+    @Autowired
+    private ProximityGroupService groupService;
+
+    @Autowired
+    private ZoneMembershipService zoneMembership;
+
+    @Autowired
+    private SpaceOwnership ownership;
+
+    @Autowired
+    private MovementFilter movementFilter;
+
+    // 节拍频率（Hz），出站带宽由节拍频率决定而不是客户端输入频率
+    @Value("${app.realtime.tick-rate-hz:15}")
+    private int tickRateHz = 15;
+
+    // 每个空间保留的最近增量帧数，落后不超过该值的客户端用合并增量补齐，否则发送完整快照
+    @Value("${app.realtime.sync.delta-history:64}")
+    private int deltaHistory = 64;
+
+    // 空间没有在场者超过该节拍数后释放其节拍状态，下次有人移动时重新创建
+    @Value("${app.realtime.idle-space-ticks:900}")
+    private int idleSpaceTicks = 900;
+
+    // 空间ID -> 该空间待发送的位置（用户ID -> 最新位置）
+    private final Map<Long, SpaceTickState> spaces = new ConcurrentHashMap<>();
+    // 已删除的空间，由节拍线程丢弃其状态
+    private final Queue<Long> deletedSpaces = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        // 集群模式下每个节点都接收全部移动，各自计算节拍并只投递给本地订阅者
+        clusterRelay.on(ClusterRelay.TYPE_MOVE, envelope -> enqueue(clusterRelay.read(envelope, PositionUpdateMessage.class)));
+        clusterRelay.on(ClusterRelay.TYPE_DEPART, envelope -> {
+            PositionUpdateMessage departure = clusterRelay.read(envelope, PositionUpdateMessage.class);
+            discardLocal(departure.getSpaceId(), departure.getUserId());
+        });
+        // 空间归属模式：其他节点转发来的移动和同步请求，以及换归属时交来的在场信息
+        // 转发来的移动已经在接收节点过滤过
+        clusterRelay.on(ClusterRelay.TYPE_FORWARD_MOVE, envelope -> apply(clusterRelay.read(envelope, PositionUpdateMessage.class), true));
+        clusterRelay.on(ClusterRelay.TYPE_FORWARD_SYNC, envelope -> {
+            SpaceResyncRequest request = clusterRelay.read(envelope, SpaceResyncRequest.class);
+            requestSync(request.getSpaceId(), request.getUserId(), request.getLastTick());
+        });
+        clusterRelay.on(ClusterRelay.TYPE_HANDOFF, envelope -> adopt(clusterRelay.read(envelope, SpaceHandoffMessage.class)));
+        clusterRelay.on(ClusterRelay.TYPE_SPACE_DELETED, envelope -> dropLocal(clusterRelay.read(envelope, Long.class)));
+        ownership.onRebalance(this::rebalance);
+        if (ownership.isEnabled()) {
+            // 启动时加载的在场信息中不归本节点的部分由各自的归属节点负责
+            for (Long spaceId : new ArrayList<>(presenceStore.getSpaceCounts().keySet())) {
+                if (!ownership.isLocal(spaceId)) {
+                    presenceStore.release(spaceId);
+                }
+            }
+        }
+        int hz = Math.max(1, Math.min(tickRateHz, 60));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "space-tick");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodMicros = 1_000_000L / hz;
+        scheduler.scheduleAtFixedRate(this::tick, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    // 接收客户端的一次移动：先经过限速和外推误差过滤，超过速率的直接丢弃
+    public void accept(PositionUpdateMessage message) {
+        if (message.getSpaceId() == null || message.getUserId() == null) {
+            return;
+        }
+        MovementFilter.Decision decision = movementFilter.filter(message);
+        if (decision != MovementFilter.Decision.DROP) {
+            route(message, decision == MovementFilter.Decision.FORWARD);
+        }
+    }
+
+    // 空间不归本节点时只把需要转发的移动交给归属节点
+    private void route(PositionUpdateMessage message, boolean forward) {
+        if (!ownership.isLocal(message.getSpaceId())) {
+            if (forward) {
+                ownership.forward(message.getSpaceId(), ClusterRelay.TYPE_FORWARD_MOVE, message);
+            }
+            return;
+        }
+        apply(message, forward);
+    }
+
+    // 按坐标判定区域并写入在场存储；需要转发或区域变化时放入节拍
+    private void apply(PositionUpdateMessage message, boolean forward) {
+        UserPresence before = presenceStore.get(message.getUserId());
+        UserPresence presence = zoneMembership.move(message.getUserId(), message.getSpaceId(), message.getX(), message.getY());
+        message.setZoneId(presence.getZoneId());
+        boolean zoneChanged = before == null || !Objects.equals(before.getSpaceId(), presence.getSpaceId())
+                || !Objects.equals(before.getZoneId(), presence.getZoneId());
+        if (forward || zoneChanged) {
+            submit(message);
+        }
+    }
+
+    // 提交一次移动，同一节拍内同一用户的旧位置被覆盖
+    public void submit(PositionUpdateMessage message) {
+        if (message.getSpaceId() == null || message.getUserId() == null) {
+            return;
+        }
+        enqueue(message);
+        // 归属模式下只有本节点运行该空间的节拍，不需要广播原始移动
+        if (!ownership.isEnabled()) {
+            clusterRelay.relay(ClusterRelay.TYPE_MOVE, message);
+        }
+    }
+
+    private void enqueue(PositionUpdateMessage message) {
+        withState(message.getSpaceId(), state -> state.pending.put(message.getUserId(), message));
+    }
+
+    // 在映射的锁内修改空间状态，不会写入刚被释放的状态
+    private void withState(Long spaceId, Consumer<SpaceTickState> action) {
+        spaces.compute(spaceId, (id, state) -> {
+            SpaceTickState current = state != null ? state : new SpaceTickState(id, deltaHistory);
+            action.accept(current);
+            return current;
+        });
+    }
+
+    // 加入空间：下一个节拍向该用户发送完整快照
+    public void requestSnapshot(Long spaceId, Long userId) {
+        requestSync(spaceId, userId, -1);
+    }
+
+    // 跳号：lastTick之后的增量仍在历史中时发送合并增量，否则发送完整快照
+    public void requestResync(Long spaceId, Long userId, long lastTick) {
+        requestSync(spaceId, userId, lastTick);
+    }
+
+    private void requestSync(Long spaceId, Long userId, long sinceTick) {
+        if (spaceId == null || userId == null) {
+            return;
+        }
+        if (!ownership.isLocal(spaceId)) {
+            SpaceResyncRequest request = new SpaceResyncRequest();
+            request.setSpaceId(spaceId);
+            request.setUserId(userId);
+            request.setLastTick(sinceTick);
+            ownership.forward(spaceId, ClusterRelay.TYPE_FORWARD_SYNC, request);
+            return;
+        }
+        withState(spaceId, state -> state.syncRequests.add(new SyncRequest(userId, sinceTick)));
+    }
+
+    // 归属变化：交出不再归本节点的空间；接管离开节点的空间时，从数据库加载其最后写入的在场信息
+    private void rebalance(HashRing before, HashRing after) {
+        Set<Long> spaceIds = new HashSet<>(spaces.keySet());
+        spaceIds.addAll(presenceStore.getSpaceCounts().keySet());
+        for (Long spaceId : spaceIds) {
+            if (ownership.isLocal(before, spaceId) && !ownership.isLocal(after, spaceId)) {
+                handOff(spaceId, after.ownerOf(spaceId));
+            }
+        }
+        // 离开的节点可能来不及交接（例如异常退出）
+        if (!after.getMembers().containsAll(before.getMembers())) {
+            presenceStore.reload(spaceId -> !ownership.isLocal(before, spaceId) && ownership.isLocal(after, spaceId));
+        }
+    }
+
+    // 停止本节点上该空间的节拍，在场信息写入数据库后交给新的归属节点
+    private void handOff(Long spaceId, String owner) {
+        spaces.remove(spaceId);
+        List<OccupantView> occupants = new ArrayList<>();
+        for (UserPresence presence : presenceStore.release(spaceId)) {
+            OccupantView occupant = new OccupantView();
+            occupant.setUserId(presence.getUserId());
+            occupant.setX(presence.getX());
+            occupant.setY(presence.getY());
+            occupant.setZoneId(presence.getZoneId());
+            occupant.setStatus(presence.getStatus());
+            occupants.add(occupant);
+        }
+        SpaceHandoffMessage handoff = new SpaceHandoffMessage();
+        handoff.setSpaceId(spaceId);
+        handoff.setOccupants(occupants);
+        clusterRelay.relayTo(owner, ClusterRelay.TYPE_HANDOFF, handoff);
+        logger.info("Handed off space {} with {} occupants to node {}", spaceId, occupants.size(), owner);
+    }
+
+    // 接管空间：交接前已经移动过的用户以新位置为准；已在运行的节拍把交来的在场者作为下一帧的移动发出
+    private void adopt(SpaceHandoffMessage handoff) {
+        List<UserPresence> presences = new ArrayList<>();
+        for (OccupantView occupant : handoff.getOccupants()) {
+            UserPresence presence = new UserPresence();
+            presence.setUserId(occupant.getUserId());
+            presence.setSpaceId(handoff.getSpaceId());
+            presence.setZoneId(occupant.getZoneId());
+            presence.setX(occupant.getX());
+            presence.setY(occupant.getY());
+            presence.setStatus(occupant.getStatus());
+            presences.add(presence);
+        }
+        presenceStore.adopt(presences);
+        SpaceTickState state = spaces.get(handoff.getSpaceId());
+        if (state != null) {
+            for (OccupantView occupant : handoff.getOccupants()) {
+                PositionUpdateMessage position = new PositionUpdateMessage();
+                position.setUserId(occupant.getUserId());
+                position.setSpaceId(handoff.getSpaceId());
+                position.setZoneId(occupant.getZoneId());
+                position.setX(occupant.getX());
+                position.setY(occupant.getY());
+                position.setTimestamp(new Date());
+                state.pending.putIfAbsent(occupant.getUserId(), position);
+            }
+        }
+    }
+
+    // 空间已删除：在事务提交后调用，本节点和其他节点丢弃该空间的在场信息和节拍、网格、分组状态
+    public void dropSpace(Long spaceId) {
+        dropLocal(spaceId);
+        clusterRelay.relay(ClusterRelay.TYPE_SPACE_DELETED, spaceId);
+    }
+
+    private void dropLocal(Long spaceId) {
+        for (UserPresence presence : presenceStore.evictSpace(spaceId)) {
+            movementFilter.forget(presence.getUserId());
+        }
+        zoneMembership.invalidate(spaceId);
+        deletedSpaces.add(spaceId);
+    }
+
+    // 用户离开空间时丢弃尚未发送的位置
+    public void discard(Long spaceId, Long userId) {
+        movementFilter.forget(userId);
+        discardLocal(spaceId, userId);
+        PositionUpdateMessage departure = new PositionUpdateMessage();
+        departure.setSpaceId(spaceId);
+        departure.setUserId(userId);
+        clusterRelay.relay(ClusterRelay.TYPE_DEPART, departure);
+    }
+
+    private void discardLocal(Long spaceId, Long userId) {
+        SpaceTickState state = spaces.get(spaceId);
+        if (state != null) {
+            state.pending.remove(userId);
+            // 空间网格只在节拍线程中修改，离开事件排队到下一个节拍处理
+            state.departed.add(userId);
+        }
+    }
+
+    // 执行一个节拍：先补发停止移动的用户的最终位置，再对每个有移动的空间发送一帧批量增量
+    public void tick() {
+        for (Long spaceId = deletedSpaces.poll(); spaceId != null; spaceId = deletedSpaces.poll()) {
+            spaces.remove(spaceId);
+            releaseSpace(spaceId);
+        }
+        for (PositionUpdateMessage resting : movementFilter.settle()) {
+            try {
+                route(resting, true);
+            } catch (Exception e) {
+                logger.warn("Settling position failed for user {}", resting.getUserId(), e);
+            }
+        }
+        for (SpaceTickState state : spaces.values()) {
+            try {
+                flush(state);
+                pruneIfIdle(state);
+            } catch (Exception e) {
+                // 单个空间失败不能中断其他空间的节拍
+                logger.warn("Tick failed for space {}", state.spaceId, e);
+            }
+        }
+    }
+
+    // 连续idle-space-ticks个节拍没有在场者和待处理事件的空间释放其状态；判断和移除在映射的锁内，与新的移动互斥
+    private void pruneIfIdle(SpaceTickState state) {
+        if (!state.occupants.isEmpty()) {
+            state.idleTicks = 0;
+            return;
+        }
+        if (++state.idleTicks < idleSpaceTicks) {
+            return;
+        }
+        boolean[] pruned = new boolean[1];
+        spaces.computeIfPresent(state.spaceId, (id, current) -> {
+            if (current != state || !state.pending.isEmpty() || !state.departed.isEmpty() || !state.syncRequests.isEmpty()) {
+                return current;
+            }
+            pruned[0] = true;
+            return null;
+        });
+        if (pruned[0]) {
+            releaseSpace(state.spaceId);
+        }
+    }
+
+    // 只在节拍线程中调用
+    private void releaseSpace(Long spaceId) {
+        interestManager.drop(spaceId);
+        groupService.drop(spaceId);
+    }
+
+    private void flush(SpaceTickState state) {
+        if (!state.seeded) {
+            seed(state);
+        }
+        List<Long> removed = null;
+        for (Long userId = state.departed.poll(); userId != null; userId = state.departed.poll()) {
+            interestManager.remove(state.spaceId, userId);
+            if (state.occupants.remove(userId) != null) {
+                if (removed == null) {
+                    removed = new ArrayList<>();
+                }
+                removed.add(userId);
+            }
+        }
+        List<PositionUpdateMessage> moves = new ArrayList<>(state.pending.size());
+        for (Long userId : state.pending.keySet()) {
+            PositionUpdateMessage latest = state.pending.remove(userId);
+            if (latest != null) {
+                moves.add(latest);
+            }
+        }
+        if (!moves.isEmpty() || removed != null) {
+            publish(state, moves, removed);
+        }
+        // 快照和重新同步在本节拍的增量之后生成，序号与刚发送的增量一致
+        for (SyncRequest request = state.syncRequests.poll(); request != null; request = state.syncRequests.poll()) {
+            sessionManager.sendToUsers(List.of(request.userId), WebSocketSessionManager.USER_SPACE_SYNC,
+                    sync(state, request.userId, request.sinceTick));
+        }
+    }
+
+    private void publish(SpaceTickState state, List<PositionUpdateMessage> moves, List<Long> removed) {
+        for (PositionUpdateMessage move : moves) {
+            state.occupants.put(move.getUserId(), move);
+        }
+
+        PositionBatchMessage batch = new PositionBatchMessage();
+        batch.setSpaceId(state.spaceId);
+        batch.setTick(++state.tick);
+        batch.setTimestamp(new Date());
+        batch.setUpdates(moves);
+        batch.setRemoved(removed);
+        state.history[(int) (state.tick % state.history.length)] = batch;
+
+        if (moves.isEmpty()) {
+            // 只有离开的节拍也占用一个序号，发给空间内所有人
+            sessionManager.publishToLocalSpace(state.spaceId, WebSocketSessionManager.SPACE_POSITIONS, batch);
+        } else {
+            interestManager.apply(state.spaceId, moves);
+            if (interestManager.shouldFilter(state.spaceId)) {
+                interestManager.deliver(batch);
+            } else {
+                sessionManager.publishToLocalSpace(state.spaceId, WebSocketSessionManager.SPACE_POSITIONS, batch);
+            }
+        }
+        // 对话组变化在位置增量之后发布
+        groupService.apply(state.spaceId, state.tick, moves, removed);
+    }
+
+    // 生成同步消息：sinceTick之后的增量都在历史中时合并为一帧，否则为完整快照
+    // 按兴趣过滤的空间中合并增量同样只包含该用户感兴趣的移动者；完整快照包含所有在场者
+    private SpaceSyncMessage sync(SpaceTickState state, Long subscriberId, long sinceTick) {
+        SpaceSyncMessage message = new SpaceSyncMessage();
+        message.setSpaceId(state.spaceId);
+        message.setTick(state.tick);
+        message.setTimestamp(new Date());
+        if (sinceTick >= 0 && sinceTick <= state.tick && state.tick - sinceTick <= state.history.length) {
+            // 按序号依次合并：每个用户只保留最后一次移动，之后又移动的离开者不再算离开
+            Map<Long, PositionUpdateMessage> latest = new HashMap<>();
+            Set<Long> removed = new LinkedHashSet<>();
+            for (long tick = sinceTick + 1; tick <= state.tick; tick++) {
+                PositionBatchMessage batch = state.history[(int) (tick % state.history.length)];
+                if (batch.getRemoved() != null) {
+                    for (Long userId : batch.getRemoved()) {
+                        latest.remove(userId);
+                        removed.add(userId);
+                    }
+                }
+                for (PositionUpdateMessage move : batch.getUpdates()) {
+                    removed.remove(move.getUserId());
+                    latest.put(move.getUserId(), move);
+                }
+            }
+            message.setSinceTick(sinceTick);
+            message.setOccupants(interestManager.shouldFilter(state.spaceId)
+                    ? interestManager.visibleTo(state.spaceId, subscriberId, latest.values())
+                    : new ArrayList<>(latest.values()));
+            message.setRemoved(new ArrayList<>(removed));
+            return message;
+        }
+        message.setFull(true);
+        message.setSinceTick(state.tick);
+        message.setOccupants(new ArrayList<>(state.occupants.values()));
+        message.setRemoved(List.of());
+        return message;
+    }
+
+    // 空间第一次节拍时从在场存储加载已有在场者的最后位置，作为序号0时的状态
+    private void seed(SpaceTickState state) {
+        state.seeded = true;
+        for (UserPresence presence : presenceStore.getUsersInSpace(state.spaceId)) {
+            PositionUpdateMessage position = new PositionUpdateMessage();
+            position.setUserId(presence.getUserId());
+            position.setSpaceId(state.spaceId);
+            position.setZoneId(presence.getZoneId());
+            position.setX(presence.getX());
+            position.setY(presence.getY());
+            position.setTimestamp(presence.getLastActive() != null ? Timestamp.valueOf(presence.getLastActive()) : new Date());
+            state.occupants.putIfAbsent(presence.getUserId(), position);
+        }
+    }
+
+    public int getTickRateHz() {
+        return tickRateHz;
+    }
+
+    private static class SpaceTickState {
+        private final Long spaceId;
+        private final Map<Long, PositionUpdateMessage> pending = new ConcurrentHashMap<>();
+        private final Queue<Long> departed = new ConcurrentLinkedQueue<>();
+        private final Queue<SyncRequest> syncRequests = new ConcurrentLinkedQueue<>();
+        // 以下字段只在节拍线程中访问
+        private long tick;
+        private boolean seeded;
+        // 连续没有在场者的节拍数
+        private int idleTicks;
+        // 用户ID -> 截至当前序号的最新位置
+        private final Map<Long, PositionUpdateMessage> occupants = new HashMap<>();
+        // 最近的增量帧，按序号取模存放
+        private final PositionBatchMessage[] history;
+
+        private SpaceTickState(Long spaceId, int deltaHistory) {
+            this.spaceId = spaceId;
+            this.history = new PositionBatchMessage[Math.max(1, deltaHistory)];
+        }
+    }
+
+    // 空间换归属时旧节点发给新节点的在场信息
+    public static class SpaceHandoffMessage {
+        private Long spaceId;
+        private List<OccupantView> occupants;
+
+        // Getters and Setters
+        public Long getSpaceId() { return spaceId; }
+        public void setSpaceId(Long spaceId) { this.spaceId = spaceId; }
+        public List<OccupantView> getOccupants() { return occupants; }
+        public void setOccupants(List<OccupantView> occupants) { this.occupants = occupants; }
+    }
+
+    private static final class SyncRequest {
+        private final Long userId;
+        // -1表示请求完整快照
+        private final long sinceTick;
+
+        private SyncRequest(Long userId, long sinceTick) {
+            this.userId = userId;
+            this.sinceTick = sinceTick;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.cloudoffice_admin.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+// 虚拟空间的均匀空间哈希网格，按位置增量维护每个格子里的用户
+// 非线程安全：只在空间节拍线程中读写
+public class SpatialGrid {
+
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+
+    // 用户ID -> 当前所在格子和区域
+    private final Map<Long, Occupant> occupants = new HashMap<>();
+    // 格子索引 -> 格子内的用户，只保存非空格子
+    private final Map<Integer, Set<Long>> cells = new HashMap<>();
+
+    public SpatialGrid(int width, int height, int cellSize) {
+        this.cellSize = Math.max(1, cellSize);
+        this.columns = Math.max(1, (Math.max(width, 1) + this.cellSize - 1) / this.cellSize);
+        this.rows = Math.max(1, (Math.max(height, 1) + this.cellSize - 1) / this.cellSize);
+    }
+
+    // 坐标所在的格子，超出空间范围的坐标落在边缘格子
+    public int cellOf(int x, int y) {
+        int column = Math.min(Math.max(x / cellSize, 0), columns - 1);
+        int row = Math.min(Math.max(y / cellSize, 0), rows - 1);
+        return row * columns + column;
+    }
+
+    // 更新用户位置，返回用户是否换了格子
+    public boolean update(Long userId, int x, int y, Long zoneId) {
+        int cell = cellOf(x, y);
+        Occupant occupant = occupants.get(userId);
+        if (occupant == null) {
+            occupant = new Occupant();
+            occupants.put(userId, occupant);
+        } else if (occupant.cell == cell) {
+            occupant.x = x;
+            occupant.y = y;
+            occupant.zoneId = zoneId;
+            return false;
+        } else {
+            removeFromCell(userId, occupant.cell);
+        }
+        occupant.cell = cell;
+        occupant.x = x;
+        occupant.y = y;
+        occupant.zoneId = zoneId;
+        cells.computeIfAbsent(cell, k -> new HashSet<>()).add(userId);
+        return true;
+    }
+
+    public void remove(Long userId) {
+        Occupant occupant = occupants.remove(userId);
+        if (occupant != null) {
+            removeFromCell(userId, occupant.cell);
+        }
+    }
+
+    public boolean contains(Long userId) {
+        return occupants.containsKey(userId);
+    }
+
+    // 用户所在格子，不在网格中时返回-1
+    public int cellOfUser(Long userId) {
+        Occupant occupant = occupants.get(userId);
+        return occupant != null ? occupant.cell : -1;
+    }
+
+    public Long zoneOf(Long userId) {
+        Occupant occupant = occupants.get(userId);
+        return occupant != null ? occupant.zoneId : null;
+    }
+
+    // 遍历以某个格子为中心、半径为radius个格子的正方形范围内的所有格子
+    public void forEachCellInRadius(int cell, int radius, IntConsumer action) {
+        int column = cell % columns;
+        int row = cell / columns;
+        int fromRow = Math.max(0, row - radius);
+        int toRow = Math.min(rows - 1, row + radius);
+        int fromColumn = Math.max(0, column - radius);
+        int toColumn = Math.min(columns - 1, column + radius);
+        for (int r = fromRow; r <= toRow; r++) {
+            for (int c = fromColumn; c <= toColumn; c++) {
+                action.accept(r * columns + c);
+            }
+        }
+    }
+
+    // 两个格子之间的切比雪夫距离（以格子为单位）
+    public int cellDistance(int cellA, int cellB) {
+        return Math.max(Math.abs(cellA % columns - cellB % columns), Math.abs(cellA / columns - cellB / columns));
+    }
+
+    public Set<Long> usersInCell(int cell) {
+        Set<Long> users = cells.get(cell);
+        return users != null ? Collections.unmodifiableSet(users) : Collections.emptySet();
+    }
+
+    // 所有非空格子
+    public Map<Integer, Set<Long>> occupiedCells() {
+        return Collections.unmodifiableMap(cells);
+    }
+
+    // 把所有用户按原来的坐标和区域放入另一个网格，空间尺寸变化后重建网格时使用
+    public void copyTo(SpatialGrid target) {
+        for (Map.Entry<Long, Occupant> entry : occupants.entrySet()) {
+            Occupant occupant = entry.getValue();
+            target.update(entry.getKey(), occupant.x, occupant.y, occupant.zoneId);
+        }
+    }
+
+    public int size() {
+        return occupants.size();
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    private void removeFromCell(Long userId, int cell) {
+        Set<Long> users = cells.get(cell);
+        if (users != null) {
+            users.remove(userId);
+            if (users.isEmpty()) {
+                cells.remove(cell);
+            }
+        }
+    }
+
+    private static class Occupant {
+        private int cell;
+        private int x;
+        private int y;
+        private Long zoneId;
+    }
+}
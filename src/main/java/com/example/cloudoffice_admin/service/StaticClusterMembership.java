@@ -0,0 +1,34 @@
+package com.example.cloudoffice_admin.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 固定的成员列表，来自配置；测试中通过setMembers模拟节点加入和离开
+public class StaticClusterMembership implements ClusterMembership {
+
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile Set<String> members;
+
+    public StaticClusterMembership(Collection<String> members) {
+        this.members = Set.copyOf(members);
+    }
+
+    @Override
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    @Override
+    public void onChange(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public void setMembers(Collection<String> members) {
+        this.members = Set.copyOf(members);
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+}
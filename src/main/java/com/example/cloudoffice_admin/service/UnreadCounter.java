@@ -0,0 +1,202 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.repository.ChannelMembershipRepository;
+import com.example.cloudoffice_admin.repository.ChatChannelRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 未读计数：每个频道的消息按序号递增，每个成员在channel_members中有一个已读游标，
+// 频道的未读数 = 频道lastSeq - 已读游标；两者都缓存在内存中，角标接口不查询数据库
+// 用户的游标在第一次查询时从channel_members加载一次，之后新消息、已读和成员变化在事务提交后增量更新；
+// 集群模式下变化通过中继转发，其他节点只更新已经加载的数据
+@Service
+public class UnreadCounter {
+
+    @Autowired
+    private ChatChannelRepository chatChannelRepository;
+
+    @Autowired
+    private ChannelMembershipRepository membershipRepository;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    // 最多缓存的用户数，超过时丢弃任意一个，下次查询时重新加载
+    @Value("${app.chat.unread.max-users:100000}")
+    private int maxUsers = 100000;
+
+    // 频道ID -> 最新消息序号
+    private final Map<Long, Long> lastSeqs = new ConcurrentHashMap<>();
+    // 用户ID -> (频道ID -> 已读游标)
+    private final Map<Long, Map<Long, Long>> cursors = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        clusterRelay.on(ClusterRelay.TYPE_READ_STATE, envelope -> apply(clusterRelay.read(envelope, ReadStateChange.class)));
+    }
+
+    // 用户所有频道的未读总数
+    public long unreadCount(Long userId) {
+        long total = 0;
+        for (Map.Entry<Long, Long> cursor : cursorsOf(userId).entrySet()) {
+            Long lastSeq = lastSeqs.get(cursor.getKey());
+            if (lastSeq != null && lastSeq > cursor.getValue()) {
+                total += lastSeq - cursor.getValue();
+            }
+        }
+        return total;
+    }
+
+    // 加载中的用户在同一个键上阻塞，增量更新会等加载完成后再应用
+    private Map<Long, Long> cursorsOf(Long userId) {
+        Map<Long, Long> loaded = cursors.get(userId);
+        if (loaded != null) {
+            return loaded;
+        }
+        if (cursors.size() >= maxUsers) {
+            Iterator<Long> evicted = cursors.keySet().iterator();
+            if (evicted.hasNext()) {
+                cursors.remove(evicted.next());
+            }
+        }
+        return cursors.computeIfAbsent(userId, id -> {
+            Map<Long, Long> channels = new ConcurrentHashMap<>();
+            List<Long> missing = new ArrayList<>();
+            for (ChannelMembershipRepository.CursorView cursor : membershipRepository.findCursorsByUserId(id)) {
+                channels.put(cursor.getChannelId(), cursor.getLastReadSeq());
+                if (!lastSeqs.containsKey(cursor.getChannelId())) {
+                    missing.add(cursor.getChannelId());
+                }
+            }
+            if (!missing.isEmpty()) {
+                for (ChatChannelRepository.SeqView channel : chatChannelRepository.findLastSeqs(missing)) {
+                    lastSeqs.merge(channel.getId(), channel.getLastSeq(), Math::max);
+                }
+            }
+            return channels;
+        });
+    }
+
+    // 频道有了新消息，发送者自己的游标同时前进
+    public void messageSent(Long channelId, long seq, Long senderId) {
+        publishAfterCommit(change(ReadStateChange.SENT, channelId, senderId, null, seq));
+    }
+
+    // 用户读到了seq
+    public void read(Long userId, Long channelId, long seq) {
+        publishAfterCommit(change(ReadStateChange.READ, channelId, userId, null, seq));
+    }
+
+    // 新成员的游标从加入时的lastSeq开始，之前的消息不算未读
+    public void joined(Long channelId, List<Long> userIds, long seq) {
+        publishAfterCommit(change(ReadStateChange.JOINED, channelId, null, userIds, seq));
+    }
+
+    public void left(Long channelId, List<Long> userIds) {
+        publishAfterCommit(change(ReadStateChange.LEFT, channelId, null, userIds, 0));
+    }
+
+    public void dropped(Long channelId) {
+        publishAfterCommit(change(ReadStateChange.DROPPED, channelId, null, null, 0));
+    }
+
+    private void publishAfterCommit(ReadStateChange change) {
+        AfterCommit.run(() -> {
+            apply(change);
+            clusterRelay.relay(ClusterRelay.TYPE_READ_STATE, change);
+        });
+    }
+
+    // 序号和游标只前进不后退，乱序到达的变化不会覆盖更新的值
+    private void apply(ReadStateChange change) {
+        Long channelId = change.getChannelId();
+        switch (change.getKind()) {
+            case ReadStateChange.SENT -> {
+                lastSeqs.merge(channelId, change.getSeq(), Math::max);
+                advance(change.getUserId(), channelId, change.getSeq());
+            }
+            case ReadStateChange.READ -> advance(change.getUserId(), channelId, change.getSeq());
+            case ReadStateChange.JOINED -> {
+                lastSeqs.merge(channelId, change.getSeq(), Math::max);
+                for (Long userId : change.getUserIds()) {
+                    cursors.computeIfPresent(userId, (id, channels) -> {
+                        channels.merge(channelId, change.getSeq(), Math::max);
+                        return channels;
+                    });
+                }
+            }
+            case ReadStateChange.LEFT -> {
+                for (Long userId : change.getUserIds()) {
+                    cursors.computeIfPresent(userId, (id, channels) -> {
+                        channels.remove(channelId);
+                        return channels;
+                    });
+                }
+            }
+            case ReadStateChange.DROPPED -> {
+                lastSeqs.remove(channelId);
+                for (Map<Long, Long> channels : cursors.values()) {
+                    channels.remove(channelId);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    // 只前进用户已经是成员的频道的游标
+    private void advance(Long userId, Long channelId, long seq) {
+        if (userId == null) {
+            return;
+        }
+        cursors.computeIfPresent(userId, (id, channels) -> {
+            channels.computeIfPresent(channelId, (c, cursor) -> Math.max(cursor, seq));
+            return channels;
+        });
+    }
+
+    private static ReadStateChange change(String kind, Long channelId, Long userId, List<Long> userIds, long seq) {
+        ReadStateChange change = new ReadStateChange();
+        change.setKind(kind);
+        change.setChannelId(channelId);
+        change.setUserId(userId);
+        change.setUserIds(userIds);
+        change.setSeq(seq);
+        return change;
+    }
+
+    // 节点间中继的未读状态变化
+    public static class ReadStateChange {
+        public static final String SENT = "sent";
+        public static final String READ = "read";
+        public static final String JOINED = "joined";
+        public static final String LEFT = "left";
+        public static final String DROPPED = "dropped";
+
+        private String kind;
+        private Long channelId;
+        private Long userId;
+        private List<Long> userIds;
+        private long seq;
+
+        // Getters and Setters
+        public String getKind() { return kind; }
+        public void setKind(String kind) { this.kind = kind; }
+        public Long getChannelId() { return channelId; }
+        public void setChannelId(Long channelId) { this.channelId = channelId; }
+        public Long getUserId() { return userId; }
+        public void setUserId(Long userId) { this.userId = userId; }
+        public List<Long> getUserIds() { return userIds; }
+        public void setUserIds(List<Long> userIds) { this.userIds = userIds; }
+        public long getSeq() { return seq; }
+        public void setSeq(long seq) { this.seq = seq; }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.cloudoffice_admin.service;
+
+import java.util.Arrays;
+
+// 压缩的用户ID位图（Roaring思路）：ID按高48位分块，每块最多65536个低16位，
+// 块内元素不超过4096个时用有序char数组，超过后改用8KB位图；判断是否包含为一次二分查找加一次数组访问
+// 5万成员的频道只占几十KB；非线程安全，由调用方加锁
+final class UserIdBitmap {
+
+    // 数组块和位图块的分界：4096个char和位图一样是8KB
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    // 按高位排序的块键和块
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+    private long cardinality;
+
+    boolean add(long userId) {
+        long key = userId >> 16;
+        int index = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key);
+        }
+        if (containers[index].add((char) userId)) {
+            cardinality++;
+            return true;
+        }
+        return false;
+    }
+
+    boolean remove(long userId) {
+        int index = Arrays.binarySearch(keys, 0, containerCount, userId >> 16);
+        if (index < 0 || !containers[index].remove((char) userId)) {
+            return false;
+        }
+        cardinality--;
+        if (containers[index].size == 0) {
+            removeContainer(index);
+        }
+        return true;
+    }
+
+    boolean contains(long userId) {
+        int index = Arrays.binarySearch(keys, 0, containerCount, userId >> 16);
+        return index >= 0 && containers[index].contains((char) userId);
+    }
+
+    long cardinality() {
+        return cardinality;
+    }
+
+    // 估算占用的字节数，用于监控
+    long sizeInBytes() {
+        long bytes = keys.length * 8L + containers.length * 8L;
+        for (int i = 0; i < containerCount; i++) {
+            bytes += containers[i].bits != null ? BITMAP_WORDS * 8L : containers[i].array.length * 2L;
+        }
+        return bytes;
+    }
+
+    private void insertContainer(int index, long key) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = new Container();
+        containerCount++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+        containerCount--;
+        containers[containerCount] = null;
+    }
+
+    // 一个块：array和bits只有一个不为空
+    private static final class Container {
+        private char[] array = new char[4];
+        private long[] bits;
+        private int size;
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, size, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] = before | (1L << low);
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                size++;
+                return true;
+            }
+            int index = Arrays.binarySearch(array, 0, size, low);
+            if (index >= 0) {
+                return false;
+            }
+            if (size == ARRAY_MAX) {
+                toBitmap();
+                return add(low);
+            }
+            index = -index - 1;
+            if (size == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_MAX, Math.max(4, size * 2)));
+            }
+            System.arraycopy(array, index, array, index + 1, size - index);
+            array[index] = low;
+            size++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] = before & ~(1L << low);
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                size--;
+                // 留一点余量，避免在分界附近反复转换
+                if (size < ARRAY_MAX / 2) {
+                    toArray();
+                }
+                return true;
+            }
+            int index = Arrays.binarySearch(array, 0, size, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(array, index + 1, array, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        private void toBitmap() {
+            bits = new long[BITMAP_WORDS];
+            for (int i = 0; i < size; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            array = new char[size];
+            int count = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long value = bits[word];
+                while (value != 0) {
+                    array[count++] = (char) ((word << 6) + Long.numberOfTrailingZeros(value));
+                    value &= value - 1;
+                }
+            }
+            bits = null;
+        }
+    }
+}
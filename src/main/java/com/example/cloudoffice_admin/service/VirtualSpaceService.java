@@ -1,8 +1,11 @@
 package com.example.cloudoffice_admin.service;
 
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.dto.SpaceView;
 import com.example.cloudoffice_admin.dto.UserPositionRequest;
 import com.example.cloudoffice_admin.dto.VirtualSpaceRequest;
 import com.example.cloudoffice_admin.dto.ZoneRequest;
+import com.example.cloudoffice_admin.dto.ZoneView;
 import com.example.cloudoffice_admin.model.User;
 import com.example.cloudoffice_admin.model.UserPresence;
 import com.example.cloudoffice_admin.model.VirtualSpace;
@@ -17,6 +20,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.persistence.EntityNotFoundException;
 import java.time.LocalDateTime;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -35,6 +39,24 @@ public class VirtualSpaceService implements VirtualSpaceServiceInterface {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PresenceReaper presenceReaper;
+
+    @Autowired
+    private PresenceStore presenceStore;
+
+    @Autowired
+    private ZoneMembershipService zoneMembership;
+
+    @Autowired
+    private SpaceLayoutCache layoutCache;
+
+    @Autowired
+    private SpaceOwnership ownership;
+
+    @Autowired
+    private SpaceTickEngine tickEngine;
+
     // 创建虚拟空间
     @Override
     public VirtualSpace createSpace(VirtualSpaceRequest request, Long creatorId) {
@@ -51,7 +73,10 @@ public class VirtualSpaceService implements VirtualSpaceServiceInterface {
         space.setCreatorId(creatorId); // 使用creatorId代替creator对象
         space.setSpaceId(UUID.randomUUID().toString());
 
-        return virtualSpaceRepository.save(space);
+        VirtualSpace saved = virtualSpaceRepository.save(space);
+        // 清除该ID此前作为不存在的空间缓存的结果
+        layoutCache.invalidate(saved.getId());
+        return saved;
     }
 
     // 获取所有公开空间
@@ -66,11 +91,16 @@ public class VirtualSpaceService implements VirtualSpaceServiceInterface {
         return virtualSpaceRepository.findByCreatorId(userId);
     }
 
-    // 获取空间详情
+    // 获取空间详情，从布局缓存读取
     @Override
-    public VirtualSpace getSpaceById(Long spaceId) {
-        return virtualSpaceRepository.findById(spaceId)
-                .orElseThrow(() -> new EntityNotFoundException("Virtual space not found"));
+    public SpaceView getSpaceById(Long spaceId) {
+        return layoutCache.get(spaceId).getSpace();
+    }
+
+    // 获取空间布局（空间详情、区域和版本号）
+    @Override
+    public SpaceLayoutCache.SpaceLayout getSpaceLayout(Long spaceId) {
+        return layoutCache.get(spaceId);
     }
 
     // 更新空间信息
@@ -91,11 +121,14 @@ public class VirtualSpaceService implements VirtualSpaceServiceInterface {
         space.setTheme(request.getTheme());
         space.setPublic(request.isPublic()); // 修改方法名
 
-        return virtualSpaceRepository.save(space);
+        VirtualSpace saved = virtualSpaceRepository.save(space);
+        layoutCache.invalidate(spaceId);
+        return saved;
     }
 
-    // 删除空间
+    // 删除空间：提交后再清理缓存和内存中的在场信息，回滚时保持不变
     @Override
+    @Transactional
     public void deleteSpace(Long spaceId, Long userId) {
         VirtualSpace space = virtualSpaceRepository.findById(spaceId)
                 .orElseThrow(() -> new EntityNotFoundException("Virtual space not found"));
@@ -106,6 +139,10 @@ public class VirtualSpaceService implements VirtualSpaceServiceInterface {
         }
 
         virtualSpaceRepository.delete(space);
+        AfterCommit.run(() -> {
+            layoutCache.invalidate(spaceId);
+            tickEngine.dropSpace(spaceId);
+        });
     }
 
     // 创建区域
@@ -130,86 +167,82 @@ public class VirtualSpaceService implements VirtualSpaceServiceInterface {
         zone.setColor(request.getColor());
         zone.setPrivate(request.isPrivate()); // 修改方法名
         zone.setSpace(space);
+        zone.setSpaceId(space.getId());
 
-        return zoneRepository.save(zone);
+        Zone saved = zoneRepository.save(zone);
+        layoutCache.invalidate(space.getId());
+        return saved;
     }
 
-    // 获取空间中的所有区域
+    // 获取空间中的所有区域，从布局缓存读取
     @Override
-    public List<Zone> getZonesBySpaceId(Long spaceId) {
-        return zoneRepository.findBySpaceId(spaceId);
+    public List<ZoneView> getZonesBySpaceId(Long spaceId) {
+        return layoutCache.get(spaceId).getZones();
     }
 
-    // 更新用户位置
+    // 更新用户位置：只校验空间（走布局缓存），所在区域由服务端按坐标从区域索引中判定，忽略请求中的zoneId
+    // 位置写入内存存储，由后台线程批量持久化；用户ID来自已认证的请求，不再逐次查询用户
     @Override
-    @Transactional
     public UserPresence updateUserPosition(Long userId, UserPositionRequest request) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new EntityNotFoundException("User not found"));
-
-        VirtualSpace space = virtualSpaceRepository.findById(request.getSpaceId())
-                .orElseThrow(() -> new EntityNotFoundException("Virtual space not found"));
-
-        Zone zone = null;
-        if (request.getZoneId() != null) {
-            zone = zoneRepository.findById(request.getZoneId())
-                    .orElseThrow(() -> new EntityNotFoundException("Zone not found"));
-
-            // 检查区域是否属于该空间
-            if (!zone.getSpace().getId().equals(space.getId())) {
-                throw new IllegalArgumentException("Zone does not belong to the specified space");
-            }
+        Long spaceId = request.getSpaceId();
+        if (spaceId == null) {
+            throw new EntityNotFoundException("Virtual space not found");
         }
+        layoutCache.get(spaceId);
 
-        // 查找或创建用户存在记录
-        UserPresence presence = userPresenceRepository.findByUserId(userId);
-        if (presence == null) {
-            presence = new UserPresence();
-            presence.setUser(user);
-            // 设置用户ID字段
-            presence.setUserId(userId);
-            // 如果需要设置ID标识，可以使用zoneId字段或其他可用字段
-            if (zone != null) {
-                presence.setZoneId(zone.getId());
-            }
+        presenceReaper.recordActivity(userId);
+        if (!ownership.isLocal(spaceId)) {
+            return forwardPosition(userId, spaceId, request);
         }
+        return zoneMembership.move(userId, spaceId, request.getX(), request.getY());
+    }
 
-        presence.setSpace(space);
-        presence.setZone(zone);
+    // 空间归属模式下空间不归本节点：转发给归属节点写入，这里按同样的区域判定返回结果
+    private UserPresence forwardPosition(Long userId, Long spaceId, UserPositionRequest request) {
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(userId);
+        message.setSpaceId(spaceId);
+        message.setX(request.getX());
+        message.setY(request.getY());
+        message.setTimestamp(new Date());
+        ownership.forward(spaceId, ClusterRelay.TYPE_FORWARD_MOVE, message);
+
+        UserPresence presence = new UserPresence();
+        presence.setUserId(userId);
+        presence.setSpaceId(spaceId);
+        presence.setZoneId(zoneMembership.locate(spaceId, request.getX(), request.getY()));
         presence.setX(request.getX());
         presence.setY(request.getY());
-        presence.setStatus(UserPresence.STATUS_ONLINE); // 使用字符串常量
-        presence.setLastActive(LocalDateTime.now()); // 使用LocalDateTime
-
-        return userPresenceRepository.save(presence);
+        presence.setLastActive(LocalDateTime.now());
+        return presence;
     }
 
-    // 获取空间中的所有在线用户
+    // 获取空间中的所有在线用户（不含已被回收为离线的用户），从内存读取
     @Override
     public List<UserPresence> getUsersInSpace(Long spaceId) {
-        return userPresenceRepository.findBySpaceId(spaceId);
+        return presenceStore.getUsersInSpace(spaceId);
     }
 
-    // 获取区域中的所有在线用户
+    // 获取区域中的所有在线用户（不含已被回收为离线的用户），从内存读取
     @Override
     public List<UserPresence> getUsersInZone(Long zoneId) {
-        return userPresenceRepository.findByZoneId(zoneId);
+        return presenceStore.getUsersInZone(zoneId);
     }
 
     // 用户离开空间
     @Override
     public void userLeaveSpace(Long userId) {
-        userPresenceRepository.deleteByUserId(userId);
+        presenceStore.remove(userId);
     }
 
-    // 获取用户当前所在的空间
+    // 获取用户当前所在的空间；已离线并从内存淘汰的用户回退到数据库
     @Override
     public UserPresence getUserPresence(Long userId) {
-        return userPresenceRepository.findByUserId(userId);
+        UserPresence presence = presenceStore.get(userId);
+        return presence != null ? presence : userPresenceRepository.findByUserId(userId);
     }
     
     // 新增方法：更新空间状态
-    @Override
     public VirtualSpace updateSpaceStatus(Long spaceId, boolean active) {
         VirtualSpace space = virtualSpaceRepository.findById(spaceId)
                 .orElseThrow(() -> new EntityNotFoundException("Virtual space not found"));
@@ -1,8 +1,10 @@
 package com.example.cloudoffice_admin.service;
 
+import com.example.cloudoffice_admin.dto.SpaceView;
 import com.example.cloudoffice_admin.dto.UserPositionRequest;
 import com.example.cloudoffice_admin.dto.VirtualSpaceRequest;
 import com.example.cloudoffice_admin.dto.ZoneRequest;
+import com.example.cloudoffice_admin.dto.ZoneView;
 import com.example.cloudoffice_admin.model.UserPresence;
 import com.example.cloudoffice_admin.model.VirtualSpace;
 import com.example.cloudoffice_admin.model.Zone;
@@ -15,13 +17,14 @@ public interface VirtualSpaceServiceInterface {
     VirtualSpace createSpace(VirtualSpaceRequest request, Long creatorId);
     VirtualSpace updateSpace(Long spaceId, VirtualSpaceRequest request, Long userId);
     void deleteSpace(Long spaceId, Long userId);
-    VirtualSpace getSpaceById(Long spaceId);
+    SpaceView getSpaceById(Long spaceId);
+    SpaceLayoutCache.SpaceLayout getSpaceLayout(Long spaceId);
     List<VirtualSpace> getPublicSpaces();
     List<VirtualSpace> getUserSpaces(Long userId);
     
     // 区域管理
     Zone createZone(ZoneRequest request, Long userId);
-    List<Zone> getZonesBySpaceId(Long spaceId);
+    List<ZoneView> getZonesBySpaceId(Long spaceId);
     
     // 用户存在状态管理
     UserPresence updateUserPosition(Long userId, UserPositionRequest request);
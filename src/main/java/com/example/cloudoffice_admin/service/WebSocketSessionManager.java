@@ -1,92 +1,394 @@
 package com.example.cloudoffice_admin.service;
 
+import com.example.cloudoffice_admin.service.ClusterRelay.RelayEnvelope;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 @Service
 public class WebSocketSessionManager {
 
+    // 空间主题频道
+    public static final String SPACE_POSITIONS = "positions";
+    public static final String SPACE_JOINS = "joins";
+    public static final String SPACE_LEAVES = "leaves";
+    public static final String SPACE_ANNOUNCEMENTS = "announcements";
+    public static final String SPACE_PRESENCE = "presence";
+    public static final String SPACE_ZONES = "zones";
+    public static final String SPACE_GROUPS = "groups";
+
+    // 按兴趣过滤后的位置增量发往用户队列
+    public static final String USER_SPACE_POSITIONS = "/queue/spaces/positions";
+    // 加入空间时的快照和跳号后的重新同步
+    public static final String USER_SPACE_SYNC = "/queue/spaces/sync";
+
+    // 聊天频道主题前缀，频道ID接在后面，只有频道成员可以订阅
+    public static final String CHANNEL_TOPIC_PREFIX = "/topic/channels/";
+
+    // 旧版按用户队列投递时使用的目的地，仅在user模式下使用
+    private static final Map<String, String> LEGACY_USER_DESTINATIONS = Map.of(
+            SPACE_POSITIONS, "/queue/positions",
+            SPACE_JOINS, "/queue/space/joins",
+            SPACE_LEAVES, "/queue/space/leaves",
+            SPACE_ANNOUNCEMENTS, "/queue/chat/announcements",
+            SPACE_PRESENCE, "/queue/space/presence",
+            SPACE_ZONES, "/queue/space/zones",
+            SPACE_GROUPS, "/queue/space/groups"
+    );
+
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    // 存储用户ID到会话ID的映射
-    private final Map<Long, Set<String>> userSessions = new ConcurrentHashMap<>();
-    // 存储会话ID到用户ID的映射
-    private final Map<String, Long> sessionUsers = new ConcurrentHashMap<>();
-    // 存储用户在虚拟空间中的会话
-    private final Map<Long, Set<Long>> spaceUsers = new ConcurrentHashMap<>();
+    @Autowired
+    private PositionFrameCodec frameCodec;
+
+    @Autowired
+    private ClusterRelay clusterRelay;
+
+    @Autowired
+    private SharedSessionRegistry sharedRegistry;
+
+    @Autowired
+    private SpaceOwnership ownership;
+
+    // 是否为协商了二进制子协议的连接额外发送紧凑二进制帧
+    @Value("${app.realtime.binary-frames.enabled:true}")
+    private boolean binaryFramesEnabled = true;
+
+    // 空间广播模式：topic（序列化一次，由代理分发给所有订阅者）或 user（旧版逐用户投递）
+    @Value("${app.realtime.space-fanout:topic}")
+    private String spaceFanoutMode = "topic";
+
+    // 本节点的用户会话和空间成员索引
+    private final SessionRegistry registry = new SessionRegistry();
+    // 协商了二进制帧的会话ID
+    private final Set<String> binarySessions = ConcurrentHashMap.newKeySet();
+
+    // 集群模式下接收其他节点中继的帧，投递给本节点的代理
+    @PostConstruct
+    public void init() {
+        clusterRelay.on(ClusterRelay.TYPE_FRAME, this::deliverRelayedFrame);
+    }
 
     // 用户连接时注册会话
     public void registerSession(Long userId, String sessionId) {
-        userSessions.computeIfAbsent(userId, k -> new CopyOnWriteArraySet<>()).add(sessionId);
-        sessionUsers.put(sessionId, userId);
+        registry.registerSession(userId, sessionId);
+        sharedRegistry.registerSession(userId, sessionId);
     }
 
-    // 用户断开连接时移除会话
-    public void removeSession(String sessionId) {
-        Long userId = sessionUsers.remove(sessionId);
+    // 用户断开连接时移除会话；最后一个会话断开时从所有空间中移除，返回离开的空间
+    public List<Long> removeSession(String sessionId) {
+        binarySessions.remove(sessionId);
+        List<Long> leftSpaces = new ArrayList<>(0);
+        Long userId = registry.removeSession(sessionId, leftSpaces::add);
         if (userId != null) {
-            Set<String> sessions = userSessions.get(userId);
-            if (sessions != null) {
-                sessions.remove(sessionId);
-                if (sessions.isEmpty()) {
-                    userSessions.remove(userId);
-                    // 用户所有会话都断开，从所有空间中移除
-                    spaceUsers.forEach((spaceId, users) -> users.remove(userId));
-                }
+            sharedRegistry.removeSession(userId, sessionId);
+            for (Long spaceId : leftSpaces) {
+                sharedRegistry.leaveSpace(userId, spaceId);
             }
         }
+        return leftSpaces;
+    }
+
+    // 移除用户在本节点的所有会话（例如长时间没有心跳），返回离开的空间
+    public List<Long> removeUser(Long userId) {
+        List<Long> leftSpaces = new ArrayList<>(0);
+        for (String sessionId : registry.sessionsOf(userId)) {
+            leftSpaces.addAll(removeSession(sessionId));
+        }
+        // 没有会话但通过加入消息进入了空间的用户
+        for (long spaceId : registry.spacesOf(userId)) {
+            leaveSpace(userId, spaceId);
+            leftSpaces.add(spaceId);
+        }
+        return leftSpaces;
+    }
+
+    // 用户在本节点所在的空间
+    public long[] spacesOf(Long userId) {
+        return registry.spacesOf(userId);
+    }
+
+    // 会话所属的用户，未注册的会话返回null
+    public Long getUserIdForSession(String sessionId) {
+        return registry.userOf(sessionId);
     }
 
     // 用户加入虚拟空间
     public void joinSpace(Long userId, Long spaceId) {
-        spaceUsers.computeIfAbsent(spaceId, k -> new CopyOnWriteArraySet<>()).add(userId);
+        registry.joinSpace(userId, spaceId);
+        sharedRegistry.joinSpace(userId, spaceId);
     }
 
     // 用户离开虚拟空间
     public void leaveSpace(Long userId, Long spaceId) {
-        Set<Long> users = spaceUsers.get(spaceId);
-        if (users != null) {
-            users.remove(userId);
-            if (users.isEmpty()) {
-                spaceUsers.remove(spaceId);
-            }
-        }
+        registry.leaveSpace(userId, spaceId);
+        sharedRegistry.leaveSpace(userId, spaceId);
     }
 
-    // 获取虚拟空间中的所有用户
+    // 本节点上虚拟空间中的用户快照，不能修改；集群范围见SharedSessionRegistry.getUsersInSpace
+    public long[] usersInSpace(Long spaceId) {
+        return registry.usersInSpace(spaceId);
+    }
+
+    // 获取本节点上虚拟空间中的所有用户
     public Set<Long> getUsersInSpace(Long spaceId) {
-        return spaceUsers.getOrDefault(spaceId, new CopyOnWriteArraySet<>());
+        long[] users = registry.usersInSpace(spaceId);
+        Set<Long> result = new HashSet<>(users.length * 2);
+        for (long userId : users) {
+            result.add(userId);
+        }
+        return result;
     }
 
-    // 检查用户是否在线
+    // 检查用户是否在线，集群模式下任意节点上有会话即在线
     public boolean isUserOnline(Long userId) {
-        Set<String> sessions = userSessions.get(userId);
-        return sessions != null && !sessions.isEmpty();
+        return hasLocalSession(userId) || sharedRegistry.isUserOnline(userId);
     }
 
-    // 向特定用户发送消息
+    // 用户在本节点是否有会话
+    public boolean hasLocalSession(Long userId) {
+        return registry.sessionCount(userId) > 0;
+    }
+
+    // 向特定用户发送消息，集群模式下同时中继给用户可能连接的其他节点
     public void sendToUser(Long userId, String destination, Object payload) {
-        messagingTemplate.convertAndSendToUser(userId.toString(), destination, payload);
+        if (!clusterRelay.isEnabled()) {
+            messagingTemplate.convertAndSendToUser(userId.toString(), destination, payload);
+            return;
+        }
+        Message<?> frame = toFrame(payload);
+        String userDestination = "/user/" + userId + destination;
+        if (hasLocalSession(userId)) {
+            messagingTemplate.send(userDestination, frame);
+        }
+        clusterRelay.relayFrame(userDestination, userId, frame);
     }
 
     // 向空间中的所有用户发送消息
     public void broadcastToSpace(Long spaceId, String destination, Object payload) {
-        Set<Long> users = getUsersInSpace(spaceId);
-        for (Long userId : users) {
+        if (sharedRegistry.isEnabled()) {
+            for (Long userId : sharedRegistry.getUsersInSpace(spaceId)) {
+                sendToUser(userId, destination, payload);
+            }
+            return;
+        }
+        for (long userId : registry.usersInSpace(spaceId)) {
             sendToUser(userId, destination, payload);
         }
     }
 
-    // 获取用户的活跃会话数
+    // 向一组用户发送同一负载：只序列化一次，编码后的帧按用户目的地分别投递
+    // 集群模式下每个节点都有完整的位置增量，只投递给本节点的用户；
+    // 空间归属模式下只有归属节点计算，其余用户共享一个中继帧，由各自所在的节点投递
+    public void sendToUsers(Collection<Long> userIds, String destination, Object payload) {
+        List<Long> remoteUsers = List.of();
+        if (clusterRelay.isEnabled()) {
+            List<Long> localUsers = new ArrayList<>(userIds.size());
+            remoteUsers = new ArrayList<>();
+            for (Long userId : userIds) {
+                if (hasLocalSession(userId)) {
+                    localUsers.add(userId);
+                } else if (ownership.isEnabled()) {
+                    remoteUsers.add(userId);
+                }
+            }
+            userIds = localUsers;
+        }
+        if (!remoteUsers.isEmpty()) {
+            clusterRelay.relayFrameToUsers(destination, remoteUsers, toFrame(payload));
+            if (binaryFramesEnabled && frameCodec.supports(payload)) {
+                clusterRelay.relayFrameToUsers(destination + PositionFrameCodec.DESTINATION_SUFFIX, remoteUsers,
+                        binaryFrame(frameCodec.encode(payload)));
+            }
+        }
+        if (userIds.isEmpty()) {
+            return;
+        }
+        sendFrameToUsers(userIds, destination, toFrame(payload));
+
+        if (binaryEnabledFor(payload)) {
+            List<Long> binaryUsers = new ArrayList<>();
+            for (Long userId : userIds) {
+                if (hasBinarySession(userId)) {
+                    binaryUsers.add(userId);
+                }
+            }
+            if (!binaryUsers.isEmpty()) {
+                sendFrameToUsers(binaryUsers, destination + PositionFrameCodec.DESTINATION_SUFFIX,
+                        binaryFrame(frameCodec.encode(payload)));
+            }
+        }
+    }
+
+    private void sendFrameToUsers(Collection<Long> userIds, String destination, Message<?> frame) {
+        for (Long userId : userIds) {
+            messagingTemplate.send("/user/" + userId + destination, frame);
+        }
+    }
+
+    // 序列化一次负载，得到可以重复发送的帧
+    private Message<?> toFrame(Object payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setLeaveMutable(true);
+        Message<?> converted = messagingTemplate.getMessageConverter().toMessage(payload, accessor.getMessageHeaders());
+        if (converted == null) {
+            throw new MessageConversionException("Unable to convert payload of type " + payload.getClass().getName());
+        }
+        // 不可变的头部保证每次发送都复制头部，而不会修改共享帧
+        return MessageBuilder.createMessage(converted.getPayload(),
+                SimpMessageHeaderAccessor.wrap(converted).getMessageHeaders());
+    }
+
+    // 向空间主题发布消息：负载只序列化一次，同一帧由代理发给所有订阅者；集群模式下编码后的帧中继给其他节点
+    public void publishToSpace(Long spaceId, String channel, Object payload) {
+        publish(spaceId, channel, payload, clusterRelay.isEnabled());
+    }
+
+    // 只发布给本节点的订阅者，用于每个节点各自计算的消息（例如空间节拍）
+    // 空间归属模式下这些消息只由归属节点计算，需要中继给其他节点
+    public void publishToLocalSpace(Long spaceId, String channel, Object payload) {
+        publish(spaceId, channel, payload, ownership.isEnabled());
+    }
+
+    private void publish(Long spaceId, String channel, Object payload, boolean relay) {
+        if ("user".equalsIgnoreCase(spaceFanoutMode)) {
+            String destination = LEGACY_USER_DESTINATIONS.getOrDefault(channel, "/queue/" + channel);
+            if (relay) {
+                broadcastToSpace(spaceId, destination, payload);
+            } else {
+                long[] users = registry.usersInSpace(spaceId);
+                List<Long> userIds = new ArrayList<>(users.length);
+                for (long userId : users) {
+                    userIds.add(userId);
+                }
+                sendToUsers(userIds, destination, payload);
+            }
+            return;
+        }
+        String topic = spaceTopic(spaceId, channel);
+        if (!relay) {
+            messagingTemplate.convertAndSend(topic, payload);
+            if (binaryEnabledFor(payload)) {
+                messagingTemplate.send(topic + PositionFrameCodec.DESTINATION_SUFFIX, binaryFrame(frameCodec.encode(payload)));
+            }
+            return;
+        }
+        Message<?> frame = toFrame(payload);
+        messagingTemplate.send(topic, frame);
+        clusterRelay.relayFrame(topic, null, frame);
+        // 其他节点可能有二进制会话，只要负载支持就编码并中继
+        if (binaryFramesEnabled && frameCodec.supports(payload)) {
+            Message<byte[]> binary = binaryFrame(frameCodec.encode(payload));
+            if (!binarySessions.isEmpty()) {
+                messagingTemplate.send(topic + PositionFrameCodec.DESTINATION_SUFFIX, binary);
+            }
+            clusterRelay.relayFrame(topic + PositionFrameCodec.DESTINATION_SUFFIX, null, binary);
+        }
+    }
+
+    // 向聊天频道主题发布消息：负载只序列化一次，由代理发给订阅的成员；集群模式下中继给其他节点
+    public void publishToChannel(Long channelId, Object payload) {
+        String topic = channelTopic(channelId);
+        if (!clusterRelay.isEnabled()) {
+            messagingTemplate.convertAndSend(topic, payload);
+            return;
+        }
+        Message<?> frame = toFrame(payload);
+        messagingTemplate.send(topic, frame);
+        clusterRelay.relayFrame(topic, null, frame);
+    }
+
+    // 投递其他节点中继来的帧：用户目的地只在该用户有本地会话时投递
+    private void deliverRelayedFrame(RelayEnvelope envelope) {
+        if (envelope.getUserId() != null && !hasLocalSession(envelope.getUserId())) {
+            return;
+        }
+        MessageBuilder<byte[]> builder = MessageBuilder.withPayload(envelope.getPayload());
+        if (envelope.getContentType() != null) {
+            builder.setHeader(MessageHeaders.CONTENT_TYPE, MimeType.valueOf(envelope.getContentType()));
+        }
+        Message<byte[]> frame = builder.build();
+        if (envelope.getUserIds() != null) {
+            List<Long> localUsers = new ArrayList<>();
+            for (Long userId : envelope.getUserIds()) {
+                if (hasLocalSession(userId)) {
+                    localUsers.add(userId);
+                }
+            }
+            sendFrameToUsers(localUsers, envelope.getDestination(), frame);
+            return;
+        }
+        messagingTemplate.send(envelope.getDestination(), frame);
+    }
+
+    // 记录在CONNECT时协商了二进制帧的会话
+    public void markBinarySession(String sessionId) {
+        binarySessions.add(sessionId);
+    }
+
+    public boolean isBinarySession(String sessionId) {
+        return binarySessions.contains(sessionId);
+    }
+
+    // 用户是否至少有一个协商了二进制帧的会话
+    public boolean hasBinarySession(Long userId) {
+        if (binarySessions.isEmpty()) {
+            return false;
+        }
+        for (String sessionId : registry.sessionsOf(userId)) {
+            if (binarySessions.contains(sessionId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 没有任何二进制会话时跳过编码
+    private boolean binaryEnabledFor(Object payload) {
+        return binaryFramesEnabled && !binarySessions.isEmpty() && frameCodec.supports(payload);
+    }
+
+    // application/octet-stream 的帧在原生WebSocket上以二进制消息发送
+    private static Message<byte[]> binaryFrame(byte[] payload) {
+        return MessageBuilder.withPayload(payload)
+                .setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_OCTET_STREAM)
+                .build();
+    }
+
+    // 空间主题目的地，例如 /topic/spaces/1/positions
+    public static String spaceTopic(Long spaceId, String channel) {
+        return "/topic/spaces/" + spaceId + "/" + channel;
+    }
+
+    // 聊天频道主题目的地，例如 /topic/channels/1
+    public static String channelTopic(Long channelId) {
+        return CHANNEL_TOPIC_PREFIX + channelId;
+    }
+
+    // 获取用户的活跃会话数，集群模式下统计所有节点
     public int getUserSessionCount(Long userId) {
-        Set<String> sessions = userSessions.get(userId);
-        return sessions != null ? sessions.size() : 0;
+        if (sharedRegistry.isEnabled()) {
+            return sharedRegistry.getUserSessionCount(userId);
+        }
+        return registry.sessionCount(userId);
     }
 }
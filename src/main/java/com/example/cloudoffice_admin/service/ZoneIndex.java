@@ -0,0 +1,127 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.model.Zone;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// 一个空间内区域矩形的只读分桶索引：按固定边长把区域的外接范围切成格子，每个格子记录与之相交的区域
+// 坐标查询只检查所在格子的候选区域；区域嵌套时取面积最小的（例如大厅里的会议室）
+// 构建后不再修改，可在多个线程中并发查询；区域变化时整体重建
+public final class ZoneIndex {
+
+    static final int CELL_SIZE = 128;
+
+    private static final int[] NO_ZONES = new int[0];
+
+    private final long[] ids;
+    private final int[] left;
+    private final int[] top;
+    private final int[] right;
+    private final int[] bottom;
+
+    private final int originX;
+    private final int originY;
+    private final int columns;
+    private final int rows;
+    // 格子 -> 候选区域下标，按面积从小到大排列
+    private final int[][] cells;
+
+    public ZoneIndex(List<Zone> zones) {
+        List<Zone> sorted = new ArrayList<>();
+        for (Zone zone : zones) {
+            if (zone.getId() != null && zone.getWidth() > 0 && zone.getHeight() > 0) {
+                sorted.add(zone);
+            }
+        }
+        sorted.sort(Comparator.comparingLong((Zone zone) -> (long) zone.getWidth() * zone.getHeight())
+                .thenComparing(Zone::getId));
+
+        int count = sorted.size();
+        ids = new long[count];
+        left = new int[count];
+        top = new int[count];
+        right = new int[count];
+        bottom = new int[count];
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            Zone zone = sorted.get(i);
+            ids[i] = zone.getId();
+            left[i] = zone.getX();
+            top[i] = zone.getY();
+            right[i] = zone.getX() + zone.getWidth();
+            bottom[i] = zone.getY() + zone.getHeight();
+            minX = Math.min(minX, left[i]);
+            minY = Math.min(minY, top[i]);
+            maxX = Math.max(maxX, right[i]);
+            maxY = Math.max(maxY, bottom[i]);
+        }
+
+        if (count == 0) {
+            originX = 0;
+            originY = 0;
+            columns = 0;
+            rows = 0;
+            cells = new int[0][];
+            return;
+        }
+        originX = minX;
+        originY = minY;
+        columns = (maxX - minX + CELL_SIZE - 1) / CELL_SIZE;
+        rows = (maxY - minY + CELL_SIZE - 1) / CELL_SIZE;
+
+        // 先数每个格子的候选数，再按面积顺序填充
+        int[] sizes = new int[columns * rows];
+        for (int i = 0; i < count; i++) {
+            forEachCell(i, cell -> sizes[cell]++);
+        }
+        cells = new int[columns * rows][];
+        for (int cell = 0; cell < cells.length; cell++) {
+            cells[cell] = sizes[cell] == 0 ? NO_ZONES : new int[sizes[cell]];
+            sizes[cell] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int zone = i;
+            forEachCell(i, cell -> cells[cell][sizes[cell]++] = zone);
+        }
+    }
+
+    // 包含坐标的区域ID，不在任何区域内时返回null；区域范围左闭右开
+    public Long locate(int x, int y) {
+        if (columns == 0 || x < originX || y < originY) {
+            return null;
+        }
+        int column = (x - originX) / CELL_SIZE;
+        int row = (y - originY) / CELL_SIZE;
+        if (column >= columns || row >= rows) {
+            return null;
+        }
+        for (int i : cells[row * columns + column]) {
+            if (x >= left[i] && x < right[i] && y >= top[i] && y < bottom[i]) {
+                return ids[i];
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    private void forEachCell(int zone, IntConsumer action) {
+        int firstColumn = (left[zone] - originX) / CELL_SIZE;
+        int lastColumn = (right[zone] - 1 - originX) / CELL_SIZE;
+        int firstRow = (top[zone] - originY) / CELL_SIZE;
+        int lastRow = (bottom[zone] - 1 - originY) / CELL_SIZE;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                action.accept(row * columns + column);
+            }
+        }
+    }
+}
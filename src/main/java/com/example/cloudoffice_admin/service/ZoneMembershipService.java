@@ -0,0 +1,76 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.ZoneEventMessage;
+import com.example.cloudoffice_admin.model.UserPresence;
+import com.example.cloudoffice_admin.repository.ZoneRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 服务端区域判定：按坐标在空间的区域索引中查找所在区域，不再信任客户端上报的zoneId
+// 区域索引按空间缓存，区域增删时失效重建；所在区域真正变化时才发布进入/离开事件
+@Service
+public class ZoneMembershipService {
+
+    public static final String EVENT_ENTER = "enter";
+    public static final String EVENT_LEAVE = "leave";
+
+    @Autowired
+    private ZoneRepository zoneRepository;
+
+    @Autowired
+    private PresenceStore presenceStore;
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    private final Map<Long, ZoneIndex> indexes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        presenceStore.onZoneChange(this::publishTransition);
+    }
+
+    // 坐标所在的区域ID，不在任何区域内时返回null
+    public Long locate(Long spaceId, int x, int y) {
+        return indexFor(spaceId).locate(x, y);
+    }
+
+    // 移动：按坐标判定区域后写入在场存储，区域变化由回调发布事件
+    public UserPresence move(Long userId, Long spaceId, int x, int y) {
+        return presenceStore.move(userId, spaceId, locate(spaceId, x, y), x, y);
+    }
+
+    // 空间的区域发生变化，下次查询时重建
+    public void invalidate(Long spaceId) {
+        indexes.remove(spaceId);
+    }
+
+    ZoneIndex indexFor(Long spaceId) {
+        return indexes.computeIfAbsent(spaceId, id -> new ZoneIndex(zoneRepository.findBySpaceId(id)));
+    }
+
+    // 先发布离开旧区域，再发布进入新区域
+    private void publishTransition(Long userId, Long fromSpaceId, Long fromZoneId, Long toSpaceId, Long toZoneId) {
+        if (fromZoneId != null && fromSpaceId != null) {
+            publish(userId, fromSpaceId, fromZoneId, EVENT_LEAVE);
+        }
+        if (toZoneId != null && toSpaceId != null) {
+            publish(userId, toSpaceId, toZoneId, EVENT_ENTER);
+        }
+    }
+
+    private void publish(Long userId, Long spaceId, Long zoneId, String event) {
+        ZoneEventMessage message = new ZoneEventMessage();
+        message.setUserId(userId);
+        message.setSpaceId(spaceId);
+        message.setZoneId(zoneId);
+        message.setEvent(event);
+        message.setTimestamp(new Date());
+        sessionManager.publishToSpace(spaceId, WebSocketSessionManager.SPACE_ZONES, message);
+    }
+}
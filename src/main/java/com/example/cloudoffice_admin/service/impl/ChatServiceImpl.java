@@ -1,26 +1,42 @@
 package com.example.cloudoffice_admin.service.impl;
 
+import com.example.cloudoffice_admin.dto.ChannelMessageView;
 import com.example.cloudoffice_admin.dto.ChatChannelRequest;
 import com.example.cloudoffice_admin.dto.MessageRequest;
+import com.example.cloudoffice_admin.dto.MessageView;
+import com.example.cloudoffice_admin.model.ChannelMembership;
 import com.example.cloudoffice_admin.model.ChatChannel;
 import com.example.cloudoffice_admin.model.Message;
 import com.example.cloudoffice_admin.model.Message.MessageType;
 import com.example.cloudoffice_admin.model.User;
+import com.example.cloudoffice_admin.repository.ChannelMembershipRepository;
 import com.example.cloudoffice_admin.repository.ChatChannelRepository;
 import com.example.cloudoffice_admin.repository.MessageRepository;
 import com.example.cloudoffice_admin.repository.UserRepository;
+import com.example.cloudoffice_admin.service.ChannelMembershipIndex;
+import com.example.cloudoffice_admin.service.ChatDelivery;
 import com.example.cloudoffice_admin.service.ChatService;
+import com.example.cloudoffice_admin.service.RecentMessageCache;
 import com.example.cloudoffice_admin.service.TranslationService;
-import com.example.cloudoffice_admin.service.WebSocketSessionManager;
+import com.example.cloudoffice_admin.service.UnreadCounter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -29,6 +45,13 @@ import java.util.UUID;
 @Service
 public class ChatServiceImpl implements ChatService {
 
+    private static final String INSERT_MEMBER_SQL =
+            "INSERT INTO channel_members (channel_id, user_id, joined_at, last_read_seq) VALUES (?, ?, ?, ?)";
+    // 批量增删成员时每批的用户数，限制IN列表的长度
+    private static final int MEMBER_BATCH_SIZE = 1000;
+    // 历史消息每页最多条数
+    private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
     @Autowired
     private ChatChannelRepository chatChannelRepository;
 
@@ -42,7 +65,22 @@ public class ChatServiceImpl implements ChatService {
     private TranslationService translationService;
 
     @Autowired
-    private WebSocketSessionManager sessionManager;
+    private ChatDelivery chatDelivery;
+
+    @Autowired
+    private ChannelMembershipRepository membershipRepository;
+
+    @Autowired
+    private ChannelMembershipIndex membershipIndex;
+
+    @Autowired
+    private UnreadCounter unreadCounter;
+
+    @Autowired
+    private RecentMessageCache recentMessages;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
 
     @Override
     @Transactional
@@ -58,13 +96,11 @@ public class ChatServiceImpl implements ChatService {
         channel.setCreator(creator);
         channel.setChannelId(UUID.randomUUID().toString());
         channel.setCreatedAt(LocalDateTime.now());
+        ChatChannel saved = chatChannelRepository.save(channel);
 
         // 添加创建者为成员
-        Set<User> members = new HashSet<>();
-        members.add(creator);
-        channel.setMembers(members);
-
-        return chatChannelRepository.save(channel);
+        addMembersToChannel(saved.getId(), List.of(creatorId));
+        return saved;
     }
 
     @Override
@@ -86,9 +122,13 @@ public class ChatServiceImpl implements ChatService {
         ChatChannel channel = chatChannelRepository.findById(channelId)
                 .orElseThrow(() -> new RuntimeException("Channel not found"));
 
-        // 删除频道中的所有消息
+        // 删除频道中的所有消息和成员关系
         messageRepository.deleteByChannelId(channelId);
-        
+        membershipRepository.deleteByChannelId(channelId);
+        membershipIndex.dropped(channelId);
+        unreadCounter.dropped(channelId);
+        recentMessages.dropped(channelId);
+
         // 删除频道
         chatChannelRepository.delete(channel);
     }
@@ -109,39 +149,91 @@ public class ChatServiceImpl implements ChatService {
     }
 
     @Override
+    @Transactional
     public ChatChannel addMemberToChannel(Long channelId, Long userId) {
         ChatChannel channel = chatChannelRepository.findById(channelId)
                 .orElseThrow(() -> new RuntimeException("Channel not found"));
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        if (!userRepository.existsById(userId)) {
+            throw new UsernameNotFoundException("User not found");
+        }
 
-        channel.getMembers().add(user);
-        return chatChannelRepository.save(channel);
+        addMembersToChannel(channelId, List.of(userId));
+        return channel;
     }
 
     @Override
+    @Transactional
     public void removeMemberFromChannel(Long channelId, Long userId) {
-        ChatChannel channel = chatChannelRepository.findById(channelId)
+        removeMembersFromChannel(channelId, List.of(userId));
+    }
+
+    // 批量添加成员：不存在的用户和已经是成员的跳过，返回新加入的人数
+    // 新成员的已读游标从频道当前序号开始，加入前的消息不算未读
+    @Override
+    @Transactional
+    public int addMembersToChannel(Long channelId, List<Long> userIds) {
+        long lastSeq = chatChannelRepository.findLastSeq(channelId)
                 .orElseThrow(() -> new RuntimeException("Channel not found"));
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(userIds));
+        List<Long> added = new ArrayList<>();
+        Timestamp joinedAt = Timestamp.valueOf(LocalDateTime.now());
+        for (int from = 0; from < distinct.size(); from += MEMBER_BATCH_SIZE) {
+            List<Long> batch = distinct.subList(from, Math.min(distinct.size(), from + MEMBER_BATCH_SIZE));
+            Set<Long> candidates = new HashSet<>(userRepository.findExistingIds(batch));
+            membershipRepository.findMemberIds(channelId, batch).forEach(candidates::remove);
+            List<Object[]> rows = new ArrayList<>(candidates.size());
+            for (Long userId : batch) {
+                if (candidates.contains(userId)) {
+                    rows.add(new Object[]{channelId, userId, joinedAt, lastSeq});
+                    added.add(userId);
+                }
+            }
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_MEMBER_SQL, rows);
+            }
+        }
+        if (!added.isEmpty()) {
+            membershipIndex.added(channelId, added);
+            unreadCounter.joined(channelId, added, lastSeq);
+        }
+        return added.size();
+    }
 
-        channel.getMembers().remove(user);
-        chatChannelRepository.save(channel);
+    // 批量移除成员，返回移除的人数
+    @Override
+    @Transactional
+    public int removeMembersFromChannel(Long channelId, List<Long> userIds) {
+        if (!chatChannelRepository.existsById(channelId)) {
+            throw new RuntimeException("Channel not found");
+        }
+
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(userIds));
+        int removed = 0;
+        for (int from = 0; from < distinct.size(); from += MEMBER_BATCH_SIZE) {
+            removed += membershipRepository.deleteMembers(channelId,
+                    distinct.subList(from, Math.min(distinct.size(), from + MEMBER_BATCH_SIZE)));
+        }
+        if (removed > 0) {
+            membershipIndex.removed(channelId, distinct);
+            unreadCounter.left(channelId, distinct);
+        }
+        return removed;
     }
 
     @Override
-    public boolean isMemberInChannel(Long channelId, Long userId) {
-        ChatChannel channel = chatChannelRepository.findById(channelId)
-                .orElseThrow(() -> new RuntimeException("Channel not found"));
+    public Page<ChannelMembership> getChannelMembers(Long channelId, Pageable pageable) {
+        return membershipRepository.findByChannelIdOrderByUserId(channelId, pageable);
+    }
 
-        return channel.getMembers().stream()
-                .anyMatch(user -> user.getId().equals(userId));
+    @Override
+    public boolean isMemberInChannel(Long channelId, Long userId) {
+        return membershipIndex.isMember(channelId, userId);
     }
 
     @Override
+    @Transactional
     public ChatChannel getOrCreateDirectMessageChannel(Long user1Id, Long user2Id) {
         User user1 = userRepository.findById(user1Id)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
@@ -149,7 +241,7 @@ public class ChatServiceImpl implements ChatService {
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
 
         // 查找是否已存在直接消息频道
-        Optional<ChatChannel> existingChannel = chatChannelRepository.findDirectMessageChannel(user1, user2);
+        Optional<ChatChannel> existingChannel = chatChannelRepository.findDirectMessageChannel(user1Id, user2Id);
         if (existingChannel.isPresent()) {
             return existingChannel.get();
         }
@@ -162,11 +254,13 @@ public class ChatServiceImpl implements ChatService {
 
         ChatChannel channel = createChannel(request, user1Id);
         // 添加第二个用户
-        channel.getMembers().add(user2);
-        return chatChannelRepository.save(channel);
+        addMembersToChannel(channel.getId(), List.of(user2Id));
+        return channel;
     }
 
+    // 第一阶段：校验并保存消息；第二阶段由ChatDelivery在事务提交后异步发布到频道主题
     @Override
+    @Transactional
     public Message sendMessage(MessageRequest request, Long senderId) {
         User sender = userRepository.findById(senderId)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
@@ -185,8 +279,12 @@ public class ChatServiceImpl implements ChatService {
         message.setType(MessageType.valueOf(request.getType().toUpperCase()));
         message.setMessageId(UUID.randomUUID().toString());
         message.setCreatedAt(LocalDateTime.now());
-        message.setIsRead(false);
-        message.setIsDeleted(false);
+        // 分配频道内的消息序号，发送者自己的消息直接算作已读
+        chatChannelRepository.incrementLastSeq(channel.getId());
+        long seq = chatChannelRepository.findLastSeq(channel.getId())
+                .orElseThrow(() -> new RuntimeException("Channel not found"));
+        message.setSeq(seq);
+        membershipRepository.advanceReadCursor(channel.getId(), senderId, seq);
 
         // 设置回复消息
         if (request.getReplyToId() != null) {
@@ -204,22 +302,74 @@ public class ChatServiceImpl implements ChatService {
         Message savedMessage = messageRepository.save(message);
 
         // 更新频道的最后消息
-        channel.setLastMessage(savedMessage);
-        chatChannelRepository.save(channel);
+        chatChannelRepository.updateLastMessage(channel.getId(), savedMessage);
 
-        // 通过WebSocket发送消息给频道所有成员
-        for (User member : channel.getMembers()) {
-            if (!member.getId().equals(senderId)) {
-                sessionManager.sendMessageToUser(member.getId(), "NEW_MESSAGE", savedMessage);
-            }
-        }
+        // 提交后发布到频道主题，由代理分发给订阅的成员
+        chatDelivery.publishAfterCommit(channel.getId(), toView(savedMessage));
+        unreadCounter.messageSent(channel.getId(), seq, senderId);
+        recentMessages.added(savedMessage);
 
         return savedMessage;
     }
 
+    private static ChannelMessageView toView(Message message) {
+        ChannelMessageView view = new ChannelMessageView();
+        view.setEvent("NEW_MESSAGE");
+        view.setId(message.getId());
+        view.setMessageId(message.getMessageId());
+        view.setChannelId(message.getChannel().getId());
+        view.setSeq(message.getSeq());
+        User sender = message.getSender();
+        view.setSenderId(sender.getId());
+        view.setSenderName(sender.getFullName() != null ? sender.getFullName() : sender.getUsername());
+        view.setSenderAvatar(sender.getAvatar());
+        view.setType(message.getType().name());
+        view.setContent(message.getContent());
+        view.setReplyToId(message.getReplyTo() != null ? message.getReplyTo().getId() : null);
+        view.setAttachments(message.getAttachments());
+        view.setCreatedAt(message.getCreatedAt());
+        return view;
+    }
+
+    // 游标分页：before/after为消息ID，都为空时返回最新一页，同时给出时以before为准
+    // 结果按时间倒序；多取一条判断是否还有下一页，不统计总数；最新一页优先从最近消息缓存返回
     @Override
-    public Page<Message> getChannelMessages(Long channelId, Pageable pageable) {
-        return messageRepository.findByChannelIdOrderByCreatedAtDesc(channelId, pageable);
+    public Slice<MessageView> getChannelMessages(Long channelId, Long before, Long after, int size) {
+        int limit = Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+        List<MessageView> messages;
+        if (before == null && after == null) {
+            messages = recentMessages.latest(channelId, limit + 1);
+            if (messages == null) {
+                messages = toViews(messageRepository.findLatest(channelId, Limit.of(limit + 1)));
+            }
+        } else {
+            Long cursor = before != null ? before : after;
+            LocalDateTime createdAt = messageRepository.findCreatedAt(channelId, cursor)
+                    .orElseThrow(() -> new RuntimeException("Message not found"));
+            messages = toViews(before != null
+                    ? messageRepository.findBefore(channelId, createdAt, cursor, Limit.of(limit + 1))
+                    : messageRepository.findAfter(channelId, createdAt, cursor, Limit.of(limit + 1)));
+        }
+
+        boolean hasNext = messages.size() > limit;
+        if (hasNext) {
+            messages = new ArrayList<>(messages.subList(0, limit));
+        }
+        // after取的是紧跟游标的正序结果，翻转成倒序
+        if (before == null && after != null) {
+            messages = new ArrayList<>(messages);
+            Collections.reverse(messages);
+        }
+        return new SliceImpl<>(messages, PageRequest.of(0, limit), hasNext);
+    }
+
+    // 数据库查询的结果与缓存命中时一样转换成视图，历史接口只返回视图
+    private static List<MessageView> toViews(List<Message> messages) {
+        List<MessageView> views = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            views.add(new MessageView(message));
+        }
+        return views;
     }
 
     @Override
@@ -234,11 +384,12 @@ public class ChatServiceImpl implements ChatService {
         }
 
         // 软删除消息
-        message.setIsDeleted(true);
-        messageRepository.save(message);
+        message.setDeleted(true);
+        recentMessages.updated(messageRepository.save(message));
     }
 
     @Override
+    @Transactional
     public Message editMessage(Long messageId, String newContent, Long userId) {
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
@@ -250,21 +401,31 @@ public class ChatServiceImpl implements ChatService {
 
         message.setContent(newContent);
         message.setUpdatedAt(LocalDateTime.now());
-        return messageRepository.save(message);
+        Message saved = messageRepository.save(message);
+        recentMessages.updated(saved);
+        return saved;
     }
 
     @Override
     @Transactional
-    public void markMessagesAsRead(Long channelId, Long userId) {
-        messageRepository.markMessagesAsRead(channelId, userId);
+    // 只移动已读游标：seq为空时读到频道最新消息，不修改任何消息行
+    public void markMessagesAsRead(Long channelId, Long userId, Long seq) {
+        long lastSeq = chatChannelRepository.findLastSeq(channelId)
+                .orElseThrow(() -> new RuntimeException("Channel not found"));
+        long readSeq = seq != null ? Math.min(seq, lastSeq) : lastSeq;
+        if (membershipRepository.advanceReadCursor(channelId, userId, readSeq) > 0) {
+            unreadCounter.read(userId, channelId, readSeq);
+        }
     }
 
+    // 由内存中的序号和游标计算，不扫描消息表
     @Override
     public long getUnreadMessageCount(Long userId) {
-        return messageRepository.countUnreadMessagesByUserId(userId);
+        return unreadCounter.unreadCount(userId);
     }
 
     @Override
+    @Transactional
     public Message translateMessage(Long messageId, String targetLanguage, Long userId) {
         Message message = messageRepository.findById(messageId)
                 .orElseThrow(() -> new RuntimeException("Message not found"));
@@ -291,7 +452,9 @@ public class ChatServiceImpl implements ChatService {
         message.setSourceLanguage(sourceLanguage);
         message.setTargetLanguage(targetLanguage);
 
-        return messageRepository.save(message);
+        Message saved = messageRepository.save(message);
+        recentMessages.updated(saved);
+        return saved;
     }
 
     @Override
@@ -14,6 +14,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -154,7 +155,7 @@ public class MeetingServiceImpl implements MeetingService {
 
     @Override
     @Transactional
-    public MeetingSession startMeetingSession(Long sessionId) {
+    public MeetingSession startMeetingSession(UUID sessionId) {
         MeetingSession session = meetingSessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Meeting session not found"));
 
@@ -173,7 +174,7 @@ public class MeetingServiceImpl implements MeetingService {
 
     @Override
     @Transactional
-    public MeetingSession endMeetingSession(Long sessionId) {
+    public MeetingSession endMeetingSession(UUID sessionId) {
         MeetingSession session = meetingSessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Meeting session not found"));
 
@@ -209,7 +210,7 @@ public class MeetingServiceImpl implements MeetingService {
     }
 
     @Override
-    public Optional<MeetingSession> getMeetingSessionById(Long sessionId) {
+    public Optional<MeetingSession> getMeetingSessionById(UUID sessionId) {
         return meetingSessionRepository.findById(sessionId);
     }
 
@@ -226,7 +227,7 @@ public class MeetingServiceImpl implements MeetingService {
     // 参与者管理方法
     @Override
     @Transactional
-    public MeetingParticipant joinMeetingSession(Long sessionId, ParticipantRequest request) {
+    public MeetingParticipant joinMeetingSession(UUID sessionId, ParticipantRequest request) {
         MeetingSession session = meetingSessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Meeting session not found"));
         
@@ -313,12 +314,12 @@ public class MeetingServiceImpl implements MeetingService {
     }
 
     @Override
-    public List<MeetingParticipant> getSessionParticipants(Long sessionId) {
+    public List<MeetingParticipant> getSessionParticipants(UUID sessionId) {
         return meetingParticipantRepository.findBySessionId(sessionId);
     }
 
     @Override
-    public boolean isUserInSession(Long sessionId, Long userId) {
+    public boolean isUserInSession(UUID sessionId, Long userId) {
         return meetingParticipantRepository.findBySessionIdAndUserId(sessionId, userId).isPresent();
     }
 
@@ -349,7 +350,7 @@ public class MeetingServiceImpl implements MeetingService {
 
     @Override
     @Transactional
-    public void removeParticipant(Long sessionId, Long userId) {
+    public void removeParticipant(UUID sessionId, Long userId) {
         Optional<MeetingParticipant> participantOpt = meetingParticipantRepository.findBySessionIdAndUserId(sessionId, userId);
         if (participantOpt.isPresent()) {
             MeetingParticipant participant = participantOpt.get();
@@ -360,7 +361,7 @@ public class MeetingServiceImpl implements MeetingService {
     // 录制管理方法
     @Override
     @Transactional
-    public Recording startRecording(Long sessionId, Long userId) {
+    public Recording startRecording(UUID sessionId, Long userId) {
         MeetingSession session = meetingSessionRepository.findById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Meeting session not found"));
         
@@ -434,7 +435,7 @@ public class MeetingServiceImpl implements MeetingService {
     }
 
     @Override
-    public List<Recording> getRecordingsBySession(Long sessionId) {
+    public List<Recording> getRecordingsBySession(UUID sessionId) {
         return recordingRepository.findBySessionId(sessionId);
     }
 
@@ -464,17 +465,17 @@ public class MeetingServiceImpl implements MeetingService {
         List<MeetingParticipant> participants = meetingParticipantRepository.findBySessionId(session.getId());
         
         for (MeetingParticipant participant : participants) {
-            sessionManager.sendMessageToUser(participant.getUser().getId(), eventType, session);
+            sessionManager.sendToUser(participant.getUser().getId(), "/queue/meetings", Map.of("event", eventType, "data", session));
         }
     }
 
     // 辅助方法 - 广播参与者更新
-    private void broadcastParticipantUpdate(Long sessionId, MeetingParticipant participant, String eventType) {
+    private void broadcastParticipantUpdate(UUID sessionId, MeetingParticipant participant, String eventType) {
         // 获取会话中的所有参与者
         List<MeetingParticipant> participants = meetingParticipantRepository.findBySessionId(sessionId);
         
         for (MeetingParticipant p : participants) {
-            sessionManager.sendMessageToUser(p.getUser().getId(), eventType, participant);
+            sessionManager.sendToUser(p.getUser().getId(), "/queue/meetings", Map.of("event", eventType, "data", participant));
         }
     }
 
@@ -484,7 +485,7 @@ public class MeetingServiceImpl implements MeetingService {
         List<MeetingParticipant> participants = meetingParticipantRepository.findBySessionId(sessionId);
         
         for (MeetingParticipant participant : participants) {
-            sessionManager.sendMessageToUser(participant.getUser().getId(), eventType, recording);
+            sessionManager.sendToUser(participant.getUser().getId(), "/queue/meetings", Map.of("event", eventType, "data", recording));
         }
     }
 }
@@ -176,7 +176,6 @@ public class UserServiceImpl implements UserService {
     }
     
     // 新增方法：更新用户最后活动时间
-    @Override
     public void updateLastActiveTime(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new EntityNotFoundException("User not found with id: " + userId));
@@ -186,7 +185,6 @@ public class UserServiceImpl implements UserService {
     }
     
     // 新增方法：按角色获取用户
-    @Override
     public List<User> getUsersByRole(String role) {
         List<User> allUsers = userRepository.findAll();
         return allUsers.stream()
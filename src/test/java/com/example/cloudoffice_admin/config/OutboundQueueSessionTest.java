@@ -0,0 +1,214 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.service.PositionFrameCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OutboundQueueSessionTest {
+
+    private static final PositionFrameMerger MERGER = new PositionFrameMerger(new ObjectMapper(), new PositionFrameCodec());
+
+    // 出站线程开始写第一帧时计数归零
+    private static CountDownLatch writing;
+
+    @Test
+    void slowClientKeepsOnlyNewestPositionFrames() throws Exception {
+        // 准备：第一帧写出时阻塞，模拟网络很慢的客户端
+        writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        WebSocketSession delegate = blockingSession(release, written);
+        AtomicInteger dropped = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        OutboundQueueSession session = new OutboundQueueSession(delegate, executor, MERGER,
+                new OutboundQueueSession.Limits(4, 100, 32, 10_000), listener(dropped, new AtomicInteger()));
+
+        // 执行
+        session.sendMessage(frame("/topic/spaces/1/positions", "p0"));
+        writing.await(5, TimeUnit.SECONDS);
+        for (int i = 1; i < 20; i++) {
+            session.sendMessage(frame("/topic/spaces/1/positions", "p" + i));
+        }
+        session.sendMessage(frame("/user/queue/messages", "chat"));
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        // 验证：第一帧已在写出；帧体不是位置批量无法合并，只保留最新的4帧，聊天帧不丢
+        assertEquals(List.of("p0", "p16", "p17", "p18", "p19", "chat"), written);
+        assertEquals(15, dropped.get());
+    }
+
+    @Test
+    void positionOverflowKeepsLatestPositionPerMover() throws Exception {
+        // 准备：第一帧写出时阻塞，最多排队1个位置帧
+        writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        OutboundQueueSession session = new OutboundQueueSession(blockingSession(release, written), executor, MERGER,
+                new OutboundQueueSession.Limits(1, 100, 32, 10_000), listener(new AtomicInteger(), new AtomicInteger()));
+
+        // 执行：用户1、2、3先后移动，用户2离开
+        session.sendMessage(frame("/topic/spaces/1/positions", "{\"tick\":1,\"updates\":[]}"));
+        writing.await(5, TimeUnit.SECONDS);
+        session.sendMessage(frame("/topic/spaces/1/positions",
+                "{\"tick\":2,\"updates\":[{\"userId\":1,\"x\":10},{\"userId\":2,\"x\":20}]}"));
+        session.sendMessage(frame("/topic/spaces/1/positions", "{\"tick\":3,\"updates\":[{\"userId\":1,\"x\":11}]}"));
+        session.sendMessage(frame("/topic/spaces/1/positions",
+                "{\"tick\":4,\"updates\":[{\"userId\":3,\"x\":30}],\"removed\":[2]}"));
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        // 验证：tick 2、3合并后又并入tick 4，用户1保留最新位置，离开的用户2只出现在removed中
+        assertEquals(List.of("{\"tick\":1,\"updates\":[]}",
+                "{\"tick\":4,\"updates\":[{\"userId\":1,\"x\":11},{\"userId\":3,\"x\":30}],\"removed\":[2]}"),
+                written);
+    }
+
+    @Test
+    void controlFrameThatCannotBeQueuedClosesSession() throws Exception {
+        // 准备
+        writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        AtomicInteger closed = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        OutboundQueueSession session = new OutboundQueueSession(blockingSession(release, written), executor, MERGER,
+                new OutboundQueueSession.Limits(4, 3, 32, 10_000), listener(new AtomicInteger(), closed));
+
+        // 执行
+        session.sendMessage(frame("/topic/meetings/1", "m0"));
+        writing.await(5, TimeUnit.SECONDS);
+        for (int i = 1; i < 4; i++) {
+            session.sendMessage(frame("/topic/meetings/1", "m" + i));
+        }
+        SessionLimitExceededException exception = assertThrows(SessionLimitExceededException.class,
+                () -> session.sendMessage(frame("/topic/meetings/1", "m4")));
+        session.sendMessage(frame("/topic/meetings/1", "m5"));
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        // 验证：m0已在写出；m1-m3占满队列，m4无法入队时关闭会话而不是丢弃，之后的帧不再写出
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, exception.getStatus());
+        assertEquals(1, closed.get());
+        assertEquals(List.of("m0"), written);
+    }
+
+    @Test
+    void slowWriteBeyondSendTimeLimitClosesSession() throws Exception {
+        // 准备：写出的帧一直阻塞
+        writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicInteger closed = new AtomicInteger();
+        OutboundQueueSession session = new OutboundQueueSession(blockingSession(release, new CopyOnWriteArrayList<>()),
+                executor, MERGER, new OutboundQueueSession.Limits(4, 100, 32, 50), listener(new AtomicInteger(), closed));
+
+        // 执行
+        session.sendMessage(frame("/topic/meetings/1", "m0"));
+        writing.await(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+        SessionLimitExceededException exception = assertThrows(SessionLimitExceededException.class,
+                () -> session.sendMessage(frame("/topic/meetings/1", "m1")));
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        // 验证
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, exception.getStatus());
+        assertEquals(1, closed.get());
+        assertEquals(0, session.getQueueDepth());
+    }
+
+    @Test
+    void drainYieldsThreadAfterFramesPerDrain() throws Exception {
+        // 准备：手动执行出站任务，写操作不阻塞
+        List<Runnable> tasks = new ArrayList<>();
+        List<String> written = new CopyOnWriteArrayList<>();
+        writing = new CountDownLatch(0);
+        CountDownLatch released = new CountDownLatch(0);
+        OutboundQueueSession session = new OutboundQueueSession(blockingSession(released, written), tasks::add, MERGER,
+                new OutboundQueueSession.Limits(4, 100, 2, 10_000), listener(new AtomicInteger(), new AtomicInteger()));
+        for (int i = 0; i < 5; i++) {
+            session.sendMessage(frame("/topic/meetings/1", "m" + i));
+        }
+
+        // 执行：运行第一次出站任务
+        tasks.remove(0).run();
+
+        // 验证：只写出2帧，剩余的帧重新提交了一个出站任务
+        assertEquals(List.of("m0", "m1"), written);
+        assertEquals(1, tasks.size());
+        assertEquals(3, session.getQueueDepth());
+    }
+
+    @Test
+    void classifiesByStompDestination() {
+        assertEquals(OutboundQueueSession.FrameClass.POSITION,
+                OutboundQueueSession.classify(frame("/queue/spaces/positions-users1", "x")));
+        assertEquals(OutboundQueueSession.FrameClass.CONTROL,
+                OutboundQueueSession.classify(frame("/topic/spaces/1/joins", "x")));
+        assertEquals(OutboundQueueSession.FrameClass.CONTROL,
+                OutboundQueueSession.classify(new TextMessage("\n")));
+        assertNull(OutboundQueueSession.destinationOf(new TextMessage("CONNECTED\nversion:1.2\n\n\u0000")));
+        assertTrue(OutboundQueueSession.destinationOf(frame("/topic/a", "x")).equals("/topic/a"));
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\nmessage-id:1\n"
+                + "content-length:" + body.length() + "\n\n" + body + "\u0000");
+    }
+
+    private static WebSocketSession blockingSession(CountDownLatch release, List<String> written) throws Exception {
+        WebSocketSession delegate = mock(WebSocketSession.class);
+        when(delegate.getId()).thenReturn("s1");
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            String payload = ((TextMessage) invocation.getArgument(0)).getPayload();
+            written.add(payload.substring(payload.indexOf("\n\n") + 2, payload.length() - 1));
+            return null;
+        }).when(delegate).sendMessage(any(WebSocketMessage.class));
+        return delegate;
+    }
+
+    private static OutboundQueueSession.Listener listener(AtomicInteger dropped, AtomicInteger closed) {
+        return new OutboundQueueSession.Listener() {
+            @Override
+            public void positionDropped(OutboundQueueSession session) {
+                dropped.incrementAndGet();
+            }
+
+            @Override
+            public void limitExceeded(OutboundQueueSession session) {
+                closed.incrementAndGet();
+            }
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.cloudoffice_admin.config;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.service.PositionFrameCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PositionFrameMergerTest {
+
+    private final PositionFrameCodec codec = new PositionFrameCodec();
+    private final PositionFrameMerger merger = new PositionFrameMerger(new ObjectMapper(), codec);
+
+    @Test
+    void mergesJsonFramesAndRewritesContentLength() {
+        // 准备
+        TextMessage older = text("{\"spaceId\":1,\"tick\":5,\"updates\":[{\"userId\":1,\"x\":1},{\"userId\":2,\"x\":2}],"
+                + "\"removed\":[9]}");
+        TextMessage newer = text("{\"spaceId\":1,\"tick\":6,\"updates\":[{\"userId\":2,\"x\":3},{\"userId\":9,\"x\":4}],"
+                + "\"removed\":null}");
+
+        // 执行
+        String merged = ((TextMessage) merger.merge(older, newer)).getPayload();
+
+        // 验证：用户2取较新的位置，离开后又移动的用户9不再算离开
+        String body = "{\"spaceId\":1,\"tick\":6,\"updates\":[{\"userId\":1,\"x\":1},{\"userId\":2,\"x\":3},"
+                + "{\"userId\":9,\"x\":4}],\"removed\":null}";
+        assertEquals("MESSAGE\ndestination:/topic/spaces/1/positions\ncontent-length:" + body.length() + "\n\n"
+                + body + "\u0000", merged);
+    }
+
+    @Test
+    void mergesBinaryFramesPerMover() {
+        // 准备
+        PositionBatchMessage olderBatch = batch(5, update(1, 10), update(2, 20));
+        olderBatch.setRemoved(List.of(3L, 4L));
+        PositionBatchMessage newerBatch = batch(6, update(2, 21), update(4, 40));
+        newerBatch.setRemoved(List.of(1L));
+        BinaryMessage older = binary(olderBatch);
+        BinaryMessage newer = binary(newerBatch);
+
+        // 执行
+        WebSocketMessage<?> merged = merger.merge(older, newer);
+
+        // 验证：之后离开的用户1去掉位置，之后又移动的用户4不再算离开
+        ByteBuffer payload = ((BinaryMessage) merged).getPayload();
+        byte[] frame = new byte[payload.remaining()];
+        payload.get(frame);
+        String text = new String(frame, StandardCharsets.ISO_8859_1);
+        int start = text.indexOf("\n\n") + 2;
+        byte[] body = new byte[frame.length - start - 1];
+        System.arraycopy(frame, start, body, 0, body.length);
+        assertTrue(text.contains("content-length:" + body.length + "\n"));
+        PositionBatchMessage decoded = codec.decodePositions(body);
+        assertEquals(6, decoded.getTick());
+        assertEquals(2, decoded.getUpdates().size());
+        assertEquals(21, decoded.getUpdates().get(0).getX());
+        assertEquals(40, decoded.getUpdates().get(1).getX());
+        assertEquals(List.of(1L, 3L), decoded.getRemoved());
+    }
+
+    @Test
+    void returnsNullForFramesThatAreNotPositionBatches() {
+        assertNull(merger.merge(text("p0"), text("p1")));
+        assertNull(merger.merge(text("{\"userId\":1}"), text("{\"userId\":1}")));
+    }
+
+    private static TextMessage text(String body) {
+        return new TextMessage("MESSAGE\ndestination:/topic/spaces/1/positions\ncontent-length:"
+                + body.getBytes(StandardCharsets.UTF_8).length + "\n\n" + body + "\u0000");
+    }
+
+    private BinaryMessage binary(PositionBatchMessage batch) {
+        byte[] body = codec.encode(batch);
+        byte[] headers = ("MESSAGE\ndestination:/topic/spaces/1/positions.bin\ncontent-length:" + body.length + "\n\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer frame = ByteBuffer.allocate(headers.length + body.length + 1);
+        frame.put(headers).put(body).put((byte) 0).flip();
+        return new BinaryMessage(frame);
+    }
+
+    private static PositionBatchMessage batch(long tick, PositionUpdateMessage... updates) {
+        PositionBatchMessage batch = new PositionBatchMessage();
+        batch.setSpaceId(1L);
+        batch.setTick(tick);
+        batch.setTimestamp(new Date(1_000_000L));
+        batch.setUpdates(List.of(updates));
+        return batch;
+    }
+
+    private static PositionUpdateMessage update(long userId, int x) {
+        PositionUpdateMessage update = new PositionUpdateMessage();
+        update.setUserId(userId);
+        update.setSpaceId(1L);
+        update.setX(x);
+        update.setY(0);
+        update.setTimestamp(new Date(1_000_000L));
+        return update;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.cloudoffice_admin.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadPinningMonitorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final VirtualThreadPinningMonitor monitor = new VirtualThreadPinningMonitor();
+    private final Object lock = new Object();
+
+    @AfterEach
+    void tearDown() {
+        monitor.stop();
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void onPlatformThreadsContendedSynchronizedSectionsAreCounted() throws Exception {
+        // 准备：请求开启虚拟线程，但运行时是Java 17，回退到记录monitor等待
+        ReflectionTestUtils.setField(monitor, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(monitor, "virtualThreadsEnabled", true);
+        ReflectionTestUtils.setField(monitor, "thresholdMs", 10L);
+        monitor.start();
+
+        // 执行：一个线程持有锁50毫秒，另一个线程等待进入同一个synchronized块
+        CountDownLatch held = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (lock) {
+                held.countDown();
+                sleep(50);
+            }
+        });
+        holder.start();
+        held.await();
+        synchronized (lock) {
+            // 等待进入
+        }
+        holder.join();
+
+        // 验证：JFR流异步刷新，最多等10秒
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (meterRegistry.counter("realtime.threads.monitor-blocked").count() < 1
+                && System.currentTimeMillis() < deadline) {
+            sleep(100);
+        }
+        assertTrue(meterRegistry.counter("realtime.threads.monitor-blocked").count() >= 1);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
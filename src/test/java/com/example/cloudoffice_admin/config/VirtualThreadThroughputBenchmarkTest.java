@@ -0,0 +1,76 @@
+package com.example.cloudoffice_admin.config;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 模拟@MessageMapping中的阻塞数据库调用，对比入站通道的三种执行方式的吞吐量：
+// Spring默认线程池（CPU数*2）、按数据库延迟配置的有界平台线程池（app.realtime.inbound.threads）、虚拟线程（仅Java 21+）
+// 使用 -Pbenchmark 运行
+@Tag("benchmark")
+class VirtualThreadThroughputBenchmarkTest {
+
+    private static final int MESSAGES = 2000;
+    private static final long DB_LATENCY_MS = 20;
+    private static final int BLOCKING_POOL_THREADS = 32;
+
+    @Test
+    void compareInboundThroughputUnderDbLatency() throws Exception {
+        ThreadPoolTaskExecutor defaultPool = pool(Runtime.getRuntime().availableProcessors() * 2);
+        ThreadPoolTaskExecutor blockingPool = pool(BLOCKING_POOL_THREADS);
+
+        double defaultRate = throughput(defaultPool);
+        double blockingRate = throughput(blockingPool);
+        defaultPool.shutdown();
+        blockingPool.shutdown();
+
+        System.out.printf("[bench] %d messages, %d ms simulated DB latency each%n", MESSAGES, DB_LATENCY_MS);
+        System.out.printf("[bench] default pool  (%3d threads): %8.0f msg/s%n", defaultPool.getCorePoolSize(), defaultRate);
+        System.out.printf("[bench] blocking pool (%3d threads): %8.0f msg/s%n", BLOCKING_POOL_THREADS, blockingRate);
+        if (VirtualThreads.isSupported()) {
+            System.out.printf("[bench] virtual threads            : %8.0f msg/s%n",
+                    throughput(VirtualThreads.executor("bench-virtual-")));
+        } else {
+            System.out.printf("[bench] virtual threads            : skipped (Java %d)%n", Runtime.version().feature());
+        }
+        assertTrue(blockingRate > defaultRate || defaultPool.getCorePoolSize() >= BLOCKING_POOL_THREADS);
+    }
+
+    // 与TaskExecutorRegistration的配置一致：核心线程数等于最大线程数，队列不限
+    private static ThreadPoolTaskExecutor pool(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("bench-inbound-");
+        executor.initialize();
+        return executor;
+    }
+
+    private static double throughput(Executor executor) throws InterruptedException {
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+        CountDownLatch done = new CountDownLatch(MESSAGES);
+        channel.subscribe(message -> {
+            try {
+                // 代替一次阻塞的JPA查询
+                Thread.sleep(DB_LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            channel.send(MessageBuilder.withPayload(i).build());
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        return MESSAGES / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.cloudoffice_admin.controller;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceJoinMessage;
+import com.example.cloudoffice_admin.service.SpaceLayoutCache;
+import com.example.cloudoffice_admin.service.SpaceTickEngine;
+import com.example.cloudoffice_admin.service.WebSocketSessionManager;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.security.Principal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class WebSocketControllerTest {
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    @Mock
+    private SpaceTickEngine tickEngine;
+
+    @Mock
+    private SpaceLayoutCache layoutCache;
+
+    @InjectMocks
+    private WebSocketController controller;
+
+    private final Principal user7 = new UsernamePasswordAuthenticationToken("7", null);
+
+    @Test
+    void positionUserIdComesFromPrincipalNotPayload() {
+        // 准备：客户端冒充用户8
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(8L);
+        message.setSpaceId(1L);
+
+        // 执行
+        controller.updateUserPosition(message, user7);
+
+        // 验证
+        ArgumentCaptor<PositionUpdateMessage> accepted = ArgumentCaptor.forClass(PositionUpdateMessage.class);
+        verify(tickEngine).accept(accepted.capture());
+        assertEquals(7L, accepted.getValue().getUserId());
+    }
+
+    @Test
+    void messagesForUnknownSpacesOrWithoutPrincipalAreIgnored() {
+        // 准备
+        when(layoutCache.get(99L)).thenThrow(new EntityNotFoundException("Virtual space not found"));
+        PositionUpdateMessage move = new PositionUpdateMessage();
+        move.setSpaceId(99L);
+        SpaceJoinMessage join = new SpaceJoinMessage();
+        join.setSpaceId(1L);
+
+        // 执行
+        controller.updateUserPosition(move, user7);
+        controller.joinSpace(join, null);
+
+        // 验证
+        verify(tickEngine, never()).accept(any());
+        verify(tickEngine, never()).requestSnapshot(anyLong(), anyLong());
+        verifyNoInteractions(sessionManager);
+    }
+}
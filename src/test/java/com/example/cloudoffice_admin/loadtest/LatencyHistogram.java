@@ -0,0 +1,68 @@
+package com.example.cloudoffice_admin.loadtest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 并发记录延迟的对数-线性直方图：每个2的幂区间再均分64格，相对误差不超过1/64
+// 单位为微秒，最大约71分钟，超出的按最大值记录
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKETS);
+
+    void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(indexOf(Math.min(micros, (1L << MAGNITUDES) - 1)));
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // 百分位（0-100）对应的延迟上界，单位微秒
+    long percentileMicros(double percentile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length() - 1);
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+        int sub = (int) (micros >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int index) {
+        int magnitude = index / SUB_BUCKETS;
+        int sub = index % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return sub;
+        }
+        return ((long) (sub | SUB_BUCKETS) << (magnitude - 1)) + (1L << (magnitude - 1)) - 1;
+    }
+}
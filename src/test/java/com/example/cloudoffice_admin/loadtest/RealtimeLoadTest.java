@@ -0,0 +1,478 @@
+package com.example.cloudoffice_admin.loadtest;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.ConnectMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PrivateMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceJoinMessage;
+import com.example.cloudoffice_admin.model.User;
+import com.example.cloudoffice_admin.model.VirtualSpace;
+import com.example.cloudoffice_admin.repository.UserRepository;
+import com.example.cloudoffice_admin.repository.VirtualSpaceRepository;
+import com.example.cloudoffice_admin.security.CustomUserDetails;
+import com.example.cloudoffice_admin.security.JwtTokenProvider;
+import com.example.cloudoffice_admin.service.MovementFilter;
+import com.example.cloudoffice_admin.service.PositionFrameCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 实时链路压测：进程内启动应用（H2代替MySQL，不连接Redis/MongoDB），N个STOMP客户端通过原生WebSocket连接 /ws，
+// 加入空间后按设定频率移动并发送私聊，统计端到端扇出延迟（p50/p99/p999）、吞吐和分配速率
+//
+// 运行方式：mvn test -Ploadtest [-Dloadtest.clients=1000 -Dloadtest.spaces=4 -Dloadtest.move-hz=30 ...]
+// 参数见下方LoadProfile；客户端和服务端在同一个JVM中，分配速率和GC统计包括两者
+//
+// 延迟的计算方式：
+//   位置：发送时按（用户, x, y）记录发送时间，其他客户端收到该坐标时计算差值；
+//         移动过滤转发的是最后一次超过误差阈值的坐标，停下后补发的最终位置包含静止等待时间
+//   私聊：消息内容中带发送时间，只统计接收者收到的那一份
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("loadtest")
+class RealtimeLoadTest {
+
+    // 单帧上限，足够容纳约两千人空间的JSON快照
+    private static final int MAX_FRAME_BYTES = 256 * 1024;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VirtualSpaceRepository virtualSpaceRepository;
+
+    @Autowired
+    private JwtTokenProvider jwtTokenProvider;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MovementFilter movementFilter;
+
+    private final PositionFrameCodec frameCodec = new PositionFrameCodec();
+
+    // (用户, x, y) -> 最近一次发送该坐标的时间
+    private final Map<Long, Long> positionSentAt = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram positionLatency = new LatencyHistogram();
+    private final LatencyHistogram chatLatency = new LatencyHistogram();
+    private final AtomicLong movesSent = new AtomicLong();
+    private final AtomicLong chatsSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong updatesReceived = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    @Test
+    void realtimeFanOut() throws Exception {
+        LoadProfile profile = LoadProfile.fromSystemProperties();
+        System.out.printf("[loadtest] %s%n", profile);
+
+        List<Long> spaceIds = createSpaces(profile.spaces);
+        List<User> users = createUsers(profile.clients);
+
+        WebSocketStompClient stompClient = stompClient(profile);
+        ScheduledExecutorService load = Executors.newScheduledThreadPool(profile.senderThreads, r -> {
+            Thread thread = new Thread(r, "loadtest-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Avatar> avatars = new ArrayList<>();
+        try {
+            // 分批连接，避免握手集中在同一时刻
+            for (int from = 0; from < users.size(); from += profile.connectBatch) {
+                List<CompletableFuture<StompSession>> batch = new ArrayList<>();
+                List<Avatar> connecting = new ArrayList<>();
+                for (int i = from; i < Math.min(users.size(), from + profile.connectBatch); i++) {
+                    User user = users.get(i);
+                    Avatar avatar = new Avatar(user, spaceIds.get(i % spaceIds.size()), new Random(i));
+                    batch.add(connect(stompClient, avatar, profile));
+                    connecting.add(avatar);
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    connecting.get(i).session = batch.get(i).get(30, TimeUnit.SECONDS);
+                    connecting.get(i).join(profile);
+                    avatars.add(connecting.get(i));
+                }
+            }
+            System.out.printf("[loadtest] connected %d clients to %d spaces%n", avatars.size(), spaceIds.size());
+
+            List<ScheduledFuture<?>> tasks = new ArrayList<>();
+            long movePeriod = 1_000_000L / profile.moveHz;
+            for (Avatar avatar : avatars) {
+                tasks.add(load.scheduleAtFixedRate(avatar::move, avatar.random.nextInt((int) movePeriod),
+                        movePeriod, TimeUnit.MICROSECONDS));
+                if (profile.chatPerMinute > 0) {
+                    long chatPeriod = 60_000_000L / profile.chatPerMinute;
+                    tasks.add(load.scheduleAtFixedRate(() -> avatar.chat(avatars), avatar.random.nextInt((int) chatPeriod),
+                            chatPeriod, TimeUnit.MICROSECONDS));
+                }
+            }
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(profile.warmupSeconds));
+            resetCounters();
+            long filterReceived = movementFilter.getReceived();
+            long filterForwarded = movementFilter.getForwarded() + movementFilter.getSettled();
+            long filterDropped = movementFilter.getDropped();
+            long allocatedBefore = allocatedBytes();
+            long gcCountBefore = gcCount();
+            long gcMillisBefore = gcMillis();
+            long start = System.nanoTime();
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(profile.durationSeconds));
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long allocated = allocatedBytes() - allocatedBefore;
+            for (ScheduledFuture<?> task : tasks) {
+                task.cancel(false);
+            }
+
+            long received = movementFilter.getReceived() - filterReceived;
+            long forwarded = movementFilter.getForwarded() + movementFilter.getSettled() - filterForwarded;
+            long dropped = movementFilter.getDropped() - filterDropped;
+            System.out.printf("[loadtest] moves sent %.0f/s, chats sent %.0f/s%n",
+                    movesSent.get() / seconds, chatsSent.get() / seconds);
+            System.out.printf("[loadtest] frames received %.0f/s, position updates received %.0f/s%n",
+                    framesReceived.get() / seconds, updatesReceived.get() / seconds);
+            System.out.printf("[loadtest] movement filter: %d received, %d dropped by rate limit, %d forwarded (%.1f%%)%n",
+                    received, dropped, forwarded, received > 0 ? forwarded * 100.0 / received : 0);
+            report("position fan-out", positionLatency);
+            report("chat delivery", chatLatency);
+            System.out.printf("[loadtest] allocation %.1f MB/s, GC %d collections %d ms%n",
+                    allocated / seconds / (1024 * 1024), gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+            System.out.printf("[loadtest] errors %d%n", errors.get());
+
+            assertTrue(positionLatency.count() > 0, "no position updates were delivered");
+        } finally {
+            load.shutdownNow();
+            for (Avatar avatar : avatars) {
+                if (avatar.session != null && avatar.session.isConnected()) {
+                    avatar.session.disconnect();
+                }
+            }
+            stompClient.stop();
+        }
+    }
+
+    private List<Long> createSpaces(int count) {
+        List<Long> spaceIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            VirtualSpace space = new VirtualSpace();
+            space.setName("loadtest-" + i);
+            space.setPublic(true);
+            spaceIds.add(virtualSpaceRepository.save(space).getId());
+        }
+        return spaceIds;
+    }
+
+    private List<User> createUsers(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = new User();
+            user.setUsername("loadtest" + i);
+            user.setFullName("Load Test " + i);
+            user.setEmail("loadtest" + i + "@example.com");
+            user.setPassword("not-used");
+            users.add(user);
+        }
+        return userRepository.saveAll(users);
+    }
+
+    private WebSocketStompClient stompClient(LoadProfile profile) {
+        // 快照帧可能超过默认8KB的缓冲；缓冲按会话分配，不能设得太大
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(MAX_FRAME_BYTES);
+        container.setDefaultMaxBinaryMessageBufferSize(MAX_FRAME_BYTES);
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient(container));
+        MappingJackson2MessageConverter json = new MappingJackson2MessageConverter();
+        json.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(new CompositeMessageConverter(List.of(new ByteArrayMessageConverter(), json)));
+        stompClient.setInboundMessageSizeLimit(MAX_FRAME_BYTES);
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(2);
+        scheduler.setThreadNamePrefix("loadtest-heartbeat-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+        stompClient.setTaskScheduler(scheduler);
+        stompClient.setDefaultHeartbeat(new long[]{10_000, 10_000});
+        return stompClient;
+    }
+
+    private CompletableFuture<StompSession> connect(WebSocketStompClient stompClient, Avatar avatar, LoadProfile profile) {
+        String token = jwtTokenProvider.generateToken(new UsernamePasswordAuthenticationToken(
+                new CustomUserDetails(avatar.userId, avatar.user.getEmail(), "", avatar.user.getFullName(), List.of()), null));
+        URI uri = URI.create("ws://localhost:" + port + "/ws/websocket?token=Bearer%20" + token);
+        StompHeaders connectHeaders = new StompHeaders();
+        if (profile.binary) {
+            connectHeaders.add("x-frame-codec", PositionFrameCodec.CODEC_NAME);
+        }
+        return stompClient.connectAsync(uri, new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() {
+            @Override
+            public void handleException(StompSession session, StompCommand command,
+                                        StompHeaders headers, byte[] payload, Throwable exception) {
+                errors.incrementAndGet();
+            }
+
+            @Override
+            public void handleTransportError(StompSession session, Throwable exception) {
+                errors.incrementAndGet();
+            }
+        });
+    }
+
+    private void onPositions(PositionBatchMessage batch, long receivedAt) {
+        framesReceived.incrementAndGet();
+        if (batch.getUpdates() == null) {
+            return;
+        }
+        for (PositionUpdateMessage update : batch.getUpdates()) {
+            updatesReceived.incrementAndGet();
+            Long sentAt = positionSentAt.get(positionKey(update.getUserId(), update.getX(), update.getY()));
+            if (sentAt != null) {
+                positionLatency.recordNanos(receivedAt - sentAt);
+            }
+        }
+    }
+
+    private static long positionKey(long userId, int x, int y) {
+        return (userId << 24) | ((long) (x & 0xFFF) << 12) | (y & 0xFFF);
+    }
+
+    private void resetCounters() {
+        positionLatency.reset();
+        chatLatency.reset();
+        movesSent.set(0);
+        chatsSent.set(0);
+        framesReceived.set(0);
+        updatesReceived.set(0);
+    }
+
+    private static void report(String name, LatencyHistogram histogram) {
+        System.out.printf("[loadtest] %-16s n=%d p50=%.2f ms p99=%.2f ms p999=%.2f ms%n", name, histogram.count(),
+                histogram.percentileMicros(50) / 1000.0, histogram.percentileMicros(99) / 1000.0,
+                histogram.percentileMicros(99.9) / 1000.0);
+    }
+
+    // 所有线程累计分配的字节数（不包括已结束的线程）
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    // 一个模拟用户：在空间中沿随机方向匀速行走，偶尔停下
+    private final class Avatar {
+        private final User user;
+        private final Long userId;
+        private final Long spaceId;
+        private final Random random;
+        private volatile StompSession session;
+        // 以下字段只在发送线程中修改，同一用户的任务不会并发执行
+        private double x;
+        private double y;
+        private double heading;
+        private int pausedTicks;
+
+        private Avatar(User user, Long spaceId, Random random) {
+            this.user = user;
+            this.userId = user.getId();
+            this.spaceId = spaceId;
+            this.random = random;
+            this.x = 50 + random.nextInt(900);
+            this.y = 50 + random.nextInt(700);
+            this.heading = random.nextDouble() * 2 * Math.PI;
+        }
+
+        private void join(LoadProfile profile) {
+            String suffix = profile.binary ? PositionFrameCodec.DESTINATION_SUFFIX : "";
+            StompFrameHandler positions = positionHandler(profile.binary);
+            session.subscribe("/topic/spaces/" + spaceId + "/positions" + suffix, positions);
+            session.subscribe("/user/queue/spaces/positions" + suffix, positions);
+            session.subscribe("/user/queue/messages", new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return PrivateMessage.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    PrivateMessage message = (PrivateMessage) payload;
+                    if (userId.equals(message.getRecipientId()) && message.getContent() != null) {
+                        chatLatency.recordNanos(System.nanoTime() - Long.parseLong(message.getContent()));
+                    }
+                }
+            });
+            ConnectMessage connect = new ConnectMessage();
+            connect.setUserId(userId);
+            session.send("/app/connect", connect);
+            SpaceJoinMessage join = new SpaceJoinMessage();
+            join.setUserId(userId);
+            join.setSpaceId(spaceId);
+            join.setUsername(user.getUsername());
+            session.send("/app/space/join", join);
+        }
+
+        private StompFrameHandler positionHandler(boolean binary) {
+            return new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return binary ? byte[].class : PositionBatchMessage.class;
+                }
+
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    long receivedAt = System.nanoTime();
+                    onPositions(binary ? frameCodec.decodePositions((byte[]) payload) : (PositionBatchMessage) payload, receivedAt);
+                }
+            };
+        }
+
+        private void move() {
+            try {
+                if (pausedTicks > 0) {
+                    pausedTicks--;
+                    return;
+                }
+                if (random.nextInt(200) == 0) {
+                    // 停下一两秒
+                    pausedTicks = 30 + random.nextInt(30);
+                    return;
+                }
+                heading += (random.nextDouble() - 0.5) * 0.2;
+                x += Math.cos(heading) * 5;
+                y += Math.sin(heading) * 5;
+                if (x < 0 || x > 1000 || y < 0 || y > 800) {
+                    heading += Math.PI;
+                    x = Math.max(0, Math.min(1000, x));
+                    y = Math.max(0, Math.min(800, y));
+                }
+                PositionUpdateMessage update = new PositionUpdateMessage();
+                update.setUserId(userId);
+                update.setSpaceId(spaceId);
+                update.setX((int) x);
+                update.setY((int) y);
+                positionSentAt.put(positionKey(userId, update.getX(), update.getY()), System.nanoTime());
+                session.send("/app/position/update", update);
+                movesSent.incrementAndGet();
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+        }
+
+        private void chat(List<Avatar> avatars) {
+            try {
+                Avatar recipient = avatars.get(random.nextInt(avatars.size()));
+                if (recipient == this) {
+                    return;
+                }
+                PrivateMessage message = new PrivateMessage();
+                message.setSenderId(userId);
+                message.setSenderName(user.getUsername());
+                message.setRecipientId(recipient.userId);
+                message.setRecipientName(recipient.user.getUsername());
+                message.setContent(Long.toString(System.nanoTime()));
+                session.send("/app/chat/private", message);
+                chatsSent.incrementAndGet();
+            } catch (Exception e) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    // 压测参数，通过 -Dloadtest.* 系统属性覆盖
+    private static final class LoadProfile {
+        private int clients;
+        private int spaces;
+        private int moveHz;
+        private int chatPerMinute;
+        private int warmupSeconds;
+        private int durationSeconds;
+        private int connectBatch;
+        private int senderThreads;
+        private boolean binary;
+
+        private static LoadProfile fromSystemProperties() {
+            LoadProfile profile = new LoadProfile();
+            profile.clients = Integer.getInteger("loadtest.clients", 500);
+            profile.spaces = Math.max(1, Integer.getInteger("loadtest.spaces", 5));
+            // 客户端按鼠标事件频率上报
+            profile.moveHz = Math.max(1, Integer.getInteger("loadtest.move-hz", 30));
+            profile.chatPerMinute = Integer.getInteger("loadtest.chat-per-minute", 2);
+            profile.warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 5);
+            profile.durationSeconds = Math.max(1, Integer.getInteger("loadtest.duration-seconds", 30));
+            profile.connectBatch = Math.max(1, Integer.getInteger("loadtest.connect-batch", 50));
+            profile.senderThreads = Math.max(1, Integer.getInteger("loadtest.sender-threads", 4));
+            // json或binary-v3
+            profile.binary = PositionFrameCodec.CODEC_NAME.equals(System.getProperty("loadtest.codec", "json"));
+            return profile;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("clients=%d spaces=%d move-hz=%d chat-per-minute=%d warmup=%ds duration=%ds codec=%s",
+                    clients, spaces, moveHz, chatPerMinute, warmupSeconds, durationSeconds,
+                    binary ? PositionFrameCodec.CODEC_NAME : "json");
+        }
+    }
+}
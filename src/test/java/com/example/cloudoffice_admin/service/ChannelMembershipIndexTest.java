@@ -0,0 +1,78 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.repository.ChannelMembershipRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ChannelMembershipIndexTest {
+
+    @Mock
+    private ChannelMembershipRepository membershipRepository;
+
+    @Mock
+    private ClusterRelay clusterRelay;
+
+    @InjectMocks
+    private ChannelMembershipIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void membersAreLoadedOnceAndChangesApplyAfterCommit() {
+        // 准备
+        when(membershipRepository.findUserIdsByChannelId(5L)).thenReturn(List.of(1L, 2L));
+        assertTrue(index.isMember(5L, 1L));
+
+        // 执行：事务中加入用户3、移除用户1
+        TransactionSynchronizationManager.initSynchronization();
+        index.added(5L, List.of(3L));
+        index.removed(5L, List.of(1L));
+
+        // 验证：提交前不变，提交后生效并通知其他节点，不重新加载
+        assertFalse(index.isMember(5L, 3L));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        assertTrue(index.isMember(5L, 3L));
+        assertFalse(index.isMember(5L, 1L));
+        assertTrue(index.isMember(5L, 2L));
+        verify(membershipRepository, times(1)).findUserIdsByChannelId(5L);
+        verify(clusterRelay, times(2)).relay(eq(ClusterRelay.TYPE_MEMBERSHIP), any());
+    }
+
+    @Test
+    void droppedChannelIsReloaded() {
+        // 准备
+        when(membershipRepository.findUserIdsByChannelId(5L)).thenReturn(List.of(1L)).thenReturn(List.of());
+        assertTrue(index.isMember(5L, 1L));
+
+        // 执行
+        index.dropped(5L);
+
+        // 验证
+        assertFalse(index.isMember(5L, 1L));
+        verify(membershipRepository, times(2)).findUserIdsByChannelId(5L);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.cloudoffice_admin.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ChatDeliveryTest {
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    @InjectMocks
+    private ChatDelivery chatDelivery;
+
+    @BeforeEach
+    void setUp() {
+        chatDelivery.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        chatDelivery.stop();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void messageIsPublishedOnceToChannelTopicOnlyAfterCommit() {
+        // 准备：模拟进行中的事务
+        TransactionSynchronizationManager.initSynchronization();
+
+        // 执行
+        chatDelivery.publishAfterCommit(5L, "hello");
+
+        // 验证：提交前不发布，提交后由投递线程发布一次
+        verify(sessionManager, after(100).never()).publishToChannel(anyLong(), any());
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        verify(sessionManager, timeout(1000)).publishToChannel(5L, "hello");
+    }
+
+    @Test
+    void rolledBackMessageIsNeverPublished() {
+        // 准备
+        TransactionSynchronizationManager.initSynchronization();
+
+        // 执行：事务回滚，只会触发afterCompletion
+        chatDelivery.publishAfterCommit(5L, "hello");
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        // 验证
+        verify(sessionManager, after(200).never()).publishToChannel(anyLong(), any());
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 需要本地Redis（默认localhost:6379，可用 -Dredis.host/-Dredis.port 指定），使用 -Predis 运行
+@Tag("redis")
+class ClusterRelayRedisTest {
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private ClusterRelay nodeA;
+    private ClusterRelay nodeB;
+    private final List<SharedSessionRegistry> registries = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379));
+        connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        nodeA = relay("test-node-a");
+        nodeB = relay("test-node-b");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        registries.forEach(SharedSessionRegistry::shutdown);
+        nodeA.stop();
+        nodeB.stop();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void relaysToOtherNodesButNotToSelf() throws Exception {
+        // 准备
+        BlockingQueue<PositionUpdateMessage> receivedByA = new LinkedBlockingQueue<>();
+        BlockingQueue<PositionUpdateMessage> receivedByB = new LinkedBlockingQueue<>();
+        nodeA.on(ClusterRelay.TYPE_MOVE, e -> receivedByA.add(nodeA.read(e, PositionUpdateMessage.class)));
+        nodeB.on(ClusterRelay.TYPE_MOVE, e -> receivedByB.add(nodeB.read(e, PositionUpdateMessage.class)));
+        PositionUpdateMessage move = new PositionUpdateMessage();
+        move.setUserId(7L);
+        move.setSpaceId(1L);
+        move.setX(120);
+        move.setY(80);
+
+        // 执行
+        nodeA.relay(ClusterRelay.TYPE_MOVE, move);
+
+        // 验证
+        PositionUpdateMessage received = receivedByB.poll(5, TimeUnit.SECONDS);
+        assertNotNull(received);
+        assertEquals(7L, received.getUserId());
+        assertEquals(120, received.getX());
+        assertNull(receivedByA.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void sharedRegistryIsVisibleAcrossNodesAndPurgedOnRestart() {
+        // 准备
+        SharedSessionRegistry registryA = registry(nodeA);
+        SharedSessionRegistry registryB = registry(nodeB);
+
+        // 执行
+        registryA.registerSession(42L, "session-a");
+        registryA.joinSpace(42L, 9L);
+        registryB.registerSession(42L, "session-b");
+
+        // 验证
+        assertTrue(registryB.isUserOnline(42L));
+        assertEquals(2, registryB.getUserSessionCount(42L));
+        assertTrue(registryB.getUsersInSpace(9L).contains(42L));
+
+        // 节点A以相同的节点ID重启时清理自己遗留的会话和空间成员
+        SharedSessionRegistry restartedA = registry(nodeA);
+        assertEquals(1, registryB.getUserSessionCount(42L));
+        assertFalse(registryB.getUsersInSpace(9L).contains(42L));
+
+        registryB.removeSession(42L, "session-b");
+        assertFalse(restartedA.isUserOnline(42L));
+    }
+
+    @Test
+    void leavingOnOneNodeKeepsUserInSpaceThroughAnotherNode() {
+        // 准备：同一用户通过两个节点上的会话进入同一空间
+        SharedSessionRegistry registryA = registry(nodeA);
+        SharedSessionRegistry registryB = registry(nodeB);
+        registryA.joinSpace(42L, 9L);
+        registryB.joinSpace(42L, 9L);
+
+        // 执行
+        registryA.leaveSpace(42L, 9L);
+
+        // 验证
+        assertTrue(registryA.getUsersInSpace(9L).contains(42L));
+        registryB.leaveSpace(42L, 9L);
+        assertFalse(registryA.getUsersInSpace(9L).contains(42L));
+    }
+
+    @Test
+    void liveNodePurgesEntriesOfNodeWhoseHeartbeatExpired() {
+        // 准备：节点A登记后异常退出，不再心跳
+        SharedSessionRegistry registryA = registry(nodeA);
+        SharedSessionRegistry registryB = registry(nodeB);
+        registryA.registerSession(42L, "session-a");
+        registryA.joinSpace(42L, 9L);
+        redisTemplate.opsForZSet().add(SharedSessionRegistry.NODES_KEY, "test-node-a",
+                System.currentTimeMillis() - 60_000);
+
+        // 执行
+        registryB.heartbeat();
+
+        // 验证
+        assertFalse(registryB.isUserOnline(42L));
+        assertFalse(registryB.getUsersInSpace(9L).contains(42L));
+        assertNull(redisTemplate.opsForZSet().score(SharedSessionRegistry.NODES_KEY, "test-node-a"));
+
+        // 节点A其实还活着（例如长时间停顿）：下一次心跳发现自己被清理，重新登记
+        registryA.heartbeat();
+        assertTrue(registryB.isUserOnline(42L));
+        assertTrue(registryB.getUsersInSpace(9L).contains(42L));
+    }
+
+    private ClusterRelay relay(String nodeId) {
+        ClusterRelay relay = new ClusterRelay();
+        ReflectionTestUtils.setField(relay, "connectionFactory", connectionFactory);
+        ReflectionTestUtils.setField(relay, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(relay, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(relay, "enabled", true);
+        ReflectionTestUtils.setField(relay, "configuredNodeId", nodeId);
+        relay.start();
+        return relay;
+    }
+
+    // 心跳间隔足够长，测试中只手动心跳
+    private SharedSessionRegistry registry(ClusterRelay relay) {
+        SharedSessionRegistry registry = new SharedSessionRegistry();
+        ReflectionTestUtils.setField(registry, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(registry, "clusterRelay", relay);
+        ReflectionTestUtils.setField(registry, "heartbeatMillis", 600_000L);
+        registry.start();
+        registries.add(registry);
+        return registry;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.cloudoffice_admin.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashRingTest {
+
+    private static final int SPACES = 10_000;
+
+    @Test
+    void ownershipIsDeterministicAndBalanced() {
+        // 准备：成员顺序不同的两个环
+        HashRing ring = new HashRing(List.of("node-a", "node-b", "node-c"), 128);
+        HashRing shuffled = new HashRing(List.of("node-c", "node-a", "node-b", "node-a"), 128);
+
+        // 执行
+        Map<String, Integer> counts = new HashMap<>();
+        for (long spaceId = 1; spaceId <= SPACES; spaceId++) {
+            String owner = ring.ownerOf(spaceId);
+            assertEquals(owner, shuffled.ownerOf(spaceId));
+            counts.merge(owner, 1, Integer::sum);
+        }
+
+        // 验证：每个节点分到的空间与平均值相差不超过20%
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(Math.abs(count - SPACES / 3) < SPACES / 3 / 5, "unbalanced: " + counts);
+        }
+        assertNull(new HashRing(List.of(), 128).ownerOf(1L));
+    }
+
+    @Test
+    void onlySpacesOfTheJoiningOrLeavingNodeMove() {
+        // 准备
+        HashRing three = new HashRing(List.of("node-a", "node-b", "node-c"), 128);
+        HashRing four = new HashRing(List.of("node-a", "node-b", "node-c", "node-d"), 128);
+
+        // 执行和验证：加入时只有分给新节点的空间换归属，约占四分之一；离开时恢复原来的归属
+        int moved = 0;
+        for (long spaceId = 1; spaceId <= SPACES; spaceId++) {
+            String before = three.ownerOf(spaceId);
+            String after = four.ownerOf(spaceId);
+            if (!before.equals(after)) {
+                assertEquals("node-d", after);
+                moved++;
+            }
+        }
+        assertTrue(moved > SPACES / 5 && moved < SPACES / 3, "moved " + moved);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MovementFilterTest {
+
+    private final MovementFilter filter = new MovementFilter();
+
+    @Test
+    void mouseTraceIsForwardedSparselyAndReceiversStayCloseByExtrapolating() {
+        // 准备：60Hz的鼠标轨迹，直线、圆弧、停顿、带抖动的斜线、停顿，共10秒
+        int frames = 600;
+        PositionUpdateMessage received = null;
+        double errorSum = 0;
+        int moving = 0;
+
+        // 执行：接收方只看到转发的位置，在两次转发之间按速度外推
+        for (int i = 0; i < frames; i++) {
+            long now = i * 1000L / 60;
+            int[] position = trace(now, i);
+            PositionUpdateMessage move = move(position[0], position[1]);
+            if (filter.filter(move, now) == MovementFilter.Decision.FORWARD) {
+                received = move;
+            }
+            for (PositionUpdateMessage resting : filter.settle(now)) {
+                received = resting;
+            }
+            if (now < 4000 || (now >= 5000 && now < 8000)) {
+                errorSum += error(received, position, now);
+                moving++;
+            }
+        }
+        long end = frames * 1000L / 60 + 1000;
+        for (PositionUpdateMessage resting : filter.settle(end)) {
+            received = resting;
+        }
+
+        // 验证：转发不到输入的15%，移动中的平均外推误差在阈值以内，最终静止位置准确
+        long sent = filter.getForwarded() + filter.getSettled();
+        assertEquals(frames, filter.getReceived());
+        assertTrue(sent * 100 < filter.getReceived() * 15, "forwarded " + sent + " of " + frames);
+        assertTrue(errorSum / moving < 12, "mean error " + errorSum / moving);
+        int[] last = trace(end, frames);
+        assertEquals(last[0], received.getX());
+        assertEquals(last[1], received.getY());
+        assertEquals(0, received.getVx());
+        assertEquals(0, received.getVy());
+    }
+
+    @Test
+    void burstsBeyondTheRateAreDroppedAndTheLastPositionSettles() {
+        // 执行：同一毫秒内上报100次
+        int forwarded = 0;
+        for (int i = 0; i < 100; i++) {
+            if (filter.filter(move(i, 0), 0) == MovementFilter.Decision.FORWARD) {
+                forwarded++;
+            }
+        }
+        List<PositionUpdateMessage> early = filter.settle(100);
+        List<PositionUpdateMessage> resting = filter.settle(200);
+
+        // 验证：只有令牌桶容量以内的移动被处理，被丢弃的最后位置在停止后补发
+        assertEquals(90, filter.getDropped());
+        assertTrue(forwarded >= 1 && forwarded <= 10);
+        assertTrue(early.isEmpty());
+        assertEquals(1, resting.size());
+        assertEquals(7L, resting.get(0).getUserId());
+        assertEquals(99, resting.get(0).getX());
+        assertEquals(0, resting.get(0).getVx());
+        assertTrue(filter.settle(300).isEmpty());
+    }
+
+    @Test
+    void switchingSpaceIdsInThePayloadDoesNotRefillTheBucket() {
+        // 执行：同一毫秒内交替上报两个空间
+        for (int i = 0; i < 100; i++) {
+            PositionUpdateMessage move = move(i, 0);
+            move.setSpaceId(i % 2 == 0 ? 1L : 2L);
+            filter.filter(move, 0);
+        }
+
+        // 验证：仍然只处理令牌桶容量以内的移动
+        assertEquals(90, filter.getDropped());
+
+        // 执行：服务端确认离开后重新开始计速
+        filter.forget(7L);
+        assertEquals(MovementFilter.Decision.FORWARD, filter.filter(move(0, 0), 0));
+    }
+
+    // 轨迹上某一时刻的位置
+    private static int[] trace(long now, int frame) {
+        if (now < 2000) {
+            return new int[]{100 + (int) (now * 0.3), 100};
+        }
+        if (now < 4000) {
+            double angle = (now - 2000) / 2000.0 * Math.PI;
+            return new int[]{700 + (int) (200 * Math.sin(angle)), 300 - (int) (200 * Math.cos(angle))};
+        }
+        if (now < 5000) {
+            return new int[]{700, 500};
+        }
+        if (now < 8000) {
+            // 手的抖动
+            int jitter = frame % 3 - 1;
+            return new int[]{700 - (int) ((now - 5000) * 0.2) + jitter, 500 - (int) ((now - 5000) * 0.1) + jitter};
+        }
+        return new int[]{100, 200};
+    }
+
+    private static double error(PositionUpdateMessage received, int[] position, long now) {
+        double elapsed = (now - received.getTimestamp().getTime()) / 1000.0;
+        return Math.hypot(position[0] - (received.getX() + received.getVx() * elapsed),
+                position[1] - (received.getY() + received.getVy() * elapsed));
+    }
+
+    private static PositionUpdateMessage move(int x, int y) {
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(7L);
+        message.setSpaceId(1L);
+        message.setX(x);
+        message.setY(y);
+        return message;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.OccupantView;
+import com.example.cloudoffice_admin.dto.SpaceOccupancy;
+import com.example.cloudoffice_admin.dto.SpaceView;
+import com.example.cloudoffice_admin.model.UserPresence;
+import com.example.cloudoffice_admin.model.VirtualSpace;
+import com.example.cloudoffice_admin.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OccupancyServiceTest {
+
+    @Mock
+    private PresenceStore presenceStore;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private SpaceLayoutCache layoutCache;
+
+    @InjectMocks
+    private OccupancyService occupancyService;
+
+    @Test
+    void occupantsAreJoinedWithProfilesInOneQuery() {
+        // 准备
+        UserPresence presence = new UserPresence();
+        presence.setUserId(7L);
+        presence.setZoneId(5L);
+        presence.setX(10);
+        presence.setY(20);
+        UserRepository.ProfileView profile = mock(UserRepository.ProfileView.class);
+        when(profile.getId()).thenReturn(7L);
+        when(profile.getFullName()).thenReturn("Alice");
+        when(profile.getAvatar()).thenReturn("🦊");
+        when(presenceStore.getUsersInSpace(1L)).thenReturn(List.of(presence));
+        when(userRepository.findProfilesByIdIn(List.of(7L))).thenReturn(List.of(profile));
+
+        // 执行
+        List<OccupantView> occupants = occupancyService.getOccupantsInSpace(1L);
+
+        // 验证
+        assertEquals(1, occupants.size());
+        assertEquals("Alice", occupants.get(0).getDisplayName());
+        assertEquals("🦊", occupants.get(0).getAvatar());
+        assertEquals(5L, occupants.get(0).getZoneId());
+        assertEquals(UserPresence.STATUS_ONLINE, occupants.get(0).getStatus());
+    }
+
+    @Test
+    void busiestSpacesListsPublicSpacesByOccupantCount() {
+        // 准备：空间1有3人，空间2有5人但不公开，空间3有4人
+        when(presenceStore.getSpaceCounts()).thenReturn(Map.of(1L, 3, 2L, 5, 3L, 4));
+        when(presenceStore.countInSpace(1L)).thenReturn(3);
+        when(presenceStore.countInSpace(3L)).thenReturn(4);
+        when(layoutCache.get(1L)).thenReturn(layout(1L, true));
+        when(layoutCache.get(2L)).thenReturn(layout(2L, false));
+        when(layoutCache.get(3L)).thenReturn(layout(3L, true));
+
+        // 执行
+        List<SpaceOccupancy> busiest = occupancyService.getBusiestSpaces(10);
+
+        // 验证
+        assertEquals(List.of(3L, 1L), busiest.stream().map(SpaceOccupancy::getSpaceId).toList());
+        assertEquals(4, busiest.get(0).getOccupants());
+    }
+
+    private static SpaceLayoutCache.SpaceLayout layout(Long spaceId, boolean isPublic) {
+        VirtualSpace space = new VirtualSpace();
+        space.setId(spaceId);
+        space.setPublic(isPublic);
+        return new SpaceLayoutCache.SpaceLayout(new SpaceView(space), List.of(), 1);
+    }
+}
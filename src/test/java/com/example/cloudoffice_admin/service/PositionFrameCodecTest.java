@@ -0,0 +1,131 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PositionFrameCodecTest {
+
+    private final PositionFrameCodec codec = new PositionFrameCodec();
+
+    @Test
+    void encodeDecode_shouldRoundTripPositionBatch() {
+        // 准备
+        PositionBatchMessage batch = createBatch(50, new Random(7));
+
+        // 执行
+        PositionBatchMessage decoded = codec.decodePositions(codec.encode(batch));
+
+        // 验证：解码后按用户ID排序，字段与原始消息一致
+        assertEquals(batch.getSpaceId(), decoded.getSpaceId());
+        assertEquals(batch.getTick(), decoded.getTick());
+        assertEquals(batch.getTimestamp(), decoded.getTimestamp());
+        List<PositionUpdateMessage> expected = new ArrayList<>(batch.getUpdates());
+        expected.sort((a, b) -> Long.compare(a.getUserId(), b.getUserId()));
+        for (int i = 0; i < expected.size(); i++) {
+            PositionUpdateMessage want = expected.get(i);
+            PositionUpdateMessage got = decoded.getUpdates().get(i);
+            assertEquals(want.getUserId(), got.getUserId());
+            assertEquals(want.getZoneId(), got.getZoneId());
+            assertEquals(want.getX(), got.getX());
+            assertEquals(want.getY(), got.getY());
+            assertEquals(want.getVx() != null ? want.getVx() : 0, got.getVx());
+            assertEquals(want.getVy() != null ? want.getVy() : 0, got.getVy());
+            assertEquals(want.getTimestamp(), got.getTimestamp());
+        }
+    }
+
+    @Test
+    void encodeDecode_shouldRoundTripRemovedUsers() {
+        // 准备：同一节拍有移动也有离开，另一帧只有离开
+        PositionBatchMessage batch = createBatch(3, new Random(11));
+        batch.setRemoved(List.of(900L, 42L, 7_000_000L));
+        PositionBatchMessage leavesOnly = new PositionBatchMessage();
+        leavesOnly.setSpaceId(5L);
+        leavesOnly.setTick(12);
+        leavesOnly.setTimestamp(new Date(1_700_000_000_000L));
+        leavesOnly.setUpdates(List.of());
+        leavesOnly.setRemoved(List.of(3L));
+
+        // 执行
+        PositionBatchMessage decoded = codec.decodePositions(codec.encode(batch));
+        PositionBatchMessage decodedLeaves = codec.decodePositions(codec.encode(leavesOnly));
+        PositionBatchMessage decodedNoLeaves = codec.decodePositions(codec.encode(createBatch(2, new Random(3))));
+
+        // 验证：离开列表按用户ID排序，没有离开者时与JSON路径一致为null
+        assertEquals(List.of(42L, 900L, 7_000_000L), decoded.getRemoved());
+        assertEquals(3, decoded.getUpdates().size());
+        assertEquals(List.of(3L), decodedLeaves.getRemoved());
+        assertTrue(decodedLeaves.getUpdates().isEmpty());
+        assertEquals(12, decodedLeaves.getTick());
+        assertNull(decodedNoLeaves.getRemoved());
+    }
+
+    // 与现有Jackson路径对比每帧字节数和编码耗时
+    // 运行方式：mvn test -Pbenchmark -Dtest=PositionFrameCodecTest
+    @Test
+    @Tag("benchmark")
+    void compareWithJackson() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Random random = new Random(42);
+        for (int size : new int[]{1, 20, 200}) {
+            PositionBatchMessage batch = createBatch(size, random);
+            int jsonBytes = objectMapper.writeValueAsBytes(batch).length;
+            int binaryBytes = codec.encode(batch).length;
+
+            int iterations = 2_000_000 / size;
+            for (int i = 0; i < iterations; i++) {
+                objectMapper.writeValueAsBytes(batch);
+                codec.encode(batch);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                objectMapper.writeValueAsBytes(batch);
+            }
+            long jsonNanos = (System.nanoTime() - start) / iterations;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                codec.encode(batch);
+            }
+            long binaryNanos = (System.nanoTime() - start) / iterations;
+
+            System.out.printf("[bench] batch=%-3d json=%6d B %7d ns/frame | binary-v3=%5d B %6d ns/frame | %.1fx smaller%n",
+                    size, jsonBytes, jsonNanos, binaryBytes, binaryNanos, (double) jsonBytes / binaryBytes);
+            assertTrue(binaryBytes < jsonBytes);
+        }
+    }
+
+    private static PositionBatchMessage createBatch(int size, Random random) {
+        long now = System.currentTimeMillis();
+        List<PositionUpdateMessage> updates = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            PositionUpdateMessage update = new PositionUpdateMessage();
+            update.setUserId(10_000L + random.nextInt(50_000));
+            update.setSpaceId(3L);
+            update.setZoneId(random.nextBoolean() ? null : (long) random.nextInt(20));
+            update.setX(random.nextInt(2000));
+            update.setY(random.nextInt(1500));
+            if (random.nextBoolean()) {
+                update.setVx(random.nextInt(801) - 400);
+                update.setVy(random.nextInt(801) - 400);
+            }
+            update.setTimestamp(new Date(now - random.nextInt(70)));
+            updates.add(update);
+        }
+        PositionBatchMessage batch = new PositionBatchMessage();
+        batch.setSpaceId(3L);
+        batch.setTick(123_456L);
+        batch.setTimestamp(new Date(now));
+        batch.setUpdates(updates);
+        return batch;
+    }
+}
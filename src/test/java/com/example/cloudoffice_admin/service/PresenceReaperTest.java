@@ -0,0 +1,147 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.model.UserPresence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PresenceReaperTest {
+
+    private static final long START = 1_000_000L;
+
+    @Mock
+    private PresenceStore presenceStore;
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    @Mock
+    private SpaceTickEngine tickEngine;
+
+    @InjectMocks
+    private PresenceReaper presenceReaper;
+
+    @BeforeEach
+    void setUp() {
+        // 10秒无操作离开，30秒无心跳离线
+        ReflectionTestUtils.setField(presenceReaper, "awayAfterSeconds", 10L);
+        ReflectionTestUtils.setField(presenceReaper, "offlineAfterSeconds", 30L);
+        ReflectionTestUtils.setField(presenceReaper, "wheel", new HierarchicalTimingWheel(1000, 4, START));
+    }
+
+    @Test
+    void idleUserGoesAwayThenOfflineAndIsRemovedFromSessions() {
+        // 准备
+        when(sessionManager.spacesOf(7L)).thenReturn(new long[]{3L});
+        when(sessionManager.removeUser(7L)).thenReturn(List.of(3L));
+        presenceReaper.touch(7L, true, START);
+        presenceReaper.reap(START);
+
+        // 执行：只有心跳，没有操作
+        for (long t = START + 1000; t <= START + 20_000; t += 1000) {
+            presenceReaper.touch(7L, false, t);
+            presenceReaper.reap(t);
+        }
+
+        // 验证：离开但不离线
+        assertEquals(UserPresence.STATUS_AWAY, presenceReaper.getStatus(7L));
+        verify(presenceStore).updateStatus(7L, UserPresence.STATUS_AWAY);
+        verify(sessionManager, never()).removeUser(7L);
+
+        // 执行：心跳停止
+        for (long t = START + 21_000; t <= START + 52_000; t += 1000) {
+            presenceReaper.reap(t);
+        }
+
+        // 验证
+        assertEquals(UserPresence.STATUS_OFFLINE, presenceReaper.getStatus(7L));
+        verify(sessionManager).removeUser(7L);
+        verify(tickEngine).discard(3L, 7L);
+        verify(presenceStore).updateStatus(7L, UserPresence.STATUS_OFFLINE);
+        verify(sessionManager).publishToSpace(eq(3L), eq(WebSocketSessionManager.SPACE_LEAVES), any());
+    }
+
+    @Test
+    void activityBringsAwayUserBackOnline() {
+        // 准备
+        when(sessionManager.spacesOf(7L)).thenReturn(new long[0]);
+        presenceReaper.touch(7L, true, START);
+        presenceReaper.reap(START);
+        presenceReaper.touch(7L, false, START + 10_000);
+        presenceReaper.reap(START + 11_000);
+
+        // 执行
+        presenceReaper.touch(7L, true, START + 12_000);
+
+        // 验证
+        assertEquals(UserPresence.STATUS_ONLINE, presenceReaper.getStatus(7L));
+        verify(presenceStore).updateStatus(7L, UserPresence.STATUS_ONLINE);
+    }
+
+    @Test
+    void userBackFromAwayIsCheckedAgainAtTheNewAwayDeadline() {
+        // 准备：第10秒离开，之后只有心跳
+        when(sessionManager.spacesOf(7L)).thenReturn(new long[0]);
+        presenceReaper.touch(7L, true, START);
+        presenceReaper.reap(START);
+        for (long t = START + 1000; t <= START + 12_000; t += 1000) {
+            presenceReaper.touch(7L, false, t);
+            presenceReaper.reap(t);
+        }
+        assertEquals(UserPresence.STATUS_AWAY, presenceReaper.getStatus(7L));
+
+        // 执行：第13秒操作一次恢复在线，之后又只有心跳
+        presenceReaper.touch(7L, true, START + 13_000);
+        for (long t = START + 13_000; t <= START + 24_000; t += 1000) {
+            presenceReaper.touch(7L, false, t);
+            presenceReaper.reap(t);
+        }
+
+        // 验证：第23秒再次离开，不用等到旧的离线检查时刻（第42秒）
+        assertEquals(UserPresence.STATUS_AWAY, presenceReaper.getStatus(7L));
+        verify(presenceStore, times(2)).updateStatus(7L, UserPresence.STATUS_AWAY);
+    }
+
+    @Test
+    void timingWheelFiresEachTimerAtItsTickAcrossLevels() {
+        // 准备：跨越第0到第2层的随机到期时间
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(10, 3, 0);
+        Random random = new Random(7);
+        long[] deadlines = new long[2000];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = 10 + random.nextInt(300_000);
+            wheel.schedule(i, deadlines[i]);
+        }
+
+        // 执行
+        List<long[]> fired = new ArrayList<>();
+        for (long now = 0; now <= 310_000; now += 10) {
+            long current = now;
+            wheel.advanceTo(now, (key, deadline) -> fired.add(new long[]{key, current}));
+        }
+
+        // 验证：每个定时器只触发一次，且在到期的tick触发
+        assertEquals(deadlines.length, fired.size());
+        for (long[] entry : fired) {
+            assertEquals(deadlines[(int) entry[0]] / 10, entry[1] / 10);
+        }
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.model.UserPresence;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.BatchUpdateException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PresenceStoreTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private PresenceStore presenceStore;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void movesAreCoalescedIntoOneUpsertPerUser() {
+        // 准备：用户7已有记录，用户8没有
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE"), anyList())).thenReturn(new int[]{1, 0});
+        when(jdbcTemplate.batchUpdate(startsWith("INSERT"), anyList())).thenReturn(new int[]{1});
+
+        // 执行：用户7移动三次，用户8移动一次
+        presenceStore.move(7L, 1L, null, 10, 10);
+        presenceStore.move(7L, 1L, null, 20, 20);
+        presenceStore.move(7L, 1L, 5L, 30, 40);
+        presenceStore.move(8L, 1L, null, 1, 2);
+        presenceStore.flush();
+
+        // 验证：一次批量UPDATE携带每个用户最新的一行，没有命中的再INSERT
+        ArgumentCaptor<List<Object[]>> updates = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE"), updates.capture());
+        assertEquals(2, updates.getValue().size());
+        Object[] row = updates.getValue().stream().filter(r -> r[6].equals(7L)).findFirst().orElseThrow();
+        assertEquals(5L, row[1]);
+        assertEquals(30, row[2]);
+        assertEquals(40, row[3]);
+
+        ArgumentCaptor<List<Object[]>> inserts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT"), inserts.capture());
+        assertEquals(1, inserts.getValue().size());
+        assertFalse(presenceStore.isDirty(7L));
+    }
+
+    @Test
+    void readsAreServedFromMemoryAndFollowZoneChanges() {
+        // 准备
+        presenceStore.move(7L, 1L, 5L, 10, 10);
+        presenceStore.move(8L, 1L, 5L, 20, 20);
+        presenceStore.move(9L, 2L, null, 30, 30);
+
+        // 执行：用户7换区域，用户8离线
+        presenceStore.move(7L, 1L, 6L, 15, 15);
+        presenceStore.updateStatus(8L, UserPresence.STATUS_OFFLINE);
+
+        // 验证
+        assertEquals(List.of(7L), presenceStore.getUsersInSpace(1L).stream().map(UserPresence::getUserId).toList());
+        assertTrue(presenceStore.getUsersInZone(5L).isEmpty());
+        assertEquals(1, presenceStore.getUsersInZone(6L).size());
+        assertEquals(2L, presenceStore.getUsersInSpace(2L).get(0).getSpaceId());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void countsTrackMovesStatusChangesAndDepartures() {
+        // 准备
+        presenceStore.move(7L, 1L, 5L, 10, 10);
+        presenceStore.move(8L, 1L, 5L, 20, 20);
+        presenceStore.move(9L, 1L, null, 30, 30);
+
+        // 执行：7号换区域，8号离线后又回来，9号离开空间
+        presenceStore.move(7L, 1L, 6L, 15, 15);
+        presenceStore.updateStatus(8L, UserPresence.STATUS_OFFLINE);
+        assertEquals(2, presenceStore.countInSpace(1L));
+        presenceStore.updateStatus(8L, UserPresence.STATUS_AWAY);
+        presenceStore.remove(9L);
+
+        // 验证：计数与成员列表一致，没人的键被移除
+        assertEquals(2, presenceStore.countInSpace(1L));
+        assertEquals(1, presenceStore.countInZone(5L));
+        assertEquals(1, presenceStore.countInZone(6L));
+        assertEquals(presenceStore.getUsersInSpace(1L).size(), presenceStore.countInSpace(1L));
+
+        presenceStore.remove(7L);
+        presenceStore.remove(8L);
+        assertTrue(presenceStore.getSpaceCounts().isEmpty());
+        assertEquals(0, presenceStore.countInZone(5L));
+    }
+
+    @Test
+    void removedUserIsDeletedOnNextFlushAndFailedWritesAreRetried() {
+        // 准备
+        presenceStore.move(7L, 1L, null, 10, 10);
+        presenceStore.move(8L, 1L, null, 20, 20);
+        when(jdbcTemplate.batchUpdate(startsWith("DELETE"), anyList())).thenReturn(new int[]{1});
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE"), anyList()))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(new int[]{1});
+
+        // 执行：用户7离开，第一次写入失败
+        presenceStore.remove(7L);
+        presenceStore.flush();
+
+        // 验证：删除已执行，用户8仍待写入
+        verify(jdbcTemplate).batchUpdate(startsWith("DELETE"), anyList());
+        assertNull(presenceStore.get(7L));
+        assertTrue(presenceStore.isDirty(8L));
+
+        // 执行：第二次写入成功
+        presenceStore.flush();
+
+        // 验证
+        assertFalse(presenceStore.isDirty(8L));
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("INSERT"), anyList());
+    }
+
+    @Test
+    void constraintViolationInBatchOnlyDropsTheOffendingRow() {
+        // 准备：用户8所在的空间已被删除，批量写入因外键失败
+        presenceStore.move(7L, 1L, null, 10, 10);
+        presenceStore.move(8L, 99L, null, 20, 20);
+        presenceStore.move(9L, 1L, null, 30, 30);
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE"), anyList()))
+                .thenThrow(new DataIntegrityViolationException("fk", new BatchUpdateException()));
+        when(jdbcTemplate.update(startsWith("UPDATE"), any(Object[].class))).thenAnswer(invocation ->
+                ((Object[]) invocation.getRawArguments()[1])[0].equals(99L) ? fkViolation() : 1);
+
+        // 执行
+        presenceStore.flush();
+
+        // 验证：其他用户逐行写入，违反约束的行被丢弃，不会每轮重试
+        verify(jdbcTemplate, times(3)).update(startsWith("UPDATE"), any(Object[].class));
+        assertFalse(presenceStore.isDirty(7L));
+        assertFalse(presenceStore.isDirty(8L));
+        assertFalse(presenceStore.isDirty(9L));
+        presenceStore.flush();
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("UPDATE"), anyList());
+    }
+
+    private static int fkViolation() {
+        throw new DataIntegrityViolationException("Cannot add or update a child row: a foreign key constraint fails");
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.ZoneOccupancyBucket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(MockitoExtension.class)
+class PresenceTimeSeriesTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Mock
+    private PresenceStore presenceStore;
+
+    @InjectMocks
+    private PresenceTimeSeries timeSeries;
+
+    @TempDir
+    Path directory;
+
+    // 最近的整点，前后的事件落在两个分区
+    private final long base = System.currentTimeMillis() / HOUR * HOUR - HOUR;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(timeSeries, "directory", directory.toString());
+        ReflectionTestUtils.setField(timeSeries, "sampleMillis", HOUR);
+        ReflectionTestUtils.setField(timeSeries, "flushMillis", HOUR);
+        timeSeries.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        timeSeries.stop();
+    }
+
+    @Test
+    void heatmapAggregatesSamplesAndEntriesAcrossPartitionsAndBlocks() throws Exception {
+        // 准备：整点前一轮采样，整点后一轮采样和一次进入，分两次写入
+        timeSeries.record(PresenceSegment.SAMPLE, base - MINUTE, 1L, 3L, 5L, 10, 10);
+        timeSeries.record(PresenceSegment.SAMPLE, base - MINUTE, 2L, 3L, 5L, 20, 20);
+        timeSeries.record(PresenceSegment.SAMPLE, base - MINUTE, 9L, 4L, 5L, 0, 0);
+        timeSeries.flush();
+        timeSeries.record(PresenceSegment.SAMPLE, base + MINUTE, 1L, 3L, 5L, 12, 10);
+        timeSeries.record(PresenceSegment.SAMPLE, base + MINUTE, 2L, 3L, null, 400, 20);
+        timeSeries.record(PresenceSegment.ENTER, base + 2 * MINUTE, 4L, 3L, 6L, 0, 0);
+        timeSeries.record(PresenceSegment.SAMPLE, base + 40 * MINUTE, 1L, 3L, 5L, 12, 10);
+
+        // 执行：从整点前15分钟开始，每30分钟一格
+        List<ZoneOccupancyBucket> heatmap = timeSeries.getZoneHeatmap(3L, base - 15 * MINUTE, base + HOUR, 30 * MINUTE);
+
+        // 验证：第一格两轮采样，区域5分别有2人和1人；区域6有一次进入
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+        assertEquals(3, heatmap.size());
+        ZoneOccupancyBucket first = heatmap.get(0);
+        assertEquals(5L, first.getZoneId());
+        assertEquals(1.5, first.getAverageOccupants());
+        assertEquals(2, first.getPeakOccupants());
+        assertEquals(2, first.getVisitors());
+        ZoneOccupancyBucket entered = heatmap.get(1);
+        assertEquals(6L, entered.getZoneId());
+        assertEquals(first.getStart(), entered.getStart());
+        assertEquals(1, entered.getEntries());
+        assertEquals(1, entered.getVisitors());
+        assertEquals(0, entered.getPeakOccupants());
+        ZoneOccupancyBucket second = heatmap.get(2);
+        assertEquals(5L, second.getZoneId());
+        assertEquals(1.0, second.getAverageOccupants());
+        assertEquals(first.getStart().plusMinutes(30), second.getStart());
+    }
+
+    @Test
+    void truncatedTailIsIgnoredAndExpiredPartitionsAreDeleted() throws Exception {
+        // 准备：一个完整的块后面跟着写了一半的块，另有一个超过保留期的分区
+        timeSeries.record(PresenceSegment.SAMPLE, base + MINUTE, 1L, 3L, 5L, 10, 10);
+        timeSeries.flush();
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        byte[] block = Files.readAllBytes(segment);
+        Files.write(segment, Arrays.copyOf(block, block.length / 2), StandardOpenOption.APPEND);
+        timeSeries.record(PresenceSegment.SAMPLE, base - TimeUnit.DAYS.toMillis(40), 1L, 3L, 5L, 10, 10);
+
+        // 执行
+        List<ZoneOccupancyBucket> heatmap = timeSeries.getZoneHeatmap(3L, base, base + HOUR, HOUR);
+
+        // 验证
+        assertEquals(1, heatmap.size());
+        assertEquals(1, heatmap.get(0).getPeakOccupants());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.allMatch(segment::equals));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProximityClustererTest {
+
+    private static final int RADIUS = 96;
+
+    @Test
+    void groupsFormGrowAndDissolveWithStableIds() {
+        // 准备
+        ProximityClusterer clusterer = new ProximityClusterer(RADIUS, 2);
+
+        // 执行：两人靠近
+        ProximityClusterer.Changes formed = clusterer.update(List.of(move(1L, 100, 100), move(2L, 150, 100)), null);
+
+        // 验证
+        assertEquals(1, formed.changed.size());
+        long groupId = formed.changed.keySet().iterator().next();
+
+        // 执行：第三人通过2号间接加入，1号在组内小幅移动
+        ProximityClusterer.Changes grown = clusterer.update(List.of(move(3L, 240, 100)), null);
+        ProximityClusterer.Changes unchanged = clusterer.update(List.of(move(1L, 110, 105)), null);
+
+        // 验证：组ID不变，组内移动不产生变化
+        assertEquals(Set.of(1L, 2L, 3L), new HashSet<>(grown.changed.get(groupId)));
+        assertTrue(unchanged.isEmpty());
+
+        // 执行：2号离开，剩下的两人不再相连
+        ProximityClusterer.Changes dissolved = clusterer.update(List.of(), List.of(2L));
+
+        // 验证
+        assertEquals(List.of(groupId), dissolved.dissolved);
+        assertNull(clusterer.groupOf(1L));
+        assertNull(clusterer.groupOf(3L));
+    }
+
+    @Test
+    void incrementalGroupsMatchFullRecomputationUnderRandomMoves() {
+        // 准备
+        Random random = new Random(13);
+        ProximityClusterer clusterer = new ProximityClusterer(RADIUS, 3);
+        Map<Long, int[]> positions = new HashMap<>();
+
+        for (int tick = 0; tick < 300; tick++) {
+            // 执行：随机移动、进入和离开
+            List<PositionUpdateMessage> moves = new ArrayList<>();
+            List<Long> removed = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                long userId = 1 + random.nextInt(200);
+                if (positions.containsKey(userId) && random.nextInt(10) == 0) {
+                    if (!removed.contains(userId) && moves.stream().noneMatch(m -> m.getUserId() == userId)) {
+                        positions.remove(userId);
+                        removed.add(userId);
+                    }
+                    continue;
+                }
+                if (removed.contains(userId)) {
+                    continue;
+                }
+                int[] position = {random.nextInt(1500), random.nextInt(1500)};
+                positions.put(userId, position);
+                moves.removeIf(m -> m.getUserId() == userId);
+                moves.add(move(userId, position[0], position[1]));
+            }
+            clusterer.update(moves, removed);
+
+            // 验证：与全量重新计算的分组一致
+            assertEquals(partition(naiveGroups(positions, RADIUS, 3)), partition(clusterer.groups()), "tick " + tick);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareIncrementalAndNaiveClusteringAt2000Avatars() {
+        // 2000人在5000x5000的空间中随机游走，每个节拍10%的人移动
+        int avatars = 2000;
+        int ticks = 300;
+        Random random = new Random(5);
+        Map<Long, int[]> positions = new HashMap<>();
+        ProximityClusterer clusterer = new ProximityClusterer(RADIUS, 2);
+        List<PositionUpdateMessage> initial = new ArrayList<>();
+        for (long userId = 1; userId <= avatars; userId++) {
+            int[] position = {random.nextInt(5000), random.nextInt(5000)};
+            positions.put(userId, position);
+            initial.add(move(userId, position[0], position[1]));
+        }
+        clusterer.update(initial, null);
+        Map<Long, int[]> start = new HashMap<>();
+        for (Map.Entry<Long, int[]> entry : positions.entrySet()) {
+            start.put(entry.getKey(), entry.getValue().clone());
+        }
+
+        // 预先生成移动脚本，两种实现重放同样的移动
+        List<List<PositionUpdateMessage>> script = new ArrayList<>();
+        for (int tick = 0; tick < ticks; tick++) {
+            List<PositionUpdateMessage> moves = new ArrayList<>();
+            Set<Long> moved = new HashSet<>();
+            for (int i = 0; i < avatars / 10; i++) {
+                long userId = 1 + random.nextInt(avatars);
+                if (!moved.add(userId)) {
+                    continue;
+                }
+                int[] position = positions.get(userId);
+                position[0] = Math.max(0, Math.min(4999, position[0] + random.nextInt(41) - 20));
+                position[1] = Math.max(0, Math.min(4999, position[1] + random.nextInt(41) - 20));
+                moves.add(move(userId, position[0], position[1]));
+            }
+            script.add(moves);
+        }
+
+        // 预热：先各跑一遍，再用新的状态计时
+        runNaive(start, script.subList(0, 20));
+        for (int round = 0; round < 3; round++) {
+            ProximityClusterer warmup = new ProximityClusterer(RADIUS, 2);
+            warmup.update(initial, null);
+            for (List<PositionUpdateMessage> moves : script) {
+                warmup.update(moves, null);
+            }
+        }
+
+        long naiveStart = System.nanoTime();
+        int naiveGroups = runNaive(start, script);
+        long naiveNanos = System.nanoTime() - naiveStart;
+
+        long incrementalStart = System.nanoTime();
+        for (List<PositionUpdateMessage> moves : script) {
+            clusterer.update(moves, null);
+        }
+        long incrementalNanos = System.nanoTime() - incrementalStart;
+
+        System.out.printf("[bench] %d avatars, %d ticks, %d movers per tick, %d groups%n",
+                avatars, ticks, avatars / 10, clusterer.groups().size());
+        System.out.printf("[bench] naive O(N^2) : %8.3f ms/tick%n", naiveNanos / 1e6 / ticks);
+        System.out.printf("[bench] incremental  : %8.3f ms/tick%n", incrementalNanos / 1e6 / ticks);
+        assertEquals(naiveGroups, clusterer.groups().size());
+    }
+
+    // 每个节拍都全量重新分组，返回最后的组数
+    private static int runNaive(Map<Long, int[]> initial, List<List<PositionUpdateMessage>> script) {
+        Map<Long, int[]> positions = new HashMap<>();
+        for (Map.Entry<Long, int[]> entry : initial.entrySet()) {
+            positions.put(entry.getKey(), entry.getValue().clone());
+        }
+        int groups = 0;
+        for (List<PositionUpdateMessage> moves : script) {
+            for (PositionUpdateMessage move : moves) {
+                positions.put(move.getUserId(), new int[]{move.getX(), move.getY()});
+            }
+            groups = naiveGroups(positions, RADIUS, 2).size();
+        }
+        return groups;
+    }
+
+    // 对照实现：两两比较距离后做并查集
+    private static List<Set<Long>> naiveGroups(Map<Long, int[]> positions, int radius, int minSize) {
+        List<Long> userIds = new ArrayList<>(positions.keySet());
+        int[] parent = new int[userIds.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        long radiusSquared = (long) radius * radius;
+        for (int i = 0; i < userIds.size(); i++) {
+            int[] a = positions.get(userIds.get(i));
+            for (int j = i + 1; j < userIds.size(); j++) {
+                int[] b = positions.get(userIds.get(j));
+                long dx = a[0] - b[0];
+                long dy = a[1] - b[1];
+                if (dx * dx + dy * dy <= radiusSquared) {
+                    parent[find(parent, i)] = find(parent, j);
+                }
+            }
+        }
+        Map<Integer, Set<Long>> components = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            components.computeIfAbsent(find(parent, i), k -> new HashSet<>()).add(userIds.get(i));
+        }
+        List<Set<Long>> groups = new ArrayList<>();
+        for (Set<Long> component : components.values()) {
+            if (component.size() >= minSize) {
+                groups.add(component);
+            }
+        }
+        return groups;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            i = parent[i] = parent[parent[i]];
+        }
+        return i;
+    }
+
+    private static Set<Set<Long>> partition(List<Set<Long>> groups) {
+        return new HashSet<>(groups);
+    }
+
+    private static Set<Set<Long>> partition(Map<Long, List<Long>> groups) {
+        Set<Set<Long>> result = new HashSet<>();
+        for (List<Long> members : groups.values()) {
+            result.add(new HashSet<>(members));
+        }
+        return result;
+    }
+
+    private static PositionUpdateMessage move(Long userId, int x, int y) {
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(userId);
+        message.setSpaceId(1L);
+        message.setX(x);
+        message.setY(y);
+        return message;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.MessageView;
+import com.example.cloudoffice_admin.model.ChatChannel;
+import com.example.cloudoffice_admin.model.Message;
+import com.example.cloudoffice_admin.model.User;
+import com.example.cloudoffice_admin.repository.MessageRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RecentMessageCacheTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private ClusterRelay clusterRelay;
+
+    @InjectMocks
+    private RecentMessageCache cache;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void firstPageIsServedFromMemoryAndNewMessagesApplyAfterCommit() {
+        // 准备：缓存4条，频道里多于4条
+        ReflectionTestUtils.setField(cache, "capacity", 4);
+        when(messageRepository.findLatest(5L, Limit.of(4))).thenReturn(newestFirst(1, 4));
+        assertEquals(ids(4, 3, 2), ids(cache.latest(5L, 3)));
+
+        // 执行：事务中发送第5条
+        TransactionSynchronizationManager.initSynchronization();
+        cache.added(message(5));
+
+        // 验证：提交前不变，提交后成为最新一条，最旧的一条被挤出；只加载一次并通知其他节点
+        assertEquals(ids(4, 3, 2, 1), ids(cache.latest(5L, 4)));
+        commit();
+        assertEquals(ids(5, 4, 3, 2), ids(cache.latest(5L, 4)));
+        verify(messageRepository, times(1)).findLatest(eq(5L), any());
+        verify(clusterRelay).relay(ClusterRelay.TYPE_RECENT_MESSAGES, 5L);
+    }
+
+    @Test
+    void lateCommitIsInsertedInOrderAndEditsReplaceInPlace() {
+        // 准备：频道只有2条消息，缓存即全部历史
+        ReflectionTestUtils.setField(cache, "capacity", 4);
+        when(messageRepository.findLatest(5L, Limit.of(4))).thenReturn(newestFirst(2, 3));
+        assertEquals(ids(3, 2), ids(cache.latest(5L, 4)));
+
+        // 执行：不在事务中，立即生效；第5条先提交，第4条后提交，再编辑第3条
+        cache.added(message(5));
+        cache.added(message(4));
+        Message edited = message(3);
+        edited.setContent("edited");
+        edited.setDeleted(true);
+        cache.updated(edited);
+        edited.setContent("changed after commit");
+
+        // 验证：缓存的是提交时的视图，之后修改实体不影响缓存
+        List<MessageView> latest = cache.latest(5L, 4);
+        assertEquals(ids(5, 4, 3, 2), ids(latest));
+        assertEquals("edited", latest.get(2).getContent());
+        assertTrue(latest.get(2).isDeleted());
+    }
+
+    @Test
+    void pagesLargerThanCacheFallBackAndDroppedChannelIsReloaded() {
+        // 准备
+        ReflectionTestUtils.setField(cache, "capacity", 4);
+        when(messageRepository.findLatest(5L, Limit.of(4))).thenReturn(newestFirst(1, 4)).thenReturn(newestFirst(1, 4));
+
+        // 执行 & 验证：超过缓存条数的页由数据库返回
+        assertNull(cache.latest(5L, 5));
+        cache.latest(5L, 2);
+        cache.dropped(5L);
+        assertEquals(0, cache.cachedChannels());
+        cache.latest(5L, 2);
+        verify(messageRepository, times(2)).findLatest(eq(5L), any());
+    }
+
+    private static void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private static Message message(long id) {
+        ChatChannel channel = new ChatChannel();
+        channel.setId(5L);
+        User sender = new User();
+        sender.setId(7L);
+        sender.setUsername("alice");
+        Message message = new Message();
+        message.setId(id);
+        message.setChannel(channel);
+        message.setSender(sender);
+        message.setContent("message " + id);
+        message.setCreatedAt(T0.plusSeconds(id));
+        return message;
+    }
+
+    private static List<Message> newestFirst(long oldest, long newest) {
+        List<Message> messages = new ArrayList<>();
+        for (long id = newest; id >= oldest; id--) {
+            messages.add(message(id));
+        }
+        return messages;
+    }
+
+    private static List<Long> ids(long... ids) {
+        List<Long> result = new ArrayList<>();
+        for (long id : ids) {
+            result.add(id);
+        }
+        return result;
+    }
+
+    private static List<Long> ids(List<MessageView> messages) {
+        return messages.stream().map(MessageView::getId).toList();
+    }
+}
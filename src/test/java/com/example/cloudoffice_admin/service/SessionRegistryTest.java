@@ -0,0 +1,185 @@
+package com.example.cloudoffice_admin.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionRegistryTest {
+
+    private static final int CONNECTIONS = 50_000;
+    private static final int SPACES = 500;
+
+    @Test
+    void lastSessionDisconnectLeavesOnlyTheUsersSpaces() {
+        // 准备
+        SessionRegistry registry = new SessionRegistry();
+        registry.registerSession(1L, "a");
+        registry.registerSession(1L, "b");
+        registry.joinSpace(1L, 10L);
+        registry.joinSpace(1L, 11L);
+        registry.registerSession(2L, "c");
+        registry.joinSpace(2L, 10L);
+
+        // 执行
+        List<Long> leftAfterFirst = new ArrayList<>();
+        registry.removeSession("a", leftAfterFirst::add);
+        List<Long> leftAfterLast = new ArrayList<>();
+        Long userId = registry.removeSession("b", leftAfterLast::add);
+
+        // 验证
+        assertEquals(1L, userId);
+        assertTrue(leftAfterFirst.isEmpty());
+        assertEquals(Set.of(10L, 11L), new HashSet<>(leftAfterLast));
+        assertArrayEquals(new long[]{2L}, registry.usersInSpace(10L));
+        assertEquals(0, registry.usersInSpace(11L).length);
+        assertEquals(0, registry.sessionCount(1L));
+        // 空的空间不保留条目
+        assertEquals(1, registry.spaceCount());
+    }
+
+    @Test
+    void snapshotIsRebuiltOnlyAfterMembershipChanges() {
+        // 准备
+        SessionRegistry registry = new SessionRegistry();
+        registry.joinSpace(1L, 10L);
+        long[] first = registry.usersInSpace(10L);
+
+        // 执行 & 验证
+        assertTrue(first == registry.usersInSpace(10L));
+        assertFalse(registry.joinSpace(1L, 10L));
+        assertTrue(first == registry.usersInSpace(10L));
+        registry.joinSpace(2L, 10L);
+        assertEquals(2, registry.usersInSpace(10L).length);
+        assertTrue(registry.leaveSpace(2L, 10L));
+        assertFalse(registry.leaveSpace(2L, 10L));
+        assertArrayEquals(new long[]{1L}, registry.usersInSpace(10L));
+    }
+
+    @Test
+    void longHashSetMatchesHashSetUnderRandomChurn() {
+        // 准备
+        LongHashSet set = new LongHashSet(4);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+
+        // 执行：小取值范围保证大量冲突和删除后前移
+        for (int i = 0; i < 200_000; i++) {
+            long value = random.nextInt(512) - 256L;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+        set.add(Long.MIN_VALUE);
+        expected.add(Long.MIN_VALUE);
+
+        // 验证
+        assertEquals(expected.size(), set.size());
+        for (long value = -300; value < 300; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+        Set<Long> actual = new HashSet<>();
+        for (long value : set.toArray()) {
+            actual.add(value);
+        }
+        assertEquals(expected, actual);
+    }
+
+    // 5万连接各自加入一个空间再全部断开，对比旧版CopyOnWriteArraySet映射
+    @Tag("benchmark")
+    @Test
+    void compareChurnCost() {
+        for (int warmup = 0; warmup < 5; warmup++) {
+            churnLegacy();
+            churnIndexed();
+        }
+        long[] legacy = churnLegacy();
+        long[] indexed = churnIndexed();
+
+        System.out.printf("[bench] %d connections over %d spaces%n", CONNECTIONS, SPACES);
+        System.out.printf("[bench] legacy  : %6d ms  %8d KB allocated%n", legacy[0] / 1_000_000, legacy[1] / 1024);
+        System.out.printf("[bench] indexed : %6d ms  %8d KB allocated%n", indexed[0] / 1_000_000, indexed[1] / 1024);
+        assertTrue(indexed[0] < legacy[0]);
+    }
+
+    private static long[] churnIndexed() {
+        SessionRegistry registry = new SessionRegistry();
+        return measure(() -> {
+            for (int i = 0; i < CONNECTIONS; i++) {
+                registry.registerSession(i, "s" + i);
+                registry.joinSpace(i, i % SPACES);
+            }
+            for (int i = 0; i < CONNECTIONS; i++) {
+                registry.removeSession("s" + i, spaceId -> { });
+            }
+        });
+    }
+
+    private static long[] churnLegacy() {
+        LegacyRegistry registry = new LegacyRegistry();
+        return measure(() -> {
+            for (int i = 0; i < CONNECTIONS; i++) {
+                registry.registerSession((long) i, "s" + i);
+                registry.joinSpace((long) i, (long) (i % SPACES));
+            }
+            for (int i = 0; i < CONNECTIONS; i++) {
+                registry.removeSession("s" + i);
+            }
+        });
+    }
+
+    private static long[] measure(Runnable churn) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        churn.run();
+        long elapsed = System.nanoTime() - start;
+        return new long[]{elapsed, threads.getThreadAllocatedBytes(threadId) - allocatedBefore};
+    }
+
+    // 替换前WebSocketSessionManager中的会话映射
+    private static class LegacyRegistry {
+        private final Map<Long, Set<String>> userSessions = new ConcurrentHashMap<>();
+        private final Map<String, Long> sessionUsers = new ConcurrentHashMap<>();
+        private final Map<Long, Set<Long>> spaceUsers = new ConcurrentHashMap<>();
+
+        void registerSession(Long userId, String sessionId) {
+            userSessions.computeIfAbsent(userId, k -> new CopyOnWriteArraySet<>()).add(sessionId);
+            sessionUsers.put(sessionId, userId);
+        }
+
+        void removeSession(String sessionId) {
+            Long userId = sessionUsers.remove(sessionId);
+            if (userId != null) {
+                Set<String> sessions = userSessions.get(userId);
+                if (sessions != null) {
+                    sessions.remove(sessionId);
+                    if (sessions.isEmpty()) {
+                        userSessions.remove(userId);
+                        spaceUsers.forEach((spaceId, users) -> users.remove(userId));
+                    }
+                }
+            }
+        }
+
+        void joinSpace(Long userId, Long spaceId) {
+            spaceUsers.computeIfAbsent(spaceId, k -> new CopyOnWriteArraySet<>()).add(userId);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// 空间广播开销基准：逐用户投递（旧版）与空间主题投递对比
+// 运行方式：mvn test -Pbenchmark -Dtest=SpaceFanoutBenchmarkTest
+@Tag("benchmark")
+public class SpaceFanoutBenchmarkTest {
+
+    private static final int OCCUPANTS = 500;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 2000;
+
+    // 代理发往客户端的帧数
+    private final AtomicLong deliveredFrames = new AtomicLong();
+    // 模板序列化次数（每次convertAndSend都会经过消息转换器）
+    private final AtomicLong serializations = new AtomicLong();
+
+    private WebSocketSessionManager sessionManager;
+
+    @BeforeEach
+    void setUp() {
+        // 客户端出站通道只计数，不做网络IO
+        MessageChannel clientOutbound = (message, timeout) -> {
+            deliveredFrames.incrementAndGet();
+            return true;
+        };
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(
+                new ExecutorSubscribableChannel(), clientOutbound, new ExecutorSubscribableChannel(),
+                List.of("/topic", "/queue"));
+        broker.start();
+
+        // 模板直接把消息交给代理，与运行时的brokerChannel等价
+        MessageChannel brokerChannel = (message, timeout) -> {
+            serializations.incrementAndGet();
+            broker.handleMessage(message);
+            return true;
+        };
+        SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+
+        sessionManager = new WebSocketSessionManager();
+        ReflectionTestUtils.setField(sessionManager, "messagingTemplate", template);
+        // 单节点：集群中继保持关闭
+        ClusterRelay clusterRelay = new ClusterRelay();
+        SharedSessionRegistry sharedRegistry = new SharedSessionRegistry();
+        ReflectionTestUtils.setField(sharedRegistry, "clusterRelay", clusterRelay);
+        ReflectionTestUtils.setField(sessionManager, "clusterRelay", clusterRelay);
+        ReflectionTestUtils.setField(sessionManager, "sharedRegistry", sharedRegistry);
+        SpaceOwnership ownership = new SpaceOwnership();
+        ReflectionTestUtils.setField(ownership, "clusterRelay", clusterRelay);
+        ReflectionTestUtils.setField(sessionManager, "ownership", ownership);
+
+        for (long userId = 1; userId <= OCCUPANTS; userId++) {
+            String sessionId = "s" + userId;
+            sessionManager.registerSession(userId, sessionId);
+            sessionManager.joinSpace(userId, 1L);
+            // 代理只向已CONNECT的会话投递
+            send(broker, SimpMessageType.CONNECT, sessionId, null);
+            // 旧版：每个会话订阅自己的用户队列（UserDestinationMessageHandler解析后的目的地）
+            subscribe(broker, sessionId, "/queue/positions-user" + sessionId);
+            // 新版：所有会话订阅同一个空间主题
+            subscribe(broker, sessionId, WebSocketSessionManager.spaceTopic(1L, WebSocketSessionManager.SPACE_POSITIONS));
+        }
+    }
+
+    @Test
+    void compareFanoutCost() {
+        PositionUpdateMessage payload = samplePayload();
+
+        // 旧版逐用户投递：直接按解析后的会话队列发送，不计用户目的地解析的开销
+        Runnable perUser = () -> {
+            for (long userId : sessionManager.usersInSpace(1L)) {
+                template().convertAndSend("/queue/positions-user" + "s" + userId, payload);
+            }
+        };
+        Runnable topic = () -> sessionManager.publishToSpace(1L, WebSocketSessionManager.SPACE_POSITIONS, payload);
+
+        Result before = measure("per-user", perUser);
+        Result after = measure("topic", topic);
+
+        // 验证：两种方式送达的帧数相同，但主题模式每次广播只序列化一次
+        assertEquals(OCCUPANTS, before.framesPerBroadcast);
+        assertEquals(OCCUPANTS, after.framesPerBroadcast);
+        assertEquals(OCCUPANTS, before.serializationsPerBroadcast);
+        assertEquals(1, after.serializationsPerBroadcast);
+        System.out.printf("[bench] fan-out speedup: %.1fx%n", before.nanosPerBroadcast / after.nanosPerBroadcast);
+    }
+
+    private Result measure(String name, Runnable broadcast) {
+        for (int i = 0; i < WARMUP; i++) {
+            broadcast.run();
+        }
+        deliveredFrames.set(0);
+        serializations.set(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            broadcast.run();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Result result = new Result();
+        result.nanosPerBroadcast = (double) elapsed / ITERATIONS;
+        result.framesPerBroadcast = deliveredFrames.get() / ITERATIONS;
+        result.serializationsPerBroadcast = serializations.get() / ITERATIONS;
+        System.out.printf("[bench] %-8s occupants=%d %.1f us/broadcast, %d serializations/broadcast%n",
+                name, OCCUPANTS, result.nanosPerBroadcast / 1000, result.serializationsPerBroadcast);
+        return result;
+    }
+
+    private SimpMessagingTemplate template() {
+        return (SimpMessagingTemplate) ReflectionTestUtils.getField(sessionManager, "messagingTemplate");
+    }
+
+    private static void subscribe(SimpleBrokerMessageHandler broker, String sessionId, String destination) {
+        send(broker, SimpMessageType.SUBSCRIBE, sessionId, destination);
+    }
+
+    private static void send(SimpleBrokerMessageHandler broker, SimpMessageType type, String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        if (destination != null) {
+            accessor.setSubscriptionId(destination);
+            accessor.setDestination(destination);
+        }
+        accessor.setSessionAttributes(Collections.emptyMap());
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        broker.handleMessage(message);
+    }
+
+    private static PositionUpdateMessage samplePayload() {
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(42L);
+        message.setSpaceId(1L);
+        message.setZoneId(7L);
+        message.setX(512);
+        message.setY(384);
+        message.setTimestamp(new Date());
+        return message;
+    }
+
+    private static class Result {
+        double nanosPerBroadcast;
+        long framesPerBroadcast;
+        long serializationsPerBroadcast;
+    }
+}
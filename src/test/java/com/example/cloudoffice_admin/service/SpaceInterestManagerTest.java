@@ -0,0 +1,222 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.dto.SpaceView;
+import com.example.cloudoffice_admin.model.VirtualSpace;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SpaceInterestManagerTest {
+
+    private static final long SUBSCRIBER = 1L;
+    private static final long NEAR = 2L;
+    private static final long MID = 3L;
+    private static final long FAR = 4L;
+
+    @Mock
+    private SpaceLayoutCache layoutCache;
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    @InjectMocks
+    private SpaceInterestManager interestManager;
+
+    // 用户ID -> 收到的帧
+    private final Map<Long, List<PositionBatchMessage>> received = new HashMap<>();
+
+    private Consumer<Long> invalidation;
+
+    @BeforeEach
+    void setUp() {
+        // 一行8个格子：订阅者在第0格，其他人分别在第1、3、7格
+        when(layoutCache.get(1L)).thenReturn(layout(2048, 256));
+        interestManager.init();
+        ArgumentCaptor<Consumer<Long>> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(layoutCache).onInvalidate(listener.capture());
+        invalidation = listener.getValue();
+        lenient().when(sessionManager.usersInSpace(1L)).thenReturn(new long[]{SUBSCRIBER, NEAR, MID, FAR});
+        lenient().doAnswer(invocation -> {
+            Collection<Long> users = invocation.getArgument(0);
+            for (Long userId : users) {
+                received.computeIfAbsent(userId, k -> new ArrayList<>()).add(invocation.getArgument(2));
+            }
+            return null;
+        }).when(sessionManager).sendToUsers(anyCollection(), eq(WebSocketSessionManager.USER_SPACE_POSITIONS), any());
+        interestManager.apply(1L, List.of(move(SUBSCRIBER, 10, 10, 0)));
+    }
+
+    @Test
+    void fartherMoversAreSentLessOftenButTheLatestPositionArrives() {
+        // 准备：三个移动者每个节拍都移动
+        for (long tick = 1; tick <= 30; tick++) {
+            List<PositionUpdateMessage> moves = List.of(
+                    move(NEAR, 300 + (int) tick, 10, tick),
+                    move(MID, 800 + (int) tick, 10, tick),
+                    move(FAR, 1900 + (int) tick, 10, tick));
+            interestManager.apply(1L, moves);
+
+            // 执行
+            interestManager.deliver(batch(tick, moves));
+        }
+
+        // 验证：近处每个节拍都收到，中距离每3个节拍一次，远处每15个节拍一次关键帧
+        assertEquals(30, updatesOf(NEAR).size());
+        assertEquals(10, updatesOf(MID).size());
+        assertEquals(2, updatesOf(FAR).size());
+        // 每次收到的都是积压中最新的位置
+        for (PositionUpdateMessage update : updatesOf(FAR)) {
+            assertEquals(1900 + update.getTimestamp().getTime(), update.getX());
+        }
+        List<PositionUpdateMessage> mid = updatesOf(MID);
+        assertTrue(mid.get(mid.size() - 1).getTimestamp().getTime() > 27);
+    }
+
+    @Test
+    void stoppedMoverIsStillDeliveredOnItsNextBandTick() {
+        // 准备：中距离的移动者只在第1个节拍移动，之后静止
+        List<PositionUpdateMessage> moves = List.of(move(MID, 800, 10, 1));
+        interestManager.apply(1L, moves);
+        interestManager.deliver(batch(1, moves));
+
+        // 执行：之后的节拍只有近处的人移动
+        for (long tick = 2; tick <= 3; tick++) {
+            List<PositionUpdateMessage> near = List.of(move(NEAR, 300, 10, tick));
+            interestManager.apply(1L, near);
+            interestManager.deliver(batch(tick, near));
+        }
+
+        // 验证：停下前最后的位置在轮到它的节拍补发，并且只发一次
+        assertEquals(1, updatesOf(MID).size());
+        assertEquals(800, updatesOf(MID).get(0).getX());
+    }
+
+    @Test
+    void filteredSubscriberGetsEveryTickEvenWhenNothingNearbyMoved() {
+        // 准备：只有远处的人在移动
+        for (long tick = 1; tick <= 5; tick++) {
+            List<PositionUpdateMessage> moves = List.of(move(FAR, 1900 + (int) tick, 10, tick));
+            interestManager.apply(1L, moves);
+
+            // 执行
+            interestManager.deliver(batch(tick, moves));
+        }
+
+        // 验证：每个节拍都收到一帧，序号连续，大多数帧是空的
+        List<PositionBatchMessage> frames = received.get(SUBSCRIBER);
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), frames.stream().map(PositionBatchMessage::getTick).toList());
+        assertTrue(frames.stream().filter(frame -> frame.getUpdates().isEmpty()).count() >= 4);
+    }
+
+    @Test
+    void resyncDeltaKeepsOnlyMoversWithinInterest() {
+        // 准备
+        List<PositionUpdateMessage> moves = List.of(
+                move(NEAR, 300, 10, 1),
+                move(MID, 800, 10, 1),
+                move(FAR, 1900, 10, 1));
+        interestManager.apply(1L, moves);
+
+        // 执行
+        List<PositionUpdateMessage> visible = interestManager.visibleTo(1L, SUBSCRIBER, moves);
+
+        // 验证：视野和中距离半径内的保留，远处的不在合并增量中
+        assertEquals(List.of(NEAR, MID), visible.stream().map(PositionUpdateMessage::getUserId).toList());
+    }
+
+    @Test
+    void gridIsRebuiltWithExistingUsersAfterTheSpaceIsResized() {
+        // 准备：空间宽度加倍，一行16个格子
+        interestManager.apply(1L, List.of(move(FAR, 1900, 10, 1)));
+        when(layoutCache.get(1L)).thenReturn(layout(4096, 256));
+
+        // 执行
+        invalidation.accept(1L);
+        SpatialGrid grid = interestManager.gridFor(1L);
+
+        // 验证：按新宽度重建，原有用户按原坐标迁移
+        assertEquals(16, grid.getColumns());
+        assertEquals(2, grid.size());
+        assertEquals(0, grid.cellOfUser(SUBSCRIBER));
+        assertEquals(7, grid.cellOfUser(FAR));
+        assertSame(grid, interestManager.gridFor(1L));
+    }
+
+    @Test
+    void invalidationOfAnotherSpaceKeepsTheGrid() {
+        // 准备
+        SpatialGrid grid = interestManager.gridFor(1L);
+
+        // 执行
+        invalidation.accept(2L);
+
+        // 验证
+        assertSame(grid, interestManager.gridFor(1L));
+    }
+
+    private static SpaceLayoutCache.SpaceLayout layout(int width, int height) {
+        VirtualSpace space = new VirtualSpace();
+        space.setId(1L);
+        space.setWidth(width);
+        space.setHeight(height);
+        return new SpaceLayoutCache.SpaceLayout(new SpaceView(space), List.of(), 1);
+    }
+
+    private List<PositionUpdateMessage> updatesOf(long moverId) {
+        List<PositionUpdateMessage> updates = new ArrayList<>();
+        for (PositionBatchMessage frame : received.getOrDefault(SUBSCRIBER, List.of())) {
+            for (PositionUpdateMessage update : frame.getUpdates()) {
+                if (update.getUserId() == moverId) {
+                    updates.add(update);
+                }
+            }
+        }
+        return updates;
+    }
+
+    private static PositionBatchMessage batch(long tick, List<PositionUpdateMessage> moves) {
+        PositionBatchMessage batch = new PositionBatchMessage();
+        batch.setSpaceId(1L);
+        batch.setTick(tick);
+        batch.setTimestamp(new Date());
+        batch.setUpdates(moves);
+        return batch;
+    }
+
+    // 时间戳记录移动所在的节拍，方便核对收到的是哪一次移动
+    private static PositionUpdateMessage move(long userId, int x, int y, long tick) {
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(userId);
+        message.setSpaceId(1L);
+        message.setX(x);
+        message.setY(y);
+        message.setTimestamp(new Date(tick));
+        return message;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.dto.SpaceView;
+import com.example.cloudoffice_admin.dto.ZoneView;
+import com.example.cloudoffice_admin.model.VirtualSpace;
+import com.example.cloudoffice_admin.model.Zone;
+import com.example.cloudoffice_admin.repository.VirtualSpaceRepository;
+import com.example.cloudoffice_admin.repository.ZoneRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SpaceLayoutCacheTest {
+
+    @Mock
+    private VirtualSpaceRepository virtualSpaceRepository;
+
+    @Mock
+    private ZoneRepository zoneRepository;
+
+    @Mock
+    private ZoneMembershipService zoneMembership;
+
+    @Mock
+    private ClusterRelay clusterRelay;
+
+    @Spy
+    private ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @InjectMocks
+    private SpaceLayoutCache layoutCache;
+
+    @Test
+    void layoutIsLoadedOnceAndReloadedAfterInvalidation() {
+        // 准备
+        VirtualSpace space = new VirtualSpace();
+        space.setId(1L);
+        Zone lounge = new Zone();
+        lounge.setId(6L);
+        when(virtualSpaceRepository.findById(1L)).thenReturn(Optional.of(space));
+        when(zoneRepository.findBySpaceId(1L)).thenReturn(List.of(lounge));
+
+        // 执行：重复读取
+        SpaceLayoutCache.SpaceLayout first = layoutCache.get(1L);
+        SpaceLayoutCache.SpaceLayout second = layoutCache.get(1L);
+
+        // 验证：只加载一次，ETag不变；缓存的是创建时的视图，之后修改实体不影响缓存
+        assertSame(first, second);
+        assertEquals(List.of(new ZoneView(lounge)), first.getZones());
+        verify(virtualSpaceRepository, times(1)).findById(1L);
+        lounge.setX(40);
+        assertEquals(0, layoutCache.get(1L).getZones().get(0).getX());
+
+        // 执行：区域移动后失效再读取
+        layoutCache.invalidate(1L);
+        SpaceLayoutCache.SpaceLayout reloaded = layoutCache.get(1L);
+
+        // 验证：重新加载，版本号和ETag变化，区域索引和其他节点同时失效
+        verify(virtualSpaceRepository, times(2)).findById(1L);
+        assertNotEquals(first.getETag(), reloaded.getETag());
+        verify(zoneMembership).invalidate(1L);
+        verify(clusterRelay).relay(ClusterRelay.TYPE_LAYOUT, 1L);
+    }
+
+    @Test
+    void unchangedLayoutKeepsItsETagAcrossReloadsAndNodes() {
+        // 准备
+        VirtualSpace space = new VirtualSpace();
+        space.setId(3L);
+        space.setName("Studio");
+        Zone desk = new Zone();
+        desk.setId(8L);
+        desk.setSpaceId(3L);
+        when(virtualSpaceRepository.findById(3L)).thenReturn(Optional.of(space));
+        when(zoneRepository.findBySpaceId(3L)).thenReturn(List.of(desk));
+        String before = layoutCache.get(3L).getETag();
+
+        // 执行：失效后重新加载，再模拟另一个节点或重启后的新实例加载
+        layoutCache.invalidate(3L);
+        String reloaded = layoutCache.get(3L).getETag();
+        SpaceLayoutCache otherNode = new SpaceLayoutCache();
+        ReflectionTestUtils.setField(otherNode, "virtualSpaceRepository", virtualSpaceRepository);
+        ReflectionTestUtils.setField(otherNode, "zoneRepository", zoneRepository);
+        ReflectionTestUtils.setField(otherNode, "objectMapper", objectMapper);
+        String elsewhere = otherNode.get(3L).getETag();
+
+        // 验证：内容相同，ETag相同
+        assertEquals(before, reloaded);
+        assertEquals(before, elsewhere);
+    }
+
+    @Test
+    void missingSpaceIsCachedUntilInvalidated() {
+        // 准备
+        VirtualSpace created = new VirtualSpace();
+        created.setId(2L);
+        when(virtualSpaceRepository.findById(2L)).thenReturn(Optional.empty(), Optional.of(created));
+
+        // 执行：不存在的空间ID重复读取
+        assertThrows(EntityNotFoundException.class, () -> layoutCache.get(2L));
+        assertThrows(EntityNotFoundException.class, () -> layoutCache.get(2L));
+
+        // 验证：只查询一次
+        verify(virtualSpaceRepository, times(1)).findById(2L);
+
+        // 执行：以该ID创建空间后失效
+        layoutCache.invalidate(2L);
+
+        // 验证：重新查询并加载
+        assertEquals(2L, layoutCache.get(2L).getSpace().getId());
+        verify(virtualSpaceRepository, times(2)).findById(2L);
+    }
+
+    @Test
+    void missingSpaceExpiresAfterTtl() {
+        // 准备
+        ReflectionTestUtils.setField(layoutCache, "missingTtlMillis", 0L);
+        when(virtualSpaceRepository.findById(4L)).thenReturn(Optional.empty());
+
+        // 执行
+        assertThrows(EntityNotFoundException.class, () -> layoutCache.get(4L));
+        assertThrows(EntityNotFoundException.class, () -> layoutCache.get(4L));
+
+        // 验证：过期后重新查询
+        verify(virtualSpaceRepository, times(2)).findById(4L);
+    }
+
+    @Test
+    void viewsSerializeLikeTheEntities() throws Exception {
+        // 准备
+        VirtualSpace space = new VirtualSpace();
+        space.setId(5L);
+        space.setName("Hall");
+        space.setPublic(true);
+        Zone zone = new Zone();
+        zone.setId(9L);
+        zone.setSpaceId(5L);
+        zone.setName("Desk");
+        zone.setPrivate(true);
+
+        // 执行和验证：响应体从实体换成视图后JSON不变
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(space)),
+                objectMapper.readTree(objectMapper.writeValueAsString(new SpaceView(space))));
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(zone)),
+                objectMapper.readTree(objectMapper.writeValueAsString(new ZoneView(zone))));
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.dto.OccupantView;
+import com.example.cloudoffice_admin.model.UserPresence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SpaceOwnershipTest {
+
+    @Mock
+    private ClusterRelay clusterRelay;
+
+    @Mock
+    private ZoneMembershipService zoneMembership;
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    @Mock
+    private SpaceInterestManager interestManager;
+
+    @Mock
+    private ProximityGroupService groupService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final PresenceStore presenceStore = new PresenceStore();
+    private final SpaceOwnership ownership = new SpaceOwnership();
+    private final SpaceTickEngine tickEngine = new SpaceTickEngine();
+    private final StaticClusterMembership membership = new StaticClusterMembership(List.of("node-a"));
+
+    @BeforeEach
+    void setUp() {
+        // 本节点为node-a，开始时是唯一的成员
+        when(clusterRelay.isEnabled()).thenReturn(true);
+        when(clusterRelay.getNodeId()).thenReturn("node-a");
+        lenient().when(zoneMembership.move(anyLong(), anyLong(), anyInt(), anyInt())).thenAnswer(invocation ->
+                presenceStore.move(invocation.getArgument(0), invocation.getArgument(1), null,
+                        invocation.getArgument(2), invocation.getArgument(3)));
+        // 交出空间时先写入未持久化的变更
+        lenient().when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            int[] updated = new int[invocation.<List<?>>getArgument(1).size()];
+            Arrays.fill(updated, 1);
+            return updated;
+        });
+
+        ReflectionTestUtils.setField(presenceStore, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(ownership, "clusterRelay", clusterRelay);
+        ReflectionTestUtils.setField(ownership, "enabled", true);
+        ownership.use(membership);
+        ReflectionTestUtils.setField(tickEngine, "clusterRelay", clusterRelay);
+        ReflectionTestUtils.setField(tickEngine, "ownership", ownership);
+        // 关闭移动过滤，每次移动都转发
+        MovementFilter movementFilter = new MovementFilter();
+        ReflectionTestUtils.setField(movementFilter, "enabled", false);
+        ReflectionTestUtils.setField(tickEngine, "movementFilter", movementFilter);
+        ReflectionTestUtils.setField(tickEngine, "presenceStore", presenceStore);
+        ReflectionTestUtils.setField(tickEngine, "zoneMembership", zoneMembership);
+        ReflectionTestUtils.setField(tickEngine, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(tickEngine, "interestManager", interestManager);
+        ReflectionTestUtils.setField(tickEngine, "groupService", groupService);
+        tickEngine.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tickEngine.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void spacesMovingToAJoiningNodeAreHandedOffAndLaterMovesForwarded() {
+        // 准备：只有node-a时所有空间都在本节点处理
+        for (long spaceId = 1; spaceId <= 20; spaceId++) {
+            tickEngine.accept(move(100 + spaceId, spaceId));
+        }
+        assertEquals(20, presenceStore.getSpaceCounts().size());
+        verify(clusterRelay, never()).relayTo(anyString(), anyString(), any());
+
+        // 执行：node-b加入
+        membership.setMembers(Set.of("node-a", "node-b"));
+
+        // 验证：分给node-b的空间带着在场信息交给node-b，本节点不再保留
+        HashRing ring = ownership.getRing();
+        ArgumentCaptor<SpaceTickEngine.SpaceHandoffMessage> handoffs = ArgumentCaptor.forClass(SpaceTickEngine.SpaceHandoffMessage.class);
+        verify(clusterRelay, atLeastOnce()).relayTo(eq("node-b"), eq(ClusterRelay.TYPE_HANDOFF), handoffs.capture());
+        for (SpaceTickEngine.SpaceHandoffMessage handoff : handoffs.getAllValues()) {
+            assertEquals("node-b", ring.ownerOf(handoff.getSpaceId()));
+            assertEquals(100 + handoff.getSpaceId(), handoff.getOccupants().get(0).getUserId());
+            assertNull(presenceStore.get(100 + handoff.getSpaceId()));
+        }
+        long kept = 0;
+        for (long spaceId = 1; spaceId <= 20; spaceId++) {
+            if ("node-a".equals(ring.ownerOf(spaceId))) {
+                assertNotNull(presenceStore.get(100 + spaceId));
+                kept++;
+            }
+        }
+        assertEquals(20, kept + handoffs.getAllValues().size());
+
+        // 执行：交出的空间再有移动
+        Long movedSpace = handoffs.getAllValues().get(0).getSpaceId();
+        PositionUpdateMessage next = move(100 + movedSpace, movedSpace);
+        tickEngine.accept(next);
+
+        // 验证：转发给归属节点，不写入本节点
+        verify(clusterRelay).relayTo("node-b", ClusterRelay.TYPE_FORWARD_MOVE, next);
+        assertNull(presenceStore.get(100 + movedSpace));
+    }
+
+    @Test
+    void handedOverPresencesDoNotOverwriteNewerMoves() {
+        // 准备：新的归属节点在交接到达之前已经收到用户7的移动
+        tickEngine.accept(move(7L, 3L));
+        SpaceTickEngine.SpaceHandoffMessage handoff = new SpaceTickEngine.SpaceHandoffMessage();
+        handoff.setSpaceId(3L);
+        OccupantView stale = new OccupantView();
+        stale.setUserId(7L);
+        stale.setX(1);
+        stale.setY(1);
+        stale.setStatus(UserPresence.STATUS_ONLINE);
+        OccupantView other = new OccupantView();
+        other.setUserId(8L);
+        other.setX(2);
+        other.setY(2);
+        other.setStatus(UserPresence.STATUS_AWAY);
+        handoff.setOccupants(List.of(stale, other));
+
+        // 执行
+        ReflectionTestUtils.invokeMethod(tickEngine, "adopt", handoff);
+
+        // 验证
+        assertEquals(30, presenceStore.get(7L).getX());
+        assertEquals(UserPresence.STATUS_AWAY, presenceStore.get(8L).getStatus());
+        assertEquals(2, presenceStore.countInSpace(3L));
+        assertTrue(presenceStore.getUsersInSpace(3L).stream().anyMatch(p -> p.getUserId() == 8L));
+    }
+
+    private static PositionUpdateMessage move(Long userId, Long spaceId) {
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(userId);
+        message.setSpaceId(spaceId);
+        message.setX(30);
+        message.setY(40);
+        return message;
+    }
+}
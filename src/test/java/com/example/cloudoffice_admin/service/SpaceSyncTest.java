@@ -0,0 +1,204 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionBatchMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.PositionUpdateMessage;
+import com.example.cloudoffice_admin.controller.WebSocketController.SpaceSyncMessage;
+import com.example.cloudoffice_admin.model.UserPresence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SpaceSyncTest {
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    @Mock
+    private SpaceInterestManager interestManager;
+
+    @Mock
+    private ClusterRelay clusterRelay;
+
+    @Mock
+    private PresenceStore presenceStore;
+
+    @Mock
+    private ProximityGroupService groupService;
+
+    @Mock
+    private SpaceOwnership ownership;
+
+    @Mock
+    private MovementFilter movementFilter;
+
+    @Mock
+    private ZoneMembershipService zoneMembership;
+
+    @InjectMocks
+    private SpaceTickEngine tickEngine;
+
+    @BeforeEach
+    void setUp() {
+        // 单节点：所有空间都在本节点处理
+        lenient().when(ownership.isLocal(any(Long.class))).thenReturn(true);
+    }
+
+    @Test
+    void joiningUserGetsSnapshotAtCurrentTickAndDeltasContinueFromIt() {
+        // 准备：用户9在上次运行中留在空间里
+        UserPresence existing = new UserPresence();
+        existing.setUserId(9L);
+        existing.setX(5);
+        existing.setY(5);
+        when(presenceStore.getUsersInSpace(1L)).thenReturn(List.of(existing));
+        tickEngine.submit(move(7L, 10, 20));
+        tickEngine.tick();
+
+        // 执行
+        tickEngine.requestSnapshot(1L, 8L);
+        tickEngine.tick();
+        tickEngine.submit(move(7L, 11, 21));
+        tickEngine.tick();
+
+        // 验证：快照在序号1，包含所有在场者；下一帧增量序号为2
+        SpaceSyncMessage snapshot = captureSync(8L, 1);
+        assertTrue(snapshot.isFull());
+        assertEquals(1, snapshot.getTick());
+        assertEquals(2, snapshot.getOccupants().size());
+
+        ArgumentCaptor<PositionBatchMessage> batches = ArgumentCaptor.forClass(PositionBatchMessage.class);
+        verify(sessionManager, times(2)).publishToLocalSpace(eq(1L), eq(WebSocketSessionManager.SPACE_POSITIONS), batches.capture());
+        assertEquals(List.of(1L, 2L), batches.getAllValues().stream().map(PositionBatchMessage::getTick).toList());
+    }
+
+    @Test
+    void resyncCoalescesRecentDeltasAndFallsBackToSnapshotWhenTooFarBehind() {
+        // 准备：只保留4帧历史
+        ReflectionTestUtils.setField(tickEngine, "deltaHistory", 4);
+        tickEngine.submit(move(7L, 1, 1));
+        tickEngine.tick();
+        tickEngine.submit(move(8L, 2, 2));
+        tickEngine.tick();
+        tickEngine.discard(1L, 7L);
+        tickEngine.tick();
+        tickEngine.submit(move(8L, 3, 3));
+        tickEngine.tick();
+
+        // 执行：客户端只应用到序号1
+        tickEngine.requestResync(1L, 5L, 1);
+        tickEngine.tick();
+
+        // 验证：合并后只剩用户8的最新位置和用户7的离开
+        SpaceSyncMessage delta = captureSync(5L, 1);
+        assertFalse(delta.isFull());
+        assertEquals(1, delta.getSinceTick());
+        assertEquals(4, delta.getTick());
+        assertEquals(1, delta.getOccupants().size());
+        assertEquals(3, delta.getOccupants().get(0).getX());
+        assertEquals(List.of(7L), delta.getRemoved());
+
+        // 执行：再过两帧，序号1之后的增量已不在历史中
+        tickEngine.submit(move(8L, 4, 4));
+        tickEngine.tick();
+        tickEngine.submit(move(8L, 5, 5));
+        tickEngine.tick();
+        tickEngine.requestResync(1L, 5L, 1);
+        tickEngine.tick();
+
+        // 验证
+        SpaceSyncMessage snapshot = captureSync(5L, 2);
+        assertTrue(snapshot.isFull());
+        assertEquals(6, snapshot.getTick());
+        assertEquals(1, snapshot.getOccupants().size());
+    }
+
+    @Test
+    void deletedSpaceDropsPresencesAndTickState() {
+        // 准备
+        UserPresence occupant = new UserPresence();
+        occupant.setUserId(7L);
+        when(presenceStore.evictSpace(1L)).thenReturn(List.of(occupant));
+        tickEngine.submit(move(7L, 1, 1));
+        tickEngine.tick();
+
+        // 执行
+        tickEngine.dropSpace(1L);
+        tickEngine.tick();
+
+        // 验证：在场信息和各项空间状态都被丢弃，再有移动时序号从头开始
+        verify(movementFilter).forget(7L);
+        verify(zoneMembership).invalidate(1L);
+        verify(interestManager).drop(1L);
+        verify(groupService).drop(1L);
+        verify(clusterRelay).relay(ClusterRelay.TYPE_SPACE_DELETED, 1L);
+        tickEngine.submit(move(8L, 2, 2));
+        tickEngine.tick();
+        ArgumentCaptor<PositionBatchMessage> batches = ArgumentCaptor.forClass(PositionBatchMessage.class);
+        verify(sessionManager, times(2)).publishToLocalSpace(eq(1L), eq(WebSocketSessionManager.SPACE_POSITIONS), batches.capture());
+        assertEquals(List.of(1L, 1L), batches.getAllValues().stream().map(PositionBatchMessage::getTick).toList());
+    }
+
+    @Test
+    void emptySpaceIsPrunedAfterIdleTicksAndRecreatedOnNextMove() {
+        // 准备：用户7移动后离开
+        ReflectionTestUtils.setField(tickEngine, "idleSpaceTicks", 3);
+        tickEngine.submit(move(7L, 1, 1));
+        tickEngine.tick();
+        tickEngine.discard(1L, 7L);
+        tickEngine.tick();
+
+        // 执行：离开的节拍之后空间已连续空了两个节拍，还没到释放的时候
+        tickEngine.tick();
+        verify(interestManager, times(0)).drop(1L);
+
+        // 执行：第三个空节拍后释放
+        tickEngine.tick();
+
+        // 验证：网格和分组状态一起释放，再有移动时重新开始
+        verify(interestManager).drop(1L);
+        verify(groupService).drop(1L);
+        tickEngine.submit(move(8L, 2, 2));
+        tickEngine.tick();
+        ArgumentCaptor<PositionBatchMessage> batches = ArgumentCaptor.forClass(PositionBatchMessage.class);
+        verify(sessionManager, times(3)).publishToLocalSpace(eq(1L), eq(WebSocketSessionManager.SPACE_POSITIONS), batches.capture());
+        assertEquals(List.of(1L, 2L, 1L), batches.getAllValues().stream().map(PositionBatchMessage::getTick).toList());
+    }
+
+    // 返回发给该用户的最后一条同步消息
+    private SpaceSyncMessage captureSync(Long userId, int expectedCalls) {
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(sessionManager, atLeastOnce()).sendToUsers(eq(List.of(userId)),
+                eq(WebSocketSessionManager.USER_SPACE_SYNC), payloads.capture());
+        List<Object> values = payloads.getAllValues();
+        assertEquals(expectedCalls, values.size());
+        return (SpaceSyncMessage) values.get(values.size() - 1);
+    }
+
+    private static PositionUpdateMessage move(Long userId, int x, int y) {
+        PositionUpdateMessage message = new PositionUpdateMessage();
+        message.setUserId(userId);
+        message.setSpaceId(1L);
+        message.setX(x);
+        message.setY(y);
+        return message;
+    }
+}
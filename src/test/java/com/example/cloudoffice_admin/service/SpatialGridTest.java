@@ -0,0 +1,55 @@
+package com.example.cloudoffice_admin.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpatialGridTest {
+
+    @Test
+    void gridSize_shouldFollowSpaceDimensions() {
+        SpatialGrid grid = new SpatialGrid(1000, 800, 256);
+
+        assertEquals(4, grid.getColumns());
+        assertEquals(4, grid.getRows());
+        // 超出空间范围的坐标落在边缘格子
+        assertEquals(grid.cellOf(999, 799), grid.cellOf(5000, 5000));
+        assertEquals(0, grid.cellOf(-10, -10));
+    }
+
+    @Test
+    void update_shouldMoveUserBetweenCellsIncrementally() {
+        SpatialGrid grid = new SpatialGrid(1000, 800, 256);
+
+        assertTrue(grid.update(1L, 10, 10, null));
+        // 同一格子内移动不换格子
+        assertFalse(grid.update(1L, 100, 100, 5L));
+        assertEquals(5L, grid.zoneOf(1L));
+        assertTrue(grid.update(1L, 600, 600, 5L));
+
+        assertTrue(grid.usersInCell(grid.cellOf(10, 10)).isEmpty());
+        assertTrue(grid.usersInCell(grid.cellOf(600, 600)).contains(1L));
+        assertEquals(1, grid.occupiedCells().size());
+
+        grid.remove(1L);
+        assertEquals(0, grid.size());
+        assertTrue(grid.occupiedCells().isEmpty());
+    }
+
+    @Test
+    void forEachCellInRadius_shouldClipAtEdges() {
+        SpatialGrid grid = new SpatialGrid(1000, 800, 256);
+        List<Integer> corner = new ArrayList<>();
+        List<Integer> center = new ArrayList<>();
+
+        grid.forEachCellInRadius(grid.cellOf(0, 0), 1, corner::add);
+        grid.forEachCellInRadius(grid.cellOf(300, 300), 1, center::add);
+
+        assertEquals(4, corner.size());
+        assertEquals(9, center.size());
+        assertEquals(2, grid.cellDistance(grid.cellOf(0, 0), grid.cellOf(600, 300)));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.repository.ChannelMembershipRepository;
+import com.example.cloudoffice_admin.repository.ChatChannelRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UnreadCounterTest {
+
+    @Mock
+    private ChatChannelRepository chatChannelRepository;
+
+    @Mock
+    private ChannelMembershipRepository membershipRepository;
+
+    @Mock
+    private ClusterRelay clusterRelay;
+
+    @InjectMocks
+    private UnreadCounter unreadCounter;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void unreadCountIsLastSeqMinusCursorSummedOverChannels() {
+        // 准备：频道5读到8/共10条，频道6读到3/共3条
+        when(membershipRepository.findCursorsByUserId(1L)).thenReturn(List.of(cursor(5L, 8), cursor(6L, 3)));
+        when(chatChannelRepository.findLastSeqs(any())).thenReturn(List.of(seq(5L, 10), seq(6L, 3)));
+
+        // 执行 & 验证
+        assertEquals(2, unreadCounter.unreadCount(1L));
+        assertEquals(2, unreadCounter.unreadCount(1L));
+        verify(membershipRepository, times(1)).findCursorsByUserId(1L);
+    }
+
+    @Test
+    void changesApplyAfterCommitWithoutReloading() {
+        // 准备
+        when(membershipRepository.findCursorsByUserId(1L)).thenReturn(List.of(cursor(5L, 10)));
+        when(chatChannelRepository.findLastSeqs(any())).thenReturn(List.of(seq(5L, 10)));
+        assertEquals(0, unreadCounter.unreadCount(1L));
+
+        // 执行：事务中用户2发了两条消息
+        TransactionSynchronizationManager.initSynchronization();
+        unreadCounter.messageSent(5L, 11, 2L);
+        unreadCounter.messageSent(5L, 12, 2L);
+
+        // 验证：提交前不变，提交后生效并通知其他节点
+        assertEquals(0, unreadCounter.unreadCount(1L));
+        commit();
+        assertEquals(2, unreadCounter.unreadCount(1L));
+        verify(clusterRelay, times(2)).relay(eq(ClusterRelay.TYPE_READ_STATE), any());
+
+        // 执行：读到11，之后迟到的旧游标不会让未读数回升
+        unreadCounter.read(1L, 5L, 11);
+        unreadCounter.read(1L, 5L, 9);
+        commit();
+        assertEquals(1, unreadCounter.unreadCount(1L));
+        verify(membershipRepository, times(1)).findCursorsByUserId(1L);
+    }
+
+    @Test
+    void senderDoesNotCountOwnMessagesAndLeftChannelsStopCounting() {
+        // 准备
+        when(membershipRepository.findCursorsByUserId(1L)).thenReturn(List.of(cursor(5L, 4), cursor(6L, 0)));
+        when(chatChannelRepository.findLastSeqs(any())).thenReturn(List.of(seq(5L, 4), seq(6L, 7)));
+        assertEquals(7, unreadCounter.unreadCount(1L));
+
+        // 执行：不在事务中，立即生效
+        unreadCounter.messageSent(5L, 5, 1L);
+        unreadCounter.left(6L, List.of(1L));
+        unreadCounter.joined(9L, List.of(1L), 30);
+
+        // 验证：新加入频道之前的消息不算未读
+        assertEquals(0, unreadCounter.unreadCount(1L));
+    }
+
+    private static void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    private static ChannelMembershipRepository.CursorView cursor(Long channelId, long lastReadSeq) {
+        return new ChannelMembershipRepository.CursorView() {
+            public Long getChannelId() { return channelId; }
+            public long getLastReadSeq() { return lastReadSeq; }
+        };
+    }
+
+    private static ChatChannelRepository.SeqView seq(Long id, long lastSeq) {
+        return new ChatChannelRepository.SeqView() {
+            public Long getId() { return id; }
+            public long getLastSeq() { return lastSeq; }
+        };
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.cloudoffice_admin.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserIdBitmapTest {
+
+    @Test
+    void matchesHashSetAcrossArrayAndBitmapContainers() {
+        // 准备：5万个集中在前几个块的ID和一些分散的大ID，块内人数跨过数组和位图的分界
+        UserIdBitmap bitmap = new UserIdBitmap();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            long userId = i % 10 == 0 ? random.nextLong() & Long.MAX_VALUE : random.nextInt(200_000);
+            assertEquals(expected.add(userId), bitmap.add(userId));
+        }
+
+        // 执行：移除一大半，让位图块退回数组块
+        for (int i = 0; i < 150_000; i++) {
+            long userId = random.nextInt(200_000);
+            assertEquals(expected.remove(userId), bitmap.remove(userId));
+        }
+
+        // 验证
+        assertEquals(expected.size(), bitmap.cardinality());
+        for (long userId = 0; userId < 200_000; userId++) {
+            assertEquals(expected.contains(userId), bitmap.contains(userId));
+        }
+        for (Long userId : expected) {
+            assertTrue(bitmap.contains(userId));
+        }
+        assertFalse(bitmap.contains(-1L));
+    }
+
+    @Test
+    void companyWideChannelStaysCompact() {
+        // 准备：5万个连续的用户ID
+        UserIdBitmap bitmap = new UserIdBitmap();
+        for (long userId = 1; userId <= 50_000; userId++) {
+            bitmap.add(userId);
+        }
+
+        // 验证：每个块都是8KB位图，远小于装箱的HashSet
+        assertEquals(50_000, bitmap.cardinality());
+        assertTrue(bitmap.sizeInBytes() < 64 * 1024, "size " + bitmap.sizeInBytes());
+    }
+}
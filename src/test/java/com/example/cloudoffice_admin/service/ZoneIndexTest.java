@@ -0,0 +1,71 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.model.Zone;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZoneIndexTest {
+
+    @Test
+    void locate_shouldPreferSmallestNestedZoneAndTreatEdgesAsHalfOpen() {
+        // 大厅中嵌套一个会议室
+        ZoneIndex index = new ZoneIndex(List.of(zone(1L, 0, 0, 1000, 800), zone(2L, 300, 300, 200, 100)));
+
+        assertEquals(1L, index.locate(10, 10));
+        assertEquals(2L, index.locate(300, 300));
+        assertEquals(2L, index.locate(499, 399));
+        // 右边界和下边界不属于区域
+        assertEquals(1L, index.locate(500, 350));
+        assertNull(index.locate(1000, 10));
+        assertNull(index.locate(-1, 10));
+    }
+
+    @Test
+    void locate_shouldMatchLinearScanForRandomLayouts() {
+        Random random = new Random(11);
+        List<Zone> zones = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            zones.add(zone(id, random.nextInt(1800), random.nextInt(1800), 1 + random.nextInt(400), 1 + random.nextInt(400)));
+        }
+        ZoneIndex index = new ZoneIndex(zones);
+
+        for (int i = 0; i < 20_000; i++) {
+            int x = random.nextInt(2400) - 100;
+            int y = random.nextInt(2400) - 100;
+            assertEquals(linearScan(zones, x, y), index.locate(x, y), "at " + x + "," + y);
+        }
+    }
+
+    // 对照实现：面积最小的包含区域，面积相同取ID小的
+    private static Long linearScan(List<Zone> zones, int x, int y) {
+        Zone best = null;
+        for (Zone zone : zones) {
+            boolean inside = x >= zone.getX() && x < zone.getX() + zone.getWidth()
+                    && y >= zone.getY() && y < zone.getY() + zone.getHeight();
+            if (!inside) {
+                continue;
+            }
+            long area = (long) zone.getWidth() * zone.getHeight();
+            long bestArea = best != null ? (long) best.getWidth() * best.getHeight() : Long.MAX_VALUE;
+            if (area < bestArea || (area == bestArea && zone.getId() < best.getId())) {
+                best = zone;
+            }
+        }
+        return best != null ? best.getId() : null;
+    }
+
+    private static Zone zone(Long id, int x, int y, int width, int height) {
+        Zone zone = new Zone();
+        zone.setId(id);
+        zone.setX(x);
+        zone.setY(y);
+        zone.setWidth(width);
+        zone.setHeight(height);
+        return zone;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.cloudoffice_admin.service;
+
+import com.example.cloudoffice_admin.controller.WebSocketController.ZoneEventMessage;
+import com.example.cloudoffice_admin.model.Zone;
+import com.example.cloudoffice_admin.repository.ZoneRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ZoneMembershipServiceTest {
+
+    @Mock
+    private ZoneRepository zoneRepository;
+
+    @Mock
+    private WebSocketSessionManager sessionManager;
+
+    // 真实的在场存储，数据库写入不会在测试中触发
+    @Spy
+    private PresenceStore presenceStore = new PresenceStore();
+
+    @InjectMocks
+    private ZoneMembershipService zoneMembership;
+
+    @BeforeEach
+    void setUp() {
+        zoneMembership.init();
+    }
+
+    @Test
+    void eventsArePublishedOnlyWhenZoneMembershipChanges() {
+        // 准备：空间1有一个会议室
+        Zone meetingRoom = new Zone();
+        meetingRoom.setId(5L);
+        meetingRoom.setX(100);
+        meetingRoom.setY(100);
+        meetingRoom.setWidth(100);
+        meetingRoom.setHeight(100);
+        when(zoneRepository.findBySpaceId(1L)).thenReturn(List.of(meetingRoom));
+
+        // 执行：走廊 -> 会议室内移动三次 -> 走廊
+        zoneMembership.move(7L, 1L, 10, 10);
+        zoneMembership.move(7L, 1L, 120, 120);
+        zoneMembership.move(7L, 1L, 150, 150);
+        zoneMembership.move(7L, 1L, 199, 199);
+        zoneMembership.move(7L, 1L, 250, 250);
+
+        // 验证：一次进入一次离开，区域索引只加载一次
+        ArgumentCaptor<ZoneEventMessage> events = ArgumentCaptor.forClass(ZoneEventMessage.class);
+        verify(sessionManager, times(2)).publishToSpace(eq(1L), eq(WebSocketSessionManager.SPACE_ZONES), events.capture());
+        assertEquals(List.of(ZoneMembershipService.EVENT_ENTER, ZoneMembershipService.EVENT_LEAVE),
+                events.getAllValues().stream().map(ZoneEventMessage::getEvent).toList());
+        assertEquals(5L, events.getAllValues().get(0).getZoneId());
+        verify(zoneRepository, times(1)).findBySpaceId(1L);
+    }
+
+    @Test
+    void leavingTheSpaceLeavesTheZone() {
+        // 准备
+        Zone lounge = new Zone();
+        lounge.setId(6L);
+        lounge.setWidth(500);
+        lounge.setHeight(500);
+        when(zoneRepository.findBySpaceId(1L)).thenReturn(List.of(lounge));
+        zoneMembership.move(7L, 1L, 10, 10);
+
+        // 执行
+        presenceStore.remove(7L);
+
+        // 验证
+        ArgumentCaptor<ZoneEventMessage> events = ArgumentCaptor.forClass(ZoneEventMessage.class);
+        verify(sessionManager, times(2)).publishToSpace(eq(1L), eq(WebSocketSessionManager.SPACE_ZONES), events.capture());
+        assertEquals(ZoneMembershipService.EVENT_LEAVE, events.getAllValues().get(1).getEvent());
+        assertEquals(0, presenceStore.getUsersInZone(6L).size());
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.cloudoffice_admin.service.impl;
+
+import com.example.cloudoffice_admin.dto.MessageView;
+import com.example.cloudoffice_admin.model.ChatChannel;
+import com.example.cloudoffice_admin.model.Message;
+import com.example.cloudoffice_admin.model.User;
+import com.example.cloudoffice_admin.repository.MessageRepository;
+import com.example.cloudoffice_admin.service.RecentMessageCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// 频道历史游标分页：MessageRepository的查询跑在H2内存库上，ChatServiceImpl只注入消息仓库和（未命中的）最近消息缓存
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+class ChatHistoryPagingTest {
+
+    private static final LocalDateTime SAME_TIME = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private final ChatServiceImpl chatService = new ChatServiceImpl();
+
+    private ChatChannel channel;
+    // 按(createdAt, id)从旧到新：第一条更早，中间三条创建时间相同，最后一条更晚
+    private Long[] ids;
+    private Long foreignMessageId;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(chatService, "messageRepository", messageRepository);
+        // 最近消息缓存未命中，最新一页也走findLatest
+        RecentMessageCache recentMessages = mock(RecentMessageCache.class);
+        when(recentMessages.latest(anyLong(), anyInt())).thenReturn(null);
+        ReflectionTestUtils.setField(chatService, "recentMessages", recentMessages);
+
+        User sender = new User();
+        sender.setUsername("sender");
+        sender.setFullName("Sender");
+        sender.setEmail("sender@example.com");
+        sender.setPassword("password");
+        entityManager.persist(sender);
+        channel = channel("general", sender);
+        ChatChannel other = channel("other", sender);
+
+        ids = new Long[]{
+                message(channel, sender, SAME_TIME.minusMinutes(1)),
+                message(channel, sender, SAME_TIME),
+                message(channel, sender, SAME_TIME),
+                message(channel, sender, SAME_TIME),
+                message(channel, sender, SAME_TIME.plusMinutes(1))};
+        foreignMessageId = message(other, sender, SAME_TIME);
+        entityManager.clear();
+    }
+
+    @Test
+    void latestPageIsNewestFirstWithHasNextFromTheExtraRow() {
+        // 执行
+        Slice<MessageView> page = chatService.getChannelMessages(channel.getId(), null, null, 2);
+
+        // 验证
+        assertEquals(List.of(ids[4], ids[3]), idsOf(page));
+        assertTrue(page.hasNext());
+    }
+
+    @Test
+    void beforeBreaksCreatedAtTiesById() {
+        // 执行：游标是创建时间相同的三条中最新的一条
+        Slice<MessageView> page = chatService.getChannelMessages(channel.getId(), ids[3], null, 2);
+
+        // 验证：同一时间里id更小的两条排在前面，不漏也不重复；更早的一条还没取到
+        assertEquals(List.of(ids[2], ids[1]), idsOf(page));
+        assertTrue(page.hasNext());
+
+        // 执行：继续往前翻
+        Slice<MessageView> next = chatService.getChannelMessages(channel.getId(), ids[1], null, 2);
+
+        // 验证
+        assertEquals(List.of(ids[0]), idsOf(next));
+        assertFalse(next.hasNext());
+    }
+
+    @Test
+    void afterPageIsReversedToNewestFirst() {
+        // 执行：游标是创建时间相同的三条中最早的一条
+        Slice<MessageView> page = chatService.getChannelMessages(channel.getId(), null, ids[1], 2);
+
+        // 验证：紧跟游标的两条，按时间倒序返回；之后还有一条
+        assertEquals(List.of(ids[3], ids[2]), idsOf(page));
+        assertTrue(page.hasNext());
+
+        // 执行
+        Slice<MessageView> last = chatService.getChannelMessages(channel.getId(), null, ids[3], 2);
+
+        // 验证
+        assertEquals(List.of(ids[4]), idsOf(last));
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    void pageSizeIsCappedAndAtLeastOne() {
+        // 执行
+        Slice<MessageView> large = chatService.getChannelMessages(channel.getId(), null, null, 1000);
+        Slice<MessageView> empty = chatService.getChannelMessages(channel.getId(), null, null, 0);
+
+        // 验证
+        assertEquals(100, large.getSize());
+        assertEquals(5, large.getNumberOfElements());
+        assertFalse(large.hasNext());
+        assertEquals(List.of(ids[4]), idsOf(empty));
+        assertTrue(empty.hasNext());
+    }
+
+    @Test
+    void cursorFromAnotherChannelIsRejected() {
+        // 执行 & 验证
+        RuntimeException before = assertThrows(RuntimeException.class,
+                () -> chatService.getChannelMessages(channel.getId(), foreignMessageId, null, 2));
+        RuntimeException after = assertThrows(RuntimeException.class,
+                () -> chatService.getChannelMessages(channel.getId(), null, foreignMessageId, 2));
+        assertEquals("Message not found", before.getMessage());
+        assertEquals("Message not found", after.getMessage());
+    }
+
+    private ChatChannel channel(String name, User creator) {
+        ChatChannel channel = new ChatChannel();
+        channel.setName(name);
+        channel.setCreator(creator);
+        return entityManager.persist(channel);
+    }
+
+    // createdAt由@CreationTimestamp在插入时写入，插入后直接改库里的值，构造相同的创建时间
+    private Long message(ChatChannel channel, User sender, LocalDateTime createdAt) {
+        Message message = new Message();
+        message.setChannel(channel);
+        message.setSender(sender);
+        message.setContent("message");
+        Long id = entityManager.persistAndFlush(message).getId();
+        jdbcTemplate.update("UPDATE messages SET created_at = ? WHERE id = ?", Timestamp.valueOf(createdAt), id);
+        return id;
+    }
+
+    private static List<Long> idsOf(Slice<MessageView> page) {
+        return page.getContent().stream().map(MessageView::getId).toList();
+    }
+}